@@ -0,0 +1,287 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.LogoListBuilder;
+
+/**
+ * Write mutable lists to files in the background, so that the model can get on
+ * with the next tick while the last one's output is written. Each export takes
+ * a snapshot of the list (an array of its items, with anything in it other than
+ * numbers, strings and booleans -- lists, mutable lists, cursors and agents --
+ * converted to the string it would be written as), which is quick compared
+ * with writing the list out, and later changes to the list, the lists in it, or
+ * the agents in it don't affect what is written.
+ *
+ * Snapshots are written by one thread, in the order they were made, so exports
+ * to the same file (e.g. appending each tick) come out in order. No more than
+ * {@link #CAPACITY} snapshots wait to be written; if there are that many, the
+ * next export waits until one has been written, so that a model that exports
+ * faster than the disk can keep up doesn't fill memory with snapshots.
+ *
+ * Errors writing a file are reported by the next export or await from the
+ * same thread that asked for it, so that simultaneous BehaviorSpace runs only
+ * see their own errors, and only wait for their own exports.
+ *
+ * Once {@link #shutdown()} has been called (when the extension is unloaded),
+ * exports fail until {@link #startup()} is called (when it is loaded again).
+ * Snapshots are queued while holding the same lock shutdown() uses, so every
+ * snapshot queued is written before the thread writing them stops.
+ *
+ * @author gary
+ */
+public class AsyncExporter {
+	public static final int CAPACITY = 4;
+
+	/**
+	 * The exports asked for by one thread that haven't finished yet, and the
+	 * first error from any of them
+	 *
+	 * @author gary
+	 */
+	private static class Owner {
+		private int pending = 0;
+		private String error = null;
+
+		synchronized void started() {
+			pending++;
+		}
+
+		synchronized void finished(String msg) {
+			if (msg != null && error == null) {
+				error = msg;
+			}
+			pending--;
+			notifyAll();
+		}
+
+		synchronized void await() throws InterruptedException {
+			while (pending > 0) {
+				wait();
+			}
+		}
+
+		/**
+		 * @throws ExtensionException if an export has failed since this was last
+		 *                            called
+		 */
+		synchronized void check() throws ExtensionException {
+			if (error != null) {
+				String msg = error;
+				error = null;
+				throw new ExtensionException(msg);
+			}
+		}
+	}
+
+	/**
+	 * A snapshot waiting to be written
+	 *
+	 * @author gary
+	 */
+	private static class Job {
+		private final Object[] items;
+		private final Path file;
+		private final boolean csv;
+		private final boolean append;
+		private final Owner owner;
+
+		Job(Object[] items, Path file, boolean csv, boolean append, Owner owner) {
+			this.items = items;
+			this.file = file;
+			this.csv = csv;
+			this.append = append;
+			this.owner = owner;
+		}
+
+		void write() throws ExtensionException {
+			if (csv) {
+				ListFileWriter.csv(Arrays.asList(items), file, append);
+			} else {
+				ListFileWriter.lines(Arrays.asList(items), file, append);
+			}
+		}
+	}
+
+	private static final ThreadLocal<Owner> OWNER = new ThreadLocal<Owner>() {
+		@Override
+		protected Owner initialValue() {
+			return new Owner();
+		}
+	};
+
+	private static final BlockingQueue<Job> QUEUE = new ArrayBlockingQueue<Job>(CAPACITY);
+	private static final Job STOP = new Job(null, null, false, false, null);
+	private static Thread writer = null;
+	private static boolean stopped = false;
+
+	/**
+	 * Take a snapshot of a list and queue it to be written, waiting if the queue
+	 * is full. The file is written as CSV (see
+	 * {@link ListFileWriter#csv(Iterable, Path, boolean)}) if its name ends in
+	 * <code>.csv</code>, and as lines (see
+	 * {@link ListFileWriter#lines(Iterable, Path, boolean)}) otherwise.
+	 *
+	 * @param list   the list
+	 * @param file   the file
+	 * @param append whether to add to the end of the file rather than replace
+	 *               it
+	 * @throws ExtensionException if an earlier export from this thread failed,
+	 *                            the exporter has been shut down, or the wait
+	 *                            for space in the queue was interrupted
+	 */
+	public static void export(NetLogoMutableList list, Path file, boolean append) throws ExtensionException {
+		Owner owner = OWNER.get();
+		owner.check();
+		boolean csv = file.getFileName() != null && file.getFileName().toString().endsWith(".csv");
+		Object[] items = new Object[list.size()];
+		int i = 0;
+		for (Object item : list) {
+			items[i] = csv ? snapshotRow(item) : snapshot(item);
+			i++;
+		}
+		Job job = new Job(items, file, csv, append, owner);
+		// Holding the lock while waiting for space in the queue only holds up other
+		// exports (which would be waiting anyway) and shutdown()
+		synchronized (AsyncExporter.class) {
+			if (stopped) {
+				throw new ExtensionException("Cannot export to \"" + file + "\" as the "
+						+ MutableListExtension.EXTENSION_NAME + " extension has been unloaded");
+			}
+			start();
+			owner.started();
+			try {
+				QUEUE.put(job);
+			} catch (InterruptedException e) {
+				owner.finished(null);
+				Thread.currentThread().interrupt();
+				throw new ExtensionException("Interrupted waiting to export to \"" + file + "\"");
+			}
+		}
+	}
+
+	/**
+	 * Wait for all the exports asked for by this thread to be written
+	 *
+	 * @throws ExtensionException if any of them failed, or the wait was
+	 *                            interrupted
+	 */
+	public static void await() throws ExtensionException {
+		Owner owner = OWNER.get();
+		try {
+			owner.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExtensionException("Interrupted waiting for exports to finish");
+		}
+		owner.check();
+	}
+
+	/**
+	 * Write everything in the queue, and stop the thread writing it, when the
+	 * extension is unloaded. Any errors are lost. Exports fail from now on,
+	 * until {@link #startup()} is called.
+	 */
+	public static synchronized void shutdown() {
+		stopped = true;
+		if (writer == null) {
+			return;
+		}
+		try {
+			// Not interrupt(), which would close a file being written
+			QUEUE.put(STOP);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writer = null;
+	}
+
+	/**
+	 * Allow exports again when the extension is loaded (after
+	 * {@link #shutdown()} if it has been loaded before)
+	 */
+	public static synchronized void startup() {
+		stopped = false;
+	}
+
+	/**
+	 * Start the thread writing snapshots if it isn't running
+	 */
+	private static synchronized void start() {
+		if (writer != null) {
+			return;
+		}
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					Job job;
+					try {
+						job = QUEUE.take();
+					} catch (InterruptedException e) {
+						continue;
+					}
+					if (job == STOP) {
+						return;
+					}
+					String msg = null;
+					try {
+						job.write();
+					} catch (ExtensionException e) {
+						msg = e.getMessage();
+					} catch (RuntimeException e) {
+						msg = "Error exporting to \"" + job.file + "\": " + e;
+					}
+					job.owner.finished(msg);
+				}
+			}
+		}, MutableListExtension.EXTENSION_NAME + " exporter");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * @param item an item in a list being exported
+	 * @return the item if it is a number, string or boolean, which can't change
+	 *         before it is written; otherwise (lists at any depth, mutable lists,
+	 *         cursors and agents) what it would be written as now
+	 */
+	private static Object snapshot(Object item) {
+		if (item instanceof Double || item instanceof String || item instanceof Boolean) {
+			return item;
+		}
+		return Dump.logoObject(item);
+	}
+
+	/**
+	 * @param item an item in a list being exported as CSV
+	 * @return the item, or, if it is a NetLogo list or mutable list, a NetLogo
+	 *         list of each of its fields made safe to write later as
+	 *         {@link #snapshot(Object)} does
+	 */
+	private static Object snapshotRow(Object item) {
+		Iterable<Object> row;
+		if (item instanceof LogoList) {
+			row = ((LogoList) item).javaIterable();
+		} else if (item instanceof NetLogoMutableList) {
+			row = (NetLogoMutableList) item;
+		} else {
+			return snapshot(item);
+		}
+		LogoListBuilder builder = new LogoListBuilder();
+		for (Object field : row) {
+			builder.add(snapshot(field));
+		}
+		return builder.toLogoList();
+	}
+}
@@ -0,0 +1,823 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+import java.util.Set;
+
+import org.nlogo.api.ExtensionException;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.LogoListBuilder;
+
+/**
+ * Simple timing harness for MutableList operations. Run the main() method to
+ * print the results to stdout. This isn't a substitute for a proper
+ * micro-benchmarking framework, but each measurement is warmed up and repeated
+ * so that the JIT compiler has had a chance to do its work, and the numbers are
+ * good enough to show how the cost of an operation scales with the length of
+ * the list.
+ *
+ * As well as the time taken, the number of bytes allocated by the thread doing
+ * the operation is reported, where the JVM supports it (HotSpot-based JVMs do);
+ * otherwise it is reported as -1. This is what matters for garbage collection,
+ * which is the main cost of using NetLogo's <code>fput</code> and
+ * <code>lput</code> to maintain long lists.
+ *
+ * The optional argument to main() is the length of the longest list to use
+ * (default 1000000). Lists of 10 million elements need a few gigabytes of heap
+ * (e.g. <code>-Xmx6g</code>).
+ *
+ * @author gary
+ */
+public class BenchmarkMutableList {
+	private static final int WARMUP = 5;
+	private static final int REPEATS = 10;
+	private static final int OPS = 10000;
+	private static final long SEED = 42;
+
+	/**
+	 * The operations compared in {@link BenchmarkMutableList#compare(int)}.
+	 * Operations on the ends of the list are done {@link BenchmarkMutableList#OPS}
+	 * times on one list; other operations are done once on each of enough lists
+	 * that there are at least that many elements in total.
+	 */
+	private enum Op {
+		PUSH, UNSHIFT, POP, SHIFT, CAT, CONTAINS, REMOVE_ALL, SORT, REVERSE, CLONE, TO_ARRAY, DEPTH_FIRST
+	};
+
+	public static void main(String[] args) {
+		int max = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		appendCost();
+		queueCost();
+		scheduleCost(max);
+		itemCost(max);
+		sortCost(max);
+		conversionCost(max);
+		buildCost(max);
+		compare(max);
+	}
+
+	/**
+	 * Time the per-element cost of push() (i.e. lt:lpush) and pop() (i.e.
+	 * lt:lpop) on lists of increasing length. These should be flat with respect to
+	 * the length of the list, as the front keeps a reference to the last element.
+	 */
+	private static void appendCost() {
+		System.out.println("length\tpush (ns/op)\tpop (ns/op)");
+		for (int n = 1000; n <= 1000000; n *= 10) {
+			MutableList list = new MutableList();
+			for (int i = 0; i < n; i++) {
+				list.unshift(Double.valueOf(i));
+			}
+			double push = 0.0;
+			double pop = 0.0;
+			for (int r = 0; r < WARMUP + REPEATS; r++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < OPS; i++) {
+					list.push(Double.valueOf(i));
+				}
+				long mid = System.nanoTime();
+				for (int i = 0; i < OPS; i++) {
+					list.pop();
+				}
+				long stop = System.nanoTime();
+				if (r >= WARMUP) {
+					push += (double) (mid - start) / (double) OPS;
+					pop += (double) (stop - mid) / (double) OPS;
+				}
+			}
+			System.out.println(n + "\t" + String.format("%.1f", push / REPEATS) + "\t"
+					+ String.format("%.1f", pop / REPEATS));
+		}
+	}
+
+	/**
+	 * Time the per-operation cost of using a list as a queue (shift() from the
+	 * front and push() on the end, i.e. lt:fpop and lt:lpush) with and without a
+	 * pool of unused elements, and with a DequeList (i.e. lt:make-deque). With a
+	 * pool or a DequeList, this should allocate nothing.
+	 */
+	private static void queueCost() {
+		System.out.println("length\tstorage\tpool capacity\tqueue (ns/op)\tqueue (bytes/op)\tpool hit rate");
+		for (int n = 1000; n <= 1000000; n *= 10) {
+			for (int capacity : new int[] { 0, 1000 }) {
+				MutableList.setPoolCapacity(capacity);
+				MutableList list = new MutableList();
+				double[] cost = queueCost(list, n);
+				System.out.println(n + "\tlinked\t" + capacity + "\t" + String.format("%.1f", cost[0]) + "\t"
+						+ String.format("%.1f", cost[1]) + "\t" + String.format("%.3f", MutableList.getPoolHitRate()));
+			}
+			MutableList.setPoolCapacity(0);
+			MutableList.clearPool();
+			double[] cost = queueCost(new DequeList(), n);
+			System.out.println(n + "\tdeque\t-\t" + String.format("%.1f", cost[0]) + "\t"
+					+ String.format("%.1f", cost[1]) + "\t-");
+		}
+	}
+
+	/**
+	 * @param list an empty list
+	 * @param n    the number of elements to put in it
+	 * @return the average time (ns) and bytes allocated per shift() and push()
+	 */
+	private static double[] queueCost(MutableSequence list, int n) {
+		// Asking for the allocated bytes itself allocates, so allow for that
+		long overhead = allocatedBytes();
+		overhead = allocatedBytes() - overhead;
+		Double x = Double.valueOf(1.0);
+		for (int i = 0; i < n; i++) {
+			list.push(x);
+		}
+		MutableList.clearPool(); // Only count hits and misses from now on
+		double time = 0.0;
+		double bytes = 0.0;
+		for (int r = 0; r < WARMUP + REPEATS; r++) {
+			long alloc = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < OPS; i++) {
+				list.push(list.shift());
+			}
+			long stop = System.nanoTime();
+			alloc = allocatedBytes() - alloc - overhead;
+			if (r >= WARMUP) {
+				time += (double) (stop - start) / (double) OPS;
+				bytes += (double) alloc / (double) OPS;
+			}
+		}
+		return new double[] { time / REPEATS, bytes / REPEATS };
+	}
+
+	/**
+	 * Time the per-event cost of a discrete-event schedule holding a steady number
+	 * of events: take the next event out and schedule another one at a random
+	 * time after it. This is done with a PriorityHeap (i.e. lt:pq-pop and
+	 * lt:pq-push), and with a MutableList kept sorted by walking a cursor along it
+	 * to find where to insert each new event. The latter is O(N) per event, so it
+	 * is only timed on the shorter schedules.
+	 *
+	 * @param max the largest number of events in the schedule
+	 */
+	private static void scheduleCost(int max) {
+		System.out.println("events\theap (ns/op)\tsorted list (ns/op)");
+		for (int n = 1000; n <= max; n *= 10) {
+			Random rnd = new Random(SEED);
+			PriorityHeap heap = new PriorityHeap();
+			MutableList list = new MutableList();
+			double[] times = new double[n];
+			for (int i = 0; i < n; i++) {
+				times[i] = rnd.nextDouble() * n;
+			}
+			Arrays.sort(times);
+			for (int i = 0; i < n; i++) {
+				heap.push(Double.valueOf(times[i]), times[i]);
+				list.push(Double.valueOf(times[i]));
+			}
+			double heapTime = 0.0;
+			double listTime = 0.0;
+			for (int r = 0; r < WARMUP + REPEATS; r++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < OPS; i++) {
+					double now = heap.pop().getPriority();
+					double next = now + rnd.nextDouble() * n;
+					heap.push(Double.valueOf(next), next);
+				}
+				long stop = System.nanoTime();
+				if (r >= WARMUP) {
+					heapTime += (double) (stop - start) / (double) OPS;
+				}
+				if (n > 10000) {
+					continue;
+				}
+				start = System.nanoTime();
+				for (int i = 0; i < OPS; i++) {
+					double now = (Double) list.shift();
+					double next = now + rnd.nextDouble() * n;
+					ListIterator<Object> ix = list.listIterator();
+					while (ix.hasNext()) {
+						if ((Double) ix.next() > next) {
+							ix.previous();
+							break;
+						}
+					}
+					ix.add(Double.valueOf(next));
+				}
+				stop = System.nanoTime();
+				if (r >= WARMUP) {
+					listTime += (double) (stop - start) / (double) OPS;
+				}
+			}
+			System.out.println(n + "\t" + String.format("%.1f", heapTime / REPEATS) + "\t"
+					+ (n > 10000 ? "-" : String.format("%.1f", listTime / REPEATS)));
+		}
+	}
+
+	/**
+	 * Time getting elements at random positions in a linked list with
+	 * NetLogoMutableList's item() (i.e. lt:item), which uses an index of
+	 * checkpoints, and with MutableList's get(), which walks from the front.
+	 *
+	 * @param max the length of the longest list
+	 */
+	private static void itemCost(int max) {
+		System.out.println("length\titem (ns/op)\tget (ns/op)");
+		for (int n = 1000; n <= max; n *= 10) {
+			Random rnd = new Random(SEED);
+			NetLogoMutableList list = new NetLogoMutableList();
+			for (int i = 0; i < n; i++) {
+				list.push(Double.valueOf(i));
+			}
+			MutableList linked = (MutableList) list.getList();
+			int ops = Math.max(10, OPS / (n / 1000));
+			double itemTime = 0.0;
+			double getTime = 0.0;
+			try {
+				for (int r = 0; r < WARMUP + REPEATS; r++) {
+					long start = System.nanoTime();
+					for (int i = 0; i < OPS; i++) {
+						list.item(rnd.nextInt(n));
+					}
+					long mid = System.nanoTime();
+					for (int i = 0; i < ops; i++) {
+						linked.get(rnd.nextInt(n));
+					}
+					long stop = System.nanoTime();
+					if (r >= WARMUP) {
+						itemTime += (double) (mid - start) / (double) OPS;
+						getTime += (double) (stop - mid) / (double) ops;
+					}
+				}
+			} catch (ExtensionException e) {
+				throw new RuntimeException("BUG! " + e.getMessage());
+			}
+			System.out.println(n + "\t" + String.format("%.1f", itemTime / REPEATS) + "\t"
+					+ String.format("%.1f", getTime / REPEATS));
+		}
+	}
+
+	/**
+	 * Compare the in-place merge sort of MutableList with the way it used to be
+	 * sorted, which is what <code>List</code>'s default sort() does: copy the
+	 * elements to an array, sort that, and write them back with a ListIterator.
+	 *
+	 * @param max the length of the longest list
+	 */
+	private static void sortCost(int max) {
+		System.out.println("length\tmerge sort (ms)\tmerge sort (bytes)\tarray sort (ms)\tarray sort (bytes)");
+		for (int n = 1000; n <= max; n *= 10) {
+			List<Object> numbers = numbers(n, new Random(SEED));
+			int warmup = (n >= 1000000) ? 1 : WARMUP;
+			int repeats = (n >= 1000000) ? 3 : REPEATS;
+			double[] time = new double[2];
+			double[] bytes = new double[2];
+			for (int r = 0; r < warmup + repeats; r++) {
+				for (int k = 0; k < 2; k++) {
+					MutableList list = new MutableList(numbers);
+					long alloc = allocatedBytes();
+					long start = System.nanoTime();
+					if (k == 0) {
+						list.sort(NUMERIC_ORDER);
+					} else {
+						Object[] array = list.toArray();
+						Arrays.sort(array, NUMERIC_ORDER);
+						ListIterator<Object> ix = list.listIterator();
+						for (Object o : array) {
+							ix.next();
+							ix.set(o);
+						}
+					}
+					long stop = System.nanoTime();
+					alloc = allocatedBytes() - alloc;
+					if (r >= warmup) {
+						time[k] += (double) (stop - start) / 1.0e6;
+						bytes[k] += (double) alloc;
+					}
+				}
+			}
+			System.out.println(n + "\t" + String.format("%.2f", time[0] / repeats) + "\t"
+					+ String.format("%.0f", bytes[0] / repeats) + "\t" + String.format("%.2f", time[1] / repeats) + "\t"
+					+ String.format("%.0f", bytes[1] / repeats));
+		}
+	}
+
+	/**
+	 * Measure the cost per element of converting mutable lists to NetLogo lists,
+	 * which models tend to do every tick (e.g. for plotting). Shallow conversion
+	 * (lt:as-list) using a LogoListBuilder is compared with
+	 * <code>LogoList.fromJava()</code>; deep conversion (lt:as-list-deeply) of a
+	 * list of lists of ten numbers is compared with the way it used to be done,
+	 * using <code>lput</code> for each element.
+	 *
+	 * @param max the number of elements in the longest list
+	 */
+	private static void conversionCost(int max) {
+		System.out.println("length\tbuilder (ns/element)\tbuilder (bytes/element)\tfromJava (ns/element)\t"
+				+ "fromJava (bytes/element)\tdeep builder (ns/element)\tdeep builder (bytes/element)\t"
+				+ "deep lput (ns/element)\tdeep lput (bytes/element)");
+		// Asking for the allocated bytes itself allocates, so allow for that
+		long overhead = allocatedBytes();
+		overhead = allocatedBytes() - overhead;
+		for (int n = 1000; n <= max; n *= 10) {
+			List<Object> numbers = numbers(n, new Random(SEED));
+			NetLogoMutableList flat = new NetLogoMutableList(numbers);
+			NetLogoMutableList nested = new NetLogoMutableList();
+			for (int i = 0; i < n; i += 10) {
+				nested.push(new NetLogoMutableList(numbers.subList(i, i + 10)));
+			}
+			int warmup = (n >= 1000000) ? 1 : WARMUP;
+			int repeats = (n >= 1000000) ? 3 : REPEATS;
+			double[] time = new double[4];
+			double[] bytes = new double[4];
+			for (int r = 0; r < warmup + repeats; r++) {
+				for (int k = 0; k < 4; k++) {
+					LogoList result;
+					long alloc = allocatedBytes();
+					long start = System.nanoTime();
+					try {
+						switch (k) {
+						case 0:
+							result = flat.asLogoList();
+							break;
+						case 1:
+							result = LogoList.fromJava(flat);
+							break;
+						case 2:
+							result = nested.asLogoListDeeply();
+							break;
+						default:
+							result = asLogoListDeeplyByLput(nested);
+							break;
+						}
+					} catch (ExtensionException e) {
+						throw new RuntimeException("BUG! " + e.getMessage());
+					}
+					long stop = System.nanoTime();
+					alloc = allocatedBytes() - alloc - overhead;
+					if (result.size() != ((k < 2) ? n : (n / 10))) {
+						throw new RuntimeException("BUG! Converted list has the wrong length");
+					}
+					if (r >= warmup) {
+						time[k] += (double) (stop - start) / (double) n;
+						bytes[k] += (double) alloc / (double) n;
+					}
+				}
+			}
+			StringBuffer buff = new StringBuffer(Integer.toString(n));
+			for (int k = 0; k < 4; k++) {
+				buff.append("\t" + String.format("%.1f", time[k] / repeats) + "\t"
+						+ String.format("%.1f", bytes[k] / repeats));
+			}
+			System.out.println(buff);
+		}
+	}
+
+	/**
+	 * The way lt:as-list-deeply used to convert lists, for comparison
+	 *
+	 * @param list
+	 * @return the list converted to a NetLogo list
+	 */
+	private static LogoList asLogoListDeeplyByLput(NetLogoMutableList list) {
+		LogoList logo = LogoList.Empty();
+		for (Object item : list) {
+			if (item instanceof NetLogoMutableList) {
+				logo = logo.lput(asLogoListDeeplyByLput((NetLogoMutableList) item));
+			} else {
+				logo = logo.lput(item);
+			}
+		}
+		return logo;
+	}
+
+	/**
+	 * Measure the cost per element of building mutable lists from NetLogo lists
+	 * (lt:from-list) and ranges (lt:range), comparing building straight from an
+	 * iterator with the way it used to be done: converting the NetLogo list to a
+	 * Java list and adding that, and putting the range in a LinkedList first.
+	 *
+	 * @param max the length of the longest list
+	 */
+	private static void buildCost(int max) {
+		System.out.println("length\tfrom-list (ns/element)\tfrom-list (bytes/element)\told from-list (ns/element)\t"
+				+ "old from-list (bytes/element)\trange (ns/element)\trange (bytes/element)\told range (ns/element)\t"
+				+ "old range (bytes/element)");
+		// Asking for the allocated bytes itself allocates, so allow for that
+		long overhead = allocatedBytes();
+		overhead = allocatedBytes() - overhead;
+		for (int n = 1000; n <= max; n *= 10) {
+			LogoList numbers = LogoList.fromJava(numbers(n, new Random(SEED)));
+			int warmup = (n >= 1000000) ? 1 : WARMUP;
+			int repeats = (n >= 1000000) ? 3 : REPEATS;
+			double[] time = new double[4];
+			double[] bytes = new double[4];
+			for (int r = 0; r < warmup + repeats; r++) {
+				for (int k = 0; k < 4; k++) {
+					NetLogoMutableList result;
+					// Building is all allocation, so don't time collecting the last list
+					System.gc();
+					long alloc = allocatedBytes();
+					long start = System.nanoTime();
+					switch (k) {
+					case 0:
+						result = new NetLogoMutableList(numbers);
+						break;
+					case 1:
+						result = new NetLogoMutableList(numbers.toJava());
+						break;
+					case 2:
+						result = new NetLogoMutableList();
+						result.pushAll(new ListReporter.RangeIterator(0.0, n - 1.0, 1.0));
+						break;
+					default:
+						List<Object> range = new LinkedList<Object>();
+						for (double i = 0.0; i <= n - 1.0; i += 1.0) {
+							range.add(Double.valueOf(i));
+						}
+						result = new NetLogoMutableList(range);
+						break;
+					}
+					long stop = System.nanoTime();
+					alloc = allocatedBytes() - alloc - overhead;
+					if (result.size() != n) {
+						throw new RuntimeException("BUG! Built list has the wrong length");
+					}
+					if (r >= warmup) {
+						time[k] += (double) (stop - start) / (double) n;
+						bytes[k] += (double) alloc / (double) n;
+					}
+				}
+			}
+			StringBuffer buff = new StringBuffer(Integer.toString(n));
+			for (int k = 0; k < 4; k++) {
+				buff.append("\t" + String.format("%.1f", time[k] / repeats) + "\t"
+						+ String.format("%.1f", bytes[k] / repeats));
+			}
+			System.out.println(buff);
+		}
+	}
+
+	/**
+	 * Time each operation on lists with each kind of storage, and the nearest
+	 * equivalent on NetLogo lists, with lengths from 10 up to max. The NetLogo
+	 * equivalents are <code>lput</code>, <code>fput</code>, <code>but-last</code>,
+	 * <code>but-first</code>, <code>sentence</code>, <code>member?</code>,
+	 * <code>remove</code>, <code>sort</code>, <code>reverse</code>, none (NetLogo
+	 * lists don't need copying), iterating through the list, and none (NetLogo
+	 * has no depth-first iteration of nested lists).
+	 *
+	 * @param max the length of the longest list
+	 */
+	private static void compare(int max) {
+		System.out.println("operation\tlength\tlist\tns/op\tbytes/op");
+		for (Op op : Op.values()) {
+			for (int n = 10; n <= max; n *= 10) {
+				for (NetLogoMutableList.Storage storage : NetLogoMutableList.Storage.values()) {
+					if (op == Op.DEPTH_FIRST && storage == NetLogoMutableList.Storage.NUMERIC) {
+						continue; // Numeric lists can't contain lists
+					}
+					report(op, n, storage.toString(), new MutableListTrial(op, storage, n));
+				}
+				if (op != Op.CLONE && op != Op.DEPTH_FIRST) {
+					report(op, n, "LogoList", new LogoListTrial(op, n));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Time a trial and print the result
+	 *
+	 * @param op    the operation
+	 * @param n     the length of the list
+	 * @param name  the name of the list implementation
+	 * @param trial the trial
+	 */
+	private static void report(Op op, int n, String name, Trial trial) {
+		// Fewer repeats for very long lists, as setting up takes longer than the trial
+		int warmup = (n >= 1000000) ? 1 : WARMUP;
+		int repeats = (n >= 1000000) ? 3 : REPEATS;
+		double time = 0.0;
+		double bytes = 0.0;
+		// Asking for the allocated bytes itself allocates, so allow for that
+		long overhead = allocatedBytes();
+		overhead = allocatedBytes() - overhead;
+		for (int r = 0; r < warmup + repeats; r++) {
+			trial.setUp();
+			long alloc = allocatedBytes();
+			long start = System.nanoTime();
+			int ops = trial.run();
+			long stop = System.nanoTime();
+			alloc = allocatedBytes() - alloc - overhead;
+			if (r >= warmup) {
+				time += (double) (stop - start) / (double) ops;
+				bytes += (double) alloc / (double) ops;
+			}
+		}
+		System.out.println(op + "\t" + n + "\t" + name + "\t" + String.format("%.1f", time / repeats) + "\t"
+				+ (allocatedBytes() < 0 ? "-1" : String.format("%.1f", bytes / repeats)));
+	}
+
+	/**
+	 * @return the number of bytes allocated so far by the current thread, or -1 if
+	 *         the JVM doesn't say
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1L;
+	}
+
+	/**
+	 * @param n the length of each list
+	 * @return the number of lists of that length to do a whole-list operation on
+	 */
+	private static int copies(int n) {
+		return (n >= OPS) ? 1 : (OPS / n);
+	}
+
+	/**
+	 * @param n   the length of the list
+	 * @param rnd source of random numbers
+	 * @return a list of random numbers
+	 */
+	private static List<Object> numbers(int n, Random rnd) {
+		List<Object> numbers = new ArrayList<Object>(n);
+		for (int i = 0; i < n; i++) {
+			numbers.add(Double.valueOf(rnd.nextInt(n)));
+		}
+		return numbers;
+	}
+
+	/**
+	 * Compare numbers without a NetLogo reporter
+	 */
+	private static final Comparator<Object> NUMERIC_ORDER = new Comparator<Object>() {
+		@Override
+		public int compare(Object o1, Object o2) {
+			return ((Double) o1).compareTo((Double) o2);
+		}
+	};
+
+	/**
+	 * One measurement of an operation
+	 */
+	private static interface Trial {
+		/**
+		 * Build the lists used by the trial. This isn't timed.
+		 */
+		public void setUp();
+
+		/**
+		 * Do the operation
+		 *
+		 * @return the number of times the operation was done
+		 */
+		public int run();
+	}
+
+	/**
+	 * An operation on NetLogoMutableLists with a particular storage
+	 */
+	private static class MutableListTrial implements Trial {
+		private final Op op;
+		private final NetLogoMutableList.Storage storage;
+		private final int n;
+		private final List<Object> numbers;
+		private NetLogoMutableList[] lists;
+		private NetLogoMutableList[] others;
+		private List<Object> del;
+
+		MutableListTrial(Op op, NetLogoMutableList.Storage storage, int n) {
+			this.op = op;
+			this.storage = storage;
+			this.n = n;
+			numbers = numbers(n, new Random(SEED));
+		}
+
+		private NetLogoMutableList make() {
+			NetLogoMutableList list = new NetLogoMutableList(storage);
+			if (op == Op.DEPTH_FIRST) {
+				for (int i = 0; i < n; i += 10) {
+					NetLogoMutableList sublist = new NetLogoMutableList(storage);
+					sublist.pushAll(numbers.subList(i, Math.min(n, i + 10)));
+					list.push(sublist);
+				}
+			} else {
+				list.pushAll(numbers);
+			}
+			return list;
+		}
+
+		@Override
+		public void setUp() {
+			int k = (op == Op.PUSH || op == Op.UNSHIFT || op == Op.POP || op == Op.SHIFT) ? 1 : copies(n);
+			lists = new NetLogoMutableList[k];
+			for (int i = 0; i < k; i++) {
+				lists[i] = make();
+			}
+			if (op == Op.CAT) {
+				others = new NetLogoMutableList[k];
+				for (int i = 0; i < k; i++) {
+					others[i] = make();
+				}
+			} else if (op == Op.REMOVE_ALL) {
+				del = new ArrayList<Object>();
+				for (int i = 0; i < n; i += 10) {
+					del.add(Double.valueOf(i));
+				}
+			}
+		}
+
+		@Override
+		public int run() {
+			NetLogoMutableList list = lists[0];
+			int ops = Math.min(OPS, n);
+			switch (op) {
+			case PUSH:
+				for (int i = 0; i < OPS; i++) {
+					list.push(Double.valueOf(i));
+				}
+				return OPS;
+			case UNSHIFT:
+				for (int i = 0; i < OPS; i++) {
+					list.unshift(Double.valueOf(i));
+				}
+				return OPS;
+			case POP:
+				for (int i = 0; i < ops; i++) {
+					list.pop();
+				}
+				return ops;
+			case SHIFT:
+				for (int i = 0; i < ops; i++) {
+					list.shift();
+				}
+				return ops;
+			case CAT:
+				for (int i = 0; i < lists.length; i++) {
+					lists[i].cat(others[i]);
+				}
+				break;
+			case CONTAINS:
+				for (int i = 0; i < lists.length; i++) {
+					lists[i].member("not there");
+				}
+				break;
+			case REMOVE_ALL:
+				for (int i = 0; i < lists.length; i++) {
+					lists[i].removeAll(del);
+				}
+				break;
+			case SORT:
+				for (int i = 0; i < lists.length; i++) {
+					lists[i].sort(NUMERIC_ORDER);
+				}
+				break;
+			case REVERSE:
+				for (int i = 0; i < lists.length; i++) {
+					lists[i].reverse();
+				}
+				break;
+			case CLONE:
+				for (int i = 0; i < lists.length; i++) {
+					lists[i].copy();
+				}
+				break;
+			case TO_ARRAY:
+				for (int i = 0; i < lists.length; i++) {
+					lists[i].getList().toArray();
+				}
+				break;
+			case DEPTH_FIRST:
+				for (int i = 0; i < lists.length; i++) {
+					for (Iterator<Object> ix = lists[i].getDepthFirstIterator(); ix.hasNext();) {
+						ix.next();
+					}
+				}
+				break;
+			default:
+				throw new RuntimeException("PANIC!");
+			}
+			return lists.length;
+		}
+	}
+
+	/**
+	 * The nearest equivalent of an operation on NetLogo's (immutable) lists
+	 */
+	private static class LogoListTrial implements Trial {
+		private final Op op;
+		private final int n;
+		private final LogoList numbers;
+		private LogoList[] lists;
+		private Set<Object> del;
+
+		LogoListTrial(Op op, int n) {
+			this.op = op;
+			this.n = n;
+			numbers = LogoList.fromJava(BenchmarkMutableList.numbers(n, new Random(SEED)));
+		}
+
+		@Override
+		public void setUp() {
+			// NetLogo lists are immutable, so all the copies can be the same list
+			lists = new LogoList[(op == Op.PUSH || op == Op.UNSHIFT || op == Op.POP || op == Op.SHIFT) ? 1 : copies(n)];
+			Arrays.fill(lists, numbers);
+			if (op == Op.REMOVE_ALL) {
+				del = new HashSet<Object>();
+				for (int i = 0; i < n; i += 10) {
+					del.add(Double.valueOf(i));
+				}
+			}
+		}
+
+		@Override
+		public int run() {
+			LogoList list = lists[0];
+			int ops = Math.min(OPS, n);
+			switch (op) {
+			case PUSH:
+				for (int i = 0; i < OPS; i++) {
+					list = list.lput(Double.valueOf(i));
+				}
+				lists[0] = list;
+				return OPS;
+			case UNSHIFT:
+				for (int i = 0; i < OPS; i++) {
+					list = list.fput(Double.valueOf(i));
+				}
+				lists[0] = list;
+				return OPS;
+			case POP:
+				for (int i = 0; i < ops; i++) {
+					list = list.butLast();
+				}
+				lists[0] = list;
+				return ops;
+			case SHIFT:
+				for (int i = 0; i < ops; i++) {
+					list = list.butFirst();
+				}
+				lists[0] = list;
+				return ops;
+			case CAT:
+				for (int i = 0; i < lists.length; i++) {
+					LogoListBuilder builder = new LogoListBuilder();
+					builder.addAll(lists[i].javaIterable());
+					builder.addAll(numbers.javaIterable());
+					lists[i] = builder.toLogoList();
+				}
+				break;
+			case CONTAINS:
+				for (int i = 0; i < lists.length; i++) {
+					lists[i].contains("not there");
+				}
+				break;
+			case REMOVE_ALL:
+				for (int i = 0; i < lists.length; i++) {
+					LogoListBuilder builder = new LogoListBuilder();
+					for (Object o : lists[i].javaIterable()) {
+						if (!del.contains(o)) {
+							builder.add(o);
+						}
+					}
+					lists[i] = builder.toLogoList();
+				}
+				break;
+			case SORT:
+				for (int i = 0; i < lists.length; i++) {
+					Object[] array = lists[i].toJava().toArray();
+					Arrays.sort(array, NUMERIC_ORDER);
+					lists[i] = LogoList.fromJava(Arrays.asList(array));
+				}
+				break;
+			case REVERSE:
+				for (int i = 0; i < lists.length; i++) {
+					lists[i] = lists[i].reverse();
+				}
+				break;
+			case TO_ARRAY:
+				for (int i = 0; i < lists.length; i++) {
+					for (Iterator<Object> ix = lists[i].javaIterator(); ix.hasNext();) {
+						ix.next();
+					}
+				}
+				break;
+			default:
+				throw new RuntimeException("PANIC!");
+			}
+			return lists.length;
+		}
+	}
+}
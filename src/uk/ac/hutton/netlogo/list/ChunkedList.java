@@ -0,0 +1,1111 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import java.lang.reflect.Array;
+
+/**
+ * An 'unrolled' linked list: a doubly-linked list of chunks, each of which
+ * stores up to {@link #CHUNK_SIZE} elements in a contiguous array. Compared with
+ * {@link MutableList}, which allocates an object with three references for
+ * every element, this uses a little over one reference per element, and
+ * iterating through the list mostly reads consecutive memory locations.
+ *
+ * Elements in each chunk occupy the range <code>[start, end[</code> of its
+ * array, so that adding and removing at either end of the list is O(1).
+ * Inserting or deleting in the middle of the list (e.g. with a cursor) moves at
+ * most {@link #CHUNK_SIZE} / 2 elements; full chunks are split in half, and
+ * chunks that are nearly empty are merged with their neighbours. The size of
+ * the list is kept, so {@link #size()} is O(1), and {@link #get(int)} is
+ * O(N/{@link #CHUNK_SIZE}).
+ *
+ * Iterators remember their numerical position in the list. If the list is
+ * changed other than through the iterator, the iterator finds its position
+ * again the next time it is used, but cannot then {@link ListIterator#set} or
+ * {@link ListIterator#remove} until it has been moved.
+ *
+ * @author gary
+ */
+public class ChunkedList implements MutableSequence {
+	public static final int CHUNK_SIZE = 64;
+	private Chunk first; // null if the list is empty
+	private Chunk last; // null if the list is empty
+	private int size;
+	private int modCount; // incremented whenever elements change position
+
+	/**
+	 * A chunk of the list
+	 */
+	private static class Chunk {
+		private final Object[] items;
+		private int start; // index in items of the first element
+		private int end; // index in items after the last element
+		private Chunk prev;
+		private Chunk next;
+
+		private Chunk(int start) {
+			items = new Object[CHUNK_SIZE];
+			this.start = start;
+			this.end = start;
+			prev = null;
+			next = null;
+		}
+
+		private int count() {
+			return end - start;
+		}
+	}
+
+	/**
+	 * Constructor returning an empty list
+	 */
+	public ChunkedList() {
+		first = null;
+		last = null;
+		size = 0;
+		modCount = 0;
+	}
+
+	/**
+	 * Convenience constructor allowing a list to be initialized with a collection
+	 *
+	 * @param c the collection
+	 */
+	public ChunkedList(Collection<? extends Object> c) {
+		this();
+		addAll(c);
+	}
+
+	/**
+	 * Create a new chunk and link it in after the one given
+	 *
+	 * @param c     the chunk to put the new one after (<code>null</code> to put it
+	 *              at the front)
+	 * @param start the position in the new chunk's array the first element will
+	 *              go
+	 * @return the new chunk
+	 */
+	private Chunk linkAfter(Chunk c, int start) {
+		Chunk n = new Chunk(start);
+		n.prev = c;
+		n.next = (c == null) ? first : c.next;
+		if (n.prev == null) {
+			first = n;
+		} else {
+			n.prev.next = n;
+		}
+		if (n.next == null) {
+			last = n;
+		} else {
+			n.next.prev = n;
+		}
+		return n;
+	}
+
+	/**
+	 * Remove a chunk from the list of chunks
+	 *
+	 * @param c the chunk to remove
+	 */
+	private void unlink(Chunk c) {
+		if (c.prev == null) {
+			first = c.next;
+		} else {
+			c.prev.next = c.next;
+		}
+		if (c.next == null) {
+			last = c.prev;
+		} else {
+			c.next.prev = c.prev;
+		}
+		c.prev = null;
+		c.next = null;
+	}
+
+	/**
+	 * @param o      an object to add to the list
+	 * @param method the method it is being added by
+	 * @throws NullPointerException if the object is <code>null</code>
+	 */
+	private static void checkNull(Object o, String method) {
+		if (o == null) {
+			throw new NullPointerException("Cannot " + method + " a null to a ChunkedList");
+		}
+	}
+
+	/**
+	 * O(1)
+	 *
+	 * @return the size of the list
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return <code>true</code> if there are no elements in the list
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the index<sup>th</sup> item in the list. O(N/{@link #CHUNK_SIZE}).
+	 *
+	 * @param index the element wanted
+	 * @return the object stored at the element
+	 * @throws IndexOutOfBoundsException if index is outwith [0,
+	 *                                   <code>size()</code>[
+	 */
+	@Override
+	public Object get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("ChunkedList of size " + size + " has no index " + index);
+		}
+		ChunkedListIterator ix = new ChunkedListIterator(index);
+		return ix.next();
+	}
+
+	/**
+	 * Replace the element at the indicated index. O(N/{@link #CHUNK_SIZE}).
+	 *
+	 * @param index   the index at which to replace the item currently stored
+	 * @param element the object to store there (must not be <code>null</code>)
+	 * @return the previous element stored at the index
+	 * @throws IndexOutOfBoundsException if index is outwith [0,
+	 *                                   <code>size()</code>[
+	 */
+	@Override
+	public Object set(int index, Object element) {
+		checkNull(element, "set()");
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("ChunkedList of size " + size + " has no index " + index);
+		}
+		ChunkedListIterator ix = new ChunkedListIterator(index);
+		Object old = ix.next();
+		ix.set(element);
+		return old;
+	}
+
+	/**
+	 * As with {@link MutableList#subList(int, int)}, this is not supported.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public List<Object> subList(int fromIndex, int toIndex) {
+		throw new UnsupportedOperationException("ChunkedList does not support subList()");
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		for (Chunk c = first; c != null; c = c.next) {
+			for (int i = c.start; i < c.end; i++) {
+				if (c.items[i].equals(o)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Private convenience method turning collection in the argument into a Set.
+	 *
+	 * @param c a collection
+	 * @return the collection as a Set
+	 */
+	private Set<Object> makeSet(Collection<?> c) {
+		Set<Object> cc = new HashSet<Object>();
+		for (Object o : c) {
+			cc.add(o);
+		}
+		return cc;
+	}
+
+	/**
+	 * Checks that all the items in a collection are members of the list.
+	 *
+	 * @param c a collection
+	 * @return <code>true</code> if all the items in the collection appear at least
+	 *         once in the list
+	 */
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		Set<Object> cc = makeSet(c);
+		for (Chunk ch = first; ch != null && !cc.isEmpty(); ch = ch.next) {
+			for (int i = ch.start; i < ch.end; i++) {
+				cc.remove(ch.items[i]);
+			}
+		}
+		return cc.isEmpty();
+	}
+
+	@Override
+	public boolean containsAny(Collection<?> objs) {
+		Set<Object> cc = makeSet(objs);
+		for (Chunk c = first; c != null; c = c.next) {
+			for (int i = c.start; i < c.end; i++) {
+				if (cc.contains(c.items[i])) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean containsDeeply(Object obj) {
+		if (obj == null) {
+			return false;
+		}
+		for (Chunk c = first; c != null; c = c.next) {
+			for (int i = c.start; i < c.end; i++) {
+				Object item = c.items[i];
+				if (item instanceof MutableSequence) {
+					if (((MutableSequence) item).containsDeeply(obj)) {
+						return true;
+					}
+				} else if (item instanceof NetLogoMutableList) {
+					if (((NetLogoMutableList) item).deepMember(obj)) {
+						return true;
+					}
+				} else if (item.equals(obj)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		if (o == null) {
+			return -1;
+		}
+		int ix = 0;
+		for (Chunk c = first; c != null; c = c.next) {
+			for (int i = c.start; i < c.end; i++) {
+				if (c.items[i].equals(o)) {
+					return ix;
+				}
+				ix++;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		if (o == null) {
+			return -1;
+		}
+		int ix = size - 1;
+		for (Chunk c = last; c != null; c = c.prev) {
+			for (int i = c.end - 1; i >= c.start; i--) {
+				if (c.items[i].equals(o)) {
+					return ix;
+				}
+				ix--;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		return new ChunkedListIterator(0);
+	}
+
+	@Override
+	public ListIterator<Object> listIterator() {
+		return new ChunkedListIterator(0);
+	}
+
+	/**
+	 * @return a ListIterator starting at element index
+	 * @throws IndexOutOfBoundsException if the index is outside the range [0,
+	 *                                   size()]
+	 */
+	@Override
+	public ListIterator<Object> listIterator(int index) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("ChunkedList of size " + size + " has no element " + index);
+		}
+		return new ChunkedListIterator(index);
+	}
+
+	@Override
+	public Iterator<Object> depthFirstIterator() {
+		return new DepthFirstIterator(this);
+	}
+
+	/**
+	 * Converts the list into an array of Objects. O(N), copying each chunk in one
+	 * go.
+	 *
+	 * @return the list as an array
+	 */
+	@Override
+	public Object[] toArray() {
+		Object[] array = new Object[size];
+		int j = 0;
+		for (Chunk c = first; c != null; c = c.next) {
+			System.arraycopy(c.items, c.start, array, j, c.count());
+			j += c.count();
+		}
+		return array;
+	}
+
+	/**
+	 * Converts the list into an array of the specified generic type. Returns
+	 * <code>a</code> if the list will fit there.
+	 *
+	 * @throws ArrayStoreException if an element of the list cannot be stored in an
+	 *                             array of the type of <code>a</code>
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T[] toArray(T[] a) {
+		T[] array = a.length >= size ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+		int j = 0;
+		for (Chunk c = first; c != null; c = c.next) {
+			System.arraycopy(c.items, c.start, array, j, c.count());
+			j += c.count();
+		}
+		for (; j < array.length; j++) {
+			array[j] = null;
+		}
+		return array;
+	}
+
+	/**
+	 * Adds an item to the end of the list. O(1).
+	 *
+	 * @param o the object to add; must not be <code>null</code>
+	 * @return <code>true</code>
+	 */
+	@Override
+	public boolean add(Object o) {
+		checkNull(o, "add()");
+		if (last == null || last.end == CHUNK_SIZE) {
+			linkAfter(last, 0);
+		}
+		last.items[last.end] = o;
+		last.end++;
+		size++;
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public void push(Object o) {
+		add(o);
+	}
+
+	@Override
+	public int pushAll(Iterator<? extends Object> ix) {
+		int n = 0;
+		while (ix.hasNext()) {
+			add(ix.next());
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Adds an item to the front of the list. O(1).
+	 *
+	 * @param o the object to add; must not be <code>null</code>
+	 */
+	@Override
+	public void unshift(Object o) {
+		checkNull(o, "unshift()");
+		if (first == null || first.start == 0) {
+			linkAfter(null, CHUNK_SIZE);
+		}
+		first.start--;
+		first.items[first.start] = o;
+		size++;
+		modCount++;
+	}
+
+	/**
+	 * Removes the item from the front of the list and returns it. O(1).
+	 *
+	 * @return the object removed from the front of the list
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	@Override
+	public Object shift() {
+		if (first == null) {
+			throw new NoSuchElementException("Cannot shift from empty ChunkedList");
+		}
+		Object o = first.items[first.start];
+		first.items[first.start] = null;
+		first.start++;
+		if (first.count() == 0) {
+			unlink(first);
+		}
+		size--;
+		modCount++;
+		return o;
+	}
+
+	/**
+	 * Removes the last item on the list and returns it. O(1).
+	 *
+	 * @return the object removed from the end of the list
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	@Override
+	public Object pop() {
+		if (last == null) {
+			throw new NoSuchElementException("Cannot pop from empty ChunkedList");
+		}
+		last.end--;
+		Object o = last.items[last.end];
+		last.items[last.end] = null;
+		if (last.count() == 0) {
+			unlink(last);
+		}
+		size--;
+		modCount++;
+		return o;
+	}
+
+	/**
+	 * Add an element at the specified index in the list.
+	 *
+	 * @throws IndexOutOfBoundsException if index is outwith [0,
+	 *                                   <code>size()</code>]
+	 */
+	@Override
+	public void add(int index, Object element) {
+		listIterator(index).add(element);
+	}
+
+	/**
+	 * Adds all the elements in the collection to the end of the list in order. If
+	 * the collection is this list, a copy of it is added, rather than everything
+	 * added so far, forever.
+	 */
+	@Override
+	public boolean addAll(Collection<? extends Object> c) {
+		if (c == null) {
+			throw new NullPointerException("Attempt to add from null collection");
+		}
+		if (c == this) {
+			c = Arrays.asList(toArray());
+		}
+		for (Object o : c) {
+			add(o);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds all the elements in the collection at the specified index in the
+	 * list, in order. If the collection is this list, a copy of it is added.
+	 */
+	@Override
+	public boolean addAll(int index, Collection<? extends Object> c) {
+		if (index == size) {
+			return addAll(c);
+		}
+		if (c == this) {
+			c = Arrays.asList(toArray());
+		}
+		ListIterator<Object> ix = listIterator(index);
+		for (Object o : c) {
+			ix.add(o);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the specified item from the list once, the first time it occurs.
+	 *
+	 * @return <code>true</code> if one item was removed from the list
+	 */
+	@Override
+	public boolean remove(Object o) {
+		ListIterator<Object> ix = listIterator();
+		while (ix.hasNext()) {
+			if (ix.next().equals(o)) {
+				ix.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Object remove(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("ChunkedList of size " + size + " has no index " + index);
+		}
+		ListIterator<Object> ix = listIterator(index);
+		Object entry = ix.next();
+		ix.remove();
+		return entry;
+	}
+
+	/**
+	 * Remove the elements that are (or are not) in the set, in one pass that packs
+	 * the remaining elements into as few chunks as possible.
+	 *
+	 * @param cc     the set of elements
+	 * @param retain if <code>true</code>, elements not in the set are removed;
+	 *               otherwise elements in the set are removed.
+	 * @return the number of elements removed
+	 */
+	private int filter(Set<Object> cc, boolean retain) {
+		Chunk w = first; // The chunk being written to
+		int wi = 0; // The position in w being written to
+		int n_removed = 0;
+
+		// N.B. No more elements can have been written than have been read, so the
+		// writing never overtakes the reading
+		for (Chunk r = first; r != null; r = r.next) {
+			int end = r.end;
+			for (int i = r.start; i < end; i++) {
+				Object o = r.items[i];
+				r.items[i] = null;
+				if (cc.contains(o) == retain) {
+					if (wi == CHUNK_SIZE) {
+						w.start = 0;
+						w.end = CHUNK_SIZE;
+						w = w.next;
+						wi = 0;
+					}
+					w.items[wi] = o;
+					wi++;
+				} else {
+					n_removed++;
+				}
+			}
+		}
+		if (wi == 0) {
+			first = null;
+			last = null;
+		} else {
+			w.start = 0;
+			w.end = wi;
+			w.next = null;
+			last = w;
+		}
+		size -= n_removed;
+		modCount++;
+		return n_removed;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		return removeAllCount(c) > 0;
+	}
+
+	@Override
+	public int removeAllCount(Collection<?> c) {
+		if (isEmpty()) {
+			return 0;
+		}
+		return filter(makeSet(c), false);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		return retainAllCount(c) > 0;
+	}
+
+	@Override
+	public int retainAllCount(Collection<?> c) {
+		if (isEmpty()) {
+			return 0;
+		}
+		return filter(makeSet(c), true);
+	}
+
+	/**
+	 * Empty the list. The chunks are left for the garbage collector.
+	 */
+	@Override
+	public void clear() {
+		first = null;
+		last = null;
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * Reverse the list in place by reversing the order of the chunks and the
+	 * elements in each of them
+	 */
+	@Override
+	public void reverse() {
+		for (Chunk c = first; c != null; c = c.prev) {
+			for (int i = c.start, j = c.end - 1; i < j; i++, j--) {
+				Object o = c.items[i];
+				c.items[i] = c.items[j];
+				c.items[j] = o;
+			}
+			Chunk n = c.next;
+			c.next = c.prev;
+			c.prev = n;
+		}
+		Chunk c = first;
+		first = last;
+		last = c;
+		modCount++;
+	}
+
+	/**
+	 * Add other to the end of this list and empty other. O(1) if other is a
+	 * ChunkedList, O(M) otherwise, where M is the length of other.
+	 */
+	@Override
+	public void cat(MutableSequence other) {
+		if (other instanceof ChunkedList) {
+			ChunkedList chunked = (ChunkedList) other;
+			if (chunked.first == null) {
+				return;
+			}
+			if (last == null) {
+				first = chunked.first;
+			} else {
+				last.next = chunked.first;
+				chunked.first.prev = last;
+			}
+			last = chunked.last;
+			size += chunked.size;
+			chunked.first = null;
+			chunked.last = null;
+			chunked.size = 0;
+			chunked.modCount++;
+		} else {
+			addAll(other);
+			other.clear();
+		}
+	}
+
+	/**
+	 * @return a copy of this list (Objects at elements are not copied, unless they
+	 *         are lists)
+	 */
+	@Override
+	public ChunkedList clone() {
+		ChunkedList copy = new ChunkedList();
+		for (Chunk c = first; c != null; c = c.next) {
+			for (int i = c.start; i < c.end; i++) {
+				Object item = c.items[i];
+				if (item instanceof MutableSequence) {
+					item = ((MutableSequence) item).clone();
+				} else if (item instanceof NetLogoMutableList) {
+					item = ((NetLogoMutableList) item).copy();
+				}
+				copy.add(item);
+			}
+		}
+		return copy;
+	}
+
+	@Override
+	public boolean check(boolean msg, String msgPrefix) {
+		boolean ret = true;
+		int n = 0;
+		Chunk p = null;
+		for (Chunk c = first; c != null; c = c.next) {
+			if (c.prev != p) {
+				if (msg) {
+					System.err.println(msgPrefix + ": Chunk at element " + n + " has prev not pointing to previous chunk");
+				}
+				ret = false;
+			}
+			if (c.start < 0 || c.end > CHUNK_SIZE || c.count() <= 0) {
+				if (msg) {
+					System.err.println(msgPrefix + ": Chunk at element " + n + " has range [" + c.start + ", " + c.end
+							+ "[");
+				}
+				ret = false;
+			}
+			for (int i = 0; i < CHUNK_SIZE; i++) {
+				if ((i >= c.start && i < c.end) == (c.items[i] == null)) {
+					if (msg) {
+						System.err.println(msgPrefix + ": Chunk at element " + n + " has "
+								+ (c.items[i] == null ? "null element" : "non-null unused entry") + " at " + i);
+					}
+					ret = false;
+				}
+			}
+			n += c.count();
+			p = c;
+		}
+		if (p != last) {
+			if (msg) {
+				System.err.println(msgPrefix + ": Last chunk is not the end of the chain of chunks");
+			}
+			ret = false;
+		}
+		if (n != size) {
+			if (msg) {
+				System.err.println(msgPrefix + ": Size is " + size + " but there are " + n + " elements");
+			}
+			ret = false;
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the number of chunks the elements are stored in
+	 */
+	int chunks() {
+		int n = 0;
+		for (Chunk c = first; c != null; c = c.next) {
+			n++;
+		}
+		return n;
+	}
+
+	@Override
+	public String asPrintableString(String start, String sep, String end) {
+		StringBuffer buf = new StringBuffer();
+
+		buf.append(start);
+		boolean firstItem = true;
+		for (Chunk c = first; c != null; c = c.next) {
+			for (int i = c.start; i < c.end; i++) {
+				if (!firstItem) {
+					buf.append(sep);
+				}
+				firstItem = false;
+				if (c.items[i] instanceof MutableSequence) {
+					buf.append(((MutableSequence) c.items[i]).asPrintableString(start, sep, end));
+				} else {
+					buf.append(c.items[i].toString());
+				}
+			}
+		}
+		buf.append(end);
+		return buf.toString();
+	}
+
+	/**
+	 * @return <code>true</code> if the other is a list of the same length with
+	 *         equal elements
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof MutableSequence)) {
+			return false;
+		}
+		MutableSequence otherList = (MutableSequence) other;
+		if (otherList.size() != size) {
+			return false;
+		}
+		Iterator<Object> ix = otherList.iterator();
+		for (Chunk c = first; c != null; c = c.next) {
+			for (int i = c.start; i < c.end; i++) {
+				if (!c.items[i].equals(ix.next())) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (Chunk c = first; c != null; c = c.next) {
+			for (int i = c.start; i < c.end; i++) {
+				hash = 31 * hash + c.items[i].hashCode();
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * ListIterator for ChunkedList. The cursor is between two elements; it is
+	 * located using the chunk and position in the chunk's array of the element
+	 * after the cursor. At the end of the list (or of a chunk), the position is the
+	 * chunk's <code>end</code>.
+	 *
+	 * @author gary
+	 */
+	private class ChunkedListIterator implements ListIterator<Object> {
+		private Chunk chunk; // null if the list is empty
+		private int pos;
+		private int index; // index of the element after the cursor
+		private Chunk lastChunk; // where the last element returned is; null if none
+		private int lastPos;
+		private boolean lastNext; // true if the last element was returned by next()
+		private int expectedModCount;
+
+		private ChunkedListIterator(int index) {
+			seek(index);
+		}
+
+		/**
+		 * Locate the cursor before the element at the index, starting from whichever
+		 * end of the list is nearer
+		 *
+		 * @param ix
+		 */
+		private void seek(int ix) {
+			index = ix;
+			lastChunk = null;
+			expectedModCount = modCount;
+			if (first == null) {
+				chunk = null;
+				pos = 0;
+			} else if (ix < size / 2) {
+				Chunk c = first;
+				int rem = ix;
+				while (rem >= c.count()) {
+					rem -= c.count();
+					c = c.next;
+				}
+				chunk = c;
+				pos = c.start + rem;
+			} else {
+				Chunk c = last;
+				int rem = size - ix; // Number of elements from ix to the end
+				while (rem > c.count()) {
+					rem -= c.count();
+					c = c.prev;
+				}
+				chunk = c;
+				pos = c.end - rem;
+			}
+		}
+
+		/**
+		 * Find the cursor again if the list has been changed by something else
+		 */
+		private void sync() {
+			if (expectedModCount != modCount) {
+				seek(index > size ? size : index);
+			}
+		}
+
+		/**
+		 * Note that the list has been changed by this iterator
+		 */
+		private void modified() {
+			modCount++;
+			expectedModCount = modCount;
+			lastChunk = null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			sync();
+			return index < size;
+		}
+
+		@Override
+		public boolean hasPrevious() {
+			sync();
+			return index > 0;
+		}
+
+		@Override
+		public Object next() {
+			sync();
+			if (index >= size) {
+				throw new NoSuchElementException("Reached end of ChunkedList (at [" + (index - 1) + "])");
+			}
+			if (pos == chunk.end) {
+				chunk = chunk.next;
+				pos = chunk.start;
+			}
+			lastChunk = chunk;
+			lastPos = pos;
+			lastNext = true;
+			index++;
+			pos++;
+			return lastChunk.items[lastPos];
+		}
+
+		@Override
+		public Object previous() {
+			sync();
+			if (index <= 0) {
+				throw new NoSuchElementException("Reached beginning of ChunkedList (at [" + index + "])");
+			}
+			if (pos == chunk.start) {
+				chunk = chunk.prev;
+				pos = chunk.end;
+			}
+			pos--;
+			index--;
+			lastChunk = chunk;
+			lastPos = pos;
+			lastNext = false;
+			return chunk.items[pos];
+		}
+
+		@Override
+		public int nextIndex() {
+			return index;
+		}
+
+		@Override
+		public int previousIndex() {
+			return index - 1;
+		}
+
+		/**
+		 * Insert an element before the cursor, splitting the chunk in two if it is
+		 * full
+		 */
+		@Override
+		public void add(Object o) {
+			checkNull(o, "add()");
+			sync();
+			if (chunk == null) {
+				chunk = linkAfter(null, 0);
+				pos = 0;
+			}
+			Chunk c = chunk;
+			int p = pos;
+			if (c.count() == CHUNK_SIZE) {
+				Chunk n = linkAfter(c, 0);
+				int mid = c.start + (CHUNK_SIZE / 2);
+				System.arraycopy(c.items, mid, n.items, 0, c.end - mid);
+				for (int i = mid; i < c.end; i++) {
+					c.items[i] = null;
+				}
+				n.end = c.end - mid;
+				c.end = mid;
+				if (p > mid) {
+					c = n;
+					p -= mid;
+				}
+			}
+			if (c.end < CHUNK_SIZE) {
+				System.arraycopy(c.items, p, c.items, p + 1, c.end - p);
+				c.items[p] = o;
+				c.end++;
+				pos = p + 1;
+			} else {
+				System.arraycopy(c.items, c.start, c.items, c.start - 1, p - c.start);
+				c.start--;
+				c.items[p - 1] = o;
+				pos = p;
+			}
+			chunk = c;
+			index++;
+			size++;
+			modified();
+		}
+
+		/**
+		 * Remove the element last returned by next() or previous(), moving whichever
+		 * side of it in its chunk has fewer elements, and merging the chunk with a
+		 * neighbour if it is nearly empty
+		 */
+		@Override
+		public void remove() {
+			sync();
+			if (lastChunk == null) {
+				throw new IllegalStateException(
+						"Cannot remove() unless next() or previous() has been called since the last add() or remove()");
+			}
+			Chunk c = lastChunk;
+			int p = lastPos;
+			if (p - c.start < c.end - 1 - p) {
+				System.arraycopy(c.items, c.start, c.items, c.start + 1, p - c.start);
+				c.items[c.start] = null;
+				c.start++;
+				pos = p + 1;
+			} else {
+				System.arraycopy(c.items, p + 1, c.items, p, c.end - 1 - p);
+				c.end--;
+				c.items[c.end] = null;
+				pos = p;
+			}
+			chunk = c;
+			if (lastNext) {
+				index--;
+			}
+			size--;
+
+			if (c.count() == 0) {
+				Chunk n = c.next;
+				Chunk pc = c.prev;
+				unlink(c);
+				if (n != null) {
+					chunk = n;
+					pos = n.start;
+				} else if (pc != null) {
+					chunk = pc;
+					pos = pc.end;
+				} else {
+					chunk = null;
+					pos = 0;
+				}
+			} else if (c.count() < CHUNK_SIZE / 4) {
+				if (c.next != null && c.count() + c.next.count() <= CHUNK_SIZE / 2) {
+					merge(c, c.next);
+				} else if (c.prev != null && c.prev.count() + c.count() <= CHUNK_SIZE / 2) {
+					merge(c.prev, c);
+				}
+			}
+			modified();
+		}
+
+		/**
+		 * Move all the elements of b into a, which is the chunk before it, keeping the
+		 * cursor in the same place
+		 *
+		 * @param a
+		 * @param b
+		 */
+		private void merge(Chunk a, Chunk b) {
+			int shift = 0;
+			if (a.end + b.count() > CHUNK_SIZE) {
+				shift = a.start;
+				System.arraycopy(a.items, a.start, a.items, 0, a.count());
+				for (int i = a.count(); i < a.end; i++) {
+					a.items[i] = null;
+				}
+				a.end -= shift;
+				a.start = 0;
+			}
+			int aEnd = a.end;
+			System.arraycopy(b.items, b.start, a.items, aEnd, b.count());
+			a.end += b.count();
+			if (chunk == a) {
+				pos -= shift;
+			} else if (chunk == b) {
+				pos = aEnd + (pos - b.start);
+				chunk = a;
+			}
+			unlink(b);
+		}
+
+		@Override
+		public void set(Object o) {
+			checkNull(o, "set()");
+			sync();
+			if (lastChunk == null) {
+				throw new IllegalStateException(
+						"Cannot set() unless next() or previous() has been called since the last add() or remove()");
+			}
+			lastChunk.items[lastPos] = o;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Stack;
+
+/**
+ * Iterator through a list that iterates (non-recursively) through any elements
+ * of the list that are themselves lists, rather than returning them. Works with
+ * any {@link MutableSequence}, so lists using different storage can be nested
+ * in each other. Empty nested lists are skipped.
+ *
+ * @author gary
+ */
+class DepthFirstIterator implements Iterator<Object> {
+	private Iterator<Object> ix;
+	private final Stack<Iterator<Object>> backtrack;
+	private Object next; // null if the next element has not been found yet
+
+	DepthFirstIterator(Iterable<Object> list) {
+		ix = list.iterator();
+		backtrack = new Stack<Iterator<Object>>();
+		next = null;
+	}
+
+	/**
+	 * Find the next non-list element, if there is one and it hasn't already been
+	 * found
+	 *
+	 * @return <code>true</code> if there is a next element
+	 */
+	private boolean advance() {
+		while (next == null) {
+			if (ix.hasNext()) {
+				Object obj = ix.next();
+				if (obj instanceof MutableSequence) {
+					backtrack.push(ix);
+					ix = ((MutableSequence) obj).iterator();
+				} else if (obj instanceof NetLogoMutableList) {
+					backtrack.push(ix);
+					ix = ((NetLogoMutableList) obj).iterator();
+				} else {
+					next = obj;
+				}
+			} else if (backtrack.isEmpty()) {
+				return false;
+			} else {
+				ix = backtrack.pop();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return advance();
+	}
+
+	@Override
+	public Object next() {
+		if (!advance()) {
+			throw new NoSuchElementException("Reached end of depth-first search of list");
+		}
+		Object obj = next;
+		next = null;
+		return obj;
+	}
+
+}
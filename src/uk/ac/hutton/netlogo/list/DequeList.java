@@ -0,0 +1,675 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import java.lang.reflect.Array;
+
+/**
+ * A list stored in a growable circular array, for lists used as queues or
+ * stacks. Adding and removing at either end of the list is O(1) (amortized, as
+ * the array doubles in size when it is full), as are {@link #size()} and
+ * {@link #get(int)}; there are no objects for each element, and the elements
+ * are next to each other in memory.
+ *
+ * Inserting or deleting with a ListIterator is O(N), as the elements on the
+ * shorter side of the cursor have to be moved, so this isn't a good choice for
+ * lists that are edited with cursors.
+ *
+ * @author gary
+ */
+public class DequeList implements MutableSequence {
+	private static final int INITIAL_CAPACITY = 16;
+	private Object[] data;
+	private int head; // index in data of the first element
+	private int size;
+
+	/**
+	 * Constructor returning an empty list
+	 */
+	public DequeList() {
+		data = new Object[INITIAL_CAPACITY];
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Convenience constructor allowing a list to be initialized with a collection
+	 *
+	 * @param c the collection
+	 */
+	public DequeList(Collection<? extends Object> c) {
+		this();
+		addAll(c);
+	}
+
+	/**
+	 * @param o      an object to be added to the list
+	 * @param method the method it is being added by
+	 * @throws NullPointerException if the object is <code>null</code>
+	 */
+	private static void checkNull(Object o, String method) {
+		if (o == null) {
+			throw new NullPointerException("Cannot " + method + " a null to a DequeList");
+		}
+	}
+
+	/**
+	 * @param index an index in the list
+	 * @return the corresponding index in the array
+	 */
+	private int slot(int index) {
+		int j = head + index;
+		return j >= data.length ? j - data.length : j;
+	}
+
+	/**
+	 * Make sure there is room in the array for another element
+	 */
+	private void grow() {
+		if (size == data.length) {
+			data = toArray(new Object[data.length * 2]);
+			head = 0;
+		}
+	}
+
+	/**
+	 * Insert an object at the index, moving whichever side of the list is shorter
+	 *
+	 * @param index
+	 * @param o
+	 */
+	private void insertAt(int index, Object o) {
+		grow();
+		if (index < size / 2) {
+			head = (head == 0) ? data.length - 1 : head - 1;
+			for (int i = 0; i < index; i++) {
+				data[slot(i)] = data[slot(i + 1)];
+			}
+		} else {
+			for (int i = size; i > index; i--) {
+				data[slot(i)] = data[slot(i - 1)];
+			}
+		}
+		data[slot(index)] = o;
+		size++;
+	}
+
+	/**
+	 * Remove the object at the index, moving whichever side of the list is
+	 * shorter
+	 *
+	 * @param index
+	 * @return the object removed
+	 */
+	private Object removeAt(int index) {
+		Object o = data[slot(index)];
+		if (index < size / 2) {
+			for (int i = index; i > 0; i--) {
+				data[slot(i)] = data[slot(i - 1)];
+			}
+			data[head] = null;
+			head = slot(1);
+		} else {
+			for (int i = index; i < size - 1; i++) {
+				data[slot(i)] = data[slot(i + 1)];
+			}
+			data[slot(size - 1)] = null;
+		}
+		size--;
+		return o;
+	}
+
+	/**
+	 * O(1)
+	 *
+	 * @return the size of the list
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * O(1)
+	 */
+	@Override
+	public Object get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("DequeList of size " + size + " has no index " + index);
+		}
+		return data[slot(index)];
+	}
+
+	/**
+	 * O(1)
+	 */
+	@Override
+	public Object set(int index, Object element) {
+		checkNull(element, "set()");
+		Object old = get(index);
+		data[slot(index)] = element;
+		return old;
+	}
+
+	/**
+	 * As with {@link MutableList#subList(int, int)}, this is not supported.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public List<Object> subList(int fromIndex, int toIndex) {
+		throw new UnsupportedOperationException("DequeList does not support subList()");
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return indexOf(o) >= 0;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		if (o == null) {
+			return -1;
+		}
+		for (int i = 0; i < size; i++) {
+			if (o.equals(data[slot(i)])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		if (o == null) {
+			return -1;
+		}
+		for (int i = size - 1; i >= 0; i--) {
+			if (o.equals(data[slot(i)])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		Set<Object> cc = new HashSet<Object>(c);
+		for (int i = 0; i < size && !cc.isEmpty(); i++) {
+			cc.remove(data[slot(i)]);
+		}
+		return cc.isEmpty();
+	}
+
+	@Override
+	public boolean containsAny(Collection<?> objs) {
+		Set<Object> cc = new HashSet<Object>(objs);
+		for (int i = 0; i < size; i++) {
+			if (cc.contains(data[slot(i)])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean containsDeeply(Object obj) {
+		if (obj == null) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			Object item = data[slot(i)];
+			if (item instanceof MutableSequence) {
+				if (((MutableSequence) item).containsDeeply(obj)) {
+					return true;
+				}
+			} else if (item instanceof NetLogoMutableList) {
+				if (((NetLogoMutableList) item).deepMember(obj)) {
+					return true;
+				}
+			} else if (item.equals(obj)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		return new DequeListIterator(0);
+	}
+
+	@Override
+	public ListIterator<Object> listIterator() {
+		return new DequeListIterator(0);
+	}
+
+	@Override
+	public ListIterator<Object> listIterator(int index) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("DequeList of size " + size + " has no element " + index);
+		}
+		return new DequeListIterator(index);
+	}
+
+	@Override
+	public Iterator<Object> depthFirstIterator() {
+		return new DepthFirstIterator(this);
+	}
+
+	@Override
+	public Object[] toArray() {
+		return toArray(new Object[size]);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T[] toArray(T[] a) {
+		T[] array = a.length >= size ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+		int n = data.length - head;
+		System.arraycopy(data, head, array, 0, n < size ? n : size);
+		if (n < size) {
+			System.arraycopy(data, 0, array, n, size - n);
+		}
+		for (int i = size; i < array.length; i++) {
+			array[i] = null;
+		}
+		return array;
+	}
+
+	/**
+	 * Add an object to the end of the list. O(1) (amortized).
+	 */
+	@Override
+	public boolean add(Object o) {
+		checkNull(o, "add()");
+		grow();
+		data[slot(size)] = o;
+		size++;
+		return true;
+	}
+
+	@Override
+	public void push(Object o) {
+		add(o);
+	}
+
+	@Override
+	public int pushAll(Iterator<? extends Object> ix) {
+		int n = 0;
+		while (ix.hasNext()) {
+			add(ix.next());
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Add an object to the front of the list. O(1) (amortized).
+	 */
+	@Override
+	public void unshift(Object o) {
+		checkNull(o, "unshift()");
+		grow();
+		head = (head == 0) ? data.length - 1 : head - 1;
+		data[head] = o;
+		size++;
+	}
+
+	@Override
+	public Object shift() {
+		if (size == 0) {
+			throw new NoSuchElementException("Cannot shift from empty DequeList");
+		}
+		Object o = data[head];
+		data[head] = null;
+		head = slot(1);
+		size--;
+		return o;
+	}
+
+	@Override
+	public Object pop() {
+		if (size == 0) {
+			throw new NoSuchElementException("Cannot pop from empty DequeList");
+		}
+		size--;
+		int last = slot(size);
+		Object o = data[last];
+		data[last] = null;
+		return o;
+	}
+
+	@Override
+	public void add(int index, Object element) {
+		checkNull(element, "add()");
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("DequeList of size " + size + " has no index " + index);
+		}
+		insertAt(index, element);
+	}
+
+	/**
+	 * Adds all the elements in the collection to the end of the list in order. If
+	 * the collection is this list, a copy of it is added, rather than everything
+	 * added so far, forever.
+	 */
+	@Override
+	public boolean addAll(Collection<? extends Object> c) {
+		if (c == null) {
+			throw new NullPointerException("Attempt to add from null collection");
+		}
+		if (c == this) {
+			c = Arrays.asList(toArray());
+		}
+		for (Object o : c) {
+			add(o);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds all the elements in the collection at the specified index in the
+	 * list, in order. If the collection is this list, a copy of it is added.
+	 */
+	@Override
+	public boolean addAll(int index, Collection<? extends Object> c) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("DequeList of size " + size + " has no index " + index);
+		}
+		if (c == this) {
+			c = Arrays.asList(toArray());
+		}
+		for (Object o : c) {
+			add(index, o);
+			index++;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		int ix = indexOf(o);
+		if (ix >= 0) {
+			removeAt(ix);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Object remove(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("DequeList of size " + size + " has no index " + index);
+		}
+		return removeAt(index);
+	}
+
+	/**
+	 * Remove the elements that are (or are not) in the set in one pass
+	 *
+	 * @param objs   a set of objects
+	 * @param retain if <code>true</code>, elements not in the set are removed;
+	 *               otherwise elements in the set are removed
+	 * @return the number of elements removed
+	 */
+	private int filter(Set<?> objs, boolean retain) {
+		int w = 0;
+		for (int r = 0; r < size; r++) {
+			Object o = data[slot(r)];
+			if (objs.contains(o) == retain) {
+				data[slot(w)] = o;
+				w++;
+			}
+		}
+		for (int i = w; i < size; i++) {
+			data[slot(i)] = null;
+		}
+		int n_removed = size - w;
+		size = w;
+		return n_removed;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		return removeAllCount(c) > 0;
+	}
+
+	@Override
+	public int removeAllCount(Collection<?> c) {
+		return filter(new HashSet<Object>(c), false);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		return retainAllCount(c) > 0;
+	}
+
+	@Override
+	public int retainAllCount(Collection<?> c) {
+		return filter(new HashSet<Object>(c), true);
+	}
+
+	/**
+	 * Empty the list, keeping the array for reuse
+	 */
+	@Override
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			data[slot(i)] = null;
+		}
+		head = 0;
+		size = 0;
+	}
+
+	@Override
+	public void reverse() {
+		for (int i = 0, j = size - 1; i < j; i++, j--) {
+			int si = slot(i);
+			int sj = slot(j);
+			Object o = data[si];
+			data[si] = data[sj];
+			data[sj] = o;
+		}
+	}
+
+	@Override
+	public void cat(MutableSequence other) {
+		addAll(other);
+		other.clear();
+	}
+
+	/**
+	 * @return a copy of this list (Objects at elements are not copied, unless they
+	 *         are lists)
+	 */
+	@Override
+	public DequeList clone() {
+		DequeList copy = new DequeList();
+		copy.data = toArray(new Object[Math.max(size, INITIAL_CAPACITY)]);
+		copy.size = size;
+		for (int i = 0; i < size; i++) {
+			Object item = copy.data[i];
+			if (item instanceof MutableSequence) {
+				copy.data[i] = ((MutableSequence) item).clone();
+			} else if (item instanceof NetLogoMutableList) {
+				copy.data[i] = ((NetLogoMutableList) item).copy();
+			}
+		}
+		return copy;
+	}
+
+	@Override
+	public boolean check(boolean msg, String msgPrefix) {
+		if (size < 0 || size > data.length || head < 0 || head >= data.length) {
+			if (msg) {
+				System.err.println(msgPrefix + ": DequeList has size " + size + " and head " + head
+						+ " with capacity " + data.length);
+			}
+			return false;
+		}
+		for (int i = 0; i < data.length; i++) {
+			int index = (i >= head) ? (i - head) : (i + data.length - head);
+			if ((data[i] == null) != (index >= size)) {
+				if (msg) {
+					System.err.println(msgPrefix + ": DequeList has " + (data[i] == null ? "null" : "something")
+							+ " in slot " + i + " (index " + index + ") with size " + size + " and head " + head);
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String asPrintableString(String start, String sep, String end) {
+		StringBuffer buf = new StringBuffer();
+
+		buf.append(start);
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				buf.append(sep);
+			}
+			Object item = data[slot(i)];
+			if (item instanceof MutableSequence) {
+				buf.append(((MutableSequence) item).asPrintableString(start, sep, end));
+			} else {
+				buf.append(item.toString());
+			}
+		}
+		buf.append(end);
+		return buf.toString();
+	}
+
+	/**
+	 * @return <code>true</code> if the other is a list of the same length with
+	 *         equal elements
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof MutableSequence)) {
+			return false;
+		}
+		MutableSequence otherList = (MutableSequence) other;
+		if (otherList.size() != size) {
+			return false;
+		}
+		Iterator<Object> ix = otherList.iterator();
+		for (int i = 0; i < size; i++) {
+			if (!data[slot(i)].equals(ix.next())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++) {
+			hash = 31 * hash + data[slot(i)].hashCode();
+		}
+		return hash;
+	}
+
+	/**
+	 * ListIterator for DequeList
+	 *
+	 * @author gary
+	 */
+	private class DequeListIterator implements ListIterator<Object> {
+		private int cursor; // index of the element after the cursor
+		private int lastRet; // index of the element last returned; -1 if none
+
+		private DequeListIterator(int index) {
+			cursor = index;
+			lastRet = -1;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return cursor < size;
+		}
+
+		@Override
+		public boolean hasPrevious() {
+			return cursor > 0;
+		}
+
+		@Override
+		public Object next() {
+			if (cursor >= size) {
+				throw new NoSuchElementException("Reached end of DequeList (at [" + (cursor - 1) + "])");
+			}
+			lastRet = cursor;
+			cursor++;
+			return data[slot(lastRet)];
+		}
+
+		@Override
+		public Object previous() {
+			if (cursor <= 0) {
+				throw new NoSuchElementException("Reached beginning of DequeList (at [" + cursor + "])");
+			}
+			cursor--;
+			lastRet = cursor;
+			return data[slot(lastRet)];
+		}
+
+		@Override
+		public int nextIndex() {
+			return cursor;
+		}
+
+		@Override
+		public int previousIndex() {
+			return cursor - 1;
+		}
+
+		@Override
+		public void remove() {
+			if (lastRet < 0 || lastRet >= size) {
+				throw new IllegalStateException(
+						"Cannot remove() unless next() or previous() has been called since the last add() or remove()");
+			}
+			removeAt(lastRet);
+			if (lastRet < cursor) {
+				cursor--;
+			}
+			lastRet = -1;
+		}
+
+		@Override
+		public void set(Object o) {
+			checkNull(o, "set()");
+			if (lastRet < 0 || lastRet >= size) {
+				throw new IllegalStateException(
+						"Cannot set() unless next() or previous() has been called since the last add() or remove()");
+			}
+			data[slot(lastRet)] = o;
+		}
+
+		@Override
+		public void add(Object o) {
+			checkNull(o, "add()");
+			insertAt(cursor > size ? size : cursor, o);
+			cursor++;
+			lastRet = -1;
+		}
+	}
+}
@@ -3,10 +3,15 @@
  */
 package uk.ac.hutton.netlogo.list;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nlogo.api.AnonymousReporter;
 import org.nlogo.api.Argument;
 import org.nlogo.api.Command;
 import org.nlogo.api.Context;
 import org.nlogo.api.ExtensionException;
+import org.nlogo.core.LogoList;
 import org.nlogo.core.Syntax;
 import org.nlogo.core.SyntaxJ;
 
@@ -17,7 +22,7 @@ import org.nlogo.core.SyntaxJ;
  */
 public class IndexCommand implements Command {
 	public enum Name {
-		INSERT, DELETE, OVERWRITE
+		INSERT, INSERT_ALL, DELETE, DELETE_N, OVERWRITE, OVERWRITE_RANGE, SEEK, SEEK_END, SKIP, SKIP_WHILE, SPLICE
 	};
 
 	private final Name cmd;
@@ -38,10 +43,26 @@ public class IndexCommand implements Command {
 		switch (cmd) {
 		case DELETE:
 			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType() });
+		case DELETE_N:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.NumberType() });
 		case INSERT:
 			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.WildcardType() });
+		case INSERT_ALL:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.WildcardType() });
 		case OVERWRITE:
 			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.WildcardType() });
+		case OVERWRITE_RANGE:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.WildcardType() });
+		case SEEK:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.NumberType() });
+		case SEEK_END:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType() });
+		case SKIP:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.NumberType() });
+		case SKIP_WHILE:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.ReporterType() });
+		case SPLICE:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.WildcardType() });
 		default:
 			throw new RuntimeException("PANIC!");
 		}
@@ -59,12 +80,26 @@ public class IndexCommand implements Command {
 			try {
 				ix.remove();
 			} catch (IllegalStateException e) {
-				throw new ExtensionException(
-						"You can only use delete once between calls to left and right, and not on an empty list");
+				throw new ExtensionException("You can only use delete once between calls to left and right, and not on "
+						+ "an empty list or after moving the cursor with seek, skip or split-at");
 			}
 			break;
+		case DELETE_N:
+			ix.removeNext(args[1].getIntValue());
+			break;
 		case INSERT:
-			ix.add(args[1].get());
+			try {
+				ix.add(args[1].get());
+			} catch (IllegalArgumentException e) {
+				throw new ExtensionException(e.getMessage());
+			}
+			break;
+		case INSERT_ALL:
+			try {
+				ix.addAll(getItems(ix, args[1].get(), "insert-all").iterator());
+			} catch (IllegalArgumentException e) {
+				throw new ExtensionException(e.getMessage());
+			}
 			break;
 		case OVERWRITE:
 			try {
@@ -72,7 +107,36 @@ public class IndexCommand implements Command {
 			} catch (IllegalStateException e) {
 				throw new ExtensionException(
 						"You can only use overwrite if you've already called left and right, and not if you've "
-								+ "already used insert or delete");
+								+ "already used insert, splice or delete, or moved the cursor with seek, skip or split-at");
+			} catch (IllegalArgumentException e) {
+				throw new ExtensionException(e.getMessage());
+			}
+			break;
+		case OVERWRITE_RANGE:
+			try {
+				List<Object> items = getItems(ix, args[1].get(), "overwrite-range");
+				ix.setNext(items.iterator(), items.size());
+			} catch (IllegalArgumentException e) {
+				throw new ExtensionException(e.getMessage());
+			}
+			break;
+		case SEEK:
+			ix.seek(args[1].getIntValue());
+			break;
+		case SEEK_END:
+			ix.seekEnd();
+			break;
+		case SKIP:
+			ix.skip(args[1].getIntValue());
+			break;
+		case SKIP_WHILE:
+			skipWhile(ix, args[1].getReporter(), context);
+			break;
+		case SPLICE:
+			try {
+				ix.splice(NetLogoMutableList.asNetLogoMutableList(args[1]));
+			} catch (IllegalArgumentException e) {
+				throw new ExtensionException(e.getMessage());
 			}
 			break;
 		default:
@@ -80,4 +144,56 @@ public class IndexCommand implements Command {
 		}
 	}
 
+	/**
+	 * Get the items to insert or overwrite with from a list or mutable list. If
+	 * the mutable list is the cursor's own list, a copy is made so it isn't
+	 * changed while the items are being read from it.
+	 * 
+	 * @param ix      the cursor
+	 * @param obj     the argument with the items in
+	 * @param command the command, for the error message
+	 * @return the items
+	 * @throws ExtensionException if the argument isn't a list or mutable list
+	 */
+	private List<Object> getItems(NetLogoMutableListIndex ix, Object obj, String command)
+			throws ExtensionException {
+		if (obj instanceof LogoList) {
+			return ((LogoList) obj).toJava();
+		} else if (obj instanceof NetLogoMutableList) {
+			NetLogoMutableList other = (NetLogoMutableList) obj;
+			return other == ix.getList() ? new ArrayList<Object>(other.getList()) : other.getList();
+		} else {
+			throw new ExtensionException("Cannot " + command + " a " + obj.getClass().getSimpleName() + "(value \""
+					+ obj.toString() + "\" -- I need a list or a mutable list");
+		}
+	}
+
+	/**
+	 * Move the cursor right until the element to its right is one for which the
+	 * reporter is false, leaving it as if it had been moved left over that
+	 * element (so delete and overwrite apply to it). If the reporter is true for
+	 * everything, the cursor is left at the end of the list as if by seek.
+	 * 
+	 * @param ix      the cursor
+	 * @param test    the reporter
+	 * @param context
+	 * @throws ExtensionException if the reporter doesn't report a boolean
+	 */
+	private void skipWhile(NetLogoMutableListIndex ix, AnonymousReporter test, Context context)
+			throws ExtensionException {
+		while (ix.hasNext()) {
+			Object obj = ix.next();
+			Object result = test.report(context, new Object[] { obj });
+			if (!(result instanceof Boolean)) {
+				throw new ExtensionException("Reporter \"" + test + "\" gives \"" + result + "\" for \"" + obj
+						+ "\" -- I need true or false");
+			}
+			if (!((Boolean) result).booleanValue()) {
+				ix.previous();
+				return;
+			}
+		}
+		ix.seekEnd();
+	}
+
 }
@@ -21,7 +21,7 @@ import org.nlogo.core.SyntaxJ;
  */
 public class IndexReporter implements Reporter {
 	public enum Name {
-		HASLEFT, HASRIGHT, IS_INDEX, LEFT, RIGHT
+		HASLEFT, HASRIGHT, IS_INDEX, LEFT, RIGHT, SPLIT_AT
 	};
 
 	private final Name cmd;
@@ -51,6 +51,8 @@ public class IndexReporter implements Reporter {
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.WildcardType());
 		case RIGHT:
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.WildcardType());
+		case SPLIT_AT:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.WildcardType());
 		default:
 			throw new RuntimeException("PANIC!");
 		}
@@ -82,6 +84,8 @@ public class IndexReporter implements Reporter {
 				} catch (NoSuchElementException e) {
 					throw new ExtensionException("Cursor has reached the end of the list");
 				}
+			case SPLIT_AT:
+				return ix.split();
 			default:
 				throw new RuntimeException("PANIC!");
 			}
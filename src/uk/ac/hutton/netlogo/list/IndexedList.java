@@ -0,0 +1,626 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link MutableList} with a hash table alongside it counting the number of
+ * times each element occurs. This makes checking whether something is a member
+ * of the list O(1) rather than O(N), at the cost of keeping the table up to date
+ * whenever the list is changed (which is O(1) per element added or removed), and
+ * the memory the table takes up.
+ *
+ * Removing something that isn't in the list, and finding out how many times
+ * each element occurs, are also quick. Removing or finding the index of
+ * something that <em>is</em> in the list is still O(N): it has to look through
+ * the list to find the first (or last) occurrence, though it stops when it
+ * does. The table only counts occurrences rather than recording which elements
+ * they are, as the first of several equal elements can't be kept track of
+ * cheaply when elements are added anywhere in the list.
+ *
+ * Since the table uses the elements' <code>hashCode()</code> and
+ * <code>equals()</code> methods, the elements shouldn't be changed in ways that
+ * affect them while they are in the list. NetLogo's numbers, strings, lists and
+ * agents are fine; mutable lists are compared by identity, so they are too.
+ *
+ * @author gary
+ */
+public class IndexedList implements MutableSequence {
+	private final MutableList list;
+	private final Map<Object, Integer> counts;
+	private int size; // the sum of the counts
+
+	/**
+	 * Constructor returning an empty list
+	 */
+	public IndexedList() {
+		list = new MutableList();
+		counts = new HashMap<Object, Integer>();
+		size = 0;
+	}
+
+	/**
+	 * Convenience constructor allowing a list to be initialized with a collection
+	 *
+	 * @param c the collection
+	 */
+	public IndexedList(Collection<? extends Object> c) {
+		this();
+		addAll(c);
+	}
+
+	/**
+	 * Constructor indexing an existing list
+	 *
+	 * @param list
+	 */
+	private IndexedList(MutableList list) {
+		this.list = list;
+		counts = new HashMap<Object, Integer>();
+		size = 0;
+		for (Object o : list) {
+			inc(o);
+		}
+	}
+
+	/**
+	 * Record another occurrence of an object
+	 *
+	 * @param o
+	 */
+	private void inc(Object o) {
+		Integer n = counts.get(o);
+		counts.put(o, (n == null) ? 1 : (n + 1));
+		size++;
+	}
+
+	/**
+	 * Record one fewer occurrence of an object
+	 *
+	 * @param o
+	 */
+	private void dec(Object o) {
+		Integer n = counts.get(o);
+		if (n == null) {
+			throw new RuntimeException("BUG! IndexedList has lost count of \"" + o + "\"");
+		} else if (n == 1) {
+			counts.remove(o);
+		} else {
+			counts.put(o, n - 1);
+		}
+		size--;
+	}
+
+	/**
+	 * O(1)
+	 *
+	 * @param o
+	 * @return the number of times o appears in the list
+	 */
+	public int count(Object o) {
+		Integer n = counts.get(o);
+		return (n == null) ? 0 : n;
+	}
+
+	/**
+	 * @return the number of times each element appears in the list (not to be
+	 *         modified)
+	 */
+	public Map<Object, Integer> getCounts() {
+		return Collections.unmodifiableMap(counts);
+	}
+
+	/**
+	 * O(1)
+	 *
+	 * @return <code>true</code> if no element appears in the list more than once
+	 */
+	public boolean isUnique() {
+		return counts.size() == size;
+	}
+
+	/**
+	 * O(1), unlike {@link MutableList#size()}
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return list.isEmpty();
+	}
+
+	/**
+	 * O(1)
+	 */
+	@Override
+	public boolean contains(Object o) {
+		return counts.containsKey(o);
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		for (Object o : c) {
+			if (!counts.containsKey(o)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsAny(Collection<?> objs) {
+		for (Object o : objs) {
+			if (counts.containsKey(o)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean containsDeeply(Object obj) {
+		return counts.containsKey(obj) || list.containsDeeply(obj);
+	}
+
+	@Override
+	public Object get(int index) {
+		return list.get(index);
+	}
+
+	@Override
+	public Object set(int index, Object element) {
+		Object old = list.set(index, element);
+		dec(old);
+		inc(element);
+		return old;
+	}
+
+	/**
+	 * O(1) if o isn't in the list, otherwise O(N)
+	 */
+	@Override
+	public int indexOf(Object o) {
+		return counts.containsKey(o) ? list.indexOf(o) : -1;
+	}
+
+	/**
+	 * O(1) if o isn't in the list, otherwise O(N)
+	 */
+	@Override
+	public int lastIndexOf(Object o) {
+		return counts.containsKey(o) ? list.lastIndexOf(o) : -1;
+	}
+
+	@Override
+	public List<Object> subList(int fromIndex, int toIndex) {
+		throw new UnsupportedOperationException("IndexedList does not support subList()");
+	}
+
+	@Override
+	public Object[] toArray() {
+		return list.toArray();
+	}
+
+	@Override
+	public <T> T[] toArray(T[] a) {
+		return list.toArray(a);
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		return new IndexedListIterator(list.listIterator());
+	}
+
+	@Override
+	public ListIterator<Object> listIterator() {
+		return new IndexedListIterator(list.listIterator());
+	}
+
+	@Override
+	public ListIterator<Object> listIterator(int index) {
+		return new IndexedListIterator(list.listIterator(index));
+	}
+
+	@Override
+	public Iterator<Object> depthFirstIterator() {
+		return list.depthFirstIterator();
+	}
+
+	@Override
+	public boolean add(Object o) {
+		list.add(o);
+		inc(o);
+		return true;
+	}
+
+	@Override
+	public void push(Object o) {
+		add(o);
+	}
+
+	@Override
+	public int pushAll(Iterator<? extends Object> ix) {
+		int n = 0;
+		while (ix.hasNext()) {
+			add(ix.next());
+			n++;
+		}
+		return n;
+	}
+
+	@Override
+	public void unshift(Object o) {
+		list.unshift(o);
+		inc(o);
+	}
+
+	@Override
+	public Object shift() {
+		Object o = list.shift();
+		dec(o);
+		return o;
+	}
+
+	@Override
+	public Object pop() {
+		Object o = list.pop();
+		dec(o);
+		return o;
+	}
+
+	@Override
+	public void add(int index, Object element) {
+		list.add(index, element);
+		inc(element);
+	}
+
+	/**
+	 * If c is this list, a copy of it is added, and counted
+	 */
+	@Override
+	public boolean addAll(Collection<? extends Object> c) {
+		if (c == this) {
+			c = Arrays.asList(list.toArray());
+		}
+		list.addAll(c);
+		for (Object o : c) {
+			inc(o);
+		}
+		return true;
+	}
+
+	/**
+	 * If c is this list, a copy of it is added, and counted
+	 */
+	@Override
+	public boolean addAll(int index, Collection<? extends Object> c) {
+		if (c == this) {
+			c = Arrays.asList(list.toArray());
+		}
+		list.addAll(index, c);
+		for (Object o : c) {
+			inc(o);
+		}
+		return true;
+	}
+
+	/**
+	 * O(1) if o isn't in the list, otherwise O(N)
+	 */
+	@Override
+	public boolean remove(Object o) {
+		if (counts.containsKey(o) && list.remove(o)) {
+			dec(o);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Object remove(int index) {
+		Object o = list.remove(index);
+		dec(o);
+		return o;
+	}
+
+	/**
+	 * O(M) (the size of c) if none of c is in the list
+	 */
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		return removeAllCount(c) > 0;
+	}
+
+	/**
+	 * The counts say how many items will be removed, so the underlying list
+	 * doesn't need to.
+	 */
+	@Override
+	public int removeAllCount(Collection<?> c) {
+		Set<Object> present = new HashSet<Object>();
+		for (Object o : c) {
+			if (counts.containsKey(o)) {
+				present.add(o);
+			}
+		}
+		if (present.isEmpty()) {
+			return 0;
+		}
+		list.removeAll(present);
+		int n_removed = 0;
+		for (Object o : present) {
+			n_removed += counts.remove(o);
+		}
+		size -= n_removed;
+		return n_removed;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		return retainAllCount(c) > 0;
+	}
+
+	@Override
+	public int retainAllCount(Collection<?> c) {
+		Set<Object> keep = new HashSet<Object>(c);
+		if (keep.containsAll(counts.keySet())) {
+			return 0;
+		}
+		list.retainAll(keep);
+		int n_removed = 0;
+		for (Iterator<Map.Entry<Object, Integer>> ix = counts.entrySet().iterator(); ix.hasNext();) {
+			Map.Entry<Object, Integer> entry = ix.next();
+			if (!keep.contains(entry.getKey())) {
+				n_removed += entry.getValue();
+				ix.remove();
+			}
+		}
+		size -= n_removed;
+		return n_removed;
+	}
+
+	@Override
+	public void clear() {
+		list.clear();
+		counts.clear();
+		size = 0;
+	}
+
+	@Override
+	public void reverse() {
+		list.reverse();
+	}
+
+	/**
+	 * Sort the list using {@link MutableList#sort(Comparator)}. This doesn't
+	 * change the counts.
+	 */
+	@Override
+	public void sort(Comparator<? super Object> c) {
+		list.sort(c);
+	}
+
+	/**
+	 * O(M) (the size of the other list), as the other list's elements need to be
+	 * counted
+	 */
+	@Override
+	public void cat(MutableSequence other) {
+		if (other instanceof IndexedList) {
+			IndexedList otherList = (IndexedList) other;
+			for (Map.Entry<Object, Integer> entry : otherList.counts.entrySet()) {
+				Integer n = counts.get(entry.getKey());
+				counts.put(entry.getKey(), (n == null) ? entry.getValue() : (n + entry.getValue()));
+			}
+			size += otherList.size;
+			list.cat(otherList.list);
+			otherList.counts.clear();
+			otherList.size = 0;
+		} else {
+			for (Object o : other) {
+				inc(o);
+			}
+			list.cat(other);
+		}
+	}
+
+	/**
+	 * @return a new, empty index of positions in the linked list underneath (see
+	 *         {@link MutableList#checkpoints()}), which must be told about every
+	 *         change to this list
+	 */
+	MutableList.Checkpoints checkpoints() {
+		return list.checkpoints();
+	}
+
+	/**
+	 * @param ix an iterator over the linked list underneath, such as one from
+	 *           {@link #checkpoints()}
+	 * @return an iterator over this list starting at the same place, keeping the
+	 *         counts up to date when the list is edited using it
+	 */
+	ListIterator<Object> listIterator(ListIterator<Object> ix) {
+		return new IndexedListIterator(ix);
+	}
+
+	/**
+	 * Stop the linked list underneath recycling elements removed from it (see
+	 * {@link MutableList#pin()})
+	 */
+	void pin() {
+		list.pin();
+	}
+
+	/**
+	 * Cut the list in two at an iterator's position using
+	 * {@link MutableList#split(ListIterator)}, so that the elements after it are
+	 * relinked into the new list rather than removed from this one (which would
+	 * clear any mutable lists among them). O(k) in the number of elements moved,
+	 * as they have to be counted.
+	 *
+	 * @param ix an iterator over this list
+	 * @return a new list containing the elements that were after the iterator
+	 */
+	IndexedList split(ListIterator<Object> ix) {
+		if (!(ix instanceof IndexedListIterator) || ((IndexedListIterator) ix).front() != this) {
+			throw new RuntimeException("BUG! (Iterator is not over this IndexedList)");
+		}
+		IndexedList rest = new IndexedList(list.split(((IndexedListIterator) ix).ix));
+		for (Object o : rest.list) {
+			dec(o);
+		}
+		return rest;
+	}
+
+	@Override
+	public IndexedList clone() {
+		return new IndexedList(list.clone());
+	}
+
+	/**
+	 * Check the list, and that the counts are right
+	 */
+	@Override
+	public boolean check(boolean msg, String msgPrefix) {
+		if (!list.check(msg, msgPrefix)) {
+			return false;
+		}
+		Map<Object, Integer> actual = new HashMap<Object, Integer>();
+		for (Object o : list) {
+			Integer n = actual.get(o);
+			actual.put(o, (n == null) ? 1 : (n + 1));
+		}
+		if (!actual.equals(counts) || list.size() != size) {
+			if (msg) {
+				System.err.println(msgPrefix + ": IndexedList has counts " + counts + " and size " + size
+						+ " but should have " + actual + " and " + list.size());
+			}
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String asPrintableString(String start, String sep, String end) {
+		return list.asPrintableString(start, sep, end);
+	}
+
+	/**
+	 * @return <code>true</code> if the other is a list of the same length with
+	 *         equal elements
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof MutableSequence)) {
+			return false;
+		}
+		MutableSequence otherList = (MutableSequence) other;
+		if (otherList.size() != size) {
+			return false;
+		}
+		Iterator<Object> ix = otherList.iterator();
+		for (Object o : list) {
+			if (!o.equals(ix.next())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (Object o : list) {
+			hash = 31 * hash + o.hashCode();
+		}
+		return hash;
+	}
+
+	/**
+	 * ListIterator keeping the counts up to date when the list is edited using it
+	 *
+	 * @author gary
+	 */
+	private class IndexedListIterator implements ListIterator<Object> {
+		private final ListIterator<Object> ix;
+
+		private IndexedListIterator(ListIterator<Object> ix) {
+			this.ix = ix;
+		}
+
+		/**
+		 * @return the list this is iterating over
+		 */
+		private IndexedList front() {
+			return IndexedList.this;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return ix.hasNext();
+		}
+
+		@Override
+		public Object next() {
+			return ix.next();
+		}
+
+		@Override
+		public boolean hasPrevious() {
+			return ix.hasPrevious();
+		}
+
+		@Override
+		public Object previous() {
+			return ix.previous();
+		}
+
+		@Override
+		public int nextIndex() {
+			return ix.nextIndex();
+		}
+
+		@Override
+		public int previousIndex() {
+			return ix.previousIndex();
+		}
+
+		@Override
+		public void remove() {
+			// Not the element next() or previous() returned, which may have been
+			// changed in place since
+			Object o = list.current(ix);
+			ix.remove();
+			dec(o);
+		}
+
+		@Override
+		public void set(Object o) {
+			Object old = list.current(ix);
+			ix.set(o);
+			dec(old);
+			inc(o);
+		}
+
+		@Override
+		public void add(Object o) {
+			ix.add(o);
+			inc(o);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+/**
+ * Sorting by keys that have been worked out in advance for each element of a
+ * list (the 'Schwartzian transform'). Rather than reordering the keys, the
+ * methods here give the order in which the elements they belong to should be
+ * put, so the keys can be kept in arrays of primitives (or strings) and nothing
+ * needs to be created for each element. The sorts are stable merge sorts, so
+ * elements with equal keys keep their relative order.
+ *
+ * @author gary
+ */
+public class KeySort {
+	/**
+	 * Runs shorter than this are sorted by insertion before merging
+	 */
+	private static final int INSERTION_SORT_LENGTH = 16;
+
+	/**
+	 * Not to be instantiated
+	 */
+	private KeySort() {
+	}
+
+	/**
+	 * @param keys the keys
+	 * @return the indices of keys in ascending order of key
+	 */
+	public static int[] order(double[] keys) {
+		int[] order = identity(keys.length);
+		sort(order, new int[keys.length], 0, keys.length, keys);
+		return order;
+	}
+
+	/**
+	 * @param keys the keys
+	 * @return the indices of keys in ascending order of key (as given by
+	 *         <code>String.compareTo()</code>)
+	 */
+	public static int[] order(String[] keys) {
+		int[] order = identity(keys.length);
+		sort(order, new int[keys.length], 0, keys.length, keys);
+		return order;
+	}
+
+	/**
+	 * @param n
+	 * @return an array containing 0, 1, ..., n - 1
+	 */
+	private static int[] identity(int n) {
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		return order;
+	}
+
+	/**
+	 * Sort part of an array of indices by numeric keys
+	 *
+	 * @param a    the indices
+	 * @param tmp  somewhere to merge to, at least as long as a
+	 * @param from the first index of a to sort
+	 * @param to   the index of a after the last one to sort
+	 * @param keys the keys
+	 */
+	private static void sort(int[] a, int[] tmp, int from, int to, double[] keys) {
+		if (to - from <= INSERTION_SORT_LENGTH) {
+			for (int i = from + 1; i < to; i++) {
+				int x = a[i];
+				double k = keys[x];
+				int j = i - 1;
+				while (j >= from && keys[a[j]] > k) {
+					a[j + 1] = a[j];
+					j--;
+				}
+				a[j + 1] = x;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sort(a, tmp, from, mid, keys);
+		sort(a, tmp, mid, to, keys);
+		if (keys[a[mid - 1]] <= keys[a[mid]]) {
+			return; // Already in order
+		}
+		System.arraycopy(a, from, tmp, from, to - from);
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < mid && keys[tmp[i]] <= keys[tmp[j]])) {
+				a[k] = tmp[i++];
+			} else {
+				a[k] = tmp[j++];
+			}
+		}
+	}
+
+	/**
+	 * Sort part of an array of indices by string keys
+	 *
+	 * @param a    the indices
+	 * @param tmp  somewhere to merge to, at least as long as a
+	 * @param from the first index of a to sort
+	 * @param to   the index of a after the last one to sort
+	 * @param keys the keys
+	 */
+	private static void sort(int[] a, int[] tmp, int from, int to, String[] keys) {
+		if (to - from <= INSERTION_SORT_LENGTH) {
+			for (int i = from + 1; i < to; i++) {
+				int x = a[i];
+				String k = keys[x];
+				int j = i - 1;
+				while (j >= from && keys[a[j]].compareTo(k) > 0) {
+					a[j + 1] = a[j];
+					j--;
+				}
+				a[j + 1] = x;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sort(a, tmp, from, mid, keys);
+		sort(a, tmp, mid, to, keys);
+		if (keys[a[mid - 1]].compareTo(keys[a[mid]]) <= 0) {
+			return; // Already in order
+		}
+		System.arraycopy(a, from, tmp, from, to - from);
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < mid && keys[tmp[i]].compareTo(keys[tmp[j]]) <= 0)) {
+				a[k] = tmp[i++];
+			} else {
+				a[k] = tmp[j++];
+			}
+		}
+	}
+}
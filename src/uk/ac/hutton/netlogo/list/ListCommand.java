@@ -4,12 +4,10 @@
 package uk.ac.hutton.netlogo.list;
 
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Map;
 
 import org.nlogo.api.AgentSet;
 import org.nlogo.api.AnonymousCommand;
@@ -31,8 +29,9 @@ import org.nlogo.core.SyntaxJ;
  */
 public class ListCommand implements Command {
 	public enum Name {
-		CAT, CLEAR, FILTER, FOREACH, FOREACH_DEPTH_FIRST, KEEP, PUSH, PUSH_ALL, REMOVE, REMOVE_DUPLICATES, REMOVE_ONCE,
-		REVERSE, SHUFFLE, SORT, UNSHIFT, UNSHIFT_ALL, FIRST, SECOND, THIRD, FOURTH, FIFTH, SIXTH, SEVENTH, EIGHTH, NINTH, TENTH
+		AWAIT_EXPORTS, CAT, CLEAR, EXPORT_ASYNC, FILTER, FOREACH, FOREACH_DEPTH_FIRST, KEEP, PUSH, PUSH_ALL, REMOVE,
+		REMOVE_DUPLICATES, REMOVE_ONCE, REVERSE, SAVE, SET_ITEM, SET_POOL_CAPACITY, SHUFFLE, SHUFFLE_N, SORT, SORT_BY,
+		TO_CSV, TO_FILE, UNSHIFT, UNSHIFT_ALL, FIRST, SECOND, THIRD, FOURTH, FIFTH, SIXTH, SEVENTH, EIGHTH, NINTH, TENTH
 	};
 
 	private final Name cmd;
@@ -50,16 +49,22 @@ public class ListCommand implements Command {
 	 * Boolean reporter block first. PUSH and UNSHIFT are variadic implementations,
 	 * so unlike lput and fput, the list comes first. With that being the case,
 	 * although PUSH_ALL and UNSHIFT_ALL are not variadic, they adopt the same
-	 * convention of putting the list first.
+	 * convention of putting the list first. AWAIT_EXPORTS doesn't take a list, as
+	 * it waits for all the exports started by EXPORT_ASYNC.
 	 */
 	@Override
 	public Syntax getSyntax() {
 		switch (cmd) {
+		case AWAIT_EXPORTS:
+			return SyntaxJ.commandSyntax();
 		case CAT:
 			return SyntaxJ.commandSyntax(
 					new int[] { Syntax.WildcardType(), Syntax.WildcardType() | Syntax.RepeatableType() }, 2);
 		case CLEAR:
 			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType() });
+		case EXPORT_ASYNC:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.StringType(),
+					Syntax.BooleanType() | Syntax.RepeatableType() }, 2);
 		case FILTER:
 			return SyntaxJ.commandSyntax(new int[] { Syntax.ReporterType(), Syntax.WildcardType() });
 		case FOREACH:
@@ -83,10 +88,25 @@ public class ListCommand implements Command {
 			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.WildcardType() });
 		case REVERSE:
 			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType() });
+		case SAVE:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.StringType() });
+		case SET_ITEM:
+			return SyntaxJ.commandSyntax(
+					new int[] { Syntax.NumberType(), Syntax.WildcardType(), Syntax.WildcardType() });
+		case SET_POOL_CAPACITY:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.NumberType() });
 		case SHUFFLE:
 			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType() });
+		case SHUFFLE_N:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.NumberType() });
 		case SORT:
+		case SORT_BY:
 			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.ReporterType() });
+		case TO_CSV:
+			// Same as TO_FILE
+		case TO_FILE:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.StringType(),
+					Syntax.BooleanType() | Syntax.RepeatableType() }, 2);
 		case UNSHIFT:
 			return SyntaxJ.commandSyntax(
 					new int[] { Syntax.WildcardType(), Syntax.WildcardType() | Syntax.RepeatableType() }, 2);
@@ -113,125 +133,163 @@ public class ListCommand implements Command {
 	 */
 	@Override
 	public void perform(Argument[] args, Context context) throws ExtensionException {
-		if (cmd == Name.FILTER) {
+		if (cmd == Name.AWAIT_EXPORTS) {
+			AsyncExporter.await();
+		} else if (cmd == Name.FILTER) {
 			filter(NetLogoMutableList.asNetLogoMutableList(args[1]), args[0].getReporter(), context);
+		} else if (cmd == Name.SET_ITEM) {
+			// Like NetLogo's replace-item, the index comes first
+			NetLogoMutableList.asNetLogoMutableList(args[1]).item(args[0].getIntValue(), args[2].get());
+		} else if (cmd == Name.SET_POOL_CAPACITY) {
+			try {
+				MutableList.setPoolCapacity(args[0].getIntValue());
+			} catch (IllegalArgumentException e) {
+				throw new ExtensionException(e.getMessage());
+			}
 		} else {
 			NetLogoMutableList list = NetLogoMutableList.asNetLogoMutableList(args[0]);
 			Object obj;
-			switch (cmd) {
-			case CAT:
-				NetLogoMutableList prev = NetLogoMutableList.asNetLogoMutableList(args[args.length - 1]);
-				for (int i = args.length - 2; i >= 1; i--) {
-					NetLogoMutableList other = NetLogoMutableList.asNetLogoMutableList(args[i]);
-					other.cat(prev);
-					prev = other;
-				}
-				list.cat(prev);
-				break;
-			case CLEAR:
-				list.clear();
-				break;
-			case FOREACH:
-				foreach(list, args[1].getCommand(), context);
-				break;
-			case FOREACH_DEPTH_FIRST:
-				foreachDepthFirst(list, args[1].getCommand(), context);
-				break;
-			case KEEP:
-				list.retainAll(getArguments(args));
-				break;
-			case PUSH:
-				if (args.length == 2) {
-					list.push(args[1].get());
-				} else {
-					list.pushAllClear(getArguments(args));
-				}
-				break;
-			case PUSH_ALL:
-				obj = args[1].get();
-				if (obj instanceof LogoList) {
-					list.pushAll((LogoList) obj);
-				} else if (obj instanceof AgentSet) {
-					list.pushAll((AgentSet) obj);
-				} else if (obj instanceof NetLogoMutableList) {
-					list.pushAll((NetLogoMutableList) obj);
-				} else {
-					throw new ExtensionException("Cannot push-all a " + obj.getClass().getSimpleName() + "(value \""
-							+ obj.toString() + "\" -- I need a list, an agentset or a mutable list");
-				}
-				break;
-			case REMOVE:
-				list.removeAll(getArguments(args));
-				break;
-			case REMOVE_DUPLICATES:
-				list.removeDuplicates();
-				break;
-			case REMOVE_ONCE:
-				list.remove(args[1].get());
-				break;
-			case REVERSE:
-				list.reverse();
-				break;
-			case SHUFFLE:
-				list.sort(new ShufflingComparator(list, context));
-				break;
-			case SORT:
-				try {
+			// Numeric lists, and the comparator used by SORT, throw an
+			// IllegalArgumentException if given something that isn't a number
+			try {
+				switch (cmd) {
+				case CAT:
+					NetLogoMutableList prev = NetLogoMutableList.asNetLogoMutableList(args[args.length - 1]);
+					for (int i = args.length - 2; i >= 1; i--) {
+						NetLogoMutableList other = NetLogoMutableList.asNetLogoMutableList(args[i]);
+						other.cat(prev);
+						prev = other;
+					}
+					list.cat(prev);
+					break;
+				case CLEAR:
+					list.clear();
+					break;
+				case EXPORT_ASYNC:
+					AsyncExporter.export(list, ListSnapshot.path(context, args[1].getString()),
+							args.length > 2 && args[2].getBooleanValue());
+					break;
+				case FOREACH:
+					foreach(list, args[1].getCommand(), context);
+					break;
+				case FOREACH_DEPTH_FIRST:
+					foreachDepthFirst(list, args[1].getCommand(), context);
+					break;
+				case KEEP:
+					list.retainAll(getArguments(args));
+					break;
+				case PUSH:
+					if (args.length == 2) {
+						list.push(args[1].get());
+					} else {
+						list.pushAllClear(getArguments(args));
+					}
+					break;
+				case PUSH_ALL:
+					obj = args[1].get();
+					if (obj instanceof LogoList) {
+						list.pushAll((LogoList) obj);
+					} else if (obj instanceof AgentSet) {
+						list.pushAll((AgentSet) obj);
+					} else if (obj instanceof NetLogoMutableList) {
+						list.pushAll((NetLogoMutableList) obj);
+					} else {
+						throw new ExtensionException("Cannot push-all a " + obj.getClass().getSimpleName() + "(value \""
+								+ obj.toString() + "\" -- I need a list, an agentset or a mutable list");
+					}
+					break;
+				case REMOVE:
+					list.removeAll(getArguments(args));
+					break;
+				case REMOVE_DUPLICATES:
+					list.removeDuplicates();
+					break;
+				case REMOVE_ONCE:
+					list.remove(args[1].get());
+					break;
+				case REVERSE:
+					list.reverse();
+					break;
+				case SAVE:
+					ListSnapshot.save(list, ListSnapshot.path(context, args[1].getString()));
+					break;
+				case SHUFFLE:
+					list.shuffle(context.getRNG());
+					break;
+				case SHUFFLE_N:
+					int k = args[1].getIntValue();
+					if (k < 0 || k > list.size()) {
+						throw new ExtensionException("Cannot shuffle " + k + " elements of a list of length " + list.size());
+					}
+					list.shuffle(context.getRNG(), k);
+					break;
+				case SORT:
 					list.sort(new ObjectComparator(args[1].getReporter(), context));
-				} catch (IllegalArgumentException e) {
-					throw new ExtensionException(e.getMessage());
+					break;
+				case SORT_BY:
+					sortBy(list, args[1].getReporter(), context);
+					break;
+				case TO_CSV:
+					ListFileWriter.csv(list, ListSnapshot.path(context, args[1].getString()),
+							args.length > 2 && args[2].getBooleanValue());
+					break;
+				case TO_FILE:
+					ListFileWriter.lines(list, ListSnapshot.path(context, args[1].getString()),
+							args.length > 2 && args[2].getBooleanValue());
+					break;
+				case UNSHIFT:
+					for (int i = args.length - 1; i >= 1; i--) {
+						list.unshift(args[i].get());
+					}
+					break;
+				case UNSHIFT_ALL:
+					obj = args[1].get();
+					if (obj instanceof LogoList) {
+						list.unshiftAll((LogoList) obj);
+					} else if (obj instanceof AgentSet) {
+						list.unshiftAll((AgentSet) obj);
+					} else if (obj instanceof NetLogoMutableList) {
+						list.unshiftAll((NetLogoMutableList) obj);
+					} else {
+						throw new ExtensionException("Cannot unshift-all a " + obj.getClass().getSimpleName() + "(value \""
+								+ obj.toString() + "\" -- I need a list, an agentset or a mutable list");
+					}
+					break;
+				case FIRST:
+					list.first(args[1].get());
+					break;
+				case SECOND:
+					list.second(args[1].get());
+					break;
+				case THIRD:
+					list.third(args[1].get());
+					break;
+				case FOURTH:
+					list.fourth(args[1].get());
+					break;
+				case FIFTH:
+					list.fifth(args[1].get());
+					break;
+				case SIXTH:
+					list.sixth(args[1].get());
+					break;
+				case SEVENTH:
+					list.seventh(args[1].get());
+					break;
+				case EIGHTH:
+					list.eighth(args[1].get());
+					break;
+				case NINTH:
+					list.ninth(args[1].get());
+					break;
+				case TENTH:
+					list.tenth(args[1].get());
+					break;
+				default:
+					throw new RuntimeException("PANIC!");
 				}
-				break;
-			case UNSHIFT:
-				for (int i = args.length - 1; i >= 1; i--) {
-					list.unshift(args[i].get());
-				}
-				break;
-			case UNSHIFT_ALL:
-				obj = args[1].get();
-				if (obj instanceof LogoList) {
-					list.unshiftAll((LogoList) obj);
-				} else if (obj instanceof AgentSet) {
-					list.unshiftAll((AgentSet) obj);
-				} else if (obj instanceof NetLogoMutableList) {
-					list.unshiftAll((NetLogoMutableList) obj);
-				} else {
-					throw new ExtensionException("Cannot unshift-all a " + obj.getClass().getSimpleName() + "(value \""
-							+ obj.toString() + "\" -- I need a list, an agentset or a mutable list");
-				}
-				break;
-			case FIRST:
-				list.first(args[1].get());
-				break;
-			case SECOND:
-				list.second(args[1].get());
-				break;
-			case THIRD:
-				list.third(args[1].get());
-				break;
-			case FOURTH:
-				list.fourth(args[1].get());
-				break;
-			case FIFTH:
-				list.fifth(args[1].get());
-				break;
-			case SIXTH:
-				list.sixth(args[1].get());
-				break;
-			case SEVENTH:
-				list.seventh(args[1].get());
-				break;
-			case EIGHTH:
-				list.eighth(args[1].get());
-				break;
-			case NINTH:
-				list.ninth(args[1].get());
-				break;
-			case TENTH:
-				list.tenth(args[1].get());
-				break;
-			default:
-				throw new RuntimeException("PANIC!");
+			} catch (IllegalArgumentException e) {
+				throw new ExtensionException(e.getMessage());
 			}
 		}
 	}
@@ -289,6 +347,55 @@ public class ListCommand implements Command {
 		}
 	}
 
+	/**
+	 * Sort a list by the keys a reporter gives for each element. The reporter is
+	 * called once for each element (rather than once for each comparison, as with
+	 * SORT), and the keys are kept in an array so the elements can be sorted by
+	 * {@link KeySort}. The keys must be all numbers or all strings. The reporter
+	 * mustn't add to or remove from the list, as there is a key for each element
+	 * that was in it when the sort started.
+	 * 
+	 * @param list
+	 * @param key
+	 * @param context
+	 * @throws ExtensionException if the keys aren't all numbers or all strings,
+	 *                            or the reporter changes the length of the list
+	 */
+	private void sortBy(NetLogoMutableList list, AnonymousReporter key, Context context) throws ExtensionException {
+		int n = list.size();
+		double[] numbers = null;
+		String[] strings = null;
+		int i = 0;
+		for (Object item : list) {
+			Object result = key.report(context, new Object[] { item });
+			if (list.size() != n) {
+				throw new ExtensionException("Sort key reporter \"" + key + "\" changed the length of the list from "
+						+ n + " to " + list.size() + " while it was being sorted");
+			}
+			if (i == 0) {
+				if (result instanceof Double) {
+					numbers = new double[n];
+				} else if (result instanceof String) {
+					strings = new String[n];
+				}
+			}
+			if (numbers != null && result instanceof Double) {
+				numbers[i] = (Double) result;
+			} else if (strings != null && result instanceof String) {
+				strings[i] = (String) result;
+			} else {
+				throw new ExtensionException("Sort key reporter \"" + key + "\" gives \"" + result + "\" for \"" + item
+						+ "\" -- I need all numbers or all strings");
+			}
+			i++;
+		}
+		if (numbers != null) {
+			list.reorder(KeySort.order(numbers));
+		} else if (strings != null) {
+			list.reorder(KeySort.order(strings));
+		}
+	}
+
 	/**
 	 * Provide a command enabling depth first search of nested NetLogoMutableLists
 	 * as a single loop
@@ -340,40 +447,4 @@ public class ListCommand implements Command {
 		}
 
 	}
-	
-	/**
-	 * Comparator interface that enables sorting a list in random order. This isn't particularly
-	 * great because if there are duplicate entries in the list, we don't know which one the
-	 * comparator is expecting. This may need a different approach.
-	 * 
-	 * @author gary
-	 */
-	protected class ShufflingComparator implements Comparator<Object> {
-		Map<Object, List<Double>> randomOrder;
-		
-		protected ShufflingComparator(NetLogoMutableList list, Context context) {
-			randomOrder = new HashMap<Object, List<Double>>();
-			for(Object item: list) {
-				if (!randomOrder.containsKey(item)) {
-					randomOrder.put(item, new LinkedList<Double>());
-				}
-				randomOrder.get(item).add(context.getRNG().nextDouble());
-			}
-		}
-
-		@Override
-		public int compare(Object o1, Object o2) {
-			if (!randomOrder.containsKey(o1) || !randomOrder.containsKey(o2)) {
-				throw new IllegalStateException("BUG! I'm being asked to compare two objects I've not heard of before");
-			}
-			List<Double> l1 = randomOrder.get(o1);
-			double d1 = l1.remove(0);
-			l1.add(d1);
-			List<Double> l2 = randomOrder.get(o2);
-			double d2 = l2.remove(0);
-			l2.add(d2);
-			return (d1 < d2 ? -1 : (d1 > d2 ? 1 : 0));
-		}
-		
-	}
 }
@@ -0,0 +1,288 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nlogo.api.ExtensionException;
+import org.nlogo.core.LogoListBuilder;
+
+/**
+ * Read text and CSV files straight into mutable lists, without making a NetLogo
+ * string or list for each line first. Each line (or row) is pushed on to the
+ * end of the list as it is read.
+ *
+ * CSV fields are separated by commas, and may be quoted with double quotes, in
+ * which case they may contain commas, line breaks and (doubled) double quotes.
+ * Unquoted fields that look like numbers are read as numbers, unless they are
+ * too big for a double (NetLogo numbers must be finite); everything else is
+ * read as a string. Columns that aren't wanted are skipped over without
+ * making strings of them.
+ *
+ * @author gary
+ */
+public class ListFileReader {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final char BOM = '\uFEFF';
+
+	/**
+	 * Read the lines of a text file
+	 *
+	 * @param file the file
+	 * @return a mutable list of the lines as strings, without their line endings
+	 * @throws ExtensionException if the file can't be read
+	 */
+	public static NetLogoMutableList lines(Path file) throws ExtensionException {
+		NetLogoMutableList list = new NetLogoMutableList();
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line = in.readLine();
+			if (line != null && line.length() > 0 && line.charAt(0) == BOM) {
+				line = line.substring(1);
+			}
+			while (line != null) {
+				list.push(line);
+				line = in.readLine();
+			}
+		} catch (IOException e) {
+			throw new ExtensionException("Cannot read \"" + file + "\": " + e.getMessage());
+		}
+		return list;
+	}
+
+	/**
+	 * Read the rows of a CSV file. Blank lines are skipped.
+	 *
+	 * @param file    the file
+	 * @param columns the columns to keep (counting from 0), in the order they
+	 *                are wanted in each row, or <code>null</code> for all of them
+	 * @return a mutable list of the rows, each of which is a NetLogo list
+	 * @throws ExtensionException if the file can't be read, or a row doesn't have
+	 *                            all the columns wanted
+	 */
+	public static NetLogoMutableList csv(Path file, int[] columns) throws ExtensionException {
+		NetLogoMutableList list = new NetLogoMutableList();
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			CSVParser parser = new CSVParser(in, columns);
+			Object[] row = parser.next();
+			while (row != null) {
+				LogoListBuilder builder = new LogoListBuilder();
+				for (Object field : row) {
+					builder.add(field);
+				}
+				list.push(builder.toLogoList());
+				row = parser.next();
+			}
+		} catch (IOException e) {
+			throw new ExtensionException("Cannot read \"" + file + "\": " + e.getMessage());
+		}
+		return list;
+	}
+
+	/**
+	 * Reads CSV rows from a Reader a buffer at a time
+	 *
+	 * @author gary
+	 */
+	static class CSVParser {
+		private final Reader in;
+		private final char[] buf = new char[BUFFER_SIZE];
+		private int pos = 0;
+		private int len = 0;
+		private boolean first = true;
+		private int row = 0;
+
+		private final int[] columns;
+		private final int[] position; // position[col] is where column col goes in the row, or -1 to skip it
+		private final StringBuilder field = new StringBuilder();
+
+		/**
+		 * @param in      where to read from
+		 * @param columns the columns to keep, or <code>null</code> to keep all of
+		 *                them
+		 * @throws ExtensionException if a column is negative or wanted twice
+		 */
+		CSVParser(Reader in, int[] columns) throws ExtensionException {
+			this.in = in;
+			this.columns = columns;
+			if (columns == null) {
+				position = null;
+			} else {
+				int max = -1;
+				for (int col : columns) {
+					if (col < 0) {
+						throw new ExtensionException("Cannot read column " + col);
+					}
+					max = Math.max(max, col);
+				}
+				position = new int[max + 1];
+				for (int i = 0; i <= max; i++) {
+					position[i] = -1;
+				}
+				for (int i = 0; i < columns.length; i++) {
+					if (position[columns[i]] != -1) {
+						throw new ExtensionException("Cannot read column " + columns[i] + " twice");
+					}
+					position[columns[i]] = i;
+				}
+			}
+		}
+
+		/**
+		 * @return the next character, or -1 at the end of the input
+		 * @throws IOException
+		 */
+		private int read() throws IOException {
+			if (pos == len) {
+				len = in.read(buf, 0, buf.length);
+				pos = 0;
+				if (len <= 0) {
+					len = 0;
+					return -1;
+				}
+			}
+			return buf[pos++];
+		}
+
+		/**
+		 * @return the next character without reading it, or -1 at the end of the
+		 *         input
+		 * @throws IOException
+		 */
+		private int peek() throws IOException {
+			int c = read();
+			if (c != -1) {
+				pos--;
+			}
+			return c;
+		}
+
+		/**
+		 * Read the next row, skipping blank lines
+		 *
+		 * @return the fields in the row, or <code>null</code> at the end of the
+		 *         input
+		 * @throws IOException
+		 * @throws ExtensionException if the row doesn't have all the columns wanted
+		 */
+		Object[] next() throws IOException, ExtensionException {
+			if (first) {
+				first = false;
+				if (peek() == BOM) {
+					read();
+				}
+			}
+			int c = read();
+			while (c == '\n' || c == '\r') {
+				if (c == '\r' && peek() == '\n') {
+					read();
+				}
+				c = read();
+			}
+			if (c == -1) {
+				return null;
+			}
+			row++;
+			List<Object> all = columns == null ? new ArrayList<Object>() : null;
+			Object[] kept = columns == null ? null : new Object[columns.length];
+			int col = 0;
+			while (true) {
+				// c is the first character of a field
+				boolean keep = columns == null || (col < position.length && position[col] >= 0);
+				boolean quoted = false;
+				field.setLength(0);
+				if (c == '"') {
+					quoted = true;
+					c = read();
+					while (true) {
+						if (c == -1) {
+							throw new ExtensionException("Quoted field in row " + row + " is not closed");
+						} else if (c == '"') {
+							c = read();
+							if (c != '"') {
+								break;
+							}
+						}
+						if (keep) {
+							field.append((char) c);
+						}
+						c = read();
+					}
+				}
+				while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+					if (keep) {
+						field.append((char) c);
+					}
+					c = read();
+				}
+				if (keep) {
+					Object value = quoted ? field.toString() : parse(field);
+					if (columns == null) {
+						all.add(value);
+					} else {
+						kept[position[col]] = value;
+					}
+				}
+				col++;
+				if (c == ',') {
+					c = read();
+				} else {
+					if (c == '\r' && peek() == '\n') {
+						read();
+					}
+					break;
+				}
+			}
+			if (columns == null) {
+				return all.toArray();
+			}
+			if (col < position.length) {
+				throw new ExtensionException("Row " + row + " has " + col + " columns, so I cannot read column "
+						+ (position.length - 1));
+			}
+			return kept;
+		}
+
+		/**
+		 * @param str an unquoted field
+		 * @return the field as a Double if it looks like a (finite) number,
+		 *         otherwise as a String
+		 */
+		static Object parse(CharSequence str) {
+			int n = str.length();
+			if (n == 0) {
+				return "";
+			}
+			boolean digit = false;
+			for (int i = 0; i < n; i++) {
+				char c = str.charAt(i);
+				if (c >= '0' && c <= '9') {
+					digit = true;
+				} else if (c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+					// Rules out NaN, Infinity, hex and Java's 'd' and 'f' suffixes
+					return str.toString();
+				}
+			}
+			String s = str.toString();
+			if (digit) {
+				try {
+					Double d = Double.valueOf(s);
+					if (!d.isInfinite()) {
+						return d;
+					}
+					// e.g. 1e999, which NetLogo can't have as a number
+				} catch (NumberFormatException e) {
+					// Not a number after all
+				}
+			}
+			return s;
+		}
+	}
+}
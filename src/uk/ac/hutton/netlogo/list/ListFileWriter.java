@@ -0,0 +1,136 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.core.LogoList;
+
+/**
+ * Write mutable lists straight to text and CSV files, an item at a time, so
+ * that the memory used doesn't depend on the length of the list. Items are
+ * written as NetLogo's <code>file-print</code> would write them, except that
+ * in CSV files, fields with commas, quotes or line breaks in them (or strings
+ * that would be read back as numbers) are quoted.
+ *
+ * @author gary
+ */
+public class ListFileWriter {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Write each item in a list on a line of its own
+	 *
+	 * @param list   the list (or anything else with items)
+	 * @param file   the file
+	 * @param append whether to add to the end of the file rather than replace
+	 *               it
+	 * @throws ExtensionException if the file can't be written
+	 */
+	public static void lines(Iterable<? extends Object> list, Path file, boolean append) throws ExtensionException {
+		try (Writer out = open(file, append)) {
+			for (Object item : list) {
+				out.write(item instanceof String ? (String) item : Dump.logoObject(item));
+				out.write('\n');
+			}
+		} catch (IOException e) {
+			throw new ExtensionException("Cannot write to \"" + file + "\": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Write each item in a list as a row of CSV. Items that are NetLogo lists or
+	 * mutable lists have one field for each thing in them; anything else is
+	 * written as a row with one field.
+	 *
+	 * @param list   the list (or anything else with items)
+	 * @param file   the file
+	 * @param append whether to add to the end of the file rather than replace
+	 *               it
+	 * @throws ExtensionException if the file can't be written
+	 */
+	public static void csv(Iterable<? extends Object> list, Path file, boolean append) throws ExtensionException {
+		try (Writer out = open(file, append)) {
+			for (Object item : list) {
+				Iterable<Object> row;
+				if (item instanceof LogoList) {
+					row = ((LogoList) item).javaIterable();
+				} else if (item instanceof NetLogoMutableList) {
+					row = (NetLogoMutableList) item;
+				} else {
+					writeField(out, item);
+					out.write('\n');
+					continue;
+				}
+				boolean first = true;
+				for (Object field : row) {
+					if (!first) {
+						out.write(',');
+					}
+					writeField(out, field);
+					first = false;
+				}
+				out.write('\n');
+			}
+		} catch (IOException e) {
+			throw new ExtensionException("Cannot write to \"" + file + "\": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param file
+	 * @param append
+	 * @return a buffered writer to the file
+	 * @throws IOException
+	 */
+	private static Writer open(Path file, boolean append) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+		return new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8),
+				BUFFER_SIZE);
+	}
+
+	/**
+	 * Write a CSV field, quoting it if it would not otherwise be read back as it
+	 * is
+	 *
+	 * @param out
+	 * @param obj
+	 * @throws IOException
+	 */
+	private static void writeField(Writer out, Object obj) throws IOException {
+		String str = obj instanceof String ? (String) obj : Dump.logoObject(obj);
+		// An empty field is quoted so that a row with just that isn't a blank line,
+		// which would be skipped when read
+		boolean quote = str.length() == 0 || str.indexOf(',') >= 0 || str.indexOf('"') >= 0
+				|| str.indexOf('\n') >= 0 || str.indexOf('\r') >= 0;
+		if (obj instanceof String && !(ListFileReader.CSVParser.parse(str) instanceof String)) {
+			// A string that would be read back as a number
+			quote = true;
+		}
+		if (!quote) {
+			out.write(str);
+			return;
+		}
+		out.write('"');
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c == '"') {
+				out.write('"');
+			}
+			out.write(c);
+		}
+		out.write('"');
+	}
+}
@@ -11,6 +11,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.nlogo.api.Agent;
@@ -34,9 +35,11 @@ import org.nlogo.core.SyntaxJ;
  */
 public class ListReporter implements Reporter {
 	public enum Name {
-		AS_LIST, AS_LIST_DEEPLY, COUNTS, COPY, CURSOR, DEEP_MEMBER, FROM_AGENTSET, FROM_LIST, HISTOGRAM, INTERSECTS,
-		IS_EMPTY, IS_LIST, LENGTH, MAKE, MAP, MAX, MEAN, MEDIAN, MEMBER, MEMBER_ANY, MIN, MODES, POP, QUARTILES, RANGE,
-		REDUCE, SHIFT, SUM, FIRST, SECOND, THIRD, FOURTH, FIFTH, SIXTH, SEVENTH, EIGHTH, NINTH, TENTH
+		AS_LIST, AS_LIST_DEEPLY, COUNTS, COPY, CURSOR, DEEP_MEMBER, FROM_AGENTSET, FROM_CSV, FROM_FILE, FROM_LIST,
+		FROM_LIST_NUMERIC, HISTOGRAM, INTERSECTS, IS_EMPTY, IS_LIST, ITEM, LENGTH, LOAD, MAKE, MAKE_CHUNKED, MAKE_DEQUE,
+		MAKE_INDEXED, MAKE_NUMERIC, MAP, MAX, MEAN, MEDIAN, MEMBER, MEMBER_ANY, MIN, MODES, N_OF, N_OF_AS_LIST, ONE_OF,
+		POOL_HIT_RATE, POP, QUARTILES, RANGE, REDUCE, SHIFT, STANDARD_DEVIATION, STATS, SUM, VARIANCE, FIRST, SECOND,
+		THIRD, FOURTH, FIFTH, SIXTH, SEVENTH, EIGHTH, NINTH, TENTH
 	};
 
 	private final Name cmd;
@@ -69,7 +72,15 @@ public class ListReporter implements Reporter {
 					Syntax.BooleanType());
 		case FROM_AGENTSET:
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.AgentsetType() }, Syntax.WildcardType());
+		case FROM_CSV:
+			return SyntaxJ.reporterSyntax(
+					new int[] { Syntax.StringType(), Syntax.ListType() | Syntax.RepeatableType() }, Syntax.WildcardType(),
+					1);
+		case FROM_FILE:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.StringType() }, Syntax.WildcardType());
 		case FROM_LIST:
+			// Same as FROM_LIST_NUMERIC
+		case FROM_LIST_NUMERIC:
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.ListType() }, Syntax.WildcardType());
 		case HISTOGRAM:
 			return SyntaxJ.reporterSyntax(
@@ -82,9 +93,19 @@ public class ListReporter implements Reporter {
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.BooleanType());
 		case IS_LIST:
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.BooleanType());
+		case ITEM:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.NumberType(), Syntax.WildcardType() },
+					Syntax.WildcardType());
 		case LENGTH:
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.NumberType());
+		case LOAD:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.StringType() }, Syntax.WildcardType());
 		case MAKE:
+			// Same as MAKE_CHUNKED, MAKE_DEQUE, MAKE_INDEXED and MAKE_NUMERIC
+		case MAKE_CHUNKED:
+		case MAKE_DEQUE:
+		case MAKE_INDEXED:
+		case MAKE_NUMERIC:
 			return SyntaxJ.reporterSyntax(Syntax.WildcardType());
 		case MAP:
 			return SyntaxJ.reporterSyntax(
@@ -106,6 +127,15 @@ public class ListReporter implements Reporter {
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.NumberType());
 		case MODES:
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.ListType());
+		case N_OF:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.NumberType(), Syntax.WildcardType() },
+					Syntax.WildcardType());
+		case N_OF_AS_LIST:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.NumberType(), Syntax.WildcardType() }, Syntax.ListType());
+		case ONE_OF:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.WildcardType());
+		case POOL_HIT_RATE:
+			return SyntaxJ.reporterSyntax(new int[] {}, Syntax.NumberType());
 		case POP:
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.WildcardType());
 		case QUARTILES:
@@ -119,8 +149,14 @@ public class ListReporter implements Reporter {
 					Syntax.WildcardType());
 		case SHIFT:
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.WildcardType());
+		case STANDARD_DEVIATION:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.NumberType());
+		case STATS:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.ListType());
 		case SUM:
 			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.NumberType());
+		case VARIANCE:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.NumberType());
 		case FIRST:
 		case SECOND:
 		case THIRD:
@@ -151,14 +187,47 @@ public class ListReporter implements Reporter {
 	public Object report(Argument[] args, Context context) throws ExtensionException {
 		if (cmd == Name.MAKE) {
 			return new NetLogoMutableList();
+		} else if (cmd == Name.MAKE_CHUNKED) {
+			return new NetLogoMutableList(NetLogoMutableList.Storage.CHUNKED);
+		} else if (cmd == Name.MAKE_DEQUE) {
+			return new NetLogoMutableList(NetLogoMutableList.Storage.DEQUE);
+		} else if (cmd == Name.MAKE_INDEXED) {
+			return new NetLogoMutableList(NetLogoMutableList.Storage.INDEXED);
+		} else if (cmd == Name.MAKE_NUMERIC) {
+			return new NetLogoMutableList(NetLogoMutableList.Storage.NUMERIC);
 		} else if (cmd == Name.FROM_LIST) {
 			return new NetLogoMutableList(args[0].getList());
+		} else if (cmd == Name.FROM_LIST_NUMERIC) {
+			try {
+				return new NetLogoMutableList(args[0].getList(), NetLogoMutableList.Storage.NUMERIC);
+			} catch (IllegalArgumentException e) {
+				throw new ExtensionException(e.getMessage());
+			}
 		} else if (cmd == Name.FROM_AGENTSET) {
 			return new NetLogoMutableList(args[0].getAgentSet());
+		} else if (cmd == Name.FROM_CSV) {
+			return ListFileReader.csv(ListSnapshot.path(context, args[0].getString()),
+					args.length > 1 ? columns(args[1].getList()) : null);
+		} else if (cmd == Name.FROM_FILE) {
+			return ListFileReader.lines(ListSnapshot.path(context, args[0].getString()));
 		} else if (cmd == Name.IS_LIST) {
 			return (args[0].get() instanceof NetLogoMutableList);
+		} else if (cmd == Name.LOAD) {
+			return ListSnapshot.load(ListSnapshot.path(context, args[0].getString()), context.world());
+		} else if (cmd == Name.POOL_HIT_RATE) {
+			return Double.valueOf(MutableList.getPoolHitRate());
 		} else if (cmd == Name.MAP) {
 			return map(args, context);
+		} else if (cmd == Name.ITEM) {
+			// Like NetLogo's item, the index comes first
+			return NetLogoMutableList.asNetLogoMutableList(args[1]).item(args[0].getIntValue());
+		} else if (cmd == Name.N_OF) {
+			// Like NetLogo's n-of, the number comes first
+			return new NetLogoMutableList(
+					NetLogoMutableList.asNetLogoMutableList(args[1]).nOf(context.getRNG(), args[0].getIntValue()));
+		} else if (cmd == Name.N_OF_AS_LIST) {
+			return LogoList.fromJava(
+					NetLogoMutableList.asNetLogoMutableList(args[1]).nOf(context.getRNG(), args[0].getIntValue()));
 		} else if (cmd == Name.RANGE) {
 			double start = args[0].getDoubleValue();
 			double stop = args[1].getDoubleValue();
@@ -174,22 +243,20 @@ public class ListReporter implements Reporter {
 			} else if (!Double.isFinite(start) || !Double.isFinite(stop) || !Double.isFinite(inc)) {
 				throw new ExtensionException("range command called with non-finite arguments");
 			}
-			List<Object> lst = new LinkedList<Object>();
-			for (double i = start; (inc < 0.0 && i >= stop) || (inc > 0.0 && i <= stop); i += inc) {
-				if (!Double.isFinite(i)) {
-					throw new ExtensionException("range command start \"" + start + "\", stop \"" + stop
-							+ ", increment \"" + inc + "\" leads to non-finite list element");
-				}
-				lst.add(Double.valueOf(i));
-			}
-			return new NetLogoMutableList(lst);
+			// The arguments being finite, so are all the elements, which lie between
+			// start and stop
+			NetLogoMutableList range = new NetLogoMutableList();
+			range.pushAll(new RangeIterator(start, stop, inc));
+			return range;
 		} else if (cmd == Name.REDUCE) {
 			return reduce(args, context);
 		} else {
 			// All of these commands take a list as the first argument
 			NetLogoMutableList list = NetLogoMutableList.asNetLogoMutableList(args[0]);
 			switch (cmd) {
-			// N.B. 'FROM_LIST', 'FROM_AGENTSET', 'IS_LIST' and 'MAKE' handled above
+			// N.B. 'FROM_CSV', 'FROM_FILE', 'FROM_LIST', 'FROM_LIST_NUMERIC', 'FROM_AGENTSET', 'IS_LIST', 'ITEM',
+			// 'LOAD', 'MAKE', 'MAKE_CHUNKED', 'MAKE_DEQUE', 'MAKE_INDEXED', 'MAKE_NUMERIC', 'N_OF', 'N_OF_AS_LIST' and
+			// 'POOL_HIT_RATE' handled above
 			case AS_LIST:
 				return list.asLogoList();
 			case AS_LIST_DEEPLY:
@@ -235,11 +302,11 @@ public class ListReporter implements Reporter {
 			case LENGTH:
 				return Double.valueOf((double) list.size());
 			case MAX:
-				return Double.valueOf(getStats(list)[1]);
+				return Double.valueOf(Statistics.of(list.getList()).getMax());
 			case MEAN:
-				return Double.valueOf(getStats(list)[3]);
+				return Double.valueOf(Statistics.of(list.getList()).getMean());
 			case MEDIAN:
-				return Double.valueOf(quartiles(list)[1]);
+				return Double.valueOf(Statistics.median(getNumbers(list)));
 			case MEMBER:
 				if (args.length == 2) {
 					return Boolean.valueOf(list.member(args[1].get()));
@@ -249,17 +316,23 @@ public class ListReporter implements Reporter {
 			case MEMBER_ANY:
 				return Boolean.valueOf(list.memberAny(ListCommand.getArguments(args)));
 			case MIN:
-				return Double.valueOf(getStats(list)[0]);
+				return Double.valueOf(Statistics.of(list.getList()).getMin());
 			case MODES:
 				return modes(list);
+			case ONE_OF:
+				return list.oneOf(context.getRNG());
 			case POP:
 				return list.pop();
 			case QUARTILES:
-				return LogoList.fromJava(Arrays.asList(quartiles(list)));
+				return quartiles(list);
 			case SHIFT:
 				return list.shift();
+			case STANDARD_DEVIATION:
+				return Double.valueOf(Statistics.of(list.getList()).getStandardDeviation());
+			case STATS:
+				return stats(list);
 			case SUM:
-				return Double.valueOf(getStats(list)[2]);
+				return Double.valueOf(Statistics.of(list.getList()).getSum());
 			case FIRST:
 				return list.first();
 			case SECOND:
@@ -280,6 +353,8 @@ public class ListReporter implements Reporter {
 				return list.ninth();
 			case TENTH:
 				return list.tenth();
+			case VARIANCE:
+				return Double.valueOf(Statistics.of(list.getList()).getVariance());
 			default:
 				throw new RuntimeException("PANIC!");
 			}
@@ -288,126 +363,51 @@ public class ListReporter implements Reporter {
 
 	/**
 	 * Extract the numbers from a list, returning them as an array of
-	 * <code>Double</code>
+	 * <code>double</code>
 	 * 
 	 * @param list a NetLogoMutableList
 	 * @return an array of numbers contained in the list
 	 */
-	private Double[] getNumbers(NetLogoMutableList list) {
-		List<Double> numbers = new LinkedList<Double>();
+	private double[] getNumbers(NetLogoMutableList list) {
+		if (list.getList() instanceof NumericList) {
+			return ((NumericList) list.getList()).toDoubleArray();
+		}
+		int n = 0;
 		for (Object o : list.getList()) {
 			if (o instanceof Double) {
-				numbers.add((Double) o);
+				n++;
 			}
 		}
-		return numbers.toArray(new Double[0]);
-	}
-
-	/**
-	 * Extract numerical summaries of the numbers in the list, returning them as an
-	 * array of <code>double</code> thus:
-	 * 
-	 * <ol start=0>
-	 * <li>Minimum number found or <code>Double.NaN</code> if the list is empty</li>
-	 * <li>Maximum number found or <code>Double.NaN</code> if the list is empty</li>
-	 * <li>Sum of numbers found or <code>Double.NaN</code> if the list is empty</li>
-	 * <li>Mean of numbers found or <code>Double.NaN</code> if the list is
-	 * empty</li>
-	 * </ol>
-	 * 
-	 * @param list a NetLogoMutableList
-	 * @return an array containing the summary statistics of the numbers in the list
-	 */
-	private double[] getStats(NetLogoMutableList list) {
-		double min = Double.NaN;
-		double max = Double.NaN;
-		double sum = Double.NaN;
-		double n = 0.0;
-		boolean first = true;
-
+		double[] numbers = new double[n];
+		n = 0;
 		for (Object o : list.getList()) {
 			if (o instanceof Double) {
-				if (first) {
-					min = (Double) o;
-					max = (Double) o;
-					sum = (Double) o;
-					first = false;
-				} else {
-					sum += (Double) o;
-					min = ((Double) o < min) ? (Double) o : min;
-					max = ((Double) o > max) ? (Double) o : max;
-				}
-				n += 1.0;
+				numbers[n] = (Double) o;
+				n++;
 			}
 		}
-		return new double[] { min, max, sum, sum / n };
+		return numbers;
 	}
 
 	/**
-	 * According to <a href="https://en.wikipedia.org/wiki/Quartile">Wikipedia</a>
-	 * there is no standard way of computing the quartiles. This method implements
-	 * that referred to in the article as 'Tukey's hinges'. The lower and upper
-	 * quartiles are medians of the bottom half of the list and the top half of the
-	 * list, respectively; including the median value if the list has odd length.
-	 * 
 	 * @param list
-	 * @return first, second, and third quartiles as an array; the median will be
-	 *         <code>Double.NaN</code> if the list is empty; the upper and lower
-	 *         quartiles will be <code>Double.NaN</code> if the list has fewer than
-	 *         two elements
+	 * @return the quartiles of the numbers in the list, as per
+	 *         {@link Statistics#quartiles(double[])}
 	 */
-	private Double[] quartiles(NetLogoMutableList list) {
-		Double[] numbers = getNumbers(list);
-
-		// Handle quick cases first with no sorted list
-		if (numbers.length == 0) {
-			return new Double[] { Double.NaN, Double.NaN, Double.NaN };
-		} else if (numbers.length == 1) {
-			return new Double[] { Double.NaN, numbers[0], Double.NaN };
-		} else if (numbers.length == 2) {
-			return new Double[] { numbers[0], (numbers[0] + numbers[1]) / 2.0, numbers[1] };
-		}
-
-		Arrays.sort(numbers);
-
-		// Handle quick cases with a sorted list
-		if (numbers.length == 3) {
-			return new Double[] { (numbers[0] + numbers[1]) / 2.0, numbers[1], (numbers[1] + numbers[2]) / 2.0 };
-		} else if (numbers.length == 4) {
-			return new Double[] { (numbers[0] + numbers[1]) / 2.0, (numbers[1] + numbers[2]) / 2.0,
-					(numbers[2] + numbers[3]) / 2.0 };
-		}
-
-		int q1hi;
-		int q1lo;
-		int q2hi;
-		int q2lo;
-		int q3hi;
-		int q3lo;
-		int odd;
-		if (numbers.length % 2 == 0) {
-			q2hi = numbers.length / 2;
-			q2lo = q2hi - 1;
-			odd = 0;
-		} else {
-			q2hi = (numbers.length - 1) / 2;
-			q2lo = q2hi;
-			odd = 1;
-		}
-		if (q2hi % 2 == 0) {
-			q1hi = q2hi / 2;
-			q1lo = q1hi - 1;
-			q3hi = (3 * q1hi) + odd;
-			q3lo = q3hi - 1;
-		} else {
-			q1hi = (q2hi - 1) / 2;
-			q1lo = q1hi;
-			q3hi = (q1hi + q2hi) + odd;
-			q3lo = q3hi;
-		}
+	private LogoList quartiles(NetLogoMutableList list) {
+		double[] q = Statistics.quartiles(getNumbers(list));
+		return LogoList.fromJava(Arrays.asList(new Double[] { q[0], q[1], q[2] }));
+	}
 
-		return new Double[] { (numbers[q1lo] + numbers[q1hi]) / 2.0, (numbers[q2lo] + numbers[q2hi]) / 2.0,
-				(numbers[q3lo] + numbers[q3hi]) / 2.0 };
+	/**
+	 * @param list
+	 * @return a NetLogo list of the count, minimum, maximum, sum, mean, variance
+	 *         and standard deviation of the numbers in the list
+	 */
+	private LogoList stats(NetLogoMutableList list) {
+		Statistics stats = Statistics.of(list.getList());
+		return LogoList.fromJava(Arrays.asList(new Double[] { (double) stats.getCount(), stats.getMin(),
+				stats.getMax(), stats.getSum(), stats.getMean(), stats.getVariance(), stats.getStandardDeviation() }));
 	}
 
 	/**
@@ -484,13 +484,20 @@ public class ListReporter implements Reporter {
 
 	/**
 	 * Used as input to modes() and counts(), this function creates a Map of unique
-	 * entries in the list to the number of times they appear
+	 * entries in the list to the number of times they appear. Indexed lists already
+	 * have the counts, so don't need to be looked through.
 	 * 
 	 * @param list
 	 * @return a Map of elements in the list to the number of times they appear
 	 */
 	private Map<Object, Double> accumulations(NetLogoMutableList list) {
 		Map<Object, Double> cts = new HashMap<Object, Double>();
+		if (list.getList() instanceof IndexedList) {
+			for (Map.Entry<Object, Integer> entry : ((IndexedList) list.getList()).getCounts().entrySet()) {
+				cts.put(entry.getKey(), entry.getValue().doubleValue());
+			}
+			return cts;
+		}
 		ListIterator<Object> ix = list.getListIterator();
 		while (ix.hasNext()) {
 			Object obj = ix.next();
@@ -532,20 +539,30 @@ public class ListReporter implements Reporter {
 		}
 		int n_bins = (int) dn_bins;
 		Double[] result = new Double[n_bins];
-		for (int i = 0; i < result.length; i++) {
-			result[i] = 0.0;
-		}
-		Iterator<Object> ix = list.iterator();
-		while (ix.hasNext()) {
-			Object obj = ix.next();
-			if (obj instanceof Double) {
-				double n = (Double) obj;
+		double[] counts = new double[n_bins];
+		if (list.getList() instanceof NumericList) {
+			NumericList numbers = (NumericList) list.getList();
+			for (int j = 0; j < numbers.size(); j++) {
+				double n = numbers.getDouble(j);
 				if (Double.isFinite(n) && n >= min && n < max) {
-					int i = (int) Math.floor((n - min) / width);
-					result[i] += 1.0;
+					counts[(int) Math.floor((n - min) / width)] += 1.0;
+				}
+			}
+		} else {
+			Iterator<Object> ix = list.iterator();
+			while (ix.hasNext()) {
+				Object obj = ix.next();
+				if (obj instanceof Double) {
+					double n = (Double) obj;
+					if (Double.isFinite(n) && n >= min && n < max) {
+						counts[(int) Math.floor((n - min) / width)] += 1.0;
+					}
 				}
 			}
 		}
+		for (int i = 0; i < result.length; i++) {
+			result[i] = counts[i];
+		}
 		return LogoList.fromJava(Arrays.asList(result));
 	}
 
@@ -576,6 +593,26 @@ public class ListReporter implements Reporter {
 		return new NetLogoMutableList(result);
 	}
 
+	/**
+	 * Get the columns to read from a CSV file
+	 * 
+	 * @param list a NetLogo list of column numbers, counting from 0
+	 * @return the column numbers
+	 * @throws ExtensionException if something in the list isn't a whole number
+	 */
+	private int[] columns(LogoList list) throws ExtensionException {
+		int[] columns = new int[list.size()];
+		int i = 0;
+		for (Object obj : list.javaIterable()) {
+			if (!(obj instanceof Double) || (Double) obj != Math.floor((Double) obj)) {
+				throw new ExtensionException("Column \"" + obj + "\" is not a whole number");
+			}
+			columns[i] = ((Double) obj).intValue();
+			i++;
+		}
+		return columns;
+	}
+
 	/**
 	 * Implementation of hasNext() for lots of iterators at once
 	 * 
@@ -607,4 +644,37 @@ public class ListReporter implements Reporter {
 
 		return nexts;
 	}
+
+	/**
+	 * Iterator generating the numbers in a range, so the range can be built
+	 * straight into a list
+	 * 
+	 * @author gary
+	 */
+	static class RangeIterator implements Iterator<Object> {
+		private final double stop;
+		private final double inc;
+		private double next;
+
+		RangeIterator(double start, double stop, double inc) {
+			this.stop = stop;
+			this.inc = inc;
+			next = start;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return (inc < 0.0 && next >= stop) || (inc > 0.0 && next <= stop);
+		}
+
+		@Override
+		public Object next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Double d = Double.valueOf(next);
+			next += inc;
+			return d;
+		}
+	}
 }
@@ -0,0 +1,368 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.nlogo.api.AgentException;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.Patch;
+import org.nlogo.api.Turtle;
+import org.nlogo.api.World;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.LogoListBuilder;
+import org.nlogo.core.Nobody$;
+
+/**
+ * Save mutable lists to, and load them from, files in a binary format. This is
+ * much quicker than converting a large list to a NetLogo list and writing that
+ * out, and keeps the storage used by each list.
+ *
+ * The file starts with a header saying whether the rest is compressed with
+ * GZIP, followed by the list. Each item is a byte giving its type followed by
+ * its value; numbers are written as doubles, turtles as their who number and
+ * patches as their coordinates. Numeric lists have just their numbers, with no
+ * type bytes. Each mutable list is written in full the first time it is met
+ * and as a reference after that, so lists that are shared (or contain
+ * themselves) are still shared when loaded.
+ *
+ * @author gary
+ */
+public class ListSnapshot {
+	private static final byte[] MAGIC = { 'L', 'T', 'S', 'N', 'A', 'P' };
+	private static final byte VERSION = 1;
+	private static final byte PLAIN = 0;
+	private static final byte GZIP = 1;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final byte NOBODY = 0;
+	private static final byte NUMBER = 1;
+	private static final byte STRING = 2;
+	private static final byte TRUE = 3;
+	private static final byte FALSE = 4;
+	private static final byte TURTLE = 5;
+	private static final byte PATCH = 6;
+	private static final byte LOGO_LIST = 7;
+	private static final byte MUTABLE_LIST = 8;
+	private static final byte MUTABLE_LIST_REF = 9;
+
+	/**
+	 * Get the path to a file named in a model, relative to the model's directory
+	 *
+	 * @param context
+	 * @param name    the file name as given in the model
+	 * @return the path
+	 * @throws ExtensionException if the name isn't a valid path
+	 */
+	static Path path(Context context, String name) throws ExtensionException {
+		try {
+			return Paths.get(context.attachCurrentDirectory(name));
+		} catch (MalformedURLException e) {
+			throw new ExtensionException("Invalid file name \"" + name + "\": " + e.getMessage());
+		} catch (InvalidPathException e) {
+			throw new ExtensionException("Invalid file name \"" + name + "\": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Save a list. The file is compressed if its name ends in <code>.gz</code>.
+	 *
+	 * @param list the list to save
+	 * @param file the file to save it to, which is overwritten if it exists
+	 * @throws ExtensionException if the file can't be written, or the list has
+	 *                            something in it that can't be saved
+	 */
+	public static void save(NetLogoMutableList list, Path file) throws ExtensionException {
+		boolean compress = file.getFileName() != null && file.getFileName().toString().endsWith(".gz");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+			out.write(MAGIC);
+			out.write(VERSION);
+			out.write(compress ? GZIP : PLAIN);
+			if (compress) {
+				out = new BufferedOutputStream(new GZIPOutputStream(out, BUFFER_SIZE), BUFFER_SIZE);
+			}
+			DataOutputStream data = new DataOutputStream(out);
+			new Writer(data).write(list);
+			data.close();
+		} catch (IOException e) {
+			throw new ExtensionException("Cannot save list to \"" + file + "\": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Load a list saved by {@link #save(NetLogoMutableList, Path)}. Turtles that
+	 * no longer exist are loaded as <code>nobody</code>.
+	 *
+	 * @param file  the file to load from
+	 * @param world the world to find turtles and patches in
+	 * @return the list
+	 * @throws ExtensionException if the file can't be read, or isn't a saved list
+	 */
+	public static NetLogoMutableList load(Path file, World world) throws ExtensionException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			InputStream in = new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+			byte[] magic = new byte[MAGIC.length];
+			DataInputStream header = new DataInputStream(in);
+			header.readFully(magic);
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (magic[i] != MAGIC[i]) {
+					throw new ExtensionException("\"" + file + "\" is not a saved list");
+				}
+			}
+			byte version = header.readByte();
+			if (version != VERSION) {
+				throw new ExtensionException("\"" + file + "\" was saved in version " + version
+						+ " of the format, which I cannot read");
+			}
+			switch (header.readByte()) {
+			case PLAIN:
+				break;
+			case GZIP:
+				in = new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+				break;
+			default:
+				throw new ExtensionException("\"" + file + "\" is compressed in a way I do not recognize");
+			}
+			Object obj = new Reader(new DataInputStream(in), world).read();
+			if (!(obj instanceof NetLogoMutableList)) {
+				throw new ExtensionException("\"" + file + "\" does not contain a mutable list");
+			}
+			return (NetLogoMutableList) obj;
+		} catch (EOFException e) {
+			throw new ExtensionException("\"" + file + "\" ends before the list does");
+		} catch (IOException e) {
+			throw new ExtensionException("Cannot load list from \"" + file + "\": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes items to a stream, remembering which mutable lists have been written
+	 *
+	 * @author gary
+	 */
+	private static class Writer {
+		private final DataOutputStream out;
+		private final Map<NetLogoMutableList, Integer> written = new IdentityHashMap<NetLogoMutableList, Integer>();
+
+		Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		/**
+		 * Write an item, and anything in it
+		 *
+		 * @param obj
+		 * @throws IOException
+		 * @throws ExtensionException if the item can't be saved
+		 */
+		void write(Object obj) throws IOException, ExtensionException {
+			if (obj instanceof Double) {
+				out.writeByte(NUMBER);
+				out.writeDouble((Double) obj);
+			} else if (obj instanceof String) {
+				out.writeByte(STRING);
+				// Not writeUTF(), which can't write strings longer than 64K bytes
+				byte[] bytes = ((String) obj).getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			} else if (obj instanceof Boolean) {
+				out.writeByte((Boolean) obj ? TRUE : FALSE);
+			} else if (obj instanceof Turtle) {
+				long who = ((Turtle) obj).id();
+				if (who < 0) {
+					// Dead turtle
+					out.writeByte(NOBODY);
+				} else {
+					out.writeByte(TURTLE);
+					out.writeLong(who);
+				}
+			} else if (obj instanceof Patch) {
+				out.writeByte(PATCH);
+				out.writeInt(((Patch) obj).pxcor());
+				out.writeInt(((Patch) obj).pycor());
+			} else if (obj == Nobody$.MODULE$) {
+				out.writeByte(NOBODY);
+			} else if (obj instanceof LogoList) {
+				LogoList list = (LogoList) obj;
+				out.writeByte(LOGO_LIST);
+				out.writeInt(list.size());
+				for (Object item : list.javaIterable()) {
+					write(item);
+				}
+			} else if (obj instanceof NetLogoMutableList) {
+				write((NetLogoMutableList) obj);
+			} else {
+				throw new ExtensionException("Cannot save a " + obj.getClass().getSimpleName() + " (value \""
+						+ obj.toString() + "\") -- only numbers, strings, booleans, turtles, patches, nobody and "
+						+ "lists can be saved");
+			}
+		}
+
+		/**
+		 * Write a mutable list, or a reference to it if it has already been
+		 * written
+		 *
+		 * @param list
+		 * @throws IOException
+		 * @throws ExtensionException if the list has something in it that can't be
+		 *                            saved
+		 */
+		void write(NetLogoMutableList list) throws IOException, ExtensionException {
+			Integer ref = written.get(list);
+			if (ref != null) {
+				out.writeByte(MUTABLE_LIST_REF);
+				out.writeInt(ref);
+				return;
+			}
+			written.put(list, written.size());
+			NetLogoMutableList.Storage storage = list.getStorage();
+			out.writeByte(MUTABLE_LIST);
+			out.writeByte(storage.ordinal());
+			out.writeInt(list.size());
+			if (storage == NetLogoMutableList.Storage.NUMERIC) {
+				for (Object item : list) {
+					out.writeDouble((Double) item);
+				}
+			} else {
+				for (Object item : list) {
+					write(item);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads items from a stream, remembering the mutable lists read so far
+	 *
+	 * @author gary
+	 */
+	private static class Reader {
+		private final DataInputStream in;
+		private final World world;
+		private final List<NetLogoMutableList> read = new ArrayList<NetLogoMutableList>();
+
+		Reader(DataInputStream in, World world) {
+			this.in = in;
+			this.world = world;
+		}
+
+		/**
+		 * Read an item, and anything in it
+		 *
+		 * @return the item
+		 * @throws IOException
+		 * @throws ExtensionException if the stream has something unrecognized in it
+		 */
+		Object read() throws IOException, ExtensionException {
+			byte type = in.readByte();
+			switch (type) {
+			case NOBODY:
+				return Nobody$.MODULE$;
+			case NUMBER:
+				return Double.valueOf(in.readDouble());
+			case STRING:
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				return new String(bytes, StandardCharsets.UTF_8);
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case TURTLE:
+				Turtle turtle = world.getTurtle(in.readLong());
+				return turtle == null ? Nobody$.MODULE$ : turtle;
+			case PATCH:
+				int x = in.readInt();
+				int y = in.readInt();
+				try {
+					return world.getPatchAt(x, y);
+				} catch (AgentException e) {
+					throw new ExtensionException("Cannot load patch " + x + " " + y + ": " + e.getMessage());
+				}
+			case LOGO_LIST:
+				LogoListBuilder builder = new LogoListBuilder();
+				for (int n = size(); n > 0; n--) {
+					builder.add(read());
+				}
+				return builder.toLogoList();
+			case MUTABLE_LIST:
+				return readList();
+			case MUTABLE_LIST_REF:
+				int ref = in.readInt();
+				if (ref < 0 || ref >= read.size()) {
+					throw new ExtensionException("Reference to mutable list " + ref + " before it has been loaded");
+				}
+				return read.get(ref);
+			default:
+				throw new ExtensionException("Unrecognized type of item " + type);
+			}
+		}
+
+		/**
+		 * Read a mutable list, pushing each item on to the end of it as it is read.
+		 * The list is remembered before its items are read, so that it can be
+		 * referred to by them.
+		 *
+		 * @return the list
+		 * @throws IOException
+		 * @throws ExtensionException
+		 */
+		NetLogoMutableList readList() throws IOException, ExtensionException {
+			int storage = in.readByte();
+			if (storage < 0 || storage >= NetLogoMutableList.Storage.values().length) {
+				throw new ExtensionException("Unrecognized type of mutable list " + storage);
+			}
+			NetLogoMutableList list = new NetLogoMutableList(NetLogoMutableList.Storage.values()[storage]);
+			read.add(list);
+			int n = size();
+			if (list.getStorage() == NetLogoMutableList.Storage.NUMERIC) {
+				for (; n > 0; n--) {
+					list.push(Double.valueOf(in.readDouble()));
+				}
+			} else {
+				for (; n > 0; n--) {
+					list.push(read());
+				}
+			}
+			return list;
+		}
+
+		/**
+		 * @return the number of items in a list
+		 * @throws IOException
+		 * @throws ExtensionException if the number is negative
+		 */
+		private int size() throws IOException, ExtensionException {
+			int n = in.readInt();
+			if (n < 0) {
+				throw new ExtensionException("List with " + n + " items");
+			}
+			return n;
+		}
+	}
+}
@@ -3,14 +3,15 @@
  */
 package uk.ac.hutton.netlogo.list;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.Stack;
 
 import java.lang.reflect.Array;
 
@@ -26,18 +27,56 @@ import java.lang.reflect.Array;
  * referenced for the list as a whole. The implementation is intended to disable
  * access to the objects containing other elements in the list.
  * 
- * N.B. the {@link #add(Object)} method is slow because it is assumed that you
- * will want to add something to the end of the list rather than the beginning.
- * Use {@link #unshift(Object)} if you don't mind adding things in reverse order
- * of what you want. You can {@link reverse()} the list afterwards.
+ * The 'front' also keeps a reference to the last element of the list, so that
+ * {@link #add(Object)}, {@link #push(Object)}, {@link #pop()} and
+ * {@link #cat(MutableList)} are O(1) rather than having to iterate to the end
+ * of the list. Every method that changes which element is last must keep this
+ * reference up to date; {@link #check(boolean, String)} verifies it.
  * 
  * @author Gary Polhill
  * @version 1.0, 5-Nov-2021
  */
-public class MutableList implements List<Object>, Cloneable {
+public class MutableList implements MutableSequence {
 	private Object head; // If null, then the list is empty or this is the front
 	private MutableList tail; // If null, then the list is empty or this is the last element
 	private MutableList prev; // If null, then this is the front or the list is empty
+	private MutableList end; // Only maintained on the front: the last element (the front itself if empty)
+	private boolean pinned; // Only maintained on the front: don't recycle removed elements (a cursor may be on one)
+
+	/**
+	 * A bounded pool of elements no longer in any list, so that lists used as
+	 * queues (adding at one end and removing from the other) don't have to
+	 * allocate a new element for everything they add. Elements removed by
+	 * {@link MutableList#shift()}, {@link MutableList#pop()} and
+	 * {@link MutableList#clear()} are put in the pool while there is room, and
+	 * {@link MutableList#add(Object)}, {@link MutableList#unshift(Object)},
+	 * {@link MutableList#addAll(Collection)} and
+	 * {@link MutableList#pushAll(Iterator)} take elements from it when it isn't
+	 * empty. The pool is empty and has no room by default.
+	 *
+	 * There is one pool per thread, so that simultaneous BehaviorSpace runs don't
+	 * share one.
+	 *
+	 * Elements removed from a list that has had {@link MutableList#pin()}
+	 * called on it (because a cursor has been made on it) are not put in the
+	 * pool.
+	 *
+	 * @author gary
+	 */
+	private static class Pool {
+		private MutableList free = null; // linked by tail
+		private int size = 0;
+		private int capacity = 0;
+		private long hits = 0;
+		private long misses = 0;
+	}
+
+	private static final ThreadLocal<Pool> POOL = new ThreadLocal<Pool>() {
+		@Override
+		protected Pool initialValue() {
+			return new Pool();
+		}
+	};
 
 	/**
 	 * Constructor returning an empty 'front' of a list
@@ -66,6 +105,121 @@ public class MutableList implements List<Object>, Cloneable {
 		this(head, prev, null);
 	}
 
+	/**
+	 * Get an element to link into a list, from the pool if there is one there,
+	 * otherwise using the main constructor
+	 * 
+	 * @param head the object to store at this member of the list (not
+	 *             <code>null</code>)
+	 * @param prev the previous member of the list
+	 * @param tail the tail of this member of the list
+	 * @return the element
+	 */
+	private static MutableList node(Object head, MutableList prev, MutableList tail) {
+		Pool pool = POOL.get();
+		if (pool.free == null) {
+			if (pool.capacity > 0) {
+				pool.misses++;
+			}
+			return new MutableList(head, prev, tail);
+		}
+		MutableList node = pool.free;
+		pool.free = node.tail;
+		pool.size--;
+		pool.hits++;
+		node.head = head;
+		node.prev = prev;
+		node.tail = tail;
+		prev.tail = node;
+		if (tail != null) {
+			tail.prev = node;
+		}
+		return node;
+	}
+
+	/**
+	 * Put an element that has been removed from a list in the pool, if there's
+	 * room. Its references must already have been cleared.
+	 * 
+	 * @param pool the pool
+	 * @param node the element
+	 */
+	private static void recycle(Pool pool, MutableList node) {
+		if (pool.size < pool.capacity) {
+			node.tail = pool.free;
+			pool.free = node;
+			pool.size++;
+		}
+	}
+
+	/**
+	 * Set the number of unused elements the current thread's pool can keep. If
+	 * the pool has more than this already, the extra ones are let go.
+	 * 
+	 * Elements are only recycled when they have been removed from their list by
+	 * shift(), pop() or clear(), so anything (such as a ListIterator) still
+	 * referring to one of them will be referring to an element of some other list
+	 * once it has been reused. So the pool should only be used when lists aren't
+	 * being iterated over while they're being shifted, popped or cleared, unless
+	 * {@link #pin()} has been called on them.
+	 * 
+	 * @param capacity the maximum number of elements in the pool (0 to turn
+	 *                 pooling off)
+	 * @throws IllegalArgumentException if capacity is negative
+	 */
+	public static void setPoolCapacity(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Cannot have a pool with negative capacity " + capacity);
+		}
+		Pool pool = POOL.get();
+		pool.capacity = capacity;
+		while (pool.size > capacity) {
+			MutableList node = pool.free;
+			pool.free = node.tail;
+			node.tail = null;
+			pool.size--;
+		}
+	}
+
+	/**
+	 * @return the number of unused elements the current thread's pool can keep
+	 */
+	public static int getPoolCapacity() {
+		return POOL.get().capacity;
+	}
+
+	/**
+	 * @return the number of unused elements in the current thread's pool
+	 */
+	public static int getPoolSize() {
+		return POOL.get().size;
+	}
+
+	/**
+	 * @return the proportion of elements needed while the current thread's pool
+	 *         has had room for any that were taken from it, or 0 if none have
+	 *         been needed (NetLogo numbers can't be NaN)
+	 */
+	public static double getPoolHitRate() {
+		Pool pool = POOL.get();
+		if (pool.hits + pool.misses == 0) {
+			return 0.0;
+		}
+		return (double) pool.hits / (double) (pool.hits + pool.misses);
+	}
+
+	/**
+	 * Empty the current thread's pool, and forget its hits and misses, but not
+	 * its capacity
+	 */
+	public static void clearPool() {
+		int capacity = getPoolCapacity();
+		setPoolCapacity(0);
+		POOL.get().hits = 0;
+		POOL.get().misses = 0;
+		setPoolCapacity(capacity);
+	}
+
 	/**
 	 * Main constructor -- all constructors should end up here
 	 * 
@@ -89,6 +243,7 @@ public class MutableList implements List<Object>, Cloneable {
 		this.head = head;
 		this.tail = tail;
 		this.prev = prev;
+		this.end = (head == null && prev == null) ? this : null;
 		if (prev != null) {
 			prev.tail = this;
 		}
@@ -250,6 +405,7 @@ public class MutableList implements List<Object>, Cloneable {
 			sub_next = new MutableList(next.head, sub_next);
 			next = fromIndex < toIndex ? next.tail : next.prev;
 		} while (next != to);
+		sub.end = sub_next;
 
 		return sub;
 	}
@@ -305,6 +461,287 @@ public class MutableList implements List<Object>, Cloneable {
 		}
 	}
 
+	/**
+	 * @return a new, empty index of positions in this list, which must be the
+	 *         front
+	 */
+	Checkpoints checkpoints() {
+		if (!isFront()) {
+			throw new RuntimeException("BUG! (Should not be able to index a list other than from the front)");
+		}
+		return new Checkpoints(this);
+	}
+
+	/**
+	 * An index of every {@link #STRIDE}th element of a list, so that the element
+	 * at any position can be found by walking at most about {@link #STRIDE} / 2
+	 * elements from the nearest checkpoint, the front or the end, rather than
+	 * O(N) from the front as {@link MutableList#get(int)} does.
+	 *
+	 * The index doesn't know when the list changes, so whoever changes the list
+	 * has to tell it. Adding and removing at the ends are repaired in O(1). Any
+	 * other change makes the checkpoints from the position changed onwards out of
+	 * date; they are rebuilt (walking the list from the last checkpoint still up
+	 * to date) the next time something after that position is looked up. Out of
+	 * date checkpoints are never followed, as their elements may have been
+	 * removed from the list.
+	 *
+	 * The checkpoints are at positions <code>j * STRIDE - origin</code> for
+	 * <code>j</code> from <code>lo</code> to <code>hi - 1</code>. Changing
+	 * <code>origin</code> moves them all at once when something is added to or
+	 * removed from the front.
+	 *
+	 * @author gary
+	 */
+	static class Checkpoints {
+		static final int STRIDE = 64;
+		private final MutableList front;
+		private MutableList[] nodes;
+		private int lo;
+		private int hi;
+		private int origin;
+		private int dirty; // checkpoints at this position onwards are out of date
+
+		private Checkpoints(MutableList front) {
+			this.front = front;
+			nodes = new MutableList[16];
+			lo = 4;
+			hi = lo;
+			origin = lo * STRIDE;
+			dirty = 0;
+		}
+
+		/**
+		 * @param j
+		 * @return the position of the jth checkpoint
+		 */
+		private int pos(int j) {
+			return j * STRIDE - origin;
+		}
+
+		/**
+		 * Make room for a checkpoint after the last one, reusing the space at the
+		 * beginning of the array if more than half of it has been shifted away
+		 */
+		private void roomAtEnd() {
+			if (hi < nodes.length) {
+				return;
+			}
+			int n = hi - lo;
+			MutableList[] to = (lo > nodes.length / 2) ? nodes : new MutableList[nodes.length * 2];
+			int newLo = (to == nodes) ? 1 : lo;
+			System.arraycopy(nodes, lo, to, newLo, n);
+			if (to == nodes) {
+				Arrays.fill(nodes, newLo + n, hi, null);
+			}
+			origin += (newLo - lo) * STRIDE;
+			nodes = to;
+			lo = newLo;
+			hi = newLo + n;
+		}
+
+		/**
+		 * Make room for a checkpoint before the first one
+		 */
+		private void roomAtFront() {
+			if (lo > 0) {
+				return;
+			}
+			int extra = nodes.length;
+			MutableList[] to = new MutableList[nodes.length * 2];
+			System.arraycopy(nodes, lo, to, lo + extra, hi - lo);
+			origin += extra * STRIDE;
+			nodes = to;
+			lo += extra;
+			hi += extra;
+		}
+
+		/**
+		 * Forget the checkpoints from the first one at or after <code>limit</code>
+		 * onwards
+		 *
+		 * @param limit a position
+		 */
+		private void truncate(int limit) {
+			while (hi > lo && pos(hi - 1) >= limit) {
+				hi--;
+				nodes[hi] = null;
+			}
+		}
+
+		/**
+		 * Bring the checkpoints up to date from <code>dirty</code> to the end of the
+		 * list
+		 *
+		 * @param size the length of the list
+		 */
+		private void repair(int size) {
+			truncate(Math.min(dirty, size));
+			if (hi == lo) {
+				if (size == 0) {
+					dirty = Integer.MAX_VALUE;
+					return;
+				}
+				origin = lo * STRIDE;
+				nodes[lo] = front.tail;
+				hi = lo + 1;
+			}
+			MutableList node = nodes[hi - 1];
+			for (int p = pos(hi - 1) + STRIDE; p < size; p += STRIDE) {
+				for (int k = 0; k < STRIDE; k++) {
+					node = node.tail;
+				}
+				roomAtEnd();
+				nodes[hi] = node;
+				hi++;
+			}
+			dirty = Integer.MAX_VALUE;
+		}
+
+		/**
+		 * Find the element at a position in the list
+		 *
+		 * @param index the position (must be in range)
+		 * @param size  the length of the list
+		 * @return the element
+		 */
+		private MutableList node(int index, int size) {
+			if (index >= dirty && index >= STRIDE && size - 1 - index >= STRIDE) {
+				repair(size);
+			}
+			MutableList start = front.tail;
+			int steps = index;
+			if (size - 1 - index < steps) {
+				start = front.end;
+				steps = index - (size - 1);
+			}
+			if (hi > lo) {
+				int limit = Math.min(dirty, size);
+				int j = Math.floorDiv(index + origin, STRIDE);
+				if (j >= hi) {
+					j = hi - 1;
+				}
+				if (j >= lo && pos(j) < limit && index - pos(j) < Math.abs(steps)) {
+					start = nodes[j];
+					steps = index - pos(j);
+				}
+				if (j + 1 >= lo && j + 1 < hi && pos(j + 1) < limit && pos(j + 1) - index < Math.abs(steps)) {
+					start = nodes[j + 1];
+					steps = index - pos(j + 1);
+				}
+			}
+			for (; steps > 0; steps--) {
+				start = start.tail;
+			}
+			for (; steps < 0; steps++) {
+				start = start.prev;
+			}
+			return start;
+		}
+
+		/**
+		 * @param index a position in the list (must be in range)
+		 * @param size  the length of the list
+		 * @return the object stored there
+		 */
+		Object get(int index, int size) {
+			return node(index, size).head;
+		}
+
+		/**
+		 * @param index a position in the list (must be in range)
+		 * @param size  the length of the list
+		 * @param obj   the object to store there (not <code>null</code>)
+		 * @return the object stored there before
+		 */
+		Object set(int index, int size, Object obj) {
+			MutableList node = node(index, size);
+			Object old = node.head;
+			node.head = obj;
+			return old;
+		}
+
+		/**
+		 * @param index a position in the list, which may be its length
+		 * @param size  the length of the list
+		 * @return a ListIterator whose next element is at that position
+		 */
+		ListIterator<Object> listIterator(int index, int size) {
+			return front.new MutableListIterator(index == 0 ? front : node(index - 1, size), index);
+		}
+
+		/**
+		 * Something has been added to the end of the list
+		 *
+		 * @param size the new length of the list
+		 */
+		void pushed(int size) {
+			if (dirty == Integer.MAX_VALUE && pos(hi) == size - 1) {
+				roomAtEnd();
+				nodes[hi] = front.end;
+				hi++;
+			}
+		}
+
+		/**
+		 * Something has been removed from the end of the list
+		 *
+		 * @param size the new length of the list
+		 */
+		void popped(int size) {
+			truncate(size);
+		}
+
+		/**
+		 * Something has been added to the front of the list
+		 *
+		 * @param size the new length of the list
+		 */
+		void unshifted(int size) {
+			origin--;
+			if (dirty != Integer.MAX_VALUE) {
+				dirty++;
+			}
+			if (pos(lo - 1) == 0 && (hi > lo || dirty == Integer.MAX_VALUE)) {
+				roomAtFront();
+				lo--;
+				nodes[lo] = front.tail;
+			}
+		}
+
+		/**
+		 * Something has been removed from the front of the list
+		 *
+		 * @param size the new length of the list
+		 */
+		void shifted(int size) {
+			origin++;
+			if (dirty != Integer.MAX_VALUE) {
+				dirty = Math.max(dirty - 1, 0);
+			}
+			if (hi > lo && pos(lo) < 0) {
+				nodes[lo] = null;
+				lo++;
+			}
+		}
+
+		/**
+		 * The list has changed from a position onwards in a way that can't be
+		 * repaired straight away (e.g. an insertion or deletion with a cursor, or
+		 * sorting)
+		 *
+		 * @param index the first position that may have changed
+		 */
+		void changed(int index) {
+			if (index <= 0) {
+				truncate(Integer.MIN_VALUE);
+				dirty = 0;
+			} else if (index < dirty) {
+				dirty = index;
+			}
+		}
+	}
+
 	/**
 	 * @return <code>true</code> if this is the front of the list
 	 */
@@ -313,12 +750,16 @@ public class MutableList implements List<Object>, Cloneable {
 	}
 
 	/**
-	 * Slow (O(N)) way of getting the last element of the list, iteratively (i.e.
+	 * Get the last element of the list. This is O(1) if called on the front, which
+	 * keeps a reference to it; otherwise it is a slow (O(N)) iteration (i.e.
 	 * non-recursively without relying on the stack)
 	 * 
 	 * @return the last element of the list
 	 */
 	protected MutableList last() {
+		if (isFront()) {
+			return end;
+		}
 		MutableList i = this;
 
 		while (i.tail != null) {
@@ -487,8 +928,9 @@ public class MutableList implements List<Object>, Cloneable {
 	 * @return an iterator that will iterate (recursively) through elements that are
 	 *         MutableLists
 	 */
+	@Override
 	public Iterator<Object> depthFirstIterator() {
-		return new DepthFirstMutableListIterator(this);
+		return new DepthFirstIterator(this);
 	}
 
 	/**
@@ -581,13 +1023,8 @@ public class MutableList implements List<Object>, Cloneable {
 	}
 
 	/**
-	 * Adds an item to the end of the list -- so it will be slow (O(N) where N is
-	 * the length of the list) If you're more concerned with speed than ordering,
-	 * use {@link #unshift(Object)}.
-	 * 
-	 * Repeated adding of several items will be O(N^2) where N is the number of
-	 * items to add. That's because each successive add() will iterate through the
-	 * whole list so far. Use {@link #addAll(Collection)} instead.
+	 * Adds an item to the end of the list. O(1), as the front keeps a reference to
+	 * the last element.
 	 * 
 	 * @param o the object to add; must not be <code>null</code>
 	 * @return <code>true</code> -- this will always succeed
@@ -598,14 +1035,14 @@ public class MutableList implements List<Object>, Cloneable {
 		if (o == null) {
 			throw new NullPointerException("Cannot add() a null to a MutableList");
 		}
-		MutableList end = last();
-		end.tail = new MutableList(o, end, null);
+		end = node(o, last(), null);
 		return true;
 	}
 
 	/**
-	 * Adds all the elements in the collection to the end of the list in order. O(N
-	 * + M) where N is the length of this list, and M is the size of the collection.
+	 * Adds all the elements in the collection to the end of the list in order. O(M)
+	 * where M is the size of the collection. If the collection is this list, a
+	 * copy of it is added, rather than everything added so far, forever.
 	 * 
 	 * @param c the collection to add
 	 * @return <code>true</code>
@@ -615,28 +1052,69 @@ public class MutableList implements List<Object>, Cloneable {
 		if (c == null) {
 			throw new NullPointerException("Attempt to add from null collection");
 		}
+		if (c == this) {
+			c = Arrays.asList(toArray());
+		}
 		MutableList next = last();
 		for (Object o : c) {
 			if (o == null) {
 				throw new NullPointerException("MutableList does not except null elements");
 			}
-			next = new MutableList(o, next);
+			next = node(o, next, null);
+			end = next;
 		}
 		return true;
 	}
 
+	/**
+	 * Bulk building of the list from an iterator. The elements are linked on in a
+	 * single pass without copying them anywhere first, and the reference to the
+	 * last element is only updated at the end. O(M) where M is the number of
+	 * elements the iterator gives.
+	 *
+	 * @param ix the iterator
+	 * @return the number of elements added
+	 * @throws NullPointerException if the iterator gives <code>null</code> (the
+	 *                              elements before it will have been added)
+	 */
+	@Override
+	public int pushAll(Iterator<? extends Object> ix) {
+		if (!isFront()) {
+			throw new RuntimeException("BUG! (Should not be able to pushAll() to anything other than the 'front')");
+		}
+		MutableList last = end;
+		int n = 0;
+		try {
+			while (ix.hasNext()) {
+				Object o = ix.next();
+				if (o == null) {
+					throw new NullPointerException("MutableList does not accept null elements");
+				}
+				last = node(o, last, null);
+				n++;
+			}
+		} finally {
+			end = last;
+		}
+		return n;
+	}
+
 	/**
 	 * Adds an item to the front of the list.
 	 * 
 	 * @param o the object to add; must not be <code>null</code>
 	 * @throws IllegalArgumentException if <code>o == null</code>
 	 */
+	@Override
 	public void unshift(Object o) {
 		if (o == null) {
 			throw new IllegalArgumentException("Cannot unshift() a null to a MutableList");
 		}
 		if (isFront()) {
-			tail = new MutableList(o, this, tail);
+			tail = node(o, this, tail);
+			if (end == this) {
+				end = tail;
+			}
 		} else {
 			throw new RuntimeException("BUG! (Should not be able to unshift() to anything other than the 'front')");
 		}
@@ -647,6 +1125,7 @@ public class MutableList implements List<Object>, Cloneable {
 	 * 
 	 * @param o object to add to the end of the list
 	 */
+	@Override
 	public void push(Object o) {
 		add(o);
 	}
@@ -670,11 +1149,15 @@ public class MutableList implements List<Object>, Cloneable {
 			throw new IndexOutOfBoundsException("MutableList has no index " + index);
 		}
 		new MutableList(element, loc, loc.tail);
+		if (end == loc) {
+			end = loc.tail;
+		}
 	}
 
 	/**
 	 * Adds all the elements in the collection at the specified point. This will be
-	 * faster than calling @{link #add(int)} repeatedly, but is still O(N).
+	 * faster than calling @{link #add(int)} repeatedly, but is still O(N). If the
+	 * collection is this list, a copy of it is added.
 	 * 
 	 * @param index the point at which to start adding elements from the collection
 	 * @param c     the collection
@@ -696,6 +1179,9 @@ public class MutableList implements List<Object>, Cloneable {
 			throw new IndexOutOfBoundsException("Mutable list has too few elements to add at position " + index);
 		}
 
+		if (c == this) {
+			c = Arrays.asList(toArray());
+		}
 		MutableList rest = element.tail;
 		MutableList next = element;
 
@@ -708,6 +1194,8 @@ public class MutableList implements List<Object>, Cloneable {
 		next.tail = rest;
 		if (rest != null) {
 			rest.prev = next;
+		} else {
+			end = next;
 		}
 
 		return true;
@@ -725,8 +1213,12 @@ public class MutableList implements List<Object>, Cloneable {
 		for (MutableList i = this; i.tail != null; i = i.tail) {
 			if (i.tail.head.equals(o)) {
 				MutableList j = i.tail;
-				i.tail = i.tail.tail;
-				i.tail.prev = i;
+				i.tail = j.tail;
+				if (i.tail != null) {
+					i.tail.prev = i;
+				} else {
+					end = i;
+				}
 				j.shallowClear();
 				return true;
 			}
@@ -744,33 +1236,24 @@ public class MutableList implements List<Object>, Cloneable {
 	 */
 	@Override
 	public boolean removeAll(Collection<?> c) {
+		return removeAllCount(c) > 0;
+	}
+
+	/**
+	 * As {@link #removeAll(Collection)}
+	 * 
+	 * @param c the collection all of which are to be removed from the list
+	 * @return the number of elements removed
+	 */
+	@Override
+	public int removeAllCount(Collection<?> c) {
 		if (isEmpty()) {
-			return false;
+			return 0;
 		}
 		if (!isFront()) {
 			throw new RuntimeException("BUG! (Somehow able to removeAll() non-'front' MutableList)");
 		}
-
-		Set<Object> cc = makeSet(c);
-		int n_removed = 0;
-
-		for (MutableList i = this; i != null && i.tail != null; i = i.tail) {
-			MutableList j = i.tail;
-			while (j != null && cc.contains(j.head)) {
-				MutableList k = j;
-
-				j = k.tail;
-				k.shallowClear();
-				n_removed++;
-			}
-			i.tail = j;
-			if (j != null) {
-				j.prev = i;
-			}
-		}
-
-		cc.clear();
-		return (n_removed > 0);
+		return filter(makeSet(c), false);
 	}
 
 	/**
@@ -782,19 +1265,40 @@ public class MutableList implements List<Object>, Cloneable {
 	 */
 	@Override
 	public boolean retainAll(Collection<?> c) {
+		return retainAllCount(c) > 0;
+	}
+
+	/**
+	 * As {@link #retainAll(Collection)}
+	 * 
+	 * @param c the collection of items from which this list must only have elements
+	 * @return the number of elements removed
+	 */
+	@Override
+	public int retainAllCount(Collection<?> c) {
 		if (isEmpty()) {
-			return false;
+			return 0;
 		}
 		if (!isFront()) {
 			throw new RuntimeException("BUG! (Somehow able to retainAll() non-'front' MutableList)");
 		}
+		return filter(makeSet(c), true);
+	}
 
-		Set<Object> cc = makeSet(c);
+	/**
+	 * Unlink the elements that are in the set (if <code>retain</code> is
+	 * <code>false</code>) or aren't (if it is <code>true</code>)
+	 * 
+	 * @param cc     the set
+	 * @param retain whether to keep or remove the elements in the set
+	 * @return the number of elements removed
+	 */
+	private int filter(Set<Object> cc, boolean retain) {
 		int n_removed = 0;
 
 		for (MutableList i = this; i != null && i.tail != null; i = i.tail) {
 			MutableList j = i.tail;
-			while (j != null && !cc.contains(j.head)) {
+			while (j != null && cc.contains(j.head) != retain) {
 				MutableList k = j;
 
 				j = k.tail;
@@ -804,11 +1308,13 @@ public class MutableList implements List<Object>, Cloneable {
 			i.tail = j;
 			if (j != null) {
 				j.prev = i;
+			} else {
+				end = i;
 			}
 		}
 
 		cc.clear();
-		return (n_removed > 0);
+		return n_removed;
 	}
 
 	/**
@@ -827,7 +1333,11 @@ public class MutableList implements List<Object>, Cloneable {
 			throw new IndexOutOfBoundsException("MutableList has no index " + index);
 		}
 		loc.prev.tail = loc.tail;
-		loc.tail.prev = loc.prev;
+		if (loc.tail != null) {
+			loc.tail.prev = loc.prev;
+		} else {
+			end = loc.prev;
+		}
 		Object entry = loc.head;
 		loc.shallowClear();
 		return entry;
@@ -839,6 +1349,7 @@ public class MutableList implements List<Object>, Cloneable {
 	 * @return the object removed from the front of the list
 	 * @throws NoSuchElementException if the list is empty
 	 */
+	@Override
 	public Object shift() {
 		if (isFront()) {
 			if (tail == null) {
@@ -848,9 +1359,14 @@ public class MutableList implements List<Object>, Cloneable {
 				tail = next.tail;
 				if (tail != null) {
 					tail.prev = this;
+				} else {
+					end = this;
 				}
 				Object o = next.head;
 				next.shallowClear();
+				if (!pinned) {
+					recycle(POOL.get(), next);
+				}
 				return o;
 			}
 		} else {
@@ -859,19 +1375,24 @@ public class MutableList implements List<Object>, Cloneable {
 	}
 
 	/**
-	 * Removes the last item on the list and returns it. Will be slow (O(N)).
+	 * Removes the last item on the list and returns it. O(1).
 	 * 
 	 * @return the object removed from the end of the list
 	 * @throws NoSuchElementException if the list is empty
 	 */
+	@Override
 	public Object pop() {
 		if (isEmpty()) {
 			throw new NoSuchElementException("Cannot pop from empty MutableList");
 		}
-		MutableList end = last();
-		Object obj = end.head;
-		end.prev.tail = null;
-		end.shallowClear();
+		MutableList popped = last();
+		Object obj = popped.head;
+		end = popped.prev;
+		end.tail = null;
+		popped.shallowClear();
+		if (!pinned) {
+			recycle(POOL.get(), popped);
+		}
 		return obj;
 	}
 
@@ -882,8 +1403,11 @@ public class MutableList implements List<Object>, Cloneable {
 	 */
 	@Override
 	public void clear() {
-		for (MutableList i = tail; i != null; i = i.tail) {
-			i.prev.tail = null;
+		Pool pool = POOL.get();
+		MutableList i = tail;
+		while (i != null) {
+			MutableList next = i.tail;
+			i.tail = null;
 			i.prev = null;
 			if (i.head instanceof MutableList) {
 				((MutableList) (i.head)).clear();
@@ -891,10 +1415,15 @@ public class MutableList implements List<Object>, Cloneable {
 				((NetLogoMutableList) (i.head)).clear();
 			}
 			i.head = null;
+			if (!pinned) {
+				recycle(pool, i);
+			}
+			i = next;
 		}
 		head = null; // Paranoid; should be null already if this is the front
 		prev = null; // Paranoid; should be null already if this is the front
 		tail = null; // Paranoid; should be null already if list is empty or loop above worked
+		end = this;
 	}
 
 	/**
@@ -929,6 +1458,7 @@ public class MutableList implements List<Object>, Cloneable {
 			}
 			next = new MutableList(newObj, next);
 		}
+		copy.end = next;
 		return copy;
 	}
 
@@ -952,12 +1482,14 @@ public class MutableList implements List<Object>, Cloneable {
 	/**
 	 * Reverse the list in place
 	 */
+	@Override
 	public void reverse() {
 		if (!isFront()) {
 			throw new RuntimeException("BUG! (Should not be able to reverse starting from other than front)");
 		}
 
 		MutableList last = null;
+		end = (tail == null) ? this : tail;
 		// N.B. Deliberately setting i = i.prev in the next line; we're looping forward
 		// through the list that will be reversed by the end of the loop, and the first
 		// line sets i.prev = i.tail
@@ -972,6 +1504,105 @@ public class MutableList implements List<Object>, Cloneable {
 		}
 	}
 
+	/**
+	 * Sort the list in place. This is a stable, bottom-up merge sort that relinks
+	 * the elements rather than copying them to an array and back (which is what
+	 * <code>List</code>'s default implementation does). It is O(N log N), and the
+	 * only extra memory it needs is an array of 32 references.
+	 *
+	 * The elements are taken from the list one at a time and merged into sorted
+	 * runs of length 1, 2, 4, 8, ..., which are kept in 'bins'. Merging runs that
+	 * have just been merged keeps the work to recently visited elements, which is
+	 * much kinder to the cache than repeatedly traversing the whole list.
+	 *
+	 * Only the <code>tail</code> links are changed while sorting, so if the
+	 * comparator throws an exception, the list is put back as it was using the
+	 * <code>prev</code> links before the exception is passed on.
+	 *
+	 * @param c the comparator; if <code>null</code>, the elements' natural
+	 *          ordering is used
+	 */
+	@Override
+	public void sort(Comparator<? super Object> c) {
+		if (!isFront()) {
+			throw new RuntimeException("BUG! (Should not be able to sort starting from other than front)");
+		}
+		if (tail == null || tail.tail == null) {
+			return;
+		}
+
+		MutableList[] bins = new MutableList[32]; // bins[i] is null or a sorted run of 2^i elements
+		MutableList rest = tail;
+		try {
+			while (rest != null) {
+				MutableList run = rest;
+				rest = rest.tail;
+				run.tail = null;
+				int i = 0;
+				while (bins[i] != null) {
+					// Elements in the bin came before those in the run
+					run = merge(bins[i], run, c);
+					bins[i] = null;
+					i++;
+				}
+				bins[i] = run;
+			}
+			MutableList sorted = null;
+			for (int i = 0; i < bins.length; i++) {
+				if (bins[i] != null) {
+					sorted = (sorted == null) ? bins[i] : merge(bins[i], sorted, c);
+				}
+			}
+			tail = sorted;
+		} catch (RuntimeException e) {
+			for (MutableList i = end; i != this; i = i.prev) {
+				i.prev.tail = i;
+			}
+			end.tail = null;
+			throw e;
+		}
+		MutableList i = this;
+		while (i.tail != null) {
+			i.tail.prev = i;
+			i = i.tail;
+		}
+		end = i;
+	}
+
+	/**
+	 * Merge two sorted runs of elements linked by <code>tail</code> (but not by
+	 * <code>prev</code>) for sort(). Where elements are equal, those in
+	 * <code>a</code> go first.
+	 *
+	 * @param a the first run
+	 * @param b the second run
+	 * @param c the comparator (or <code>null</code> for natural ordering)
+	 * @return the first element of the merged run
+	 */
+	@SuppressWarnings("unchecked")
+	private static MutableList merge(MutableList a, MutableList b, Comparator<? super Object> c) {
+		MutableList first = null;
+		MutableList last = null;
+		while (a != null && b != null) {
+			MutableList e;
+			if ((c == null) ? ((Comparable<Object>) b.head).compareTo(a.head) < 0 : c.compare(b.head, a.head) < 0) {
+				e = b;
+				b = b.tail;
+			} else {
+				e = a;
+				a = a.tail;
+			}
+			if (last == null) {
+				first = e;
+			} else {
+				last.tail = e;
+			}
+			last = e;
+		}
+		last.tail = (a != null) ? a : b;
+		return first;
+	}
+
 	public Object first() {
 		try {
 			return tail.head;
@@ -1141,6 +1772,7 @@ public class MutableList implements List<Object>, Cloneable {
 	 * @return <code>true</code> if, as far as the checks performed here are
 	 *         concerned, the structure of the list is sound
 	 */
+	@Override
 	public boolean check(boolean msg, String msgPrefix) {
 		if (!isFront()) {
 			if (msg) {
@@ -1163,6 +1795,12 @@ public class MutableList implements List<Object>, Cloneable {
 		MutableList j = this;
 		int ix = 0;
 		boolean ret = true;
+		if (end == null) {
+			if (msg) {
+				System.err.println(msgPrefix + ": Front element has null end");
+			}
+			return false;
+		}
 		for (MutableList i = tail; i != null; i = i.tail) {
 			if (i.prev == null) {
 				System.err.println(msgPrefix + ": Element " + ix + " has null prev");
@@ -1181,6 +1819,11 @@ public class MutableList implements List<Object>, Cloneable {
 			j = i;
 			ix++;
 		}
+		if (end != j) {
+			System.err.println(msgPrefix + ": Front element's end does not point to the last element (end's head is \""
+					+ end.head + "\"; expecting head \"" + j.head + "\")");
+			ret = false;
+		}
 		return ret;
 	}
 
@@ -1192,6 +1835,7 @@ public class MutableList implements List<Object>, Cloneable {
 		return asPrintableString("[ ", sep, " ]");
 	}
 
+	@Override
 	public String asPrintableString(String start, String sep, String end) {
 		StringBuffer buf = new StringBuffer();
 
@@ -1233,17 +1877,104 @@ public class MutableList implements List<Object>, Cloneable {
 	}
 
 	/**
-	 * Add other to the end of this list, and empty other
+	 * Add other to the end of this list, and empty other. O(1) if other is a
+	 * MutableList, otherwise O(M) where M is the length of other.
+	 * 
+	 * @param other
+	 */
+	@Override
+	public void cat(MutableSequence other) {
+		if (other instanceof MutableList) {
+			cat((MutableList) other);
+		} else {
+			addAll(other);
+			other.clear();
+		}
+	}
+
+	/**
+	 * Add other to the end of this list, and empty other. O(1).
 	 * 
 	 * @param other
 	 */
 	public void cat(MutableList other) {
-		MutableList end = last();
-		end.tail = other.tail;
-		if (other.tail != null) {
-			other.tail.prev = end;
+		if (other.tail == null) {
+			return;
 		}
+		MutableList last = last();
+		last.tail = other.tail;
+		other.tail.prev = last;
+		end = other.end;
 		other.tail = null;
+		other.end = other;
+		// Any cursor on other may be on one of the elements now in this list
+		pinned |= other.pinned;
+	}
+
+	/**
+	 * Stop elements removed from this list by shift(), pop() or clear() being put
+	 * in the pool, because something that can't be told when it is no longer
+	 * needed (a NetLogo cursor) is iterating over it. Were a removed element the
+	 * cursor was on reused in another list, the cursor would carry on through
+	 * that list rather than fail. There is no way to undo this, as NetLogo
+	 * cursors are never closed.
+	 */
+	void pin() {
+		pinned = true;
+	}
+
+	/**
+	 * Cut this list in two at an iterator's position, so that the elements after
+	 * the iterator are moved to a new list. O(1), as the elements are relinked
+	 * rather than copied. The iterator is left at the end of this list, and can't
+	 * be used to remove or set until it has been moved.
+	 * 
+	 * @param ix an iterator over this list
+	 * @return a new list containing the elements that were after the iterator
+	 */
+	MutableList split(ListIterator<Object> ix) {
+		return iteratorOver(ix).split();
+	}
+
+	/**
+	 * Move all the elements of another list into this one at an iterator's
+	 * position, and empty the other list. O(1), as the elements are relinked
+	 * rather than copied. The iterator is left after the last of them, as if they
+	 * had been added with it.
+	 * 
+	 * @param ix    an iterator over this list
+	 * @param other the list to move the elements from (not this one)
+	 * @param n     the number of elements in the other list
+	 */
+	void splice(ListIterator<Object> ix, MutableList other, int n) {
+		if (other == this) {
+			throw new IllegalArgumentException("Cannot splice a MutableList into itself");
+		}
+		iteratorOver(ix).splice(other, n);
+	}
+
+	/**
+	 * Get the element an iterator's remove() or set() would apply to, as it is in
+	 * the list now, rather than as it was when next() or previous() returned it
+	 * (it may have been set through another iterator since)
+	 * 
+	 * @param ix an iterator over this list
+	 * @return the element
+	 * @throws IllegalStateException if remove() or set() couldn't be called
+	 */
+	Object current(ListIterator<Object> ix) {
+		return iteratorOver(ix).current();
+	}
+
+	/**
+	 * @param ix an iterator
+	 * @return the iterator, if it is an iterator over this list
+	 */
+	private MutableListIterator iteratorOver(ListIterator<Object> ix) {
+		if (!(ix instanceof MutableListIterator) || ((MutableListIterator) ix).front() != this) {
+			throw new RuntimeException("BUG! (Iterator is not over this MutableList)");
+		}
+		return (MutableListIterator) ix;
 	}
 
 	/**
@@ -1253,6 +1984,7 @@ public class MutableList implements List<Object>, Cloneable {
 	 * @param objs
 	 * @return <code>true</code> if at least one of the objs is in the list
 	 */
+	@Override
 	public boolean containsAny(Collection<?> objs) {
 		Set<Object> cc = makeSet(objs);
 
@@ -1273,6 +2005,7 @@ public class MutableList implements List<Object>, Cloneable {
 	 * @return <code>true</code> if at least one of the objs is in the list or any
 	 *         list members
 	 */
+	@Override
 	public boolean containsDeeply(Object obj) {
 		if (obj == null) {
 			return false;
@@ -1414,15 +2147,18 @@ public class MutableList implements List<Object>, Cloneable {
 			if (i.isFront() && i.tail == null) {
 				throw new IllegalStateException("Cannot remove() from empty list");
 			}
-			if (i.prev == null) {
+			// After previous() back to the front, i is the front and the item to remove
+			// is its tail
+			MutableList delete_me = (dir < 0) ? i.tail : i;
+			if (delete_me.prev == null) {
 				throw new RuntimeException("BUG! (Item to remove has no 'prev')");
 			}
-
-			MutableList delete_me = (dir < 0) ? i.tail : i;
 			i = delete_me.prev;
 			i.tail = delete_me.tail;
 			if (i.tail != null) {
 				i.tail.prev = i;
+			} else {
+				MutableList.this.end = i;
 			}
 			delete_me.shallowClear();
 			removed = true;
@@ -1441,7 +2177,8 @@ public class MutableList implements List<Object>, Cloneable {
 				throw new IllegalStateException(
 						"Cannot set() MutableList entry when you've already add()ed or remove()d");
 			}
-			i.head = o;
+			// After previous(), the element returned is the one after i
+			((dir < 0) ? i.tail : i).head = o;
 		}
 
 		@Override
@@ -1451,56 +2188,79 @@ public class MutableList implements List<Object>, Cloneable {
 			}
 
 			new MutableList(o, i, i.tail);
+			if (MutableList.this.end == i) {
+				MutableList.this.end = i.tail;
+			}
 			dx += 1.0;
 			i = i.tail;
 			added = true;
 		}
 
-	}
-
-	private class DepthFirstMutableListIterator implements Iterator<Object> {
-		MutableList i;
-		Stack<MutableList> backtrack;
+		/**
+		 * @return the element remove() or set() would apply to
+		 */
+		private Object current() {
+			if (dir == 0 || removed || added) {
+				throw new IllegalStateException("No current MutableList entry to remove() or set()");
+			}
+			return ((dir < 0) ? i.tail : i).head;
+		}
 
-		private DepthFirstMutableListIterator(MutableList i) {
-			this.i = i;
-			backtrack = new Stack<MutableList>();
+		/**
+		 * @return the front of the list this is iterating over
+		 */
+		private MutableList front() {
+			return MutableList.this;
 		}
 
-		@Override
-		public boolean hasNext() {
-			return !(i.tail == null && backtrack.size() == 0);
+		/**
+		 * Move the elements after the iterator to a new list
+		 * 
+		 * @return the new list
+		 */
+		private MutableList split() {
+			MutableList rest = new MutableList();
+			if (i.tail != null) {
+				rest.tail = i.tail;
+				rest.tail.prev = rest;
+				rest.end = MutableList.this.end;
+				i.tail = null;
+				MutableList.this.end = i;
+			}
+			// After previous(), remove() and set() would apply to an element now in rest
+			dir = 0;
+			removed = false;
+			added = false;
+			return rest;
 		}
 
-		@Override
-		public Object next() {
-			boolean popped = false;
-			if (i.tail == null) {
-				if (backtrack.size() == 0) {
-					throw new NoSuchElementException("Reached end of depth-first search of MutableList");
-				}
-				i = backtrack.pop();
-				popped = true;
-			}
-			i = popped ? i : i.tail;
-			while (i.head instanceof MutableList || i.head instanceof NetLogoMutableList) {
-				MutableList ihead = (i.head instanceof MutableList) ? (MutableList) (i.head)
-						: ((NetLogoMutableList) i.head).getList();
-
-				if (ihead.isEmpty()) {
-					if (i.tail == null) {
-						return null;
-					}
-					i = i.tail;
-				} else {
-					if (i.tail != null) {
-						backtrack.push(i.tail);
-					}
-					i = ihead.tail;
-				}
+		/**
+		 * Relink the elements of another list in at the iterator, and empty it
+		 * 
+		 * @param other the other list
+		 * @param n     the number of elements in it
+		 */
+		private void splice(MutableList other, int n) {
+			if (other.tail == null) {
+				return;
 			}
-			return i.head;
+			MutableList last = other.end;
+			last.tail = i.tail;
+			if (i.tail != null) {
+				i.tail.prev = last;
+			} else {
+				MutableList.this.end = last;
+			}
+			i.tail = other.tail;
+			other.tail.prev = i;
+			other.tail = null;
+			other.end = other;
+			MutableList.this.pinned |= other.pinned;
+			dx += (double) n;
+			i = last;
+			added = true;
 		}
 
 	}
+
 }
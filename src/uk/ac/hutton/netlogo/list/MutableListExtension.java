@@ -3,9 +3,14 @@
  */
 package uk.ac.hutton.netlogo.list;
 
+import java.util.List;
+
 import org.nlogo.api.DefaultClassManager;
 import org.nlogo.api.ExtensionException;
+import org.nlogo.api.ExtensionManager;
+import org.nlogo.api.ImportErrorHandler;
 import org.nlogo.api.PrimitiveManager;
+import org.nlogo.core.ExtensionObject;
 
 /**
  * Implementation of the extension adding all the commands provided by this
@@ -20,6 +25,7 @@ public class MutableListExtension extends DefaultClassManager {
 	public void load(PrimitiveManager primManager) throws ExtensionException {
 		primManager.addPrimitive("as-list", new ListReporter(ListReporter.Name.AS_LIST));
 		primManager.addPrimitive("as-list-deeply", new ListReporter(ListReporter.Name.AS_LIST_DEEPLY));
+		primManager.addPrimitive("await-exports", new ListCommand(ListCommand.Name.AWAIT_EXPORTS));
 		primManager.addPrimitive("cat", new ListCommand(ListCommand.Name.CAT));
 		primManager.addPrimitive("clear", new ListCommand(ListCommand.Name.CLEAR));
 		primManager.addPrimitive("copy", new ListReporter(ListReporter.Name.COPY));
@@ -27,12 +33,17 @@ public class MutableListExtension extends DefaultClassManager {
 		primManager.addPrimitive("cursor", new ListReporter(ListReporter.Name.CURSOR));
 		primManager.addPrimitive("deep-member?", new ListReporter(ListReporter.Name.DEEP_MEMBER));
 		primManager.addPrimitive("delete", new IndexCommand(IndexCommand.Name.DELETE));
+		primManager.addPrimitive("delete-n", new IndexCommand(IndexCommand.Name.DELETE_N));
 		primManager.addPrimitive("empty?", new ListReporter(ListReporter.Name.IS_EMPTY));
+		primManager.addPrimitive("export-async", new ListCommand(ListCommand.Name.EXPORT_ASYNC));
 		primManager.addPrimitive("filter", new ListCommand(ListCommand.Name.FILTER));
 		primManager.addPrimitive("foreach", new ListCommand(ListCommand.Name.FOREACH));
 		primManager.addPrimitive("foreach-depth-first", new ListCommand(ListCommand.Name.FOREACH_DEPTH_FIRST));
 		primManager.addPrimitive("from-agentset", new ListReporter(ListReporter.Name.FROM_AGENTSET));
+		primManager.addPrimitive("from-csv", new ListReporter(ListReporter.Name.FROM_CSV));
+		primManager.addPrimitive("from-file", new ListReporter(ListReporter.Name.FROM_FILE));
 		primManager.addPrimitive("from-list", new ListReporter(ListReporter.Name.FROM_LIST));
+		primManager.addPrimitive("from-list-numeric", new ListReporter(ListReporter.Name.FROM_LIST_NUMERIC));
 		primManager.addPrimitive("fpop", new ListReporter(ListReporter.Name.SHIFT));
 		primManager.addPrimitive("fpush", new ListCommand(ListCommand.Name.UNSHIFT));
 		primManager.addPrimitive("fpush-all", new ListCommand(ListCommand.Name.UNSHIFT_ALL));
@@ -40,16 +51,25 @@ public class MutableListExtension extends DefaultClassManager {
 		primManager.addPrimitive("has-right?", new IndexReporter(IndexReporter.Name.HASRIGHT));
 		primManager.addPrimitive("histogram", new ListReporter(ListReporter.Name.HISTOGRAM));
 		primManager.addPrimitive("insert", new IndexCommand(IndexCommand.Name.INSERT));
+		primManager.addPrimitive("insert-all", new IndexCommand(IndexCommand.Name.INSERT_ALL));
 		primManager.addPrimitive("intersects?", new ListReporter(ListReporter.Name.INTERSECTS));
 		primManager.addPrimitive("is-cursor?", new IndexReporter(IndexReporter.Name.IS_INDEX));
 		primManager.addPrimitive("is-list?", new ListReporter(ListReporter.Name.IS_LIST));
+		primManager.addPrimitive("is-pq?", new PriorityQueueReporter(PriorityQueueReporter.Name.IS_PQ));
+		primManager.addPrimitive("item", new ListReporter(ListReporter.Name.ITEM));
 		primManager.addPrimitive("keep", new ListCommand(ListCommand.Name.KEEP));
 		primManager.addPrimitive("left", new IndexReporter(IndexReporter.Name.LEFT));
 		primManager.addPrimitive("length", new ListReporter(ListReporter.Name.LENGTH));
+		primManager.addPrimitive("load", new ListReporter(ListReporter.Name.LOAD));
 		primManager.addPrimitive("lpop", new ListReporter(ListReporter.Name.POP));
 		primManager.addPrimitive("lpush", new ListCommand(ListCommand.Name.PUSH));
 		primManager.addPrimitive("lpush-all", new ListCommand(ListCommand.Name.PUSH_ALL));
 		primManager.addPrimitive("make", new ListReporter(ListReporter.Name.MAKE));
+		primManager.addPrimitive("make-chunked", new ListReporter(ListReporter.Name.MAKE_CHUNKED));
+		primManager.addPrimitive("make-deque", new ListReporter(ListReporter.Name.MAKE_DEQUE));
+		primManager.addPrimitive("make-indexed", new ListReporter(ListReporter.Name.MAKE_INDEXED));
+		primManager.addPrimitive("make-numeric", new ListReporter(ListReporter.Name.MAKE_NUMERIC));
+		primManager.addPrimitive("make-pq", new PriorityQueueReporter(PriorityQueueReporter.Name.MAKE));
 		primManager.addPrimitive("map", new ListReporter(ListReporter.Name.MAP));
 		primManager.addPrimitive("max", new ListReporter(ListReporter.Name.MAX));
 		primManager.addPrimitive("mean", new ListReporter(ListReporter.Name.MEAN));
@@ -58,7 +78,25 @@ public class MutableListExtension extends DefaultClassManager {
 		primManager.addPrimitive("member-any?", new ListReporter(ListReporter.Name.MEMBER_ANY));
 		primManager.addPrimitive("min", new ListReporter(ListReporter.Name.MIN));
 		primManager.addPrimitive("modes", new ListReporter(ListReporter.Name.MODES));
+		primManager.addPrimitive("n-of", new ListReporter(ListReporter.Name.N_OF));
+		primManager.addPrimitive("n-of-as-list", new ListReporter(ListReporter.Name.N_OF_AS_LIST));
+		primManager.addPrimitive("one-of", new ListReporter(ListReporter.Name.ONE_OF));
 		primManager.addPrimitive("overwrite", new IndexCommand(IndexCommand.Name.OVERWRITE));
+		primManager.addPrimitive("overwrite-range", new IndexCommand(IndexCommand.Name.OVERWRITE_RANGE));
+		primManager.addPrimitive("pool-hit-rate", new ListReporter(ListReporter.Name.POOL_HIT_RATE));
+		primManager.addPrimitive("pq-clear", new PriorityQueueCommand(PriorityQueueCommand.Name.CLEAR));
+		primManager.addPrimitive("pq-decrease-key", new PriorityQueueCommand(PriorityQueueCommand.Name.DECREASE_KEY));
+		primManager.addPrimitive("pq-empty?", new PriorityQueueReporter(PriorityQueueReporter.Name.EMPTY));
+		primManager.addPrimitive("pq-from-list", new PriorityQueueReporter(PriorityQueueReporter.Name.FROM_LIST));
+		primManager.addPrimitive("pq-item", new PriorityQueueReporter(PriorityQueueReporter.Name.ITEM));
+		primManager.addPrimitive("pq-length", new PriorityQueueReporter(PriorityQueueReporter.Name.LENGTH));
+		primManager.addPrimitive("pq-peek", new PriorityQueueReporter(PriorityQueueReporter.Name.PEEK));
+		primManager.addPrimitive("pq-peek-priority", new PriorityQueueReporter(PriorityQueueReporter.Name.PEEK_PRIORITY));
+		primManager.addPrimitive("pq-pop", new PriorityQueueReporter(PriorityQueueReporter.Name.POP));
+		primManager.addPrimitive("pq-priority", new PriorityQueueReporter(PriorityQueueReporter.Name.PRIORITY));
+		primManager.addPrimitive("pq-push", new PriorityQueueCommand(PriorityQueueCommand.Name.PUSH));
+		primManager.addPrimitive("pq-push-handle", new PriorityQueueReporter(PriorityQueueReporter.Name.PUSH_HANDLE));
+		primManager.addPrimitive("pq-queued?", new PriorityQueueReporter(PriorityQueueReporter.Name.QUEUED));
 		primManager.addPrimitive("quartiles", new ListReporter(ListReporter.Name.QUARTILES));
 		primManager.addPrimitive("range", new ListReporter(ListReporter.Name.RANGE));
 		primManager.addPrimitive("reduce", new ListReporter(ListReporter.Name.REDUCE));
@@ -67,9 +105,25 @@ public class MutableListExtension extends DefaultClassManager {
 		primManager.addPrimitive("remove-once", new ListCommand(ListCommand.Name.REMOVE_ONCE));
 		primManager.addPrimitive("reverse", new ListCommand(ListCommand.Name.REVERSE));
 		primManager.addPrimitive("right", new IndexReporter(IndexReporter.Name.RIGHT));
+		primManager.addPrimitive("save", new ListCommand(ListCommand.Name.SAVE));
+		primManager.addPrimitive("seek", new IndexCommand(IndexCommand.Name.SEEK));
+		primManager.addPrimitive("seek-end", new IndexCommand(IndexCommand.Name.SEEK_END));
+		primManager.addPrimitive("set-item", new ListCommand(ListCommand.Name.SET_ITEM));
+		primManager.addPrimitive("set-pool-capacity", new ListCommand(ListCommand.Name.SET_POOL_CAPACITY));
 		primManager.addPrimitive("shuffle", new ListCommand(ListCommand.Name.SHUFFLE));
+		primManager.addPrimitive("shuffle-n", new ListCommand(ListCommand.Name.SHUFFLE_N));
+		primManager.addPrimitive("skip", new IndexCommand(IndexCommand.Name.SKIP));
+		primManager.addPrimitive("skip-while", new IndexCommand(IndexCommand.Name.SKIP_WHILE));
 		primManager.addPrimitive("sort", new ListCommand(ListCommand.Name.SORT));
+		primManager.addPrimitive("sort-by", new ListCommand(ListCommand.Name.SORT_BY));
+		primManager.addPrimitive("splice", new IndexCommand(IndexCommand.Name.SPLICE));
+		primManager.addPrimitive("split-at", new IndexReporter(IndexReporter.Name.SPLIT_AT));
+		primManager.addPrimitive("standard-deviation", new ListReporter(ListReporter.Name.STANDARD_DEVIATION));
+		primManager.addPrimitive("stats", new ListReporter(ListReporter.Name.STATS));
 		primManager.addPrimitive("sum", new ListReporter(ListReporter.Name.SUM));
+		primManager.addPrimitive("to-csv", new ListCommand(ListCommand.Name.TO_CSV));
+		primManager.addPrimitive("to-file", new ListCommand(ListCommand.Name.TO_FILE));
+		primManager.addPrimitive("variance", new ListReporter(ListReporter.Name.VARIANCE));
 
 		primManager.addPrimitive("first", new ListReporter(ListReporter.Name.FIRST));
 		primManager.addPrimitive("second", new ListReporter(ListReporter.Name.SECOND));
@@ -92,6 +146,53 @@ public class MutableListExtension extends DefaultClassManager {
 		primManager.addPrimitive("set-eighth", new ListCommand(ListCommand.Name.EIGHTH));
 		primManager.addPrimitive("set-ninth", new ListCommand(ListCommand.Name.NINTH));
 		primManager.addPrimitive("Set-tenth", new ListCommand(ListCommand.Name.TENTH));
+		AsyncExporter.startup();
+	}
+
+	/**
+	 * Finish writing any lists exported in the background when the extension is
+	 * unloaded
+	 */
+	@Override
+	public void unload(ExtensionManager em) throws ExtensionException {
+		AsyncExporter.shutdown();
+	}
+
+	/**
+	 * Empty the pool of unused list elements when the model is cleared, and
+	 * forget any lists an unfinished export-world referred to
+	 */
+	@Override
+	public void clearAll() {
+		MutableList.clearPool();
+		WorldExporter.clear();
+	}
+
+	/**
+	 * Write the mutable lists and cursors referred to by agents' variables in
+	 * export-world
+	 */
+	@Override
+	public StringBuilder exportWorld() {
+		return WorldExporter.exportWorld();
+	}
+
+	/**
+	 * Read the mutable lists and cursors written by export-world
+	 */
+	@Override
+	public void importWorld(List<String[]> lines, ExtensionManager reader, ImportErrorHandler handler)
+			throws ExtensionException {
+		WorldExporter.importWorld(lines, reader, handler);
+	}
+
+	/**
+	 * Read a reference to a mutable list or cursor in import-world
+	 */
+	@Override
+	public ExtensionObject readExtensionObject(ExtensionManager reader, String typeName, String value)
+			throws ExtensionException {
+		return WorldExporter.readExtensionObject(typeName, value);
 	}
 
 }
@@ -0,0 +1,136 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The operations NetLogoMutableList needs from the data structure it uses to
+ * store its elements, over and above those of a java List. {@link MutableList}
+ * is the default implementation; others trade off memory, locality and the
+ * cost of various operations differently, and are chosen using
+ * {@link NetLogoMutableList.Storage} when the NetLogoMutableList is created.
+ *
+ * Implementations do not allow <code>null</code> elements.
+ *
+ * @author gary
+ */
+public interface MutableSequence extends List<Object>, Cloneable {
+
+	/**
+	 * Add an item to the front of the list
+	 *
+	 * @param o the object to add; must not be <code>null</code>
+	 */
+	public void unshift(Object o);
+
+	/**
+	 * Remove the item from the front of the list and return it
+	 *
+	 * @return the object removed
+	 * @throws java.util.NoSuchElementException if the list is empty
+	 */
+	public Object shift();
+
+	/**
+	 * Add an item to the end of the list
+	 *
+	 * @param o the object to add; must not be <code>null</code>
+	 */
+	public void push(Object o);
+
+	/**
+	 * Add everything an iterator gives to the end of the list, in one pass. This
+	 * is used to build lists from NetLogo lists, agentsets and ranges without
+	 * copying them into a collection first.
+	 *
+	 * @param ix the iterator; it must not give <code>null</code>
+	 * @return the number of items added
+	 */
+	public int pushAll(Iterator<? extends Object> ix);
+
+	/**
+	 * Remove the last item on the list and return it
+	 *
+	 * @return the object removed
+	 * @throws java.util.NoSuchElementException if the list is empty
+	 */
+	public Object pop();
+
+	/**
+	 * Remove every occurrence of everything in the collection from the list. This
+	 * is {@link #removeAll(Collection)}, but says how many items were removed, so
+	 * that NetLogoMutableList can keep its size without counting the list.
+	 *
+	 * @param c the items to remove
+	 * @return the number of items removed
+	 */
+	public int removeAllCount(Collection<?> c);
+
+	/**
+	 * Remove everything from the list that isn't in the collection. This is
+	 * {@link #retainAll(Collection)}, but says how many items were removed.
+	 *
+	 * @param c the items to keep
+	 * @return the number of items removed
+	 */
+	public int retainAllCount(Collection<?> c);
+
+	/**
+	 * Reverse the list in place
+	 */
+	public void reverse();
+
+	/**
+	 * Add the other list to the end of this one, and empty the other list
+	 *
+	 * @param other
+	 */
+	public void cat(MutableSequence other);
+
+	/**
+	 * @param objs
+	 * @return <code>true</code> if at least one of the objs is in the list
+	 */
+	public boolean containsAny(Collection<?> objs);
+
+	/**
+	 * @param obj
+	 * @return <code>true</code> if obj is in the list or (recursively) any list
+	 *         members
+	 */
+	public boolean containsDeeply(Object obj);
+
+	/**
+	 * @return an iterator that will iterate (recursively) through elements that are
+	 *         lists
+	 */
+	public Iterator<Object> depthFirstIterator();
+
+	/**
+	 * @param start string to print at the start of the list
+	 * @param sep   string to print between elements of the list
+	 * @param end   string to print at the end of the list
+	 * @return the list (and recursively, any lists in it) as a String
+	 */
+	public String asPrintableString(String start, String sep, String end);
+
+	/**
+	 * Sanity checker for the list
+	 *
+	 * @param msg       set to <code>true</code> if you want a message printed to
+	 *                  stderr if there's a problem
+	 * @param msgPrefix a prefix you want printed in front of any error message
+	 * @return <code>true</code> if the structure of the list is sound
+	 */
+	public boolean check(boolean msg, String msgPrefix);
+
+	/**
+	 * @return a copy of this list using the same storage (elements that are lists
+	 *         are copied too)
+	 */
+	public MutableSequence clone();
+}
@@ -3,14 +3,16 @@
  */
 package uk.ac.hutton.netlogo.list;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.nlogo.api.AgentSet;
@@ -18,6 +20,7 @@ import org.nlogo.api.Argument;
 import org.nlogo.api.ExtensionException;
 import org.nlogo.core.ExtensionObject;
 import org.nlogo.core.LogoList;
+import org.nlogo.core.LogoListBuilder;
 
 /**
  * Wrapper class around MutableList providing convenience functions for NetLogo,
@@ -28,28 +31,128 @@ import org.nlogo.core.LogoList;
  */
 public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	public static final String DATA_TYPE_NAME = "list";
-	private MutableList list;
+
+	/**
+	 * The data structures that can be used to store the elements of the list
+	 */
+	public enum Storage {
+		LINKED, CHUNKED, NUMERIC, INDEXED, DEQUE
+	};
+
+	private MutableSequence list;
 	private static long next_id = 0;
 	private final long id;
 	private int size;
+	private MutableList.Checkpoints checkpoints; // Only for LINKED and INDEXED storage, once item() has been used
+	private static volatile boolean debug = false;
 
 	/**
 	 * Constructor that creates an empty list and assigns it an ID
 	 */
 	public NetLogoMutableList() {
-		list = new MutableList();
-		id = next_id;
-		next_id++;
+		this(Storage.LINKED);
+	}
+
+	/**
+	 * Constructor that creates an empty list using the specified storage
+	 * 
+	 * @param storage
+	 */
+	public NetLogoMutableList(Storage storage) {
+		this(storage, next_id);
+	}
+
+	/**
+	 * Constructor that creates an empty list with a given ID, for import-world.
+	 * Lists created after it will have higher IDs.
+	 * 
+	 * @param storage
+	 * @param id
+	 */
+	NetLogoMutableList(Storage storage, long id) {
+		list = makeSequence(storage);
+		this.id = id;
+		if (id >= next_id) {
+			next_id = id + 1;
+		}
 		size = 0;
 	}
 
+	/**
+	 * Replace the contents of the list, for import-world
+	 * 
+	 * @param storage the storage to use
+	 * @param contents the new contents
+	 * @throws IllegalArgumentException if the storage is NUMERIC and the contents
+	 *                                  include something other than a number
+	 */
+	void load(Storage storage, LogoList contents) {
+		list = makeSequence(storage);
+		checkpoints = null;
+		size = 0;
+		pushAll(contents);
+	}
+
+	/**
+	 * @param storage
+	 * @return an empty MutableSequence using the specified storage
+	 */
+	static MutableSequence makeSequence(Storage storage) {
+		switch (storage) {
+		case LINKED:
+			return new MutableList();
+		case CHUNKED:
+			return new ChunkedList();
+		case NUMERIC:
+			return new NumericList();
+		case INDEXED:
+			return new IndexedList();
+		case DEQUE:
+			return new DequeList();
+		default:
+			throw new RuntimeException("PANIC!");
+		}
+	}
+
+	/**
+	 * @return the storage used for the elements of this list
+	 */
+	public Storage getStorage() {
+		if (list instanceof MutableList) {
+			return Storage.LINKED;
+		} else if (list instanceof ChunkedList) {
+			return Storage.CHUNKED;
+		} else if (list instanceof NumericList) {
+			return Storage.NUMERIC;
+		} else if (list instanceof IndexedList) {
+			return Storage.INDEXED;
+		} else if (list instanceof DequeList) {
+			return Storage.DEQUE;
+		} else {
+			throw new RuntimeException("PANIC!");
+		}
+	}
+
 	/**
 	 * Convenience constructor initializing from a NetLogo list
 	 * 
 	 * @param list
 	 */
 	public NetLogoMutableList(LogoList list) {
-		this();
+		this(list, Storage.LINKED);
+	}
+
+	/**
+	 * Convenience constructor initializing from a NetLogo list using the specified
+	 * storage
+	 * 
+	 * @param list
+	 * @param storage
+	 * @throws IllegalArgumentException if the storage is NUMERIC and the list
+	 *                                  contains something other than a number
+	 */
+	public NetLogoMutableList(LogoList list, Storage storage) {
+		this(storage);
 		pushAll(list);
 	}
 
@@ -81,6 +184,20 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 		return id;
 	}
 
+	/**
+	 * Called when a cursor is made on the list, so that if the storage is linked,
+	 * elements removed from it by lt:fpop, lt:lpop or lt:clear aren't put in the
+	 * pool, where they could be reused in another list with the cursor still on
+	 * them.
+	 */
+	void pin() {
+		if (list instanceof MutableList) {
+			((MutableList) list).pin();
+		} else if (list instanceof IndexedList) {
+			((IndexedList) list).pin();
+		}
+	}
+
 	/**
 	 * @return a NetLogoMutableListIndex wrapping an iterator; you probably don't
 	 *         want this unless implementing the 'cursor' command!
@@ -97,23 +214,121 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	}
 
 	/**
-	 * Increment the size of the list
+	 * Increment the size of the list after something has been inserted in it
+	 * with a cursor
+	 * 
+	 * @param index where it was inserted
 	 */
-	protected void incSize() {
-		size++;
+	protected void incSize(int index) {
+		incSize(index, 1);
 	}
 
 	/**
-	 * Decrement the size of the list
+	 * Increase the size of the list after several things have been inserted in it
+	 * with a cursor
+	 * 
+	 * @param index where the first of them was inserted
+	 * @param n     how many were inserted
 	 */
-	protected void decSize() {
-		size--;
+	protected void incSize(int index, int n) {
+		size += n;
+		changed(index);
+		debug("insert at " + index);
+	}
+
+	/**
+	 * Decrement the size of the list after something has been deleted from it
+	 * with a cursor
+	 * 
+	 * @param index where it was deleted from
+	 */
+	protected void decSize(int index) {
+		decSize(index, 1);
+	}
+
+	/**
+	 * Decrease the size of the list after several things have been deleted from
+	 * it with a cursor
+	 * 
+	 * @param index where they were deleted from
+	 * @param n     how many were deleted
+	 */
+	protected void decSize(int index, int n) {
+		size -= n;
+		changed(index);
+		debug("delete at " + index);
+	}
+
+	/**
+	 * Turn debugging on or off. When it is on, the size kept by each list is
+	 * checked against the number of elements actually in it (and the structure of
+	 * the list checked) after cursor edits and bulk removals, which makes those
+	 * O(N). This is intended for tests.
+	 * 
+	 * @param on
+	 */
+	public static void setDebug(boolean on) {
+		debug = on;
+	}
+
+	/**
+	 * @return <code>true</code> if debugging is on
+	 */
+	public static boolean isDebug() {
+		return debug;
+	}
+
+	/**
+	 * If debugging is on, check the list after an operation
+	 * 
+	 * @param op the operation, for the error message
+	 * @throws RuntimeException if the check fails
+	 */
+	private void debug(String op) {
+		if (debug && !check(true, "After " + op)) {
+			throw new RuntimeException("BUG! (List " + id + " is not as it should be after " + op + ")");
+		}
+	}
+
+	/**
+	 * Check the structure of the list, and that the size kept here is the number
+	 * of elements in it. O(N).
+	 * 
+	 * @param msg       whether to print a message if the list is not OK
+	 * @param msgPrefix prefix for any message
+	 * @return <code>true</code> if the list is OK
+	 */
+	public boolean check(boolean msg, String msgPrefix) {
+		if (!list.check(msg, msgPrefix)) {
+			return false;
+		}
+		int actual = list.size();
+		if (size != actual) {
+			if (msg) {
+				System.err.println(msgPrefix + ": NetLogoMutableList has size " + size + " but " + actual
+						+ " elements");
+			}
+			return false;
+		}
+		return true;
 	}
 
 	/**
-	 * @return the MutableList wrapped by this object
+	 * Tell the index of positions in the list (if there is one) that the list has
+	 * changed from an index onwards
+	 * 
+	 * @param index
 	 */
-	protected MutableList getList() {
+	private void changed(int index) {
+		if (checkpoints != null) {
+			checkpoints.changed(index);
+		}
+	}
+
+	/**
+	 * @return the MutableSequence wrapped by this object
+	 */
+	protected MutableSequence getList() {
 		return list;
 	}
 
@@ -125,6 +340,9 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	public void push(Object obj) {
 		list.add(obj);
 		size++;
+		if (checkpoints != null) {
+			checkpoints.pushed(size);
+		}
 	}
 
 	/**
@@ -134,21 +352,33 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	 */
 	public void pushAll(NetLogoMutableList obj) {
 		list.addAll(obj.getList());
+		changed(size);
 		size += obj.size();
 	}
 
 	/**
-	 * Convenience wrapper around MutableList's pushAll() handling a LogoList
+	 * Convenience wrapper around MutableList's pushAll() handling a LogoList. The
+	 * elements are added straight from the LogoList's iterator.
 	 * 
 	 * @param obj
 	 */
 	public void pushAll(LogoList obj) {
-		list.addAll(obj.toJava());
-		size += obj.size();
+		pushAll(obj.javaIterator());
+	}
+
+	/**
+	 * Wrapper around MutableList's pushAll() for an Iterator that maintains size
+	 * 
+	 * @param ix
+	 */
+	public void pushAll(Iterator<? extends Object> ix) {
+		changed(size);
+		size += list.pushAll(ix);
 	}
 
 	public void pushAll(List<Object> obj) {
 		list.addAll(obj);
+		changed(size);
 		size += obj.size();
 	}
 
@@ -163,18 +393,13 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	}
 
 	/**
-	 * Wrapper around MutableList's pushAll() handling an AgentSet
+	 * Wrapper around MutableList's pushAll() handling an AgentSet. The agents are
+	 * added straight from the AgentSet's iterator, in the order it gives them.
 	 * 
 	 * @param obj
 	 */
 	public void pushAll(AgentSet obj) {
-		HashSet<Object> agents = new HashSet<Object>();
-		for (Object agent : obj.agents()) {
-			agents.add(agent);
-		}
-		list.addAll(agents);
-		size += agents.size();
-		agents.clear();
+		pushAll(obj.agents().iterator());
 	}
 
 	/**
@@ -184,7 +409,11 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	 */
 	public Object pop() {
 		size--;
-		return list.pop();
+		Object obj = list.pop();
+		if (checkpoints != null) {
+			checkpoints.popped(size);
+		}
+		return obj;
 	}
 
 	/**
@@ -195,6 +424,9 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	public void unshift(Object obj) {
 		list.unshift(obj);
 		size++;
+		if (checkpoints != null) {
+			checkpoints.unshifted(size);
+		}
 	}
 
 	/**
@@ -204,6 +436,7 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	 */
 	public void unshiftAll(NetLogoMutableList obj) {
 		list.addAll(0, obj.getList());
+		changed(0);
 		size += obj.size();
 	}
 
@@ -214,6 +447,7 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	 */
 	public void unshiftAll(LogoList obj) {
 		list.addAll(0, obj.toJava());
+		changed(0);
 		size += obj.size();
 	}
 
@@ -228,6 +462,7 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 			agents.add(agent);
 		}
 		list.addAll(0, agents);
+		changed(0);
 		size += agents.size();
 		agents.clear();
 	}
@@ -239,7 +474,11 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	 */
 	public Object shift() {
 		size--;
-		return list.shift();
+		Object obj = list.shift();
+		if (checkpoints != null) {
+			checkpoints.shifted(size);
+		}
+		return obj;
 	}
 
 	/**
@@ -291,6 +530,8 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	public void remove(Object obj) {
 		if (list.remove(obj)) {
 			size--;
+			changed(0);
+			debug("remove()");
 		}
 	}
 
@@ -300,8 +541,11 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	 * @param objs
 	 */
 	public void removeAll(List<Object> objs) {
-		if (list.removeAll(objs)) {
-			size = list.size();
+		int n_removed = list.removeAllCount(objs);
+		if (n_removed > 0) {
+			size -= n_removed;
+			changed(0);
+			debug("removeAll()");
 		}
 	}
 
@@ -311,191 +555,281 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	 * @param objs
 	 */
 	public void retainAll(List<Object> objs) {
-		if (list.retainAll(objs)) {
-			size = list.size();
+		int n_removed = list.retainAllCount(objs);
+		if (n_removed > 0) {
+			size -= n_removed;
+			changed(0);
+			debug("retainAll()");
 		}
 	}
 
-	public Object first() throws ExtensionException {
-		try {
-			return list.first();
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
+	/**
+	 * @return the index of checkpoints for linked storage (including the linked
+	 *         list underneath indexed storage), made the first time it is
+	 *         needed, or <code>null</code> for other storage
+	 */
+	private MutableList.Checkpoints checkpoints() {
+		if (checkpoints == null) {
+			if (list instanceof MutableList) {
+				checkpoints = ((MutableList) list).checkpoints();
+			} else if (list instanceof IndexedList) {
+				checkpoints = ((IndexedList) list).checkpoints();
+			}
 		}
+		return checkpoints;
 	}
 
-	public Object second() throws ExtensionException {
-		try {
-			return list.second();
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
+	/**
+	 * Get the element at an index in the list. For linked and indexed lists, an
+	 * index of every {@link MutableList.Checkpoints#STRIDE}th element is built
+	 * the first time this is used on a long list, so that no more than about that
+	 * many elements need to be walked through to find any index; other storage
+	 * has its own random access.
+	 * 
+	 * @param ix the index (must be in range)
+	 * @return the element
+	 */
+	private Object get(int ix) {
+		MutableList.Checkpoints index = checkpoints();
+		if (index != null) {
+			return index.get(ix, size);
 		}
+		return list.get(ix);
 	}
 
-	public Object third() throws ExtensionException {
-		try {
-			return list.third();
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
+	/**
+	 * Set the element at an index in the list, using the same index as
+	 * {@link #get(int)} for linked and indexed lists. Indexed lists are set
+	 * through an iterator, so that their counts are kept up to date.
+	 * 
+	 * @param ix  the index (must be in range)
+	 * @param obj the object to store there
+	 */
+	private void set(int ix, Object obj) {
+		if (list instanceof MutableList) {
+			if (obj == null) {
+				throw new NullPointerException("Cannot store null in MutableList");
+			}
+			checkpoints().set(ix, size, obj);
+		} else if (list instanceof IndexedList) {
+			ListIterator<Object> it = listIterator(ix);
+			it.next();
+			it.set(obj);
+		} else {
+			list.set(ix, obj);
 		}
 	}
 
-	public Object fourth() throws ExtensionException {
-		try {
-			return list.fourth();
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
+	/**
+	 * Get a ListIterator starting at an index in the list, using the same index
+	 * as {@link #get(int)} for linked and indexed lists rather than walking from
+	 * the front
+	 * 
+	 * @param ix the index (may be the length of the list)
+	 * @return the ListIterator
+	 */
+	protected ListIterator<Object> listIterator(int ix) {
+		if (list instanceof MutableList) {
+			return checkpoints().listIterator(ix, size);
+		} else if (list instanceof IndexedList) {
+			return ((IndexedList) list).listIterator(checkpoints().listIterator(ix, size));
 		}
+		return list.listIterator(ix);
 	}
 
-	public Object fifth() throws ExtensionException {
-		try {
-			return list.fifth();
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
+	/**
+	 * Get the element at any index in the list
+	 * 
+	 * @param ix the index
+	 * @return the element
+	 * @throws ExtensionException if the index is out of range
+	 */
+	public Object item(int ix) throws ExtensionException {
+		if (ix < 0 || ix >= size) {
+			throw new ExtensionException("Cannot get item " + ix + " of a list of length " + size);
 		}
+		return get(ix);
 	}
 
-	public Object sixth() throws ExtensionException {
+	/**
+	 * Set the element at any index in the list
+	 * 
+	 * @param ix  the index
+	 * @param obj the object to store there
+	 * @throws ExtensionException if the index is out of range, or the object
+	 *                            can't be stored in the list
+	 */
+	public void item(int ix, Object obj) throws ExtensionException {
+		if (ix < 0 || ix >= size) {
+			throw new ExtensionException("Cannot set item " + ix + " of a list of length " + size);
+		}
 		try {
-			return list.sixth();
-		} catch (NoSuchElementException e) {
+			set(ix, obj);
+		} catch (IllegalArgumentException e) {
 			throw new ExtensionException(e.getMessage());
 		}
 	}
 
-	public Object seventh() throws ExtensionException {
-		try {
-			return list.seventh();
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
+	/**
+	 * Get the element at a (small) index in the list
+	 * 
+	 * @param ix   the index
+	 * @param name the name of the element (for error messages)
+	 * @return the element
+	 * @throws ExtensionException if the list doesn't have that many elements
+	 */
+	private Object get(int ix, String name) throws ExtensionException {
+		if (ix >= size) {
+			throw new ExtensionException(name + " called on list of insufficient size " + size);
 		}
+		return get(ix);
 	}
 
-	public Object eighth() throws ExtensionException {
-		try {
-			return list.eighth();
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
+	/**
+	 * Set the element at a (small) index in the list
+	 * 
+	 * @param ix   the index
+	 * @param name the name of the element (for error messages)
+	 * @param obj  the object to store there
+	 * @throws ExtensionException if the list doesn't have that many elements
+	 */
+	private void set(int ix, String name, Object obj) throws ExtensionException {
+		if (ix >= size) {
+			throw new ExtensionException("set-" + name + " called on list of insufficient size " + size);
 		}
+		set(ix, obj);
+	}
+
+	public Object first() throws ExtensionException {
+		return get(0, "first");
+	}
+
+	public Object second() throws ExtensionException {
+		return get(1, "second");
+	}
+
+	public Object third() throws ExtensionException {
+		return get(2, "third");
+	}
+
+	public Object fourth() throws ExtensionException {
+		return get(3, "fourth");
+	}
+
+	public Object fifth() throws ExtensionException {
+		return get(4, "fifth");
+	}
+
+	public Object sixth() throws ExtensionException {
+		return get(5, "sixth");
+	}
+
+	public Object seventh() throws ExtensionException {
+		return get(6, "seventh");
+	}
+
+	public Object eighth() throws ExtensionException {
+		return get(7, "eighth");
 	}
 
 	public Object ninth() throws ExtensionException {
-		try {
-			return list.ninth();
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		return get(8, "ninth");
 	}
 
 	public Object tenth() throws ExtensionException {
-		try {
-			return list.tenth();
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		return get(9, "tenth");
 	}
 
 	public void first(Object obj) throws ExtensionException {
-		try {
-			list.first(obj);
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		set(0, "first", obj);
 	}
 
 	public void second(Object obj) throws ExtensionException {
-		try {
-			list.second(obj);
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		set(1, "second", obj);
 	}
 
 	public void third(Object obj) throws ExtensionException {
-		try {
-			list.third(obj);
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		set(2, "third", obj);
 	}
 
 	public void fourth(Object obj) throws ExtensionException {
-		try {
-			list.fourth(obj);
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		set(3, "fourth", obj);
 	}
 
 	public void fifth(Object obj) throws ExtensionException {
-		try {
-			list.fifth(obj);
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		set(4, "fifth", obj);
 	}
 
 	public void sixth(Object obj) throws ExtensionException {
-		try {
-			list.sixth(obj);
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		set(5, "sixth", obj);
 	}
 
 	public void seventh(Object obj) throws ExtensionException {
-		try {
-			list.seventh(obj);
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		set(6, "seventh", obj);
 	}
 
 	public void eighth(Object obj) throws ExtensionException {
-		try {
-			list.eighth(obj);
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		set(7, "eighth", obj);
 	}
 
 	public void ninth(Object obj) throws ExtensionException {
-		try {
-			list.ninth(obj);
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		set(8, "ninth", obj);
 	}
 
 	public void tenth(Object obj) throws ExtensionException {
-		try {
-			list.tenth(obj);
-		} catch (NoSuchElementException e) {
-			throw new ExtensionException(e.getMessage());
-		}
+		set(9, "tenth", obj);
 	}
 
 	/**
-	 * @return this list as a NetLogo list
+	 * @return this list as a NetLogo list, built in one pass through the list
 	 */
 	public LogoList asLogoList() {
-		return LogoList.fromJava(list);
+		LogoListBuilder builder = new LogoListBuilder();
+		for (Object item : list) {
+			builder.add(item);
+		}
+		return builder.toLogoList();
 	}
 
 	/**
 	 * @return this list as a NetLogo list, with any NetLogoMutableList elements
 	 *         also converted to NetLogo lists.
+	 * @throws ExtensionException if the list contains itself (at any depth)
+	 */
+	public LogoList asLogoListDeeply() throws ExtensionException {
+		return asLogoListDeeply(new IdentityHashMap<NetLogoMutableList, LogoList>());
+	}
+
+	/**
+	 * Convert this list to a NetLogo list deeply, remembering the lists converted
+	 * so far. NetLogo lists can't be changed, so a mutable list appearing more
+	 * than once only needs converting once, and the NetLogo lists it is converted
+	 * to can share the result. A list being converted is mapped to
+	 * <code>null</code> until it has been, so that a list containing itself can
+	 * be detected rather than recursing until the stack overflows.
+	 *
+	 * @param converted the lists converted (or being converted) so far
+	 * @return this list as a NetLogo list
+	 * @throws ExtensionException if the list contains itself
 	 */
-	public LogoList asLogoListDeeply() {
-		LogoList logo = LogoList.Empty();
+	private LogoList asLogoListDeeply(Map<NetLogoMutableList, LogoList> converted) throws ExtensionException {
+		LogoList logo = converted.get(this);
+		if (logo != null) {
+			return logo;
+		} else if (converted.containsKey(this)) {
+			throw new ExtensionException("Cannot convert a mutable list that contains itself to a NetLogo list");
+		}
+		converted.put(this, null);
+		LogoListBuilder builder = new LogoListBuilder();
 		for (Object item : list) {
 			if (item instanceof NetLogoMutableList) {
-				logo = logo.lput(((NetLogoMutableList) item).asLogoListDeeply());
+				builder.add(((NetLogoMutableList) item).asLogoListDeeply(converted));
 			} else {
-				logo = logo.lput(item);
+				builder.add(item);
 			}
 		}
+		logo = builder.toLogoList();
+		converted.put(this, logo);
 		return logo;
 	}
 
@@ -504,45 +838,255 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	 */
 	public void reverse() {
 		list.reverse();
+		changed(0);
 	}
 
 	/**
 	 * Provide a sort implementation using a comparator (e.g. one that wraps a
-	 * NetLogo reporter)
+	 * NetLogo reporter). Linked lists are merge sorted in place; other storage
+	 * uses List's sort().
 	 * 
 	 * @param comparator
 	 */
 	public void sort(Comparator<Object> comparator) {
-		Collections.sort(list, comparator);
+		list.sort(comparator);
+		changed(0);
+	}
+
+	/**
+	 * Put the elements of the list in a new order, such as one given by
+	 * {@link KeySort}
+	 *
+	 * @param order the index each element used to be at, in the order they are
+	 *              to be put
+	 */
+	public void reorder(int[] order) {
+		if (order.length != size) {
+			throw new RuntimeException("BUG! Reordering a list of " + size + " elements using " + order.length
+					+ " indices");
+		}
+		Object[] elements = list.toArray();
+		ListIterator<Object> ix = list.listIterator();
+		for (int i = 0; i < order.length; i++) {
+			ix.next();
+			ix.set(elements[order[i]]);
+		}
 	}
 
 	/**
-	 * Wrapper around MutableList's cat() that maintains sizes
+	 * Put the elements of the list in a random order
+	 *
+	 * @param rng the random number generator (e.g. NetLogo's)
+	 */
+	public void shuffle(Random rng) {
+		shuffle(rng, size);
+	}
+
+	/**
+	 * Partially shuffle the list using the Fisher-Yates algorithm, so that the
+	 * first k elements are a random sample of the list in random order. The rest
+	 * of the list is what's left, in no particular order. This takes O(N) time
+	 * to copy the list to an array and back, but only k random numbers.
+	 *
+	 * @param rng the random number generator (e.g. NetLogo's)
+	 * @param k   the number of elements to choose
+	 */
+	public void shuffle(Random rng, int k) {
+		Object[] elements = list.toArray();
+		int n = elements.length;
+		k = Math.min(k, n - 1);
+		if (k <= 0) {
+			return;
+		}
+		for (int i = 0; i < k; i++) {
+			int j = i + rng.nextInt(n - i);
+			Object tmp = elements[i];
+			elements[i] = elements[j];
+			elements[j] = tmp;
+		}
+		ListIterator<Object> ix = list.listIterator();
+		for (int i = 0; i < n; i++) {
+			ix.next();
+			ix.set(elements[i]);
+		}
+	}
+
+	/**
+	 * Choose an element at random, using the index of checkpoints for linked and
+	 * indexed lists, as item() does
+	 * 
+	 * @param rng the random number generator (e.g. NetLogo's)
+	 * @return an element of the list chosen at random
+	 * @throws ExtensionException if the list is empty
+	 */
+	public Object oneOf(Random rng) throws ExtensionException {
+		if (size == 0) {
+			throw new ExtensionException("Cannot choose an element at random from an empty list");
+		}
+		return get(rng.nextInt(size));
+	}
+
+	/**
+	 * Choose elements from the list at random, without copying it. Since the size
+	 * of the list is known, this can use Vitter's 'Method A', which works out how
+	 * many elements to skip before the next one chosen using one random number.
+	 * So this needs n random numbers, and stops going through the list once it
+	 * has chosen the last one.
+	 *
+	 * @param rng the random number generator (e.g. NetLogo's)
+	 * @param n   the number of elements to choose
+	 * @return the chosen elements, in the order they are in the list
+	 * @throws ExtensionException if n is negative or more than the size of the
+	 *                            list
+	 */
+	public List<Object> nOf(Random rng, int n) throws ExtensionException {
+		if (n < 0 || n > size) {
+			throw new ExtensionException("Cannot choose " + n + " elements at random from a list of length " + size);
+		}
+		List<Object> sample = new ArrayList<Object>(n);
+		Iterator<Object> ix = list.iterator();
+		int remaining = size;
+		for (int needed = n; needed > 0; needed--) {
+			// The probability of skipping at least s more elements is the product
+			// of (remaining - needed - i) / (remaining - i) for i in [0, s[
+			int skip = 0;
+			double v = rng.nextDouble();
+			double quot = (double) (remaining - needed) / (double) remaining;
+			while (quot > v) {
+				skip++;
+				quot *= (double) (remaining - needed - skip) / (double) (remaining - skip);
+			}
+			remaining -= skip + 1;
+			for (; skip > 0; skip--) {
+				ix.next();
+			}
+			sample.add(ix.next());
+		}
+		return sample;
+	}
+
+	/**
+	 * Wrapper around MutableList's cat() that maintains sizes. If the other list
+	 * uses different storage, its elements are copied into this one.
 	 * 
 	 * @param other
 	 */
 	public void cat(NetLogoMutableList other) {
-		size += other.size();
 		list.cat(other.list);
+		changed(size);
+		other.changed(0);
+		size += other.size();
+		other.size = 0;
+		debug("cat()");
+		other.debug("cat()");
+	}
+
+	/**
+	 * Cut the list in two at a cursor, moving everything after the cursor to a
+	 * new list with the same storage. For linked lists this is O(1), as the
+	 * elements are relinked. Indexed lists relink their elements too (removing
+	 * them would clear any mutable lists among them), but have to count the ones
+	 * moved. Other storage is O(k) in the number of elements moved. Either way,
+	 * the sizes of both lists are worked out from the cursor's position rather
+	 * than by counting.
+	 * 
+	 * @param ix the cursor's iterator, which is left at the end of this list
+	 * @return the new list
+	 */
+	protected NetLogoMutableList split(ListIterator<Object> ix) {
+		int index = ix.nextIndex();
+		NetLogoMutableList rest = new NetLogoMutableList(getStorage());
+		if (list instanceof MutableList) {
+			rest.list = ((MutableList) list).split(ix);
+		} else if (list instanceof IndexedList) {
+			rest.list = ((IndexedList) list).split(ix);
+		} else {
+			while (ix.hasNext()) {
+				rest.list.add(ix.next());
+			}
+			for (int i = index; i < size; i++) {
+				ix.previous();
+				ix.remove();
+			}
+		}
+		rest.size = size - index;
+		size = index;
+		changed(index);
+		debug("split at " + index);
+		rest.debug("split at " + index);
+		return rest;
+	}
+
+	/**
+	 * Move all the elements of another list into this one at a cursor, and empty
+	 * the other list. If both lists are linked, this is O(1), as the elements
+	 * are relinked; otherwise it is O(k) in the number of elements moved. The
+	 * sizes of both lists are updated once.
+	 * 
+	 * @param ix    the cursor's iterator, which is left after the last element
+	 *              moved
+	 * @param other the other list
+	 * @throws IllegalArgumentException if the other list is this one, or this
+	 *                                  list can't store one of the other's
+	 *                                  elements (in which case those before it
+	 *                                  will have been copied, but the other list
+	 *                                  is left as it was)
+	 */
+	protected void splice(ListIterator<Object> ix, NetLogoMutableList other) {
+		if (other == this) {
+			throw new IllegalArgumentException("Cannot splice a list into itself");
+		}
+		int index = ix.nextIndex();
+		if (list instanceof MutableList && other.list instanceof MutableList) {
+			((MutableList) list).splice(ix, (MutableList) other.list, other.size);
+			size += other.size;
+			changed(index);
+			other.changed(0);
+		} else {
+			int n = 0;
+			try {
+				for (Object obj : other.list) {
+					ix.add(obj);
+					n++;
+				}
+			} finally {
+				size += n;
+				changed(index);
+			}
+			// Replace rather than clear() the other list's storage, as clear() would
+			// also empty any lists in it
+			other.list = makeSequence(other.getStorage());
+			other.checkpoints = null;
+		}
 		other.size = 0;
+		debug("splice at " + index);
+		other.debug("splice at " + index);
 	}
 
 	/**
-	 * Ensure each element of the list is unique, and maintain size
+	 * Ensure each element of the list is unique, and maintain size. Indexed lists
+	 * know whether they have any duplicates without looking through the list.
 	 */
 	public void removeDuplicates() {
+		if (list instanceof IndexedList && ((IndexedList) list).isUnique()) {
+			return;
+		}
 		ListIterator<Object> ix = list.listIterator();
 		Set<Object> c = new HashSet<Object>();
+		int n_removed = 0;
 		while (ix.hasNext()) {
 			Object obj = ix.next();
 			if (c.contains(obj)) {
 				ix.remove();
+				n_removed++;
 			} else {
 				c.add(obj);
 			}
 		}
-		size = c.size();
+		size -= n_removed;
+		changed(0);
 		c.clear();
+		debug("removeDuplicates()");
 	}
 
 	/**
@@ -568,6 +1112,7 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	 */
 	public void clear() {
 		list.clear();
+		changed(0);
 		size = 0;
 	}
 	
@@ -613,6 +1158,7 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 	@Override
 	public String dump(boolean readable, boolean exporting, boolean reference) {
 		if (exporting && reference) {
+			WorldExporter.referenced(this);
 			return Long.toString(id);
 		} else {
 			return (exporting ? (id + ": ") : "") + list.asPrintableString("[! (", ") (", ") !]");
@@ -650,7 +1196,13 @@ public class NetLogoMutableList implements ExtensionObject, Iterable<Object> {
 			if (size != other.size) {
 				return false;
 			}
-			return list.equals(other.list);
+			Iterator<Object> ix = other.list.iterator();
+			for (Object item : list) {
+				if (!item.equals(ix.next())) {
+					return false;
+				}
+			}
+			return true;
 		}
 		return false;
 	}
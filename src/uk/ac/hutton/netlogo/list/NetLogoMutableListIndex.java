@@ -3,6 +3,7 @@
  */
 package uk.ac.hutton.netlogo.list;
 
+import java.util.Iterator;
 import java.util.ListIterator;
 
 import org.nlogo.api.Argument;
@@ -18,27 +19,69 @@ import org.nlogo.core.ExtensionObject;
  */
 public class NetLogoMutableListIndex implements ExtensionObject, ListIterator<Object> {
 	private ListIterator<Object> ix;
-	private final NetLogoMutableList list;
+	private NetLogoMutableList list;
 	public static final String DATA_TYPE_NAME = "cursor";
 	private static long next_id = 0L;
 	private final long id;
+	private boolean jumped; // moved by seek() since the last next() or previous()
 
 	/**
 	 * Constructor
 	 */
 	public NetLogoMutableListIndex(NetLogoMutableList list) {
+		list.pin();
 		ix = list.getList().listIterator();
 		this.list = list;
+		jumped = false;
 		id = next_id;
 		next_id++;
 	}
 
+	/**
+	 * Constructor for import-world, which creates a cursor with a given ID before
+	 * the list it belongs to has been read. It can't be used until
+	 * {@link #attach(NetLogoMutableList, int)} has been called. Cursors created
+	 * after it will have higher IDs.
+	 * 
+	 * @param id
+	 */
+	NetLogoMutableListIndex(long id) {
+		ix = null;
+		list = null;
+		jumped = false;
+		this.id = id;
+		if (id >= next_id) {
+			next_id = id + 1;
+		}
+	}
+
+	/**
+	 * Put a cursor made for import-world on its list. As with seek(), it then
+	 * can't be used to delete or overwrite until it has been moved left or
+	 * right.
+	 * 
+	 * @param list  the list
+	 * @param index where the cursor is in the list
+	 * @throws ExtensionException if the index is out of range
+	 */
+	void attach(NetLogoMutableList list, int index) throws ExtensionException {
+		if (index < 0 || index > list.size()) {
+			throw new ExtensionException("Cannot put cursor at " + index + " in a list of length " + list.size());
+		}
+		list.pin();
+		this.list = list;
+		ix = list.listIterator(index);
+		jumped = true;
+	}
+
 	/**
 	 * @return the next Object in the list, advancing the cursor one to the right
 	 */
 	@Override
 	public Object next() {
-		return ix.next();
+		Object obj = ix.next();
+		jumped = false;
+		return obj;
 	}
 
 	/**
@@ -47,7 +90,9 @@ public class NetLogoMutableListIndex implements ExtensionObject, ListIterator<Ob
 	 */
 	@Override
 	public Object previous() {
-		return ix.previous();
+		Object obj = ix.previous();
+		jumped = false;
+		return obj;
 	}
 
 	/**
@@ -73,8 +118,8 @@ public class NetLogoMutableListIndex implements ExtensionObject, ListIterator<Ob
 	 */
 	@Override
 	public void add(Object obj) {
-		list.incSize();
 		ix.add(obj);
+		list.incSize(ix.previousIndex());
 	}
 
 	/**
@@ -82,8 +127,11 @@ public class NetLogoMutableListIndex implements ExtensionObject, ListIterator<Ob
 	 */
 	@Override
 	public void remove() {
-		list.decSize();
+		if (jumped) {
+			throw new IllegalStateException("Cannot remove() after seek() until next() or previous() is called");
+		}
 		ix.remove();
+		list.decSize(ix.nextIndex());
 	}
 
 	/**
@@ -92,9 +140,204 @@ public class NetLogoMutableListIndex implements ExtensionObject, ListIterator<Ob
 	 * @param obj the new object to store here
 	 */
 	public void set(Object obj) {
+		if (jumped) {
+			throw new IllegalStateException("Cannot set() after seek() until next() or previous() is called");
+		}
 		ix.set(obj);
 	}
 
+	/**
+	 * Insert several things in to the list at the cursor, in order, leaving the
+	 * cursor after the last of them. This is O(k) in the number of things for
+	 * linked lists, and the list's size is only updated once.
+	 * 
+	 * @param items the things to insert, which must not be from an iterator over
+	 *              this cursor's list
+	 * @return the number of things inserted
+	 * @throws IllegalArgumentException if the list can't store one of the things,
+	 *                                  in which case those before it will have
+	 *                                  been inserted
+	 */
+	public int addAll(Iterator<? extends Object> items) {
+		int index = ix.nextIndex();
+		int n = 0;
+		try {
+			while (items.hasNext()) {
+				ix.add(items.next());
+				n++;
+			}
+		} finally {
+			if (n > 0) {
+				list.incSize(index, n);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Delete the next few things to the right of the cursor, updating the list's
+	 * size once. As with remove(), the cursor must then be moved before deleting
+	 * or overwriting again.
+	 * 
+	 * @param n the number of things to delete
+	 * @throws ExtensionException if there are fewer than n things to the right of
+	 *                            the cursor
+	 */
+	public void removeNext(int n) throws ExtensionException {
+		int index = ix.nextIndex();
+		if (n < 0 || n > list.size() - index) {
+			throw new ExtensionException("Cannot delete " + n + " items from " + index + " in a list of length "
+					+ list.size());
+		}
+		int i = 0;
+		try {
+			for (; i < n; i++) {
+				ix.next();
+				ix.remove();
+			}
+		} finally {
+			if (i > 0) {
+				list.decSize(index, i);
+			}
+		}
+	}
+
+	/**
+	 * Overwrite the next few things to the right of the cursor, in order, leaving
+	 * the cursor after the last of them (as if it had been moved right over them).
+	 * The new things are all read before any are stored, so that if there aren't
+	 * n of them, nothing is overwritten.
+	 * 
+	 * @param items the new things to store
+	 * @param n     the number of things in <code>items</code>
+	 * @throws ExtensionException       if n is negative, there are fewer than n
+	 *                                  things to the right of the cursor, or
+	 *                                  <code>items</code> doesn't have exactly n
+	 *                                  things in it
+	 * @throws IllegalArgumentException if the list can't store one of the things,
+	 *                                  in which case those before it will have
+	 *                                  been overwritten
+	 */
+	public void setNext(Iterator<? extends Object> items, int n) throws ExtensionException {
+		int index = ix.nextIndex();
+		if (n < 0 || n > list.size() - index) {
+			throw new ExtensionException("Cannot overwrite " + n + " items from " + index + " in a list of length "
+					+ list.size());
+		}
+		Object[] objs = new Object[n];
+		for (int i = 0; i < n; i++) {
+			if (!items.hasNext()) {
+				throw new ExtensionException("Cannot overwrite " + n + " items with " + i + " things");
+			}
+			objs[i] = items.next();
+		}
+		if (items.hasNext()) {
+			throw new ExtensionException("Cannot overwrite " + n + " items with more than " + n + " things");
+		}
+		for (Object obj : objs) {
+			ix.next();
+			jumped = false;
+			ix.set(obj);
+		}
+	}
+
+	/**
+	 * Cut the list at the cursor, moving everything to the right of the cursor to
+	 * a new list, which is O(1) for linked lists. The cursor is left at the end of
+	 * its list, and can't be used to delete or overwrite until it has been moved
+	 * left or right.
+	 * 
+	 * @return the new list
+	 */
+	public NetLogoMutableList split() {
+		return list.split(ix);
+	}
+
+	/**
+	 * Move everything in another list into this cursor's list at the cursor,
+	 * leaving the cursor after them and the other list empty. If both lists are
+	 * linked, this is O(1).
+	 * 
+	 * @param other the other list
+	 * @throws IllegalArgumentException if the other list is this cursor's list or
+	 *                                  has things in it that this cursor's list
+	 *                                  can't store
+	 */
+	public void splice(NetLogoMutableList other) {
+		list.splice(ix, other);
+	}
+
+	/**
+	 * Move the cursor so that the next element is at an index in the list. Short
+	 * moves step along the list; longer ones start a new iterator at the index,
+	 * which for linked and indexed lists uses the list's index of checkpoints
+	 * rather than walking from the front. Either way, the cursor can't be used to delete or
+	 * overwrite until it has been moved left or right.
+	 * 
+	 * @param index the index (0 for the front of the list, or the length of the
+	 *              list for the end)
+	 * @throws ExtensionException if the index is out of range
+	 */
+	public void seek(int index) throws ExtensionException {
+		int size = list.size();
+		if (index < 0 || index > size) {
+			throw new ExtensionException("Cannot move cursor to " + index + " in a list of length " + size);
+		}
+		int from = ix.nextIndex();
+		if (Math.abs(index - from) <= MutableList.Checkpoints.STRIDE) {
+			for (; from < index; from++) {
+				ix.next();
+			}
+			for (; from > index; from--) {
+				ix.previous();
+			}
+		} else {
+			ix = list.listIterator(index);
+		}
+		jumped = true;
+	}
+
+	/**
+	 * Move the cursor to the end of the list
+	 */
+	public void seekEnd() {
+		try {
+			seek(list.size());
+		} catch (ExtensionException e) {
+			throw new RuntimeException("BUG! " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Move the cursor a number of elements
+	 * 
+	 * @param n the number of elements to move right (left if negative)
+	 * @throws ExtensionException if that would move the cursor off either end of
+	 *                            the list
+	 */
+	public void skip(int n) throws ExtensionException {
+		int index = ix.nextIndex() + n;
+		if (index < 0 || index > list.size()) {
+			throw new ExtensionException("Cannot move cursor " + n + " from " + ix.nextIndex()
+					+ " in a list of length " + list.size());
+		}
+		seek(index);
+	}
+
+	/**
+	 * @return the ID of this cursor
+	 */
+	public long getID() {
+		return id;
+	}
+
+	/**
+	 * @return the list this is a cursor for
+	 */
+	NetLogoMutableList getList() {
+		return list;
+	}
+
 	/**
 	 * Utility method to convert a NetLogo API argument to a command into a
 	 * NetLogoMutableListIndex
@@ -125,6 +368,7 @@ public class NetLogoMutableListIndex implements ExtensionObject, ListIterator<Ob
 	@Override
 	public String dump(boolean readable, boolean exporting, boolean reference) {
 		if (exporting && reference) {
+			WorldExporter.referenced(this);
 			return Long.toString(id);
 		} else {
 			return (exporting ? (id + ": [!") : "[!") + list.getID() + "!]<" + ix.previousIndex() + ", "
@@ -0,0 +1,276 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.core.ExtensionObject;
+
+/**
+ * NetLogo extension object wrapping a PriorityHeap, so that items can be
+ * scheduled by a numeric priority (e.g. the time of an event) and taken out in
+ * order of priority in O(log N) per item.
+ *
+ * @author gary
+ */
+public class NetLogoPriorityQueue implements ExtensionObject {
+	public static final String DATA_TYPE_NAME = "priority-queue";
+	private final PriorityHeap heap;
+	private static long next_id = 0L;
+	private final long id;
+
+	/**
+	 * NetLogo extension object for an item in a priority queue, which can be used
+	 * to decrease its priority while it is in the queue.
+	 *
+	 * @author gary
+	 */
+	public static class Handle extends PriorityHeap.Entry implements ExtensionObject {
+		public static final String DATA_TYPE_NAME = "pq-handle";
+		private static long next_id = 0L;
+		private final long id;
+
+		/**
+		 * @param item
+		 * @param priority
+		 */
+		public Handle(Object item, double priority) {
+			super(item, priority);
+			id = next_id;
+			next_id++;
+		}
+
+		public static Handle asHandle(Argument arg) throws ExtensionException {
+			Object obj = arg.get();
+			if (obj instanceof Handle) {
+				return (Handle) obj;
+			} else {
+				throw new ExtensionException("A " + obj.getClass().getSimpleName() + " (value \"" + obj.toString()
+						+ "\") was given as an argument where a " + MutableListExtension.EXTENSION_NAME + ":"
+						+ DATA_TYPE_NAME + " was expected");
+			}
+		}
+
+		/**
+		 * Mirror the table extension's dump()
+		 */
+		@Override
+		public String dump(boolean readable, boolean exporting, boolean reference) {
+			if (exporting && reference) {
+				return Long.toString(id);
+			} else {
+				return (exporting ? (id + ": ") : "") + "[!" + getPriority() + " " + getItem() + "!]";
+			}
+		}
+
+		@Override
+		public String getExtensionName() {
+			return MutableListExtension.EXTENSION_NAME;
+		}
+
+		@Override
+		public String getNLTypeName() {
+			return DATA_TYPE_NAME;
+		}
+
+		/**
+		 * Handles are only equal to themselves
+		 */
+		@Override
+		public boolean recursivelyEqual(Object obj) {
+			return obj == this;
+		}
+	}
+
+	/**
+	 * Constructor returning an empty priority queue
+	 */
+	public NetLogoPriorityQueue() {
+		heap = new PriorityHeap();
+		id = next_id;
+		next_id++;
+	}
+
+	/**
+	 * @return the number of items in the queue
+	 */
+	public int size() {
+		return heap.size();
+	}
+
+	/**
+	 * @return <code>true</code> if there are no items in the queue
+	 */
+	public boolean isEmpty() {
+		return heap.isEmpty();
+	}
+
+	/**
+	 * Add an item to the queue
+	 *
+	 * @param item
+	 * @param priority
+	 * @return a handle on the item in the queue
+	 * @throws ExtensionException if the priority is NaN
+	 */
+	public Handle push(Object item, double priority) throws ExtensionException {
+		Handle h = new Handle(item, priority);
+		try {
+			heap.push(h);
+		} catch (IllegalArgumentException e) {
+			throw new ExtensionException(e.getMessage());
+		}
+		return h;
+	}
+
+	/**
+	 * Add all the items in a list to an empty queue, with priorities given by the
+	 * array. This is O(N).
+	 *
+	 * @param list       the list
+	 * @param priorities the priorities of each item in the list, in order
+	 * @throws ExtensionException if a priority is NaN
+	 */
+	void pushAll(NetLogoMutableList list, final double[] priorities) throws ExtensionException {
+		final Iterator<Object> ix = list.iterator();
+		try {
+			heap.pushAll(new Iterator<Handle>() {
+				private int i = 0;
+
+				@Override
+				public boolean hasNext() {
+					return ix.hasNext();
+				}
+
+				@Override
+				public Handle next() {
+					return new Handle(ix.next(), priorities[i++]);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			});
+		} catch (IllegalArgumentException e) {
+			throw new ExtensionException(e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the handle of the item that will come out next
+	 * @throws ExtensionException if the queue is empty
+	 */
+	public Handle peek() throws ExtensionException {
+		try {
+			return (Handle) heap.peek();
+		} catch (NoSuchElementException e) {
+			throw new ExtensionException("Priority queue is empty");
+		}
+	}
+
+	/**
+	 * @return the handle of the item with the lowest priority, having removed it
+	 *         from the queue
+	 * @throws ExtensionException if the queue is empty
+	 */
+	public Handle pop() throws ExtensionException {
+		try {
+			return (Handle) heap.pop();
+		} catch (NoSuchElementException e) {
+			throw new ExtensionException("Priority queue is empty");
+		}
+	}
+
+	/**
+	 * Lower the priority of an item in the queue
+	 *
+	 * @param h        the handle of the item
+	 * @param priority the new priority
+	 * @throws ExtensionException if the item isn't in the queue or the priority
+	 *                            would go up
+	 */
+	public void decreaseKey(Handle h, double priority) throws ExtensionException {
+		try {
+			heap.decreaseKey(h, priority);
+		} catch (IllegalArgumentException e) {
+			throw new ExtensionException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Empty the queue
+	 */
+	public void clear() {
+		heap.clear();
+	}
+
+	/**
+	 * Utility method to convert a NetLogo API argument to a command into a
+	 * NetLogoPriorityQueue
+	 *
+	 * @param arg
+	 * @return
+	 * @throws ExtensionException
+	 */
+	public static NetLogoPriorityQueue asNetLogoPriorityQueue(Argument arg) throws ExtensionException {
+		Object obj = arg.get();
+		if (obj instanceof NetLogoPriorityQueue) {
+			return (NetLogoPriorityQueue) obj;
+		} else {
+			throw new ExtensionException("A " + obj.getClass().getSimpleName() + " (value \"" + obj.toString()
+					+ "\") was given as an argument where a " + MutableListExtension.EXTENSION_NAME + ":"
+					+ DATA_TYPE_NAME + " was expected");
+		}
+	}
+
+	/**
+	 * Mirror the table extension's dump(). The items are shown with their
+	 * priorities in the order they are stored in the heap.
+	 */
+	@Override
+	public String dump(boolean readable, boolean exporting, boolean reference) {
+		if (exporting && reference) {
+			return Long.toString(id);
+		}
+		StringBuffer buf = new StringBuffer();
+		buf.append(exporting ? (id + ": [!") : "[!");
+		boolean first = true;
+		for (PriorityHeap.Entry e : heap.toArray()) {
+			if (!first) {
+				buf.append(" ");
+			}
+			buf.append("(" + e.getPriority() + " " + e.getItem() + ")");
+			first = false;
+		}
+		buf.append("!]");
+		return buf.toString();
+	}
+
+	@Override
+	public String toString() {
+		return dump(false, false, false);
+	}
+
+	@Override
+	public String getExtensionName() {
+		return MutableListExtension.EXTENSION_NAME;
+	}
+
+	@Override
+	public String getNLTypeName() {
+		return DATA_TYPE_NAME;
+	}
+
+	/**
+	 * Queues are only equal to themselves
+	 */
+	@Override
+	public boolean recursivelyEqual(Object obj) {
+		return obj == this;
+	}
+}
@@ -0,0 +1,758 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import java.lang.reflect.Array;
+
+/**
+ * A list that can only contain numbers, stored as <code>double</code>s in a
+ * growable circular array. This is for lists that are used for computing
+ * summary statistics: {@link #getDouble(int)} and {@link #toDoubleArray()} give
+ * access to the numbers without creating a <code>Double</code> object for each
+ * of them.
+ *
+ * Adding and removing at either end of the list is O(1) (amortized, as the
+ * array doubles in size when it is full), as are {@link #size()} and
+ * {@link #get(int)}. Inserting or deleting with a ListIterator is O(N), as the
+ * elements on the shorter side of the cursor have to be moved.
+ *
+ * Elements are given back as <code>Double</code>s. Attempting to add anything
+ * that isn't a number causes an IllegalArgumentException.
+ *
+ * @author gary
+ */
+public class NumericList implements MutableSequence {
+	private static final int INITIAL_CAPACITY = 16;
+	private double[] data;
+	private int head; // index in data of the first element
+	private int size;
+
+	/**
+	 * Constructor returning an empty list
+	 */
+	public NumericList() {
+		data = new double[INITIAL_CAPACITY];
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Convenience constructor allowing a list to be initialized with a collection
+	 *
+	 * @param c the collection
+	 * @throws IllegalArgumentException if any of the elements are not numbers
+	 */
+	public NumericList(Collection<? extends Object> c) {
+		this();
+		addAll(c);
+	}
+
+	/**
+	 * @param o      an object to be added to the list
+	 * @param method the method it is being added by
+	 * @return the object as a double
+	 * @throws NullPointerException     if the object is <code>null</code>
+	 * @throws IllegalArgumentException if the object is not a number
+	 */
+	private static double asDouble(Object o, String method) {
+		if (o instanceof Double) {
+			return (Double) o;
+		} else if (o instanceof Number) {
+			return ((Number) o).doubleValue();
+		} else if (o == null) {
+			throw new NullPointerException("Cannot " + method + " a null to a NumericList");
+		} else {
+			throw new IllegalArgumentException("Cannot " + method + " \"" + o + "\" to a numeric list, as it is a "
+					+ o.getClass().getSimpleName() + " rather than a number");
+		}
+	}
+
+	/**
+	 * Check that everything in a collection can be added to the list, so that
+	 * adding a collection doesn't stop half way through
+	 *
+	 * @param c      the collection
+	 * @param method the method it is being added by
+	 */
+	private static void checkAll(Collection<? extends Object> c, String method) {
+		for (Object o : c) {
+			asDouble(o, method);
+		}
+	}
+
+	/**
+	 * @param index an index in the list
+	 * @return the corresponding index in the array
+	 */
+	private int slot(int index) {
+		int j = head + index;
+		return j >= data.length ? j - data.length : j;
+	}
+
+	/**
+	 * Make sure there is room in the array for another element
+	 */
+	private void grow() {
+		if (size == data.length) {
+			double[] bigger = new double[data.length * 2];
+			int n = data.length - head;
+			System.arraycopy(data, head, bigger, 0, n < size ? n : size);
+			if (n < size) {
+				System.arraycopy(data, 0, bigger, n, size - n);
+			}
+			data = bigger;
+			head = 0;
+		}
+	}
+
+	/**
+	 * @param index the index of the element wanted
+	 * @return the number stored there
+	 * @throws IndexOutOfBoundsException if index is outwith [0,
+	 *                                   <code>size()</code>[
+	 */
+	public double getDouble(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("NumericList of size " + size + " has no index " + index);
+		}
+		return data[slot(index)];
+	}
+
+	/**
+	 * @return a copy of the numbers in the list
+	 */
+	public double[] toDoubleArray() {
+		double[] array = new double[size];
+		int n = data.length - head;
+		System.arraycopy(data, head, array, 0, n < size ? n : size);
+		if (n < size) {
+			System.arraycopy(data, 0, array, n, size - n);
+		}
+		return array;
+	}
+
+	/**
+	 * Insert a number at the index, moving whichever side of the list is shorter
+	 *
+	 * @param index
+	 * @param d
+	 */
+	private void insertAt(int index, double d) {
+		grow();
+		if (index < size / 2) {
+			head = (head == 0) ? data.length - 1 : head - 1;
+			for (int i = 0; i < index; i++) {
+				data[slot(i)] = data[slot(i + 1)];
+			}
+		} else {
+			for (int i = size; i > index; i--) {
+				data[slot(i)] = data[slot(i - 1)];
+			}
+		}
+		data[slot(index)] = d;
+		size++;
+	}
+
+	/**
+	 * Remove the number at the index, moving whichever side of the list is shorter
+	 *
+	 * @param index
+	 * @return the number removed
+	 */
+	private double removeAt(int index) {
+		double d = data[slot(index)];
+		if (index < size / 2) {
+			for (int i = index; i > 0; i--) {
+				data[slot(i)] = data[slot(i - 1)];
+			}
+			head = slot(1);
+		} else {
+			for (int i = index; i < size - 1; i++) {
+				data[slot(i)] = data[slot(i + 1)];
+			}
+		}
+		size--;
+		return d;
+	}
+
+	/**
+	 * O(1)
+	 *
+	 * @return the size of the list
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * O(1)
+	 */
+	@Override
+	public Object get(int index) {
+		return Double.valueOf(getDouble(index));
+	}
+
+	/**
+	 * O(1)
+	 */
+	@Override
+	public Object set(int index, Object element) {
+		double d = asDouble(element, "set()");
+		double old = getDouble(index);
+		data[slot(index)] = d;
+		return Double.valueOf(old);
+	}
+
+	/**
+	 * As with {@link MutableList#subList(int, int)}, this is not supported.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public List<Object> subList(int fromIndex, int toIndex) {
+		throw new UnsupportedOperationException("NumericList does not support subList()");
+	}
+
+	/**
+	 * N.B. numbers are compared as per <code>Double.equals()</code>
+	 */
+	@Override
+	public boolean contains(Object o) {
+		return indexOf(o) >= 0;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		if (!(o instanceof Double)) {
+			return -1;
+		}
+		double d = (Double) o;
+		for (int i = 0; i < size; i++) {
+			if (Double.compare(data[slot(i)], d) == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		if (!(o instanceof Double)) {
+			return -1;
+		}
+		double d = (Double) o;
+		for (int i = size - 1; i >= 0; i--) {
+			if (Double.compare(data[slot(i)], d) == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param c a collection
+	 * @return the numbers in the collection, sorted, so they can be searched
+	 *         without creating <code>Double</code>s
+	 */
+	private static double[] sortedNumbers(Collection<?> c) {
+		int n = 0;
+		for (Object o : c) {
+			if (o instanceof Double) {
+				n++;
+			}
+		}
+		double[] numbers = new double[n];
+		n = 0;
+		for (Object o : c) {
+			if (o instanceof Double) {
+				numbers[n] = (Double) o;
+				n++;
+			}
+		}
+		Arrays.sort(numbers);
+		return numbers;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		for (Object o : c) {
+			if (!contains(o)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsAny(Collection<?> objs) {
+		double[] numbers = sortedNumbers(objs);
+		if (numbers.length > 0) {
+			for (int i = 0; i < size; i++) {
+				if (Arrays.binarySearch(numbers, data[slot(i)]) >= 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A NumericList cannot contain lists, so this is the same as
+	 * {@link #contains(Object)}
+	 */
+	@Override
+	public boolean containsDeeply(Object obj) {
+		return contains(obj);
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		return new NumericListIterator(0);
+	}
+
+	@Override
+	public ListIterator<Object> listIterator() {
+		return new NumericListIterator(0);
+	}
+
+	@Override
+	public ListIterator<Object> listIterator(int index) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("NumericList of size " + size + " has no element " + index);
+		}
+		return new NumericListIterator(index);
+	}
+
+	@Override
+	public Iterator<Object> depthFirstIterator() {
+		return new DepthFirstIterator(this);
+	}
+
+	@Override
+	public Object[] toArray() {
+		Object[] array = new Object[size];
+		for (int i = 0; i < size; i++) {
+			array[i] = Double.valueOf(data[slot(i)]);
+		}
+		return array;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T[] toArray(T[] a) {
+		T[] array = a.length >= size ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+		Object[] objs = array;
+		for (int i = 0; i < size; i++) {
+			objs[i] = Double.valueOf(data[slot(i)]);
+		}
+		for (int i = size; i < array.length; i++) {
+			array[i] = null;
+		}
+		return array;
+	}
+
+	/**
+	 * Add a number to the end of the list. O(1) (amortized).
+	 *
+	 * @param d
+	 */
+	public void push(double d) {
+		grow();
+		data[slot(size)] = d;
+		size++;
+	}
+
+	/**
+	 * Add a number to the end of the list. O(1) (amortized).
+	 *
+	 * @throws IllegalArgumentException if o is not a number
+	 */
+	@Override
+	public boolean add(Object o) {
+		push(asDouble(o, "add()"));
+		return true;
+	}
+
+	@Override
+	public void push(Object o) {
+		push(asDouble(o, "push()"));
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the iterator gives something that is
+	 *                                  not a number, in which case none of what
+	 *                                  it gave are added
+	 */
+	@Override
+	public int pushAll(Iterator<? extends Object> ix) {
+		int n = size;
+		try {
+			while (ix.hasNext()) {
+				push(asDouble(ix.next(), "add()"));
+			}
+		} catch (RuntimeException e) {
+			size = n;
+			throw e;
+		}
+		return size - n;
+	}
+
+	/**
+	 * Add a number to the front of the list. O(1) (amortized).
+	 *
+	 * @throws IllegalArgumentException if o is not a number
+	 */
+	@Override
+	public void unshift(Object o) {
+		double d = asDouble(o, "unshift()");
+		grow();
+		head = (head == 0) ? data.length - 1 : head - 1;
+		data[head] = d;
+		size++;
+	}
+
+	@Override
+	public Object shift() {
+		if (size == 0) {
+			throw new NoSuchElementException("Cannot shift from empty NumericList");
+		}
+		double d = data[head];
+		head = slot(1);
+		size--;
+		return Double.valueOf(d);
+	}
+
+	@Override
+	public Object pop() {
+		if (size == 0) {
+			throw new NoSuchElementException("Cannot pop from empty NumericList");
+		}
+		size--;
+		return Double.valueOf(data[slot(size)]);
+	}
+
+	@Override
+	public void add(int index, Object element) {
+		double d = asDouble(element, "add()");
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("NumericList of size " + size + " has no index " + index);
+		}
+		insertAt(index, d);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if any elements of c are not numbers, in
+	 *                                  which case none of them are added
+	 */
+	@Override
+	public boolean addAll(Collection<? extends Object> c) {
+		if (c == null) {
+			throw new NullPointerException("Attempt to add from null collection");
+		}
+		if (c instanceof NumericList) {
+			NumericList other = (NumericList) c;
+			for (int i = 0, n = other.size; i < n; i++) {
+				push(other.data[other.slot(i)]);
+			}
+		} else {
+			checkAll(c, "add()");
+			for (Object o : c) {
+				push(asDouble(o, "add()"));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * If c is this list, a copy of it is added, rather than everything added so
+	 * far, forever.
+	 *
+	 * @throws IllegalArgumentException if any elements of c are not numbers, in
+	 *                                  which case none of them are added
+	 */
+	@Override
+	public boolean addAll(int index, Collection<? extends Object> c) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("NumericList of size " + size + " has no index " + index);
+		}
+		if (c == this) {
+			c = Arrays.asList(toArray());
+		}
+		checkAll(c, "add()");
+		for (Object o : c) {
+			insertAt(index, asDouble(o, "add()"));
+			index++;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		int ix = indexOf(o);
+		if (ix >= 0) {
+			removeAt(ix);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Object remove(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("NumericList of size " + size + " has no index " + index);
+		}
+		return Double.valueOf(removeAt(index));
+	}
+
+	/**
+	 * Remove the numbers that are (or are not) in the array in one pass
+	 *
+	 * @param numbers a sorted array of numbers
+	 * @param retain  if <code>true</code>, numbers not in the array are removed;
+	 *                otherwise numbers in the array are removed
+	 * @return the number of elements removed
+	 */
+	private int filter(double[] numbers, boolean retain) {
+		int w = 0;
+		for (int r = 0; r < size; r++) {
+			double d = data[slot(r)];
+			if ((Arrays.binarySearch(numbers, d) >= 0) == retain) {
+				data[slot(w)] = d;
+				w++;
+			}
+		}
+		int n_removed = size - w;
+		size = w;
+		return n_removed;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		return removeAllCount(c) > 0;
+	}
+
+	@Override
+	public int removeAllCount(Collection<?> c) {
+		return filter(sortedNumbers(c), false);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		return retainAllCount(c) > 0;
+	}
+
+	@Override
+	public int retainAllCount(Collection<?> c) {
+		return filter(sortedNumbers(c), true);
+	}
+
+	/**
+	 * Empty the list, keeping the array for reuse
+	 */
+	@Override
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	@Override
+	public void reverse() {
+		for (int i = 0, j = size - 1; i < j; i++, j--) {
+			int si = slot(i);
+			int sj = slot(j);
+			double d = data[si];
+			data[si] = data[sj];
+			data[sj] = d;
+		}
+	}
+
+	/**
+	 * Add other to the end of this list and empty other.
+	 *
+	 * @throws IllegalArgumentException if any elements of other are not numbers,
+	 *                                  in which case neither list is changed
+	 */
+	@Override
+	public void cat(MutableSequence other) {
+		addAll(other);
+		other.clear();
+	}
+
+	@Override
+	public NumericList clone() {
+		NumericList copy = new NumericList();
+		copy.data = toDoubleArray();
+		if (copy.data.length < INITIAL_CAPACITY) {
+			copy.data = Arrays.copyOf(copy.data, INITIAL_CAPACITY);
+		}
+		copy.size = size;
+		return copy;
+	}
+
+	@Override
+	public boolean check(boolean msg, String msgPrefix) {
+		if (size < 0 || size > data.length || head < 0 || head >= data.length) {
+			if (msg) {
+				System.err.println(msgPrefix + ": NumericList has size " + size + " and head " + head
+						+ " with capacity " + data.length);
+			}
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String asPrintableString(String start, String sep, String end) {
+		StringBuffer buf = new StringBuffer();
+
+		buf.append(start);
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				buf.append(sep);
+			}
+			buf.append(data[slot(i)]);
+		}
+		buf.append(end);
+		return buf.toString();
+	}
+
+	/**
+	 * @return <code>true</code> if the other is a list of the same length with
+	 *         equal elements
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof MutableSequence)) {
+			return false;
+		}
+		MutableSequence otherList = (MutableSequence) other;
+		if (otherList.size() != size) {
+			return false;
+		}
+		if (otherList instanceof NumericList) {
+			NumericList numbers = (NumericList) otherList;
+			for (int i = 0; i < size; i++) {
+				if (Double.compare(data[slot(i)], numbers.data[numbers.slot(i)]) != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+		Iterator<Object> ix = otherList.iterator();
+		for (int i = 0; i < size; i++) {
+			if (!Double.valueOf(data[slot(i)]).equals(ix.next())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++) {
+			hash = 31 * hash + Double.hashCode(data[slot(i)]);
+		}
+		return hash;
+	}
+
+	/**
+	 * ListIterator for NumericList
+	 *
+	 * @author gary
+	 */
+	private class NumericListIterator implements ListIterator<Object> {
+		private int cursor; // index of the element after the cursor
+		private int lastRet; // index of the element last returned; -1 if none
+
+		private NumericListIterator(int index) {
+			cursor = index;
+			lastRet = -1;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return cursor < size;
+		}
+
+		@Override
+		public boolean hasPrevious() {
+			return cursor > 0;
+		}
+
+		@Override
+		public Object next() {
+			if (cursor >= size) {
+				throw new NoSuchElementException("Reached end of NumericList (at [" + (cursor - 1) + "])");
+			}
+			lastRet = cursor;
+			cursor++;
+			return Double.valueOf(data[slot(lastRet)]);
+		}
+
+		@Override
+		public Object previous() {
+			if (cursor <= 0) {
+				throw new NoSuchElementException("Reached beginning of NumericList (at [" + cursor + "])");
+			}
+			cursor--;
+			lastRet = cursor;
+			return Double.valueOf(data[slot(lastRet)]);
+		}
+
+		@Override
+		public int nextIndex() {
+			return cursor;
+		}
+
+		@Override
+		public int previousIndex() {
+			return cursor - 1;
+		}
+
+		@Override
+		public void remove() {
+			if (lastRet < 0 || lastRet >= size) {
+				throw new IllegalStateException(
+						"Cannot remove() unless next() or previous() has been called since the last add() or remove()");
+			}
+			removeAt(lastRet);
+			if (lastRet < cursor) {
+				cursor--;
+			}
+			lastRet = -1;
+		}
+
+		@Override
+		public void set(Object o) {
+			double d = asDouble(o, "set()");
+			if (lastRet < 0 || lastRet >= size) {
+				throw new IllegalStateException(
+						"Cannot set() unless next() or previous() has been called since the last add() or remove()");
+			}
+			data[slot(lastRet)] = d;
+		}
+
+		@Override
+		public void add(Object o) {
+			double d = asDouble(o, "add()");
+			insertAt(cursor > size ? size : cursor, d);
+			cursor++;
+			lastRet = -1;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap of items with numeric priorities, for use as a priority
+ * queue (e.g. for scheduling events). push(), pop() and decreaseKey() are
+ * O(log N); peek() and size() are O(1), and building a heap from N entries
+ * with pushAll() on an empty heap is O(N).
+ *
+ * Entries with the same priority come out in the order they were pushed.
+ * push() returns the Entry, which can be kept as a handle for decreaseKey().
+ *
+ * @author gary
+ */
+public class PriorityHeap {
+	private static final int INITIAL_CAPACITY = 16;
+	private Entry[] heap;
+	private int size;
+	private long next_seq;
+
+	/**
+	 * An item and its priority. The entry knows where it is in the heap, so it can
+	 * be found again in O(1) by decreaseKey().
+	 *
+	 * @author gary
+	 */
+	public static class Entry {
+		private final Object item;
+		private double priority;
+		private long seq; // order of pushing, to break ties
+		private int index; // position in the heap array; -1 if not in a heap
+
+		/**
+		 * @param item     the item
+		 * @param priority its priority (lower comes out first)
+		 */
+		public Entry(Object item, double priority) {
+			this.item = item;
+			this.priority = priority;
+			seq = 0L;
+			index = -1;
+		}
+
+		/**
+		 * @return the item
+		 */
+		public Object getItem() {
+			return item;
+		}
+
+		/**
+		 * @return the priority
+		 */
+		public double getPriority() {
+			return priority;
+		}
+
+		/**
+		 * @return <code>true</code> if the entry is in a heap (i.e. has been pushed
+		 *         and not yet popped)
+		 */
+		public boolean isQueued() {
+			return index >= 0;
+		}
+	}
+
+	/**
+	 * Constructor returning an empty heap
+	 */
+	public PriorityHeap() {
+		heap = new Entry[INITIAL_CAPACITY];
+		size = 0;
+		next_seq = 0L;
+	}
+
+	/**
+	 * @return the number of entries in the heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return <code>true</code> if there are no entries in the heap
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param e an entry
+	 * @return <code>true</code> if the entry is in this heap
+	 */
+	public boolean contains(Entry e) {
+		return e.index >= 0 && e.index < size && heap[e.index] == e;
+	}
+
+	/**
+	 * @param a
+	 * @param b
+	 * @return <code>true</code> if <code>a</code> should come out before
+	 *         <code>b</code>
+	 */
+	private static boolean before(Entry a, Entry b) {
+		return a.priority < b.priority || (a.priority == b.priority && a.seq < b.seq);
+	}
+
+	/**
+	 * Put an entry at a position in the heap array
+	 *
+	 * @param i
+	 * @param e
+	 */
+	private void place(int i, Entry e) {
+		heap[i] = e;
+		e.index = i;
+	}
+
+	/**
+	 * Move the entry at position i up towards the root until its parent comes out
+	 * before it
+	 *
+	 * @param i
+	 */
+	private void siftUp(int i) {
+		Entry e = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(e, heap[parent])) {
+				break;
+			}
+			place(i, heap[parent]);
+			i = parent;
+		}
+		place(i, e);
+	}
+
+	/**
+	 * Move the entry at position i down towards the leaves until it comes out
+	 * before both its children
+	 *
+	 * @param i
+	 */
+	private void siftDown(int i) {
+		Entry e = heap[i];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && before(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!before(heap[child], e)) {
+				break;
+			}
+			place(i, heap[child]);
+			i = child;
+		}
+		place(i, e);
+	}
+
+	/**
+	 * Check the entry can be added to the heap, and give it its place in the
+	 * order of pushing
+	 *
+	 * @param e
+	 * @throws IllegalArgumentException if the entry is already in a heap or its
+	 *                                  priority is NaN
+	 */
+	private void admit(Entry e) {
+		if (e.index >= 0) {
+			throw new IllegalArgumentException("Item \"" + e.item + "\" is already in a priority queue");
+		}
+		if (Double.isNaN(e.priority)) {
+			throw new IllegalArgumentException("Item \"" + e.item + "\" does not have a numeric priority");
+		}
+		if (size == heap.length) {
+			heap = Arrays.copyOf(heap, heap.length * 2);
+		}
+		e.seq = next_seq;
+		next_seq++;
+	}
+
+	/**
+	 * Add an entry to the heap. O(log N).
+	 *
+	 * @param e the entry
+	 * @throws IllegalArgumentException if the entry is already in a heap or its
+	 *                                  priority is NaN
+	 */
+	public void push(Entry e) {
+		admit(e);
+		place(size, e);
+		size++;
+		siftUp(size - 1);
+	}
+
+	/**
+	 * Add an item to the heap. O(log N).
+	 *
+	 * @param item     the item
+	 * @param priority its priority
+	 * @return the entry, for use with decreaseKey()
+	 */
+	public Entry push(Object item, double priority) {
+		Entry e = new Entry(item, priority);
+		push(e);
+		return e;
+	}
+
+	/**
+	 * Add several entries to the heap. If the heap is empty, this is done by
+	 * putting them all in and then sifting down from the last parent (Floyd's
+	 * method), which is O(N) rather than O(N log N).
+	 *
+	 * @param ix the entries, which are pushed in the order given
+	 * @return the number of entries added
+	 * @throws IllegalArgumentException if an entry is already in a heap or its
+	 *                                  priority is NaN, in which case the entries
+	 *                                  before it will have been added
+	 */
+	public int pushAll(Iterator<? extends Entry> ix) {
+		if (size > 0) {
+			int n = 0;
+			while (ix.hasNext()) {
+				push(ix.next());
+				n++;
+			}
+			return n;
+		}
+		try {
+			while (ix.hasNext()) {
+				Entry e = ix.next();
+				admit(e);
+				place(size, e);
+				size++;
+			}
+		} finally {
+			for (int i = (size >>> 1) - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the entry that will next come out of the heap
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public Entry peek() {
+		if (size == 0) {
+			throw new NoSuchElementException("Cannot peek at empty PriorityHeap");
+		}
+		return heap[0];
+	}
+
+	/**
+	 * Remove the entry with the lowest priority (the earliest pushed, if there are
+	 * several). O(log N).
+	 *
+	 * @return the entry
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public Entry pop() {
+		if (size == 0) {
+			throw new NoSuchElementException("Cannot pop from empty PriorityHeap");
+		}
+		Entry min = heap[0];
+		size--;
+		if (size > 0) {
+			place(0, heap[size]);
+			heap[size] = null;
+			siftDown(0);
+		} else {
+			heap[0] = null;
+		}
+		min.index = -1;
+		return min;
+	}
+
+	/**
+	 * Lower the priority of an entry in the heap. O(log N).
+	 *
+	 * @param e        the entry
+	 * @param priority the new priority
+	 * @throws IllegalArgumentException if the entry is not in this heap, or the
+	 *                                  new priority is higher than the old one or
+	 *                                  NaN
+	 */
+	public void decreaseKey(Entry e, double priority) {
+		if (!contains(e)) {
+			throw new IllegalArgumentException("Item \"" + e.item + "\" is not in this priority queue");
+		}
+		if (Double.isNaN(priority) || priority > e.priority) {
+			throw new IllegalArgumentException("Cannot decrease the priority of item \"" + e.item + "\" from "
+					+ e.priority + " to " + priority);
+		}
+		e.priority = priority;
+		siftUp(e.index);
+	}
+
+	/**
+	 * Empty the heap
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			heap[i].index = -1;
+			heap[i] = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 * @return a copy of the entries in the heap, in the order they are stored
+	 *         (the first will come out first, but the rest are only partially
+	 *         ordered)
+	 */
+	public Entry[] toArray() {
+		return Arrays.copyOf(heap, size);
+	}
+
+	/**
+	 * Check the heap property and the entries' record of their positions
+	 *
+	 * @param msg       whether to print a message if the heap is not OK
+	 * @param msgPrefix prefix for any message
+	 * @return <code>true</code> if the heap is OK
+	 */
+	public boolean check(boolean msg, String msgPrefix) {
+		for (int i = 0; i < size; i++) {
+			if (heap[i] == null || heap[i].index != i) {
+				if (msg) {
+					System.err.println(msgPrefix + ": PriorityHeap entry at " + i + " is "
+							+ (heap[i] == null ? "null" : ("recorded at " + heap[i].index)));
+				}
+				return false;
+			}
+			if (i > 0 && before(heap[i], heap[(i - 1) >>> 1])) {
+				if (msg) {
+					System.err.println(msgPrefix + ": PriorityHeap entry at " + i + " (priority "
+							+ heap[i].priority + ") comes before its parent (priority "
+							+ heap[(i - 1) >>> 1].priority + ")");
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+}
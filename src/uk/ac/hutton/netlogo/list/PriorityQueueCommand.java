@@ -0,0 +1,72 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import org.nlogo.api.Argument;
+import org.nlogo.api.Command;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * Class implementing the commands provided for priority queues
+ *
+ * @author gary
+ */
+public class PriorityQueueCommand implements Command {
+	public enum Name {
+		CLEAR, DECREASE_KEY, PUSH
+	};
+
+	private final Name cmd;
+
+	/**
+	 * Constructor passing in which of the enumerations this instance is providing
+	 * an implementation for
+	 */
+	public PriorityQueueCommand(Name cmd) {
+		this.cmd = cmd;
+	}
+
+	/**
+	 * Return the syntaxes for the commands
+	 */
+	@Override
+	public Syntax getSyntax() {
+		switch (cmd) {
+		case CLEAR:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType() });
+		case DECREASE_KEY:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.WildcardType(), Syntax.NumberType() });
+		case PUSH:
+			return SyntaxJ.commandSyntax(new int[] { Syntax.WildcardType(), Syntax.WildcardType(), Syntax.NumberType() });
+		default:
+			throw new RuntimeException("PANIC!");
+		}
+	}
+
+	/**
+	 * Implement the commands
+	 */
+	@Override
+	public void perform(Argument[] args, Context context) throws ExtensionException {
+		NetLogoPriorityQueue pq = NetLogoPriorityQueue.asNetLogoPriorityQueue(args[0]);
+
+		switch (cmd) {
+		case CLEAR:
+			pq.clear();
+			break;
+		case DECREASE_KEY:
+			pq.decreaseKey(NetLogoPriorityQueue.Handle.asHandle(args[1]), args[2].getDoubleValue());
+			break;
+		case PUSH:
+			pq.push(args[1].get(), args[2].getDoubleValue());
+			break;
+		default:
+			throw new RuntimeException("PANIC!");
+		}
+	}
+
+}
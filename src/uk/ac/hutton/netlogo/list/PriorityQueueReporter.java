@@ -0,0 +1,146 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import org.nlogo.api.AnonymousReporter;
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.Reporter;
+import org.nlogo.core.Syntax;
+import org.nlogo.core.SyntaxJ;
+
+/**
+ * Class implementing the reporters for priority queues and the handles of the
+ * items in them
+ *
+ * @author gary
+ */
+public class PriorityQueueReporter implements Reporter {
+	public enum Name {
+		EMPTY, FROM_LIST, IS_PQ, ITEM, LENGTH, MAKE, PEEK, PEEK_PRIORITY, POP, PRIORITY, PUSH_HANDLE, QUEUED
+	};
+
+	private final Name cmd;
+
+	/**
+	 * Constructor passing in which of the enumerations this instance is providing
+	 * an implementation for
+	 */
+	public PriorityQueueReporter(Name cmd) {
+		this.cmd = cmd;
+	}
+
+	/**
+	 * Return the syntaxes of the reporters
+	 */
+	@Override
+	public Syntax getSyntax() {
+		switch (cmd) {
+		case EMPTY:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.BooleanType());
+		case FROM_LIST:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType(), Syntax.ReporterType() },
+					Syntax.WildcardType());
+		case IS_PQ:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.BooleanType());
+		case ITEM:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.WildcardType());
+		case LENGTH:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.NumberType());
+		case MAKE:
+			return SyntaxJ.reporterSyntax(Syntax.WildcardType());
+		case PEEK:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.WildcardType());
+		case PEEK_PRIORITY:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.NumberType());
+		case POP:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.WildcardType());
+		case PRIORITY:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.NumberType());
+		case PUSH_HANDLE:
+			return SyntaxJ.reporterSyntax(
+					new int[] { Syntax.WildcardType(), Syntax.WildcardType(), Syntax.NumberType() },
+					Syntax.WildcardType());
+		case QUEUED:
+			return SyntaxJ.reporterSyntax(new int[] { Syntax.WildcardType() }, Syntax.BooleanType());
+		default:
+			throw new RuntimeException("PANIC!");
+		}
+	}
+
+	/**
+	 * Implement the reporters
+	 */
+	@Override
+	public Object report(Argument[] args, Context context) throws ExtensionException {
+		if (cmd == Name.MAKE) {
+			return new NetLogoPriorityQueue();
+		} else if (cmd == Name.IS_PQ) {
+			return Boolean.valueOf(args[0].get() instanceof NetLogoPriorityQueue);
+		} else if (cmd == Name.FROM_LIST) {
+			return fromList(NetLogoMutableList.asNetLogoMutableList(args[0]), args[1].getReporter(), context);
+		} else if (cmd == Name.ITEM || cmd == Name.PRIORITY || cmd == Name.QUEUED) {
+			NetLogoPriorityQueue.Handle h = NetLogoPriorityQueue.Handle.asHandle(args[0]);
+			switch (cmd) {
+			case ITEM:
+				return h.getItem();
+			case PRIORITY:
+				return Double.valueOf(h.getPriority());
+			case QUEUED:
+				return Boolean.valueOf(h.isQueued());
+			default:
+				throw new RuntimeException("PANIC!");
+			}
+		} else {
+			// All of these take a priority queue as the first argument
+			NetLogoPriorityQueue pq = NetLogoPriorityQueue.asNetLogoPriorityQueue(args[0]);
+			switch (cmd) {
+			// N.B. 'FROM_LIST', 'IS_PQ', 'ITEM', 'MAKE', 'PRIORITY' and 'QUEUED' handled above
+			case EMPTY:
+				return Boolean.valueOf(pq.isEmpty());
+			case LENGTH:
+				return Double.valueOf(pq.size());
+			case PEEK:
+				return pq.peek().getItem();
+			case PEEK_PRIORITY:
+				return Double.valueOf(pq.peek().getPriority());
+			case POP:
+				return pq.pop().getItem();
+			case PUSH_HANDLE:
+				return pq.push(args[1].get(), args[2].getDoubleValue());
+			default:
+				throw new RuntimeException("PANIC!");
+			}
+		}
+	}
+
+	/**
+	 * Build a priority queue from a list in O(N), using a reporter to get the
+	 * priority of each item
+	 *
+	 * @param list     the list
+	 * @param priority reporter giving the priority of an item
+	 * @param context
+	 * @return the priority queue
+	 * @throws ExtensionException if the reporter doesn't give a number
+	 */
+	private NetLogoPriorityQueue fromList(NetLogoMutableList list, AnonymousReporter priority, Context context)
+			throws ExtensionException {
+		double[] priorities = new double[list.size()];
+		int i = 0;
+		for (Object item : list) {
+			Object result = priority.report(context, new Object[] { item });
+			if (!(result instanceof Double)) {
+				throw new ExtensionException("Priority reporter \"" + priority + "\" gives \"" + result + "\" for \""
+						+ item + "\" -- I need a number");
+			}
+			priorities[i] = (Double) result;
+			i++;
+		}
+		NetLogoPriorityQueue pq = new NetLogoPriorityQueue();
+		pq.pushAll(list, priorities);
+		return pq;
+	}
+}
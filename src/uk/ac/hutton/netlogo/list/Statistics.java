@@ -0,0 +1,272 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.util.Arrays;
+
+/**
+ * Summary statistics of the numbers in a list, computed in a single pass that
+ * doesn't create any objects for each element. The variance is accumulated
+ * using Welford's method, which doesn't suffer from the loss of precision that
+ * subtracting the square of the sum does.
+ *
+ * Elements of the list that aren't numbers are ignored. Statistics that can't
+ * be computed because there aren't enough numbers are <code>Double.NaN</code>.
+ *
+ * Also provides quartiles computed by selection in a primitive array rather
+ * than sorting.
+ *
+ * @author gary
+ */
+public class Statistics {
+	private int n;
+	private double min;
+	private double max;
+	private double sum;
+	private double mean; // running mean used for the variance
+	private double m2; // sum of squared differences from the running mean
+
+	/**
+	 * Constructor for statistics of no numbers
+	 */
+	public Statistics() {
+		n = 0;
+		min = Double.NaN;
+		max = Double.NaN;
+		sum = Double.NaN;
+		mean = 0.0;
+		m2 = 0.0;
+	}
+
+	/**
+	 * Compute the statistics of the numbers in a list
+	 *
+	 * @param list
+	 * @return the statistics
+	 */
+	public static Statistics of(MutableSequence list) {
+		Statistics stats = new Statistics();
+		if (list instanceof NumericList) {
+			NumericList numbers = (NumericList) list;
+			for (int i = 0; i < numbers.size(); i++) {
+				stats.add(numbers.getDouble(i));
+			}
+		} else {
+			for (Object o : list) {
+				if (o instanceof Double) {
+					stats.add((Double) o);
+				}
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Add a number to the statistics
+	 *
+	 * @param d
+	 */
+	public void add(double d) {
+		if (n == 0) {
+			min = d;
+			max = d;
+			sum = d;
+		} else {
+			min = (d < min) ? d : min;
+			max = (d > max) ? d : max;
+			sum += d;
+		}
+		n++;
+		double delta = d - mean;
+		mean += delta / n;
+		m2 += delta * (d - mean);
+	}
+
+	/**
+	 * @return the number of numbers
+	 */
+	public int getCount() {
+		return n;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * @return the sum divided by the count (so that this is the same as NetLogo's
+	 *         <code>mean</code>)
+	 */
+	public double getMean() {
+		return sum / n;
+	}
+
+	/**
+	 * @return the sample variance (dividing by <i>n</i> - 1, as NetLogo's
+	 *         <code>variance</code> does)
+	 */
+	public double getVariance() {
+		return n < 2 ? Double.NaN : m2 / (n - 1);
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * @param numbers the numbers, which will be reordered
+	 * @return the median of the numbers, or <code>Double.NaN</code> if the array is
+	 *         empty
+	 */
+	public static double median(double[] numbers) {
+		int n = numbers.length;
+		if (n == 0) {
+			return Double.NaN;
+		}
+		select(numbers, 0, n, (n - 1) / 2);
+		if (n % 2 == 1) {
+			return numbers[(n - 1) / 2];
+		}
+		select(numbers, n / 2, n, n / 2);
+		return (numbers[(n / 2) - 1] + numbers[n / 2]) / 2.0;
+	}
+
+	/**
+	 * According to <a href="https://en.wikipedia.org/wiki/Quartile">Wikipedia</a>
+	 * there is no standard way of computing the quartiles. This method implements
+	 * that referred to in the article as 'Tukey's hinges'. The lower and upper
+	 * quartiles are medians of the bottom half of the list and the top half of the
+	 * list, respectively; including the median value if the list has odd length.
+	 *
+	 * Rather than sorting the numbers, the six (at most) of them needed are found
+	 * by selection, which takes linear time on average.
+	 *
+	 * @param numbers the numbers, which will be reordered
+	 * @return first, second, and third quartiles as an array; the median will be
+	 *         <code>Double.NaN</code> if the array is empty; the upper and lower
+	 *         quartiles will be <code>Double.NaN</code> if the array has fewer than
+	 *         two elements
+	 */
+	public static double[] quartiles(double[] numbers) {
+		// Handle quick cases first
+		if (numbers.length == 0) {
+			return new double[] { Double.NaN, Double.NaN, Double.NaN };
+		} else if (numbers.length == 1) {
+			return new double[] { Double.NaN, numbers[0], Double.NaN };
+		} else if (numbers.length == 2) {
+			return new double[] { Math.min(numbers[0], numbers[1]), (numbers[0] + numbers[1]) / 2.0,
+					Math.max(numbers[0], numbers[1]) };
+		} else if (numbers.length == 3) {
+			Arrays.sort(numbers);
+			return new double[] { (numbers[0] + numbers[1]) / 2.0, numbers[1], (numbers[1] + numbers[2]) / 2.0 };
+		} else if (numbers.length == 4) {
+			Arrays.sort(numbers);
+			return new double[] { (numbers[0] + numbers[1]) / 2.0, (numbers[1] + numbers[2]) / 2.0,
+					(numbers[2] + numbers[3]) / 2.0 };
+		}
+
+		int q1hi;
+		int q1lo;
+		int q2hi;
+		int q2lo;
+		int q3hi;
+		int q3lo;
+		int odd;
+		if (numbers.length % 2 == 0) {
+			q2hi = numbers.length / 2;
+			q2lo = q2hi - 1;
+			odd = 0;
+		} else {
+			q2hi = (numbers.length - 1) / 2;
+			q2lo = q2hi;
+			odd = 1;
+		}
+		if (q2hi % 2 == 0) {
+			q1hi = q2hi / 2;
+			q1lo = q1hi - 1;
+			q3hi = (3 * q1hi) + odd;
+			q3lo = q3hi - 1;
+		} else {
+			q1hi = (q2hi - 1) / 2;
+			q1lo = q1hi;
+			q3hi = (q1hi + q2hi) + odd;
+			q3lo = q3hi;
+		}
+
+		// Each selection leaves everything after the selected index no smaller than
+		// it, so the next (larger) index only needs looking for from there
+		int from = 0;
+		for (int k : new int[] { q1lo, q1hi, q2lo, q2hi, q3lo, q3hi }) {
+			select(numbers, from, numbers.length, k);
+			from = k;
+		}
+
+		return new double[] { (numbers[q1lo] + numbers[q1hi]) / 2.0, (numbers[q2lo] + numbers[q2hi]) / 2.0,
+				(numbers[q3lo] + numbers[q3hi]) / 2.0 };
+	}
+
+	/**
+	 * Reorder part of an array so that the element at index k is the one that
+	 * would be there if that part were sorted, with no larger elements before it
+	 * and no smaller elements after it. This is Hoare's 'quickselect' using a
+	 * median-of-three pivot, which takes linear time on average. In case of
+	 * unlucky pivots, it gives up and sorts what's left after 2 log<sub>2</sub>
+	 * <i>n</i> partitions, so the worst case is <i>n</i> log <i>n</i>.
+	 *
+	 * @param a    the array
+	 * @param from the first index of the part of the array to reorder
+	 * @param to   the index after the last of the part to reorder
+	 * @param k    the index to select, in [from, to[
+	 */
+	static void select(double[] a, int from, int to, int k) {
+		int lo = from;
+		int hi = to - 1;
+		int budget = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+		while (hi > lo) {
+			if (budget == 0) {
+				Arrays.sort(a, lo, hi + 1);
+				return;
+			}
+			budget--;
+			int mid = (lo + hi) >>> 1;
+			double x = a[lo];
+			double y = a[mid];
+			double z = a[hi];
+			double pivot = (x < y) ? ((y < z) ? y : ((x < z) ? z : x)) : ((x < z) ? x : ((y < z) ? z : y));
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (a[i] < pivot) {
+					i++;
+				}
+				while (a[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					double tmp = a[i];
+					a[i] = a[j];
+					a[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			// Now a[lo..j] <= pivot, a[i..hi] >= pivot, and anything between is the pivot
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+}
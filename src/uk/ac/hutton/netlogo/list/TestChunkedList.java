@@ -0,0 +1,89 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of what is particular to ChunkedList: splitting full chunks and
+ * merging nearly empty ones. What it has in common with the other storage is
+ * tested by {@link TestMutableSequence}.
+ *
+ * @author gary
+ *
+ */
+public class TestChunkedList {
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.ChunkedList#listIterator()}, inserting in
+	 * the middle of the list until chunks have to be split, then deleting from
+	 * all over the list until they have to be merged. Deleting nearly everything
+	 * should leave the remaining elements in few chunks, and not one for each
+	 * chunk there was before.
+	 */
+	@Test
+	public void testSplitMerge() {
+		Random rnd = new Random(42);
+		List<Object> jl = TestMutableSequence.doubleList(ChunkedList.CHUNK_SIZE * 4);
+		ChunkedList list = new ChunkedList(jl);
+		int full = list.chunks();
+		assertEquals(4, full);
+
+		ListIterator<Object> jx = jl.listIterator(ChunkedList.CHUNK_SIZE + 10);
+		ListIterator<Object> ix = list.listIterator(ChunkedList.CHUNK_SIZE + 10);
+		for (int i = 0; i < ChunkedList.CHUNK_SIZE * 4; i++) {
+			jx.add((double) -i);
+			ix.add((double) -i);
+		}
+		TestMutableSequence.assertContents(jl, list, "insert");
+		int split = list.chunks();
+		assertTrue("chunks after inserting: " + split, split >= 8);
+		assertTrue("chunks after inserting: " + split, split <= 8 * 2);
+
+		while (jl.size() > ChunkedList.CHUNK_SIZE / 2) {
+			int at = rnd.nextInt(jl.size());
+			jx = jl.listIterator(at);
+			ix = list.listIterator(at);
+			assertEquals(jx.next(), ix.next());
+			jx.remove();
+			ix.remove();
+			assertTrue(list.check(true, "remove at " + at));
+		}
+		TestMutableSequence.assertContents(jl, list, "remove");
+		assertTrue("chunks after removing: " + list.chunks(), list.chunks() < split / 2);
+
+		while (!jl.isEmpty()) {
+			jl.remove(0);
+			ix = list.listIterator();
+			ix.next();
+			ix.remove();
+		}
+		assertEquals(0, list.chunks());
+		TestMutableSequence.assertContents(jl, list, "remove all");
+		ix.add(1.0);
+		assertEquals(1, list.chunks());
+	}
+
+	/**
+	 * Test that nulls cannot be added to a ChunkedList
+	 */
+	@Test
+	public void testNulls() {
+		ChunkedList list = new ChunkedList();
+		try {
+			list.push(null);
+			fail("Should not be able to push() a null");
+		} catch (NullPointerException e) {
+			// Pass
+		}
+		assertTrue(list.isEmpty());
+	}
+}
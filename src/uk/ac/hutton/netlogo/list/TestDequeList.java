@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of what is particular to DequeList: the elements going round and round
+ * its array. What it has in common with the other storage is tested by
+ * {@link TestMutableSequence}.
+ *
+ * @author gary
+ *
+ */
+public class TestDequeList {
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.DequeList#push(Object)}
+	 * and {@link uk.ac.hutton.netlogo.list.DequeList#shift()} used as a queue, so
+	 * that the elements go round and round the array.
+	 */
+	@Test
+	public void testQueue() {
+		Random rnd = new Random(42);
+		DequeList list = new DequeList();
+		LinkedList<Object> jl = new LinkedList<Object>();
+		for (int i = 0; i < 20000; i++) {
+			if (jl.isEmpty() || rnd.nextInt(5) < 3) {
+				list.push(i);
+				jl.addLast(i);
+			} else {
+				assertEquals(jl.removeFirst(), list.shift());
+			}
+			assertEquals(jl.size(), list.size());
+		}
+		TestMutableSequence.assertContents(jl, list, "queue");
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertTrue(list.check(true, "clear()"));
+	}
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.DequeList#get(int)} and
+	 * {@link uk.ac.hutton.netlogo.list.DequeList#listIterator(int)} once the
+	 * elements have wrapped around the end of the array, with the front of the
+	 * list near the end of the array.
+	 */
+	@Test
+	public void testWrapped() {
+		DequeList list = new DequeList();
+		LinkedList<Object> jl = new LinkedList<Object>();
+		for (int i = 0; i < 100; i++) {
+			list.unshift(i);
+			jl.addFirst(i);
+		}
+		for (int i = 0; i < 50; i++) {
+			list.pop();
+			jl.removeLast();
+			list.unshift(-i);
+			jl.addFirst(-i);
+		}
+		for (int i = 0; i < jl.size(); i++) {
+			assertEquals(jl.get(i), list.get(i));
+		}
+		list.listIterator(75).add("middle");
+		jl.listIterator(75).add("middle");
+		list.remove(25);
+		jl.remove(25);
+		TestMutableSequence.assertContents(jl, list, "wrapped");
+	}
+
+	/**
+	 * Test that nulls cannot be added to a DequeList
+	 */
+	@Test
+	public void testNulls() {
+		DequeList list = new DequeList();
+		try {
+			list.push(null);
+			fail("Should not be able to push() a null");
+		} catch (NullPointerException e) {
+			// Pass
+		}
+		assertTrue(list.isEmpty());
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import org.junit.Test;
+import org.nlogo.api.ExtensionException;
+
+/**
+ * Tests for IndexedList, checking that the counts are kept up to date by all
+ * the ways the list can be changed.
+ *
+ * @author gary
+ *
+ */
+public class TestIndexedList {
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.IndexedList#contains(Object)}
+	 * and {@link uk.ac.hutton.netlogo.list.IndexedList#count(Object)} after
+	 * adding and removing at the ends, and by value.
+	 */
+	@Test
+	public void testCounts() {
+		IndexedList list = new IndexedList(Arrays.asList(new Object[] { "a", "b", "a", 1.0 }));
+		list.unshift("c");
+		list.push("a");
+		assertEquals(3, list.count("a"));
+		assertTrue(list.contains(1.0));
+		assertFalse(list.contains("d"));
+		assertEquals("c", list.shift());
+		assertEquals("a", list.pop());
+		assertFalse(list.contains("c"));
+		assertTrue(list.remove("a"));
+		assertFalse(list.remove("d"));
+		assertEquals(1, list.count("a"));
+		assertEquals(2, list.indexOf(1.0));
+		assertEquals(-1, list.indexOf("c"));
+		assertTrue(list.isUnique());
+		list.set(0, "a");
+		assertFalse(list.isUnique());
+		assertFalse(list.contains("b"));
+		assertTrue(list.removeAll(Arrays.asList(new Object[] { "a", "z" })));
+		assertFalse(list.removeAll(Arrays.asList(new Object[] { "a", "z" })));
+		assertEquals(1, list.size());
+		assertTrue(list.check(true, "testCounts()"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.IndexedList#listIterator()}, doing random
+	 * moves, inserts, deletes and overwrites with a cursor and checking the counts
+	 * and membership against a java LinkedList.
+	 */
+	@Test
+	public void testListIterator() {
+		Random rnd = new Random(42);
+		List<Object> jl = new LinkedList<Object>();
+		IndexedList list = new IndexedList();
+		ListIterator<Object> jx = jl.listIterator();
+		ListIterator<Object> ix = list.listIterator();
+		boolean moved = false;
+
+		for (int i = 0; i < 2000; i++) {
+			int op = rnd.nextInt(10);
+			Double d = Double.valueOf(rnd.nextInt(20));
+			if (op < 3 && jx.hasNext()) {
+				assertEquals(jx.next(), ix.next());
+				moved = true;
+			} else if (op < 5 && jx.hasPrevious()) {
+				assertEquals(jx.previous(), ix.previous());
+				moved = true;
+			} else if (op < 7) {
+				jx.add(d);
+				ix.add(d);
+				moved = false;
+			} else if (op < 9 && moved) {
+				jx.remove();
+				ix.remove();
+				moved = false;
+			} else if (moved) {
+				jx.set(d);
+				ix.set(d);
+			}
+			assertEquals(jl.contains(d), list.contains(d));
+		}
+		assertEquals(jl, Arrays.asList(list.toArray()));
+		assertTrue(list.check(true, "listIterator()"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.IndexedList#listIterator()}, deleting and
+	 * overwriting with a cursor after the element it last moved over has been
+	 * changed by set-item or through another cursor.
+	 */
+	@Test
+	public void testChangedUnderIterator() throws ExtensionException {
+		NetLogoMutableList nl = new NetLogoMutableList(NetLogoMutableList.Storage.INDEXED);
+		nl.push("a");
+		nl.push("b");
+		nl.push("a");
+		NetLogoMutableListIndex c = nl.getIterator();
+		c.next();
+		nl.item(0, "z");
+		c.remove();
+		assertEquals(Arrays.asList((Object) "b", "a"), Arrays.asList(nl.getList().toArray()));
+		assertTrue(nl.member("a"));
+		assertFalse(nl.member("z"));
+		assertTrue(nl.getList().check(true, "set-item then delete"));
+
+		IndexedList list = new IndexedList();
+		list.add("a");
+		list.add("b");
+		ListIterator<Object> ix1 = list.listIterator();
+		ListIterator<Object> ix2 = list.listIterator();
+		ix1.next();
+		ix2.next();
+		ix2.set("c");
+		ix1.set("d");
+		assertFalse(list.contains("a"));
+		assertFalse(list.contains("c"));
+		assertTrue(list.contains("d"));
+		assertTrue(list.check(true, "set through another cursor then set"));
+		ix2.remove();
+		assertFalse(list.contains("d"));
+		assertTrue(list.check(true, "set through another cursor then delete"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.IndexedList#cat(MutableSequence)},
+	 * {@link uk.ac.hutton.netlogo.list.IndexedList#retainAll(java.util.Collection)}
+	 * and {@link uk.ac.hutton.netlogo.list.IndexedList#clone()}.
+	 */
+	@Test
+	public void testCatRetainAllClone() {
+		IndexedList list = new IndexedList(Arrays.asList(new Object[] { "a", "b" }));
+		IndexedList other = new IndexedList(Arrays.asList(new Object[] { "b", "c" }));
+		MutableList linked = new MutableList(Arrays.asList(new Object[] { "c", "d" }));
+		list.cat(other);
+		list.cat(linked);
+		assertTrue(other.isEmpty());
+		assertTrue(other.check(true, "cat() other"));
+		assertTrue(linked.isEmpty());
+		assertEquals(2, list.count("b"));
+		assertEquals(2, list.count("c"));
+		assertTrue(list.check(true, "cat()"));
+
+		ChunkedList chunked = new ChunkedList(Arrays.asList(new Object[] { "e" }));
+		chunked.cat(list);
+		assertTrue(list.isEmpty());
+		assertTrue(list.check(true, "cat() to ChunkedList"));
+		list.addAll(chunked);
+
+		assertFalse(list.retainAll(Arrays.asList(new Object[] { "a", "b", "c", "d", "e" })));
+		assertTrue(list.retainAll(Arrays.asList(new Object[] { "b", "c" })));
+		assertEquals(4, list.size());
+		assertFalse(list.contains("a"));
+		assertTrue(list.check(true, "retainAll()"));
+
+		IndexedList copy = list.clone();
+		list.clear();
+		assertTrue(list.check(true, "clear()"));
+		assertEquals(2, copy.count("c"));
+		assertTrue(copy.check(true, "clone()"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.IndexedList#addAll(java.util.Collection)}
+	 * and
+	 * {@link uk.ac.hutton.netlogo.list.IndexedList#addAll(int, java.util.Collection)}
+	 * adding a list to itself (<code>lt:fpush-all</code> and
+	 * <code>lt:lpush-all</code> of a list on to itself).
+	 */
+	@Test
+	public void testAddAllSelf() {
+		IndexedList list = new IndexedList(Arrays.asList(new Object[] { 1.0, 2.0, 2.0 }));
+		list.addAll(0, list);
+		assertTrue(list.check(true, "addAll(0, self)"));
+		assertEquals(6, list.size());
+		assertEquals(2, list.count(1.0));
+		assertEquals(4, list.count(2.0));
+		list.addAll(list);
+		assertTrue(list.check(true, "addAll(self)"));
+		assertEquals(12, list.size());
+		assertEquals("[1.0 2.0 2.0 1.0 2.0 2.0 1.0 2.0 2.0 1.0 2.0 2.0]", list.asPrintableString("[", " ", "]"));
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for KeySort, comparing the orders it gives with a stable sort of the
+ * indices using a comparator.
+ *
+ * @author gary
+ *
+ */
+public class TestKeySort {
+
+	private static int[] unbox(Integer[] a) {
+		int[] b = new int[a.length];
+		for (int i = 0; i < a.length; i++) {
+			b[i] = a[i];
+		}
+		return b;
+	}
+
+	private static Integer[] indices(int n) {
+		Integer[] a = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			a[i] = i;
+		}
+		return a;
+	}
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.KeySort#order(double[])},
+	 * with plenty of equal keys to check the sort is stable.
+	 */
+	@Test
+	public void testOrderDouble() {
+		Random rnd = new Random(42);
+		for (int n : new int[] { 0, 1, 2, 15, 16, 17, 100, 1000, 4097 }) {
+			final double[] keys = new double[n];
+			for (int i = 0; i < n; i++) {
+				keys[i] = rnd.nextInt(n / 4 + 1) - (n / 8.0);
+			}
+			Integer[] expected = indices(n);
+			Arrays.sort(expected, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return Double.compare(keys[o1], keys[o2]);
+				}
+			});
+			assertArrayEquals("n = " + n, unbox(expected), KeySort.order(keys));
+		}
+	}
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.KeySort#order(String[])}
+	 */
+	@Test
+	public void testOrderString() {
+		Random rnd = new Random(42);
+		for (int n : new int[] { 0, 1, 2, 15, 16, 17, 100, 1000, 4097 }) {
+			final String[] keys = new String[n];
+			for (int i = 0; i < n; i++) {
+				keys[i] = Integer.toString(rnd.nextInt(n / 4 + 1), 36);
+			}
+			Integer[] expected = indices(n);
+			Arrays.sort(expected, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return keys[o1].compareTo(keys[o2]);
+				}
+			});
+			assertArrayEquals("n = " + n, unbox(expected), KeySort.order(keys));
+		}
+
+		// Already sorted, and reversed
+		int[] order = KeySort.order(new String[] { "a", "b", "c", "d", "e" });
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, order);
+		order = KeySort.order(new String[] { "e", "d", "c", "b", "a" });
+		assertArrayEquals(new int[] { 4, 3, 2, 1, 0 }, order);
+	}
+}
@@ -5,15 +5,36 @@ package uk.ac.hutton.netlogo.list;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
+import org.nlogo.api.Agent;
+import org.nlogo.api.AgentSet;
+import org.nlogo.api.Argument;
+import org.nlogo.api.Context;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.ExtensionManager;
+import org.nlogo.api.ImportErrorHandler;
+import org.nlogo.api.MersenneTwisterFast;
 
 /**
  * @author gary
@@ -423,6 +444,13 @@ public class TestMutableList {
 			assertEquals(jx.hasNext(), ix.hasNext());
 			assertEquals(jx.hasPrevious(), ix.hasPrevious());
 		}
+
+		// set() changes the element last returned, whichever direction
+		assertEquals(jx.previous(), ix.previous());
+		ix.set("y");
+		jx.set("y");
+		assertEquals(jx.next(), ix.next());
+		assertEquals("abcdy", list.asPrintableString("", "", ""));
 	}
 
 	/**
@@ -584,6 +612,13 @@ public class TestMutableList {
 			}
 			assertEquals(rix.next(), lix.next());
 		}
+
+		// Adding a list to itself adds a copy of it
+		list = new MutableList(rnd1);
+		assertTrue(list.addAll(list));
+		assertTrue(list.check(true, "addAll(self)"));
+		assertEquals(2 * rnd1.size(), list.size());
+		assertEquals(list.subListCopy(0, rnd1.size()), list.subListCopy(rnd1.size(), list.size()));
 	}
 
 	/**
@@ -917,4 +952,1566 @@ public class TestMutableList {
 
 	}
 
+
+	/**
+	 * Test that the front's reference to the last element is kept up to date by
+	 * the methods that change which element is last.
+	 */
+	@Test
+	public void testLast() {
+		MutableList list = new MutableList(Arrays.asList(new String[] { "a", "b", "c", "d" }));
+		assertTrue(list.check(true, "last() after constructor"));
+		assertEquals("d", list.pop());
+		list.push("e");
+		assertTrue(list.check(true, "last() after pop()/push()"));
+		assertTrue(list.removeAll(Arrays.asList(new String[] { "e" })));
+		assertTrue(list.check(true, "last() after removeAll()"));
+		assertEquals("c", list.pop());
+		assertTrue(list.retainAll(Arrays.asList(new String[] { "a" })));
+		assertTrue(list.check(true, "last() after retainAll()"));
+		assertTrue(list.remove("a"));
+		assertTrue(list.check(true, "last() after remove(Object)"));
+		assertTrue(list.isEmpty());
+		list.unshift("x");
+		assertTrue(list.check(true, "last() after unshift()"));
+		list.add("y");
+		list.add("z");
+		list.reverse();
+		assertTrue(list.check(true, "last() after reverse()"));
+		assertEquals("x", list.pop());
+		assertEquals("z", list.shift());
+		assertEquals("y", list.shift());
+		assertTrue(list.check(true, "last() after shift()"));
+
+		list.addAll(Arrays.asList(new String[] { "a", "b" }));
+		ListIterator<Object> ix = list.listIterator();
+		ix.next();
+		ix.next();
+		ix.add("c");
+		assertTrue(list.check(true, "last() after ListIterator.add()"));
+		ix.previous();
+		ix.remove();
+		assertTrue(list.check(true, "last() after ListIterator.remove()"));
+		assertEquals("b", list.pop());
+
+		MutableList other = new MutableList(Arrays.asList(new String[] { "p", "q" }));
+		list.cat(other);
+		assertTrue(list.check(true, "last() after cat()"));
+		assertTrue(other.check(true, "last() of other after cat()"));
+		other.add("r");
+		assertEquals("q", list.pop());
+		assertEquals("r", other.pop());
+		assertEquals("p", list.subListCopy(2, 1).pop());
+		assertEquals("p", list.clone().pop());
+		list.clear();
+		assertTrue(list.check(true, "last() after clear()"));
+		list.push("s");
+		assertEquals("s", list.first());
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.MutableList#sort(java.util.Comparator)},
+	 * checking it agrees with Collections.sort() (which is stable) on pairs sorted
+	 * by their first element only, and that the list survives a comparator that
+	 * throws an exception.
+	 */
+	@Test
+	public void testSort() {
+		Random rnd = new Random(42);
+		Comparator<Object> byFirst = new Comparator<Object>() {
+			@Override
+			public int compare(Object o1, Object o2) {
+				return ((Integer) ((Object[]) o1)[0]).compareTo((Integer) ((Object[]) o2)[0]);
+			}
+		};
+		for (int n : new int[] { 0, 1, 2, 3, 7, 64, 1000, 1025 }) {
+			List<Object> jl = new LinkedList<Object>();
+			for (int i = 0; i < n; i++) {
+				jl.add(new Object[] { rnd.nextInt(n / 4 + 1), i });
+			}
+			MutableList list = new MutableList(jl);
+			list.sort(byFirst);
+			Collections.sort(jl, byFirst);
+			assertTrue(list.check(true, "sort() of " + n));
+			assertEquals(Arrays.asList(jl.toArray()), Arrays.asList(list.toArray()));
+		}
+
+		MutableList list = new MutableList(Arrays.asList(new Integer[] { 5, 3, 9, 1, 7, 2, 8 }));
+		list.sort(null);
+		assertEquals("1235789", list.asPrintableString("", "", ""));
+
+		// Fail at each comparison in turn, until the sort needs fewer comparisons; the
+		// list should be left as it was
+		boolean failed = true;
+		for (int k = 1; failed; k++) {
+			final int failAt = k;
+			final int[] calls = new int[] { 0 };
+			list = new MutableList(Arrays.asList(new Integer[] { 5, 3, 9, 1, 7, 2, 8, 4, 6 }));
+			try {
+				list.sort(new Comparator<Object>() {
+					@Override
+					public int compare(Object o1, Object o2) {
+						if (++calls[0] == failAt) {
+							throw new IllegalArgumentException("Comparison failed");
+						}
+						return ((Integer) o1).compareTo((Integer) o2);
+					}
+				});
+				failed = false;
+				assertEquals("123456789", list.asPrintableString("", "", ""));
+			} catch (IllegalArgumentException e) {
+				assertEquals(failAt, calls[0]);
+				assertEquals("539172846", list.asPrintableString("", "", ""));
+			}
+			assertTrue(list.check(true, "sort() with comparator failing at " + k));
+			assertEquals(9, list.size());
+		}
+	}
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.MutableList#setPoolCapacity(int)},
+	 * using a list as a queue so that elements shifted off the front are reused
+	 * for those pushed on the end.
+	 */
+	@Test
+	public void testPool() {
+		try {
+			MutableList.setPoolCapacity(10);
+			MutableList.clearPool();
+			assertEquals(0.0, MutableList.getPoolHitRate(), 0.0);
+
+			MutableList list = new MutableList();
+			for (int i = 0; i < 5; i++) {
+				list.push(i);
+			}
+			assertEquals(0.0, MutableList.getPoolHitRate(), 0.0);
+			for (int i = 5; i < 1000; i++) {
+				assertEquals(i - 5, list.shift());
+				list.push(i);
+				assertEquals(0, MutableList.getPoolSize());
+			}
+			assertTrue(list.check(true, "queue using pool"));
+			assertEquals("995996997998999", list.asPrintableString("", "", ""));
+			assertEquals(995.0 / 1000.0, MutableList.getPoolHitRate(), 1.0e-9);
+
+			// Popping and clearing fill the pool up to its capacity
+			list.pop();
+			assertEquals(1, MutableList.getPoolSize());
+			MutableList other = new MutableList(Arrays.asList(new Integer[] { 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 }));
+			other.push(1);
+			other.push(2);
+			other.clear();
+			assertTrue(other.check(true, "clear() using pool"));
+			assertTrue(other.isEmpty());
+			assertEquals(10, MutableList.getPoolSize());
+			other.unshift("a");
+			other.push("b");
+			other.addAll(Arrays.asList(new String[] { "c", "d" }));
+			other.pushAll(Arrays.asList(new String[] { "e", "f" }).iterator());
+			assertTrue(other.check(true, "reusing pool"));
+			assertEquals("abcdef", other.asPrintableString("", "", ""));
+			assertEquals(4, MutableList.getPoolSize());
+			assertTrue(list.check(true, "queue after other list used pool"));
+			assertEquals("995996997998", list.asPrintableString("", "", ""));
+
+			MutableList.setPoolCapacity(2);
+			assertEquals(2, MutableList.getPoolSize());
+			MutableList.clearPool();
+			assertEquals(0, MutableList.getPoolSize());
+			assertEquals(2, MutableList.getPoolCapacity());
+
+			try {
+				MutableList.setPoolCapacity(-1);
+				fail("Negative pool capacity should not be allowed");
+			} catch (IllegalArgumentException e) {
+				// Pass
+			}
+
+			// Elements removed from a list with a cursor on it aren't reused, so the
+			// cursor can't end up in another list
+			MutableList.setPoolCapacity(10);
+			for (NetLogoMutableList.Storage storage : new NetLogoMutableList.Storage[] {
+					NetLogoMutableList.Storage.LINKED, NetLogoMutableList.Storage.INDEXED }) {
+				String msg = storage.toString();
+				NetLogoMutableList queue = new NetLogoMutableList(storage);
+				for (int i = 0; i < 5; i++) {
+					queue.push((double) i);
+				}
+				NetLogoMutableListIndex cursor = queue.getIterator();
+				assertEquals(msg, 0.0, cursor.next());
+				assertEquals(msg, 0.0, queue.shift());
+				assertEquals(msg, 4.0, queue.pop());
+				queue.clear();
+				assertEquals(msg, 0, MutableList.getPoolSize());
+				MutableList another = new MutableList();
+				for (int i = 0; i < 5; i++) {
+					another.push("x");
+				}
+				while (cursor.hasNext()) {
+					assertNotEquals(msg, "x", cursor.next());
+				}
+			}
+			assertEquals(0, MutableList.getPoolSize());
+		} finally {
+			MutableList.setPoolCapacity(0);
+			MutableList.clearPool();
+		}
+	}
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.MutableList.Checkpoints},
+	 * through {@link uk.ac.hutton.netlogo.list.NetLogoMutableList#item(int)},
+	 * comparing with a java ArrayList while the list is changed at the ends and
+	 * with a cursor, for linked and indexed storage. The pool is on, so that
+	 * elements removed from the list before a cursor is made on it are reused,
+	 * which would show up any checkpoints left pointing at them.
+	 */
+	@Test
+	public void testCheckpoints() throws ExtensionException {
+		checkpoints(NetLogoMutableList.Storage.LINKED);
+		checkpoints(NetLogoMutableList.Storage.INDEXED);
+	}
+
+	private void checkpoints(NetLogoMutableList.Storage storage) throws ExtensionException {
+		try {
+			MutableList.setPoolCapacity(100);
+			Random rnd = new Random(42);
+			List<Object> jl = new ArrayList<Object>();
+			for (int i = 0; i < 3000; i++) {
+				jl.add(i);
+			}
+			NetLogoMutableList list = new NetLogoMutableList(storage);
+			list.pushAll(jl);
+			for (int i = 0; i < 20000; i++) {
+				int op = rnd.nextInt(20);
+				if (op < 2) {
+					list.push(-i);
+					jl.add(-i);
+				} else if (op < 4) {
+					list.unshift(-i);
+					jl.add(0, -i);
+				} else if (op < 6 && !jl.isEmpty()) {
+					assertEquals(jl.remove(jl.size() - 1), list.pop());
+				} else if (op < 8 && !jl.isEmpty()) {
+					assertEquals(jl.remove(0), list.shift());
+				} else if (op < 9) {
+					int ix = rnd.nextInt(jl.size() + 1);
+					NetLogoMutableListIndex cursor = list.getIterator();
+					for (int j = 0; j < ix; j++) {
+						cursor.next();
+					}
+					if (rnd.nextBoolean() || ix == 0) {
+						cursor.add(-i);
+						jl.add(ix, -i);
+					} else {
+						cursor.remove();
+						jl.remove(ix - 1);
+					}
+				} else if (!jl.isEmpty()) {
+					int ix = rnd.nextInt(jl.size());
+					if (op < 12) {
+						list.item(ix, i);
+						jl.set(ix, i);
+					}
+					assertEquals(storage + " item " + ix + " after " + i + " operations", jl.get(ix), list.item(ix));
+				}
+				assertEquals(jl.size(), list.size());
+			}
+			for (int i = 0; i < jl.size(); i++) {
+				assertEquals(jl.get(i), list.item(i));
+			}
+			assertTrue(list.getList().check(true, storage.toString()));
+			list.reverse();
+			Collections.reverse(jl);
+			for (int i = 0; i < jl.size(); i += 7) {
+				assertEquals(jl.get(i), list.item(i));
+			}
+			list.clear();
+			list.push("a");
+			assertEquals("a", list.item(0));
+			try {
+				list.item(1);
+				fail("Should not be able to get item past the end of the list");
+			} catch (ExtensionException e) {
+				// Pass
+			}
+		} finally {
+			MutableList.setPoolCapacity(0);
+			MutableList.clearPool();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableListIndex#seek(int)} and
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableListIndex#skip(int)}, with
+	 * short moves (stepping) and long ones (using the checkpoints for linked and
+	 * indexed storage), mixed with inserts and deletes, for each kind of
+	 * storage.
+	 */
+	@Test
+	public void testSeek() throws ExtensionException {
+		for (NetLogoMutableList.Storage storage : NetLogoMutableList.Storage.values()) {
+			if (storage != NetLogoMutableList.Storage.NUMERIC) {
+				seek(storage);
+			}
+		}
+	}
+
+	private void seek(NetLogoMutableList.Storage storage) throws ExtensionException {
+		Random rnd = new Random(42);
+		List<Object> jl = new ArrayList<Object>();
+		for (int i = 0; i < 2000; i++) {
+			jl.add(i);
+		}
+		NetLogoMutableList list = new NetLogoMutableList(storage);
+		list.pushAll(jl);
+		NetLogoMutableListIndex cursor = list.getIterator();
+		for (int i = 0; i < 2000; i++) {
+			int ix = rnd.nextInt(jl.size() + 1);
+			if (rnd.nextBoolean()) {
+				cursor.seek(ix);
+			} else {
+				cursor.skip(ix - cursor.nextIndex());
+			}
+			assertEquals(ix, cursor.nextIndex());
+			try {
+				cursor.remove();
+				fail("Should not be able to remove() straight after seek()");
+			} catch (IllegalStateException e) {
+				// Pass
+			}
+			if (ix < jl.size() && rnd.nextBoolean()) {
+				assertEquals(jl.get(ix), cursor.next());
+				cursor.remove();
+				jl.remove(ix);
+			} else {
+				cursor.add(-i);
+				jl.add(ix, -i);
+			}
+		}
+		assertEquals(jl.size(), list.size());
+		assertTrue(list.getList().check(true, storage.toString()));
+		for (int i = 0; i < jl.size(); i++) {
+			assertEquals(jl.get(i), list.item(i));
+		}
+
+		cursor.seekEnd();
+		assertFalse(cursor.hasNext());
+		cursor.seek(0);
+		assertFalse(cursor.hasPrevious());
+		try {
+			cursor.skip(-1);
+			fail("Should not be able to skip() off the front of the list");
+		} catch (ExtensionException e) {
+			// Pass
+		}
+		try {
+			cursor.seek(jl.size() + 1);
+			fail("Should not be able to seek() past the end of the list");
+		} catch (ExtensionException e) {
+			// Pass
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableListIndex#addAll(Iterator)},
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableListIndex#removeNext(int)}
+	 * and
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableListIndex#setNext(Iterator, int)}
+	 * at random places in the list, checking the size and the index of
+	 * checkpoints are kept up to date.
+	 */
+	@Test
+	public void testBatchEdits() throws ExtensionException {
+		Random rnd = new Random(42);
+		List<Object> jl = new ArrayList<Object>();
+		for (int i = 0; i < 1000; i++) {
+			jl.add(i);
+		}
+		NetLogoMutableList list = new NetLogoMutableList(jl);
+		NetLogoMutableListIndex cursor = list.getIterator();
+		for (int i = 0; i < 500; i++) {
+			int ix = rnd.nextInt(jl.size() + 1);
+			cursor.seek(ix);
+			List<Object> items = new ArrayList<Object>();
+			for (int j = rnd.nextInt(200); j > 0; j--) {
+				items.add(-i);
+			}
+			switch (rnd.nextInt(3)) {
+			case 0:
+				assertEquals(items.size(), cursor.addAll(items.iterator()));
+				jl.addAll(ix, items);
+				assertEquals(ix + items.size(), cursor.nextIndex());
+				break;
+			case 1:
+				int n = Math.min(items.size(), jl.size() - ix);
+				cursor.removeNext(n);
+				jl.subList(ix, ix + n).clear();
+				assertEquals(ix, cursor.nextIndex());
+				break;
+			default:
+				items = items.subList(0, Math.min(items.size(), jl.size() - ix));
+				cursor.setNext(items.iterator(), items.size());
+				for (int j = 0; j < items.size(); j++) {
+					jl.set(ix + j, items.get(j));
+				}
+				assertEquals(ix + items.size(), cursor.nextIndex());
+				break;
+			}
+			assertEquals(jl.size(), list.size());
+			if (jl.size() > 0) {
+				int k = rnd.nextInt(jl.size());
+				assertEquals(jl.get(k), list.item(k));
+			}
+		}
+		assertEquals(jl, Arrays.asList(list.getList().toArray()));
+
+		cursor.seekEnd();
+		try {
+			cursor.removeNext(1);
+			fail("Should not be able to removeNext() past the end of the list");
+		} catch (ExtensionException e) {
+			// Pass
+		}
+		try {
+			cursor.setNext(jl.iterator(), jl.size());
+			fail("Should not be able to setNext() past the end of the list");
+		} catch (ExtensionException e) {
+			// Pass
+		}
+		assertEquals(jl, Arrays.asList(list.getList().toArray()));
+
+		// Nothing is overwritten unless there are exactly n new things
+		cursor.seek(0);
+		List<Object> three = Arrays.asList(new Object[] { "a", "b", "c" });
+		try {
+			cursor.setNext(three.iterator(), -1);
+			fail("Should not be able to setNext() a negative number of things");
+		} catch (ExtensionException e) {
+			// Pass
+		}
+		try {
+			cursor.setNext(three.iterator(), 4);
+			fail("Should not be able to setNext() 4 things with 3");
+		} catch (ExtensionException e) {
+			// Pass
+		}
+		try {
+			cursor.setNext(three.iterator(), 2);
+			fail("Should not be able to setNext() 2 things with 3");
+		} catch (ExtensionException e) {
+			// Pass
+		}
+		assertEquals(0, cursor.nextIndex());
+		assertEquals(jl, Arrays.asList(list.getList().toArray()));
+	}
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.NetLogoMutableListIndex#split()}
+	 * and
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableListIndex#splice(NetLogoMutableList)}
+	 * with each kind of storage, cutting a list at random places and splicing the
+	 * pieces back together, checking the sizes of both lists are kept up to date.
+	 */
+	@Test
+	public void testSplitSplice() throws ExtensionException {
+		Random rnd = new Random(42);
+		for (NetLogoMutableList.Storage storage : NetLogoMutableList.Storage.values()) {
+			String msg = storage.toString();
+			List<Object> jl = new ArrayList<Object>();
+			NetLogoMutableList list = new NetLogoMutableList(storage);
+			for (int i = 0; i < 1000; i++) {
+				jl.add((double) i);
+				list.push((double) i);
+			}
+			NetLogoMutableListIndex cursor = list.getIterator();
+			for (int i = 0; i < 200; i++) {
+				int ix = rnd.nextInt(jl.size() + 1);
+				cursor.seek(ix);
+				NetLogoMutableList rest = cursor.split();
+				assertEquals(msg, storage, rest.getStorage());
+				assertEquals(msg, ix, list.size());
+				assertEquals(msg, jl.size() - ix, rest.size());
+				assertFalse(msg, cursor.hasNext());
+				assertTrue(msg, list.getList().check(true, msg));
+				assertTrue(msg, rest.getList().check(true, msg));
+				assertEquals(msg, jl.subList(0, ix), Arrays.asList(list.getList().toArray()));
+				assertEquals(msg, jl.subList(ix, jl.size()), Arrays.asList(rest.getList().toArray()));
+				if (ix > 0) {
+					assertEquals(msg, jl.get(ix - 1), list.item(ix - 1));
+				}
+				for (int j = 0; j < 100; j++) {
+					list.push((double) -j);
+				}
+				int j = rnd.nextInt(100);
+				assertEquals(msg, (double) -j, list.item(ix + j));
+				for (j = 99; j >= 0; j--) {
+					assertEquals(msg, (double) -j, list.pop());
+				}
+
+				// Put the piece back somewhere else
+				int at = rnd.nextInt(ix + 1);
+				cursor.seek(at);
+				List<Object> moved = new ArrayList<Object>(jl.subList(ix, jl.size()));
+				jl.subList(ix, jl.size()).clear();
+				jl.addAll(at, moved);
+				cursor.splice(rest);
+				assertEquals(msg, at + moved.size(), cursor.nextIndex());
+				assertEquals(msg, 0, rest.size());
+				assertTrue(msg, rest.getList().isEmpty());
+				assertEquals(msg, jl.size(), list.size());
+				assertTrue(msg, list.getList().check(true, msg));
+				assertEquals(msg, jl, Arrays.asList(list.getList().toArray()));
+				int k = rnd.nextInt(jl.size());
+				assertEquals(msg, jl.get(k), list.item(k));
+			}
+			try {
+				cursor.splice(list);
+				fail("Should not be able to splice() a list into itself");
+			} catch (IllegalArgumentException e) {
+				// Pass
+			}
+		}
+
+		// Mutable lists in the elements moved keep their contents
+		for (NetLogoMutableList.Storage storage : NetLogoMutableList.Storage.values()) {
+			if (storage == NetLogoMutableList.Storage.NUMERIC) {
+				continue;
+			}
+			String msg = storage.toString();
+			NetLogoMutableList list = new NetLogoMutableList(storage);
+			List<NetLogoMutableList> nested = new ArrayList<NetLogoMutableList>();
+			for (int i = 0; i < 10; i++) {
+				NetLogoMutableList item = new NetLogoMutableList();
+				item.push((double) i);
+				item.push("x");
+				nested.add(item);
+				list.push(item);
+			}
+			NetLogoMutableListIndex cursor = list.getIterator();
+			cursor.seek(4);
+			NetLogoMutableList rest = cursor.split();
+			assertEquals(msg, 4, list.size());
+			assertEquals(msg, 6, rest.size());
+			assertTrue(msg, list.getList().check(true, msg));
+			assertTrue(msg, rest.getList().check(true, msg));
+			for (int i = 0; i < 10; i++) {
+				assertSame(msg, nested.get(i), i < 4 ? list.item(i) : rest.item(i - 4));
+				assertEquals(msg, 2, nested.get(i).size());
+				assertEquals(msg, (double) i, nested.get(i).item(0));
+			}
+			cursor.seek(2);
+			cursor.splice(rest);
+			assertEquals(msg, 10, list.size());
+			for (int i = 0; i < 10; i++) {
+				assertEquals(msg, 2, nested.get(i).size());
+				assertTrue(msg, nested.get(i).getList().check(true, msg));
+			}
+		}
+
+		// Splicing between different storage copies the elements
+		NetLogoMutableList linked = new NetLogoMutableList(NetLogoMutableList.Storage.LINKED);
+		NetLogoMutableList deque = new NetLogoMutableList(NetLogoMutableList.Storage.DEQUE);
+		for (int i = 0; i < 10; i++) {
+			linked.push((double) i);
+			deque.push((double) -i);
+		}
+		NetLogoMutableListIndex cursor = linked.getIterator();
+		cursor.seek(5);
+		cursor.splice(deque);
+		assertEquals(20, linked.size());
+		assertEquals(0, deque.size());
+		assertTrue(deque.getList().isEmpty());
+		assertTrue(linked.getList().check(true, "LINKED <- DEQUE"));
+		assertEquals(-9.0, linked.item(14));
+		assertEquals(5.0, linked.item(15));
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#removeAllCount(java.util.Collection)}
+	 * and
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#retainAllCount(java.util.Collection)}
+	 * with each kind of storage, using
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableList#setDebug(boolean)} to
+	 * check the size of the NetLogoMutableList after each change.
+	 */
+	@Test
+	public void testSizeDebug() throws ExtensionException {
+		try {
+			NetLogoMutableList.setDebug(true);
+			Random rnd = new Random(42);
+			for (NetLogoMutableList.Storage storage : NetLogoMutableList.Storage.values()) {
+				String msg = storage.toString();
+				List<Object> jl = new ArrayList<Object>();
+				NetLogoMutableList list = new NetLogoMutableList(storage);
+				for (int i = 0; i < 500; i++) {
+					double d = rnd.nextInt(50);
+					jl.add(d);
+					list.push(d);
+				}
+				List<Object> objs = Arrays.asList(new Object[] { 1.0, 2.0, 3.0, 99.0 });
+				int n = list.size();
+				assertEquals(msg, Collections.frequency(jl, 1.0) + Collections.frequency(jl, 2.0)
+						+ Collections.frequency(jl, 3.0), list.getList().removeAllCount(objs));
+				assertEquals(msg, 0, list.getList().removeAllCount(objs));
+				list.getList().addAll(objs);
+				list.getList().removeAllCount(objs);
+				assertTrue(msg, list.getList().check(true, msg));
+				assertEquals(msg, n, list.size()); // The wrapper hasn't been told
+
+				list = new NetLogoMutableList(storage);
+				for (Object d : jl) {
+					list.push(d);
+				}
+				list.removeAll(objs);
+				jl.removeAll(objs);
+				assertEquals(msg, jl.size(), list.size());
+				List<Object> keep = new ArrayList<Object>();
+				for (int i = 0; i < 40; i++) {
+					keep.add((double) i);
+				}
+				list.retainAll(keep);
+				jl.retainAll(keep);
+				assertEquals(msg, jl.size(), list.size());
+				list.remove(jl.get(0));
+				jl.remove(0);
+				list.removeDuplicates();
+				assertEquals(msg, new HashSet<Object>(jl).size(), list.size());
+				assertTrue(msg, list.check(true, msg));
+
+				// Drift is caught
+				try {
+					list.incSize(0, 1);
+					fail("Debugging should catch a list of the wrong size");
+				} catch (RuntimeException e) {
+					// Pass
+				}
+			}
+		} finally {
+			NetLogoMutableList.setDebug(false);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.ListSnapshot#save(NetLogoMutableList, java.nio.file.Path)}
+	 * and
+	 * {@link uk.ac.hutton.netlogo.list.ListSnapshot#load(java.nio.file.Path, org.nlogo.api.World)},
+	 * with and without compression, checking that a list shared between two
+	 * others (and a list that contains itself) is still shared when loaded.
+	 */
+	@Test
+	public void testSaveLoad() throws ExtensionException, IOException {
+		NetLogoMutableList list = new NetLogoMutableList(NetLogoMutableList.Storage.CHUNKED);
+		NetLogoMutableList numbers = new NetLogoMutableList(NetLogoMutableList.Storage.NUMERIC);
+		for (int i = 0; i < 1000; i++) {
+			numbers.push(i * 0.5);
+		}
+		NetLogoMutableList shared = new NetLogoMutableList();
+		shared.push("shared");
+		NetLogoMutableList a = new NetLogoMutableList(NetLogoMutableList.Storage.INDEXED);
+		a.push(shared);
+		NetLogoMutableList b = new NetLogoMutableList(NetLogoMutableList.Storage.DEQUE);
+		b.push(shared);
+		list.push(1.5);
+		list.push("\u00e9t\u00e9 \"quoted\"");
+		list.push(Boolean.TRUE);
+		list.push(Boolean.FALSE);
+		list.push(org.nlogo.core.LogoList.fromJava(Arrays.asList(1.0, "two", Boolean.TRUE)));
+		list.push(numbers);
+		list.push(a);
+		list.push(b);
+		list.push(list);
+
+		for (String suffix : new String[] { ".bin", ".gz" }) {
+			Path file = Files.createTempFile("lt-snapshot", suffix);
+			try {
+				ListSnapshot.save(list, file);
+				NetLogoMutableList loaded = ListSnapshot.load(file, null);
+				String msg = "suffix " + suffix;
+				assertEquals(msg, NetLogoMutableList.Storage.CHUNKED, loaded.getStorage());
+				assertEquals(msg, list.size(), loaded.size());
+				for (int i = 0; i < 5; i++) {
+					assertEquals(msg, list.item(i), loaded.item(i));
+				}
+				NetLogoMutableList n = (NetLogoMutableList) loaded.item(5);
+				assertEquals(msg, NetLogoMutableList.Storage.NUMERIC, n.getStorage());
+				assertEquals(msg, numbers.asLogoList(), n.asLogoList());
+				NetLogoMutableList la = (NetLogoMutableList) loaded.item(6);
+				NetLogoMutableList lb = (NetLogoMutableList) loaded.item(7);
+				assertEquals(msg, NetLogoMutableList.Storage.INDEXED, la.getStorage());
+				assertEquals(msg, NetLogoMutableList.Storage.DEQUE, lb.getStorage());
+				assertSame(msg, la.item(0), lb.item(0));
+				assertEquals(msg, "shared", ((NetLogoMutableList) la.item(0)).item(0));
+				assertSame(msg, loaded, loaded.item(8));
+			} finally {
+				Files.delete(file);
+			}
+		}
+
+		Path file = Files.createTempFile("lt-snapshot", ".bin");
+		try {
+			Files.write(file, "not a list".getBytes());
+			ListSnapshot.load(file, null);
+			fail("Should not be able to load a file that isn't a saved list");
+		} catch (ExtensionException e) {
+			// Pass
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.ListFileReader#lines(java.nio.file.Path)}
+	 * and
+	 * {@link uk.ac.hutton.netlogo.list.ListFileReader#csv(java.nio.file.Path, int[])},
+	 * including quoted fields with commas, quotes and line breaks in them.
+	 */
+	@Test
+	public void testReadFiles() throws ExtensionException, IOException {
+		Path file = Files.createTempFile("lt-read", ".csv");
+		try {
+			Files.write(file, ("\uFEFFname,x,\"note\"\r\n" + "a,1.5,\"has, comma\"\r\n" + "\n"
+					+ "b,-2e3,\"say \"\"hi\"\"\nthere\"\n" + "\"3\",NaN,,-1e999\n").getBytes("UTF-8"));
+
+			NetLogoMutableList lines = ListFileReader.lines(file);
+			assertEquals(6, lines.size());
+			assertEquals("name,x,\"note\"", lines.first());
+			assertEquals("", lines.third());
+
+			NetLogoMutableList rows = ListFileReader.csv(file, null);
+			assertEquals(4, rows.size());
+			assertEquals(Arrays.asList("name", "x", "note"), ((org.nlogo.core.LogoList) rows.first()).toJava());
+			assertEquals(Arrays.asList("a", 1.5, "has, comma"), ((org.nlogo.core.LogoList) rows.second()).toJava());
+			assertEquals(Arrays.asList("b", -2000.0, "say \"hi\"\nthere"),
+					((org.nlogo.core.LogoList) rows.third()).toJava());
+			// Numbers too big for a double aren't numbers in NetLogo
+			assertEquals(Arrays.asList("3", "NaN", "", "-1e999"), ((org.nlogo.core.LogoList) rows.fourth()).toJava());
+
+			rows = ListFileReader.csv(file, new int[] { 2, 0 });
+			assertEquals(Arrays.asList("has, comma", "a"), ((org.nlogo.core.LogoList) rows.second()).toJava());
+			assertEquals(Arrays.asList("", "3"), ((org.nlogo.core.LogoList) rows.fourth()).toJava());
+
+			try {
+				ListFileReader.csv(file, new int[] { 3 });
+				fail("Should not be able to read a column that isn't there");
+			} catch (ExtensionException e) {
+				// Pass
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.ListFileWriter#lines(Iterable, java.nio.file.Path, boolean)}
+	 * and
+	 * {@link uk.ac.hutton.netlogo.list.ListFileWriter#csv(Iterable, java.nio.file.Path, boolean)},
+	 * reading what is written back in with ListFileReader.
+	 */
+	@Test
+	public void testWriteFiles() throws ExtensionException, IOException {
+		Path file = Files.createTempFile("lt-write", ".csv");
+		try {
+			NetLogoMutableList list = new NetLogoMutableList();
+			list.push("one");
+			list.push("two, three");
+			ListFileWriter.lines(list, file, false);
+			ListFileWriter.lines(list, file, true);
+			NetLogoMutableList lines = ListFileReader.lines(file);
+			assertEquals(4, lines.size());
+			assertEquals("two, three", lines.fourth());
+			ListFileWriter.lines(list, file, false);
+			assertEquals(2, ListFileReader.lines(file).size());
+
+			NetLogoMutableList rows = new NetLogoMutableList();
+			rows.push(org.nlogo.core.LogoList.fromJava(Arrays.asList("a", 1.5, "has, comma")));
+			NetLogoMutableList row = new NetLogoMutableList();
+			row.push("say \"hi\"\nthere");
+			row.push("42");
+			row.push(-2.0);
+			row.push("1e999");
+			rows.push(row);
+			rows.push("alone");
+			rows.push("");
+			ListFileWriter.csv(rows, file, false);
+			ListFileWriter.csv(rows, file, true);
+			NetLogoMutableList read = ListFileReader.csv(file, null);
+			assertEquals(8, read.size());
+			for (int i = 0; i < 8; i += 4) {
+				assertEquals(Arrays.asList("a", 1.5, "has, comma"), ((org.nlogo.core.LogoList) read.item(i)).toJava());
+				assertEquals(Arrays.asList("say \"hi\"\nthere", "42", -2.0, "1e999"),
+						((org.nlogo.core.LogoList) read.item(i + 1)).toJava());
+				assertEquals(Arrays.asList("alone"), ((org.nlogo.core.LogoList) read.item(i + 2)).toJava());
+				assertEquals(Arrays.asList(""), ((org.nlogo.core.LogoList) read.item(i + 3)).toJava());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.AsyncExporter#export(NetLogoMutableList, java.nio.file.Path, boolean)}
+	 * and {@link uk.ac.hutton.netlogo.list.AsyncExporter#await()}, checking that
+	 * changing a list (or a mutable list inside a NetLogo list in it) after
+	 * exporting it doesn't change what is written, and that appends are written
+	 * in order.
+	 */
+	@Test
+	public void testExportAsync() throws ExtensionException, IOException {
+		Path file = Files.createTempFile("lt-export", ".txt");
+		try {
+			NetLogoMutableList list = new NetLogoMutableList();
+			for (int i = 0; i < 10; i++) {
+				list.clear();
+				for (int j = 0; j < 1000; j++) {
+					list.push("tick " + i + " item " + j);
+				}
+				AsyncExporter.export(list, file, i > 0);
+			}
+			list.clear();
+			AsyncExporter.await();
+			NetLogoMutableList lines = ListFileReader.lines(file);
+			assertEquals(10000, lines.size());
+			int k = 0;
+			for (Object line : lines) {
+				assertEquals("tick " + (k / 1000) + " item " + (k % 1000), line);
+				k++;
+			}
+		} finally {
+			Files.delete(file);
+		}
+
+		// Mutable lists inside NetLogo lists are copied too, as text and as CSV.
+		// Exporting a long list first keeps the writer busy while they are
+		// changed.
+		Path big = Files.createTempFile("lt-export", ".txt");
+		Path text = Files.createTempFile("lt-export", ".txt");
+		Path csv = Files.createTempFile("lt-export", ".csv");
+		try {
+			NetLogoMutableList list = new NetLogoMutableList();
+			for (int j = 0; j < 200000; j++) {
+				list.push("item " + j);
+			}
+			NetLogoMutableList nested = new NetLogoMutableList();
+			nested.push("before");
+			org.nlogo.core.LogoList inner = org.nlogo.core.LogoList.fromJava(Arrays.asList((Object) nested));
+			NetLogoMutableList rows = new NetLogoMutableList();
+			rows.push(org.nlogo.core.LogoList.fromJava(Arrays.asList((Object) "row", inner)));
+			AsyncExporter.export(list, big, false);
+			AsyncExporter.export(rows, text, false);
+			AsyncExporter.export(rows, csv, false);
+			nested.clear();
+			nested.push("after");
+			AsyncExporter.await();
+			String written = (String) ListFileReader.lines(text).first();
+			assertTrue(written, written.contains("before"));
+			assertFalse(written, written.contains("after"));
+			org.nlogo.core.LogoList row = (org.nlogo.core.LogoList) ListFileReader.csv(csv, null).first();
+			assertEquals("row", row.get(0));
+			assertTrue(row.get(1).toString(), row.get(1).toString().contains("before"));
+			assertFalse(row.get(1).toString(), row.get(1).toString().contains("after"));
+		} finally {
+			Files.delete(big);
+			Files.delete(text);
+			Files.delete(csv);
+		}
+
+		Path dir = Files.createTempDirectory("lt-export");
+		try {
+			AsyncExporter.export(new NetLogoMutableList(), dir.resolve("missing").resolve("file.csv"), false);
+			AsyncExporter.await();
+			fail("Should not be able to export to a directory that doesn't exist");
+		} catch (ExtensionException e) {
+			// Pass
+		} finally {
+			Files.delete(dir);
+		}
+		AsyncExporter.await();
+
+		// Nothing can be exported once the exporter has been shut down, and there's
+		// nothing left to wait for
+		file = Files.createTempFile("lt-export", ".txt");
+		try {
+			NetLogoMutableList list = new NetLogoMutableList();
+			list.push("after");
+			AsyncExporter.shutdown();
+			try {
+				AsyncExporter.export(list, file, false);
+				fail("Should not be able to export after shutdown()");
+			} catch (ExtensionException e) {
+				// Pass
+			}
+			AsyncExporter.await();
+			AsyncExporter.startup();
+			AsyncExporter.export(list, file, false);
+			AsyncExporter.await();
+			assertEquals(Arrays.asList("after"), Files.readAllLines(file));
+		} finally {
+			AsyncExporter.startup();
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableList#shuffle(java.util.Random)}
+	 * and
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableList#shuffle(java.util.Random, int)}
+	 * for each kind of storage, checking that the elements are kept, that the
+	 * first k of them are chosen evenly, and that lt:shuffle-n rejects a k that
+	 * is negative or more than the length of the list.
+	 */
+	@Test
+	public void testShuffle() throws ExtensionException {
+		Random rnd = new Random(42);
+		for (NetLogoMutableList.Storage storage : NetLogoMutableList.Storage.values()) {
+			String msg = storage.toString();
+			List<Object> jl = new ArrayList<Object>();
+			for (int i = 0; i < 100; i++) {
+				jl.add(Double.valueOf(i));
+			}
+			NetLogoMutableList list = new NetLogoMutableList(storage);
+			list.pushAll(jl);
+			list.shuffle(rnd);
+			assertEquals(msg, jl.size(), list.size());
+			assertFalse(msg, jl.equals(list.getList()));
+			List<Object> sorted = new ArrayList<Object>(list.getList());
+			Collections.sort(sorted, new Comparator<Object>() {
+				@Override
+				public int compare(Object o1, Object o2) {
+					return ((Double) o1).compareTo((Double) o2);
+				}
+			});
+			assertEquals(msg, jl, sorted);
+			assertTrue(msg, list.getList().check(true, msg));
+
+			// Choosing none, or shuffling a list too short to change, does nothing
+			List<Object> before = new ArrayList<Object>(list.getList());
+			list.shuffle(rnd, 0);
+			assertEquals(msg, before, new ArrayList<Object>(list.getList()));
+			NetLogoMutableList one = new NetLogoMutableList(storage);
+			one.shuffle(rnd);
+			assertEquals(msg, 0, one.size());
+			one.push(1.0);
+			one.shuffle(rnd, 1);
+			assertEquals(msg, 1.0, one.first());
+
+			// Each element is as likely as any other to be among the first k
+			int n = 10;
+			int k = 3;
+			int trials = 10000;
+			int[] chosen = new int[n];
+			for (int t = 0; t < trials; t++) {
+				NetLogoMutableList small = new NetLogoMutableList(storage);
+				small.pushAll(jl.subList(0, n));
+				small.shuffle(rnd, k);
+				assertEquals(msg, n, small.size());
+				Set<Object> all = new HashSet<Object>(small.getList());
+				assertEquals(msg, n, all.size());
+				for (int i = 0; i < k; i++) {
+					chosen[((Double) small.item(i)).intValue()]++;
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				assertEquals(msg + " element " + i, (double) trials * k / n, chosen[i], trials * k / n * 0.1);
+			}
+
+			// Shuffling all of a list of two elements gives either order
+			int swapped = 0;
+			for (int t = 0; t < 1000; t++) {
+				NetLogoMutableList two = new NetLogoMutableList(storage);
+				two.push(0.0);
+				two.push(1.0);
+				two.shuffle(rnd, 2);
+				if (two.first().equals(1.0)) {
+					swapped++;
+				}
+			}
+			assertEquals(msg, 500, swapped, 75);
+
+			ListCommand shuffleN = new ListCommand(ListCommand.Name.SHUFFLE_N);
+			Context context = context(42);
+			shuffleN.perform(new Argument[] { arg(list), arg(100.0) }, context);
+			shuffleN.perform(new Argument[] { arg(list), arg(0.0) }, context);
+			for (double k2 : new double[] { -1.0, 101.0 }) {
+				try {
+					shuffleN.perform(new Argument[] { arg(list), arg(k2) }, context);
+					fail(msg + " should not be able to shuffle " + k2 + " elements of a list of 100");
+				} catch (ExtensionException e) {
+					// Pass
+				}
+			}
+			assertEquals(msg, 100, list.size());
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableList#oneOf(java.util.Random)},
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableList#nOf(java.util.Random, int)}
+	 * and the lt:one-of, lt:n-of and lt:n-of-as-list reporters, for each kind of
+	 * storage. For linked and indexed lists, lt:one-of uses the checkpoints, so
+	 * it is checked against a copy of the list as that changes.
+	 */
+	@Test
+	public void testOneOfNOf() throws ExtensionException {
+		Random rnd = new Random(42);
+		for (NetLogoMutableList.Storage storage : NetLogoMutableList.Storage.values()) {
+			String msg = storage.toString();
+			NetLogoMutableList list = new NetLogoMutableList(storage);
+			try {
+				list.oneOf(rnd);
+				fail(msg + " should not be able to choose from an empty list");
+			} catch (ExtensionException e) {
+				// Pass
+			}
+			assertEquals(msg, 0, list.nOf(rnd, 0).size());
+
+			List<Object> jl = new ArrayList<Object>();
+			for (int i = 0; i < 3000; i++) {
+				jl.add(Double.valueOf(i));
+			}
+			list.pushAll(jl);
+
+			// The element chosen is the one at the index the same random number
+			// picks in the copy
+			Random a = new Random(7);
+			Random b = new Random(7);
+			for (int i = 0; i < 2000; i++) {
+				assertEquals(msg + " choice " + i, jl.get(b.nextInt(jl.size())), list.oneOf(a));
+				switch (i % 4) {
+				case 0:
+					list.unshift(-i - 1.0);
+					jl.add(0, -i - 1.0);
+					break;
+				case 1:
+					list.shift();
+					jl.remove(0);
+					break;
+				case 2:
+					list.push(i + 10000.0);
+					jl.add(i + 10000.0);
+					break;
+				default:
+					int ix = i % jl.size();
+					NetLogoMutableListIndex cursor = list.getIterator();
+					cursor.seek(ix);
+					cursor.add(i + 20000.0);
+					jl.add(ix, i + 20000.0);
+					break;
+				}
+			}
+			assertTrue(msg, list.getList().check(true, msg));
+
+			for (int n : new int[] { -1, jl.size() + 1 }) {
+				try {
+					list.nOf(rnd, n);
+					fail(msg + " should not be able to choose " + n + " elements from a list of " + jl.size());
+				} catch (ExtensionException e) {
+					// Pass
+				}
+			}
+			assertEquals(msg, jl, list.nOf(rnd, jl.size()));
+
+			// n-of gives distinct elements in the order they are in the list, each as
+			// likely to be chosen as any other
+			NetLogoMutableList small = new NetLogoMutableList(storage);
+			small.pushAll(jl.subList(0, 10));
+			int trials = 10000;
+			int n = 3;
+			int[] chosen = new int[10];
+			for (int t = 0; t < trials; t++) {
+				List<Object> sample = small.nOf(rnd, n);
+				assertEquals(msg, n, sample.size());
+				int last = -1;
+				for (Object obj : sample) {
+					int ix = jl.indexOf(obj);
+					assertTrue(msg + " sample " + sample, ix > last);
+					last = ix;
+					chosen[ix]++;
+				}
+			}
+			for (int i = 0; i < 10; i++) {
+				assertEquals(msg + " element " + i, (double) trials * n / 10, chosen[i], trials * n / 10 * 0.1);
+			}
+
+			// The reporters take the number first, and give the same choices from the
+			// same seed
+			Object nOf = new ListReporter(ListReporter.Name.N_OF).report(new Argument[] { arg(5.0), arg(list) },
+					context(99));
+			assertTrue(msg, nOf instanceof NetLogoMutableList);
+			assertEquals(msg, list.nOf(new MersenneTwisterFast(99), 5),
+					new ArrayList<Object>(((NetLogoMutableList) nOf).getList()));
+			Object nOfAsList = new ListReporter(ListReporter.Name.N_OF_AS_LIST)
+					.report(new Argument[] { arg(5.0), arg(list) }, context(99));
+			assertTrue(msg, nOfAsList instanceof org.nlogo.core.LogoList);
+			assertEquals(msg, list.nOf(new MersenneTwisterFast(99), 5), ((org.nlogo.core.LogoList) nOfAsList).toJava());
+			assertEquals(msg, list.oneOf(new MersenneTwisterFast(99)),
+					new ListReporter(ListReporter.Name.ONE_OF).report(new Argument[] { arg(list) }, context(99)));
+			try {
+				new ListReporter(ListReporter.Name.N_OF).report(new Argument[] { arg(-1.0), arg(list) }, context(99));
+				fail(msg + " lt:n-of should not be able to choose -1 elements");
+			} catch (ExtensionException e) {
+				// Pass
+			}
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableList#asLogoListDeeply()},
+	 * checking that nested lists are converted, that a list appearing more than
+	 * once is converted once and shared, and that a list containing itself
+	 * (directly or through another list) is an error rather than overflowing
+	 * the stack.
+	 */
+	@Test
+	public void testAsLogoListDeeply() throws ExtensionException {
+		NetLogoMutableList shared = new NetLogoMutableList(NetLogoMutableList.Storage.NUMERIC);
+		shared.push(1.0);
+		shared.push(2.0);
+		NetLogoMutableList a = new NetLogoMutableList(NetLogoMutableList.Storage.INDEXED);
+		a.push("a");
+		a.push(shared);
+		NetLogoMutableList list = new NetLogoMutableList(NetLogoMutableList.Storage.CHUNKED);
+		list.push(a);
+		list.push(shared);
+		list.push(a);
+		list.push("end");
+
+		org.nlogo.core.LogoList deep = list.asLogoListDeeply();
+		assertEquals(4, deep.size());
+		org.nlogo.core.LogoList deepA = (org.nlogo.core.LogoList) deep.get(0);
+		org.nlogo.core.LogoList deepShared = (org.nlogo.core.LogoList) deep.get(1);
+		assertEquals(Arrays.asList(1.0, 2.0), deepShared.toJava());
+		assertEquals("a", deepA.get(0));
+		assertSame(deepShared, deepA.get(1));
+		assertSame(deepA, deep.get(2));
+		assertEquals("end", deep.get(3));
+		// The shallow conversion leaves the mutable lists as they are
+		assertSame(a, list.asLogoList().get(0));
+
+		NetLogoMutableList empty = new NetLogoMutableList();
+		assertEquals(0, empty.asLogoListDeeply().size());
+
+		list.push(list);
+		try {
+			list.asLogoListDeeply();
+			fail("Should not be able to convert a list that contains itself");
+		} catch (ExtensionException e) {
+			// Pass
+		}
+		list.pop();
+
+		NetLogoMutableList c = new NetLogoMutableList(NetLogoMutableList.Storage.INDEXED);
+		NetLogoMutableList d = new NetLogoMutableList(NetLogoMutableList.Storage.DEQUE);
+		c.push(shared);
+		c.push(d);
+		d.push(c);
+		list.push(c);
+		for (NetLogoMutableList cyclic : new NetLogoMutableList[] { list, c, d }) {
+			try {
+				cyclic.asLogoListDeeply();
+				fail("Should not be able to convert a list that contains itself through another list");
+			} catch (ExtensionException e) {
+				// Pass
+			}
+		}
+		// A failed conversion leaves nothing behind to upset the next one
+		assertEquals(deepA, a.asLogoListDeeply());
+		d.clear();
+		org.nlogo.core.LogoList deepC = c.asLogoListDeeply();
+		assertEquals(deepShared, deepC.get(0));
+		assertEquals(0, ((org.nlogo.core.LogoList) deepC.get(1)).size());
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.NetLogoMutableList#pushAll(java.util.Iterator)}
+	 * for each kind of storage, the iterator lt:range uses, and pushing all the
+	 * agents in an agentset. A numeric list given something that isn't a number
+	 * part way through is left as it was.
+	 */
+	@Test
+	public void testPushAllIterator() throws ExtensionException {
+		Agent[] agents = new Agent[5];
+		for (int i = 0; i < agents.length; i++) {
+			Map<String, Object> results = new HashMap<String, Object>();
+			results.put("id", Long.valueOf(i));
+			agents[i] = stub(Agent.class, results);
+		}
+		Map<String, Object> results = new HashMap<String, Object>();
+		results.put("agents", Arrays.asList(agents));
+		results.put("count", Integer.valueOf(agents.length));
+		AgentSet set = stub(AgentSet.class, results);
+
+		for (NetLogoMutableList.Storage storage : NetLogoMutableList.Storage.values()) {
+			String msg = storage.toString();
+			List<Object> jl = new ArrayList<Object>(Arrays.asList((Object) 0.5, 1.5, 2.5));
+			NetLogoMutableList list = new NetLogoMutableList(storage);
+			list.pushAll(jl.iterator());
+			assertEquals(msg, 2.5, list.item(2));
+			List<Object> more = new ArrayList<Object>();
+			for (int i = 0; i < 200; i++) {
+				more.add(Double.valueOf(i));
+			}
+			list.pushAll(more.iterator());
+			jl.addAll(more);
+			list.pushAll(new ArrayList<Object>().iterator());
+			assertEquals(msg, jl.size(), list.size());
+			for (int i = 0; i < jl.size(); i++) {
+				assertEquals(msg + " item " + i, jl.get(i), list.item(i));
+			}
+			assertTrue(msg, list.getList().check(true, msg));
+
+			ListCommand pushAll = new ListCommand(ListCommand.Name.PUSH_ALL);
+			if (storage == NetLogoMutableList.Storage.NUMERIC) {
+				try {
+					list.pushAll(Arrays.asList((Object) 1000.0, 1001.0, "not a number", 1003.0).iterator());
+					fail("Should not be able to push a string onto a numeric list");
+				} catch (IllegalArgumentException e) {
+					// Pass
+				}
+				try {
+					pushAll.perform(new Argument[] { arg(list),
+							arg(org.nlogo.core.LogoList.fromJava(Arrays.asList((Object) 1000.0, "not a number"))) },
+							context(42));
+					fail("lt:push-all should not be able to push a string onto a numeric list");
+				} catch (ExtensionException e) {
+					// Pass
+				}
+				try {
+					pushAll.perform(new Argument[] { arg(list), arg(set) }, context(42));
+					fail("lt:push-all should not be able to push agents onto a numeric list");
+				} catch (ExtensionException e) {
+					// Pass
+				}
+				assertEquals(msg, jl, new ArrayList<Object>(list.getList()));
+				list.push(1000.0);
+				jl.add(1000.0);
+				assertEquals(msg, jl.size(), list.size());
+				assertEquals(msg, 1000.0, list.item(jl.size() - 1));
+			} else {
+				pushAll.perform(new Argument[] { arg(list), arg(set) }, context(42));
+				jl.addAll(Arrays.asList(agents));
+				assertEquals(msg, jl, new ArrayList<Object>(list.getList()));
+				assertTrue(msg, list.getList().check(true, msg));
+			}
+		}
+
+		NetLogoMutableList fromSet = new NetLogoMutableList(set);
+		assertEquals(Arrays.asList(agents), new ArrayList<Object>(fromSet.getList()));
+		fromSet = (NetLogoMutableList) new ListReporter(ListReporter.Name.FROM_AGENTSET)
+				.report(new Argument[] { arg(set) }, context(42));
+		assertEquals(Arrays.asList(agents), new ArrayList<Object>(fromSet.getList()));
+
+		Iterator<Object> range = new ListReporter.RangeIterator(0.0, 1.0, 0.25);
+		NetLogoMutableList list = new NetLogoMutableList();
+		list.pushAll(range);
+		assertEquals(Arrays.asList(0.0, 0.25, 0.5, 0.75, 1.0), new ArrayList<Object>(list.getList()));
+		assertFalse(range.hasNext());
+		try {
+			range.next();
+			fail("Should not be able to go past the end of a range");
+		} catch (NoSuchElementException e) {
+			// Pass
+		}
+		range = new ListReporter.RangeIterator(1.0, -0.1, -0.5);
+		assertEquals(1.0, range.next());
+		assertEquals(0.5, range.next());
+		assertEquals(0.0, range.next());
+		assertFalse(range.hasNext());
+		ListReporter rangeReporter = new ListReporter(ListReporter.Name.RANGE);
+		list = (NetLogoMutableList) rangeReporter.report(new Argument[] { arg(2.0), arg(0.0), arg(-1.0) },
+				context(42));
+		assertEquals(Arrays.asList(2.0, 1.0, 0.0), new ArrayList<Object>(list.getList()));
+		assertEquals(3, list.size());
+		for (double[] bad : new double[][] { { 0.0, 1.0, 0.0 }, { 0.0, 1.0, -1.0 }, { 1.0, 0.0, 1.0 } }) {
+			try {
+				rangeReporter.report(new Argument[] { arg(bad[0]), arg(bad[1]), arg(bad[2]) }, context(42));
+				fail("Should not be able to make the range " + Arrays.toString(bad));
+			} catch (ExtensionException e) {
+				// Pass
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.MutableListExtension#exportWorld()},
+	 * {@link uk.ac.hutton.netlogo.list.MutableListExtension#importWorld(List, ExtensionManager, ImportErrorHandler)}
+	 * and
+	 * {@link uk.ac.hutton.netlogo.list.MutableListExtension#readExtensionObject(ExtensionManager, String, String)},
+	 * doing what NetLogo does with the agents' variables around them. Lists of
+	 * each kind of storage, nested in each other, shared between two lists, and
+	 * containing themselves, and cursors on them, should come back the same.
+	 */
+	@Test
+	public void testExportImportWorld() throws ExtensionException, IOException {
+		MutableListExtension ext = new MutableListExtension();
+		ext.clearAll();
+		NetLogoMutableList shared = new NetLogoMutableList();
+		shared.push("shared");
+		shared.push(1.0);
+		NetLogoMutableList numbers = new NetLogoMutableList(NetLogoMutableList.Storage.NUMERIC);
+		numbers.push(1.5);
+		numbers.push(-2.0);
+		NetLogoMutableList a = new NetLogoMutableList(NetLogoMutableList.Storage.INDEXED);
+		a.push("a");
+		a.push(shared);
+		a.push(numbers);
+		a.push("a");
+		NetLogoMutableList b = new NetLogoMutableList(NetLogoMutableList.Storage.DEQUE);
+		b.push(shared);
+		b.push("say \"hi\"\nthere");
+		b.push(Boolean.TRUE);
+		NetLogoMutableList top = new NetLogoMutableList(NetLogoMutableList.Storage.CHUNKED);
+		top.push(a);
+		top.push(b);
+		top.push(top);
+		NetLogoMutableListIndex cursor = a.getIterator();
+		cursor.seek(2);
+		NetLogoMutableListIndex end = b.getIterator();
+		end.seekEnd();
+		top.push(end);
+
+		// NetLogo writes the agents' variables first, with references to the lists
+		// and cursors in them, and then the extension's section
+		String topRef = top.dump(true, true, true);
+		String cursorRef = cursor.dump(true, true, true);
+		String export = ext.exportWorld().toString();
+		assertEquals("", ext.exportWorld().toString());
+
+		List<String[]> lines = new ArrayList<String[]>();
+		ListFileReader.CSVParser parser = new ListFileReader.CSVParser(new java.io.StringReader(export), null);
+		for (Object[] row = parser.next(); row != null; row = parser.next()) {
+			lines.add(Arrays.copyOf(row, row.length, String[].class));
+		}
+		// Each list and cursor is written once
+		assertEquals(export, 7, lines.size());
+
+		final List<String> errors = new ArrayList<String>();
+		ImportErrorHandler handler = new ImportErrorHandler() {
+			@Override
+			public boolean showError(String title, String details, String action) {
+				errors.add(details);
+				return true;
+			}
+		};
+		ExtensionManager reader = reader(ext);
+		NetLogoMutableList top2 = (NetLogoMutableList) ext.readExtensionObject(reader, NetLogoMutableList.DATA_TYPE_NAME,
+				topRef);
+		NetLogoMutableListIndex cursor2 = (NetLogoMutableListIndex) ext.readExtensionObject(reader,
+				NetLogoMutableListIndex.DATA_TYPE_NAME, cursorRef);
+		ext.importWorld(lines, reader, handler);
+		assertEquals(Collections.<String>emptyList(), errors);
+
+		assertNotSame(top, top2);
+		assertEquals(NetLogoMutableList.Storage.CHUNKED, top2.getStorage());
+		assertEquals(4, top2.size());
+		assertSame(top2, top2.item(2));
+		NetLogoMutableList a2 = (NetLogoMutableList) top2.item(0);
+		NetLogoMutableList b2 = (NetLogoMutableList) top2.item(1);
+		assertEquals(NetLogoMutableList.Storage.INDEXED, a2.getStorage());
+		assertEquals(NetLogoMutableList.Storage.DEQUE, b2.getStorage());
+		assertEquals(4, a2.size());
+		assertTrue(a2.getList().check(true, "imported INDEXED"));
+		assertEquals(2, a2.getList().indexOf(a2.item(2)));
+		assertEquals(3, a2.getList().lastIndexOf("a"));
+		NetLogoMutableList shared2 = (NetLogoMutableList) a2.item(1);
+		assertSame(shared2, b2.item(0));
+		assertEquals(NetLogoMutableList.Storage.LINKED, shared2.getStorage());
+		assertEquals(shared.asLogoList(), shared2.asLogoList());
+		NetLogoMutableList numbers2 = (NetLogoMutableList) a2.item(2);
+		assertEquals(NetLogoMutableList.Storage.NUMERIC, numbers2.getStorage());
+		assertEquals(numbers.asLogoList(), numbers2.asLogoList());
+		assertEquals("say \"hi\"\nthere", b2.item(1));
+		assertEquals(Boolean.TRUE, b2.item(2));
+
+		assertSame(a2, cursor2.getList());
+		assertEquals(2, cursor2.nextIndex());
+		assertSame(numbers2, cursor2.next());
+		NetLogoMutableListIndex end2 = (NetLogoMutableListIndex) top2.item(3);
+		assertSame(b2, end2.getList());
+		assertFalse(end2.hasNext());
+		end2.add("added");
+		assertEquals(4, b2.size());
+
+		// A row that can't be read is reported, and the rest are still read
+		ext.clearAll();
+		top2 = (NetLogoMutableList) ext.readExtensionObject(reader, NetLogoMutableList.DATA_TYPE_NAME, topRef);
+		lines.add(0, new String[] { "bogus", "1", "2", "3" });
+		ext.importWorld(lines, reader, handler);
+		assertEquals(1, errors.size());
+		assertEquals(4, top2.size());
+		try {
+			ext.readExtensionObject(reader, NetLogoMutableList.DATA_TYPE_NAME, "not a number");
+			fail("Should not be able to read a list without an ID");
+		} catch (ExtensionException e) {
+			// Pass
+		}
+		ext.clearAll();
+	}
+
+	/**
+	 * Make an argument to a primitive, standing in for the one NetLogo would
+	 * give it. Numbers are also given as ints.
+	 *
+	 * @param value the value of the argument
+	 * @return the argument
+	 */
+	private static Argument arg(Object value) {
+		Map<String, Object> results = new HashMap<String, Object>();
+		results.put("get", value);
+		if (value instanceof Double) {
+			results.put("getDoubleValue", value);
+			results.put("getIntValue", Integer.valueOf(((Double) value).intValue()));
+		} else if (value instanceof String) {
+			results.put("getString", value);
+		} else if (value instanceof org.nlogo.core.LogoList) {
+			results.put("getList", value);
+		} else if (value instanceof AgentSet) {
+			results.put("getAgentSet", value);
+		}
+		return stub(Argument.class, results);
+	}
+
+	/**
+	 * Make a context for a primitive, standing in for the one NetLogo would give
+	 * it
+	 *
+	 * @param seed the seed of the context's random number generator
+	 * @return the context
+	 */
+	private static Context context(long seed) {
+		Map<String, Object> results = new HashMap<String, Object>();
+		results.put("getRNG", new MersenneTwisterFast(seed));
+		return stub(Context.class, results);
+	}
+
+	/**
+	 * Implement an interface of NetLogo's API, giving fixed results for the
+	 * methods the tests use. Other methods throw an exception, and objects are
+	 * only equal to themselves.
+	 *
+	 * @param type    the interface
+	 * @param results what each method gives, by name
+	 * @return an implementation of the interface
+	 */
+	private static <T> T stub(final Class<T> type, final Map<String, Object> results) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("equals") && args != null && args.length == 1) {
+					return Boolean.valueOf(proxy == args[0]);
+				} else if (name.equals("hashCode") && args == null) {
+					return Integer.valueOf(System.identityHashCode(proxy));
+				} else if (name.equals("toString") && args == null) {
+					return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+				} else if (results.containsKey(name)) {
+					return results.get(name);
+				}
+				throw new UnsupportedOperationException(type.getSimpleName() + "." + name + "() is not stubbed");
+			}
+		}));
+	}
+
+	/**
+	 * Make a reader for import-world, standing in for NetLogo's. It reads lists
+	 * of numbers, strings, booleans and lists, and references to extension
+	 * objects, which it asks the extension to read.
+	 *
+	 * @param ext the extension
+	 * @return the reader
+	 */
+	private static ExtensionManager reader(final MutableListExtension ext) {
+		return (ExtensionManager) Proxy.newProxyInstance(ExtensionManager.class.getClassLoader(),
+				new Class<?>[] { ExtensionManager.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws ExtensionException {
+						if (method.getName().equals("readFromString")) {
+							return new LiteralReader((String) args[0], ext, (ExtensionManager) proxy).read();
+						}
+						throw new UnsupportedOperationException("ExtensionManager." + method.getName()
+								+ "() is not stubbed");
+					}
+				});
+	}
+
+	/**
+	 * Reads a NetLogo value from a string, as {@link #reader(MutableListExtension)}
+	 * needs
+	 *
+	 * @author gary
+	 */
+	private static class LiteralReader {
+		private final String str;
+		private final MutableListExtension ext;
+		private final ExtensionManager reader;
+		private int pos = 0;
+
+		LiteralReader(String str, MutableListExtension ext, ExtensionManager reader) {
+			this.str = str;
+			this.ext = ext;
+			this.reader = reader;
+		}
+
+		Object read() throws ExtensionException {
+			while (Character.isWhitespace(str.charAt(pos))) {
+				pos++;
+			}
+			char c = str.charAt(pos);
+			if (c == '[') {
+				pos++;
+				List<Object> items = new ArrayList<Object>();
+				while (true) {
+					while (Character.isWhitespace(str.charAt(pos))) {
+						pos++;
+					}
+					if (str.charAt(pos) == ']') {
+						pos++;
+						return org.nlogo.core.LogoList.fromJava(items);
+					}
+					items.add(read());
+				}
+			} else if (c == '"') {
+				StringBuilder buf = new StringBuilder();
+				for (c = str.charAt(++pos); c != '"'; c = str.charAt(++pos)) {
+					if (c == '\\') {
+						c = str.charAt(++pos);
+						buf.append(c == 'n' ? '\n' : c);
+					} else {
+						buf.append(c);
+					}
+				}
+				pos++;
+				return buf.toString();
+			} else if (str.startsWith("{{", pos)) {
+				int close = str.indexOf("}}", pos);
+				String ref = str.substring(pos + 2, close);
+				pos = close + 2;
+				int space = ref.indexOf(' ');
+				return ext.readExtensionObject(reader, ref.substring(ref.indexOf(':') + 1, space),
+						ref.substring(space + 1));
+			} else {
+				int start = pos;
+				while (pos < str.length() && !Character.isWhitespace(str.charAt(pos)) && str.charAt(pos) != ']') {
+					pos++;
+				}
+				String token = str.substring(start, pos);
+				if (token.equals("true") || token.equals("false")) {
+					return Boolean.valueOf(token);
+				}
+				return Double.valueOf(token);
+			}
+		}
+	}
 }
@@ -0,0 +1,315 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Tests of what every {@link MutableSequence} should do, run for each kind of
+ * storage a {@link NetLogoMutableList} can use, mostly comparing the list with
+ * a java LinkedList put through the same operations. The elements are numbers,
+ * so that numeric lists can be tested too, and the lists are long enough for
+ * chunked lists to have several chunks and deques to grow and wrap around.
+ * Tests of what is particular to one kind of storage are in its own class.
+ *
+ * @author gary
+ *
+ */
+@RunWith(Parameterized.class)
+public class TestMutableSequence {
+	private final NetLogoMutableList.Storage storage;
+
+	/**
+	 * @return each kind of storage
+	 */
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> storages() {
+		List<Object[]> storages = new ArrayList<Object[]>();
+		for (NetLogoMutableList.Storage storage : NetLogoMutableList.Storage.values()) {
+			storages.add(new Object[] { storage });
+		}
+		return storages;
+	}
+
+	/**
+	 * @param storage the storage to test
+	 */
+	public TestMutableSequence(NetLogoMutableList.Storage storage) {
+		this.storage = storage;
+	}
+
+	/**
+	 * @param c the elements
+	 * @return a list using the storage being tested, containing the elements
+	 */
+	private MutableSequence make(Collection<? extends Object> c) {
+		MutableSequence list = NetLogoMutableList.makeSequence(storage);
+		list.addAll(c);
+		return list;
+	}
+
+	static List<Object> doubleList(int n) {
+		List<Object> list = new LinkedList<Object>();
+		for (int i = 0; i < n; i++) {
+			list.add((double) i);
+		}
+		return list;
+	}
+
+	static void assertContents(List<?> expected, MutableSequence list, String msg) {
+		assertTrue(msg, list.check(true, msg));
+		assertEquals(msg, expected.size(), list.size());
+		Iterator<?> ex = expected.iterator();
+		Iterator<Object> lx = list.iterator();
+		while (ex.hasNext()) {
+			assertEquals(msg, ex.next(), lx.next());
+		}
+		assertFalse(msg, lx.hasNext());
+	}
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.MutableSequence#push(Object)},
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#unshift(Object)},
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#shift()} and
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#pop()}.
+	 */
+	@Test
+	public void testEnds() {
+		MutableSequence list = make(doubleList(0));
+		LinkedList<Object> jl = new LinkedList<Object>();
+		for (int i = 0; i < 1000; i++) {
+			if (i % 3 == 0) {
+				list.unshift((double) i);
+				jl.addFirst((double) i);
+			} else {
+				list.push((double) i);
+				jl.addLast((double) i);
+			}
+		}
+		assertContents(jl, list, storage + " push()/unshift()");
+		for (int i = 0; i < 500; i++) {
+			assertEquals(jl.removeFirst(), list.shift());
+			assertEquals(jl.removeLast(), list.pop());
+		}
+		assertContents(jl, list, storage + " shift()/pop()");
+		assertTrue(list.isEmpty());
+		try {
+			list.pop();
+			fail(storage + " should not be able to pop() from empty list");
+		} catch (Throwable e) {
+			assertEquals(NoSuchElementException.class, e.getClass());
+		}
+		try {
+			list.shift();
+			fail(storage + " should not be able to shift() from empty list");
+		} catch (Throwable e) {
+			assertEquals(NoSuchElementException.class, e.getClass());
+		}
+	}
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.MutableSequence#get(int)}
+	 * and {@link uk.ac.hutton.netlogo.list.MutableSequence#set(int, Object)}.
+	 */
+	@Test
+	public void testGetSet() {
+		List<Object> jl = doubleList(1000);
+		MutableSequence list = make(jl);
+		for (int i = 0; i < jl.size(); i += 7) {
+			assertEquals(jl.get(i), list.get(i));
+			assertEquals(jl.get(i), list.set(i, (double) -i));
+			assertEquals((double) -i, list.get(i));
+			jl.set(i, (double) -i);
+		}
+		assertContents(jl, list, storage + " set()");
+		try {
+			list.get(jl.size());
+			fail(storage + " accessed index that's too high without Exception");
+		} catch (IndexOutOfBoundsException e) {
+			// Pass
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#listIterator()}, doing
+	 * random moves, inserts, deletes and overwrites with a cursor, then deleting
+	 * everything and adding to the empty list.
+	 */
+	@Test
+	public void testListIterator() {
+		Random rnd = new Random(42);
+		List<Object> jl = doubleList(500);
+		MutableSequence list = make(jl);
+		ListIterator<Object> jx = jl.listIterator();
+		ListIterator<Object> ix = list.listIterator();
+		boolean moved = false;
+
+		for (int i = 0; i < 20000; i++) {
+			int op = rnd.nextInt(10);
+			if (op < 3 && jx.hasNext()) {
+				assertEquals(jx.next(), ix.next());
+				moved = true;
+			} else if (op < 5 && jx.hasPrevious()) {
+				assertEquals(jx.previous(), ix.previous());
+				moved = true;
+			} else if (op < 7) {
+				jx.add((double) -i);
+				ix.add((double) -i);
+				moved = false;
+			} else if (op < 9 && moved) {
+				jx.remove();
+				ix.remove();
+				moved = false;
+			} else if (moved) {
+				jx.set((double) i);
+				ix.set((double) i);
+			}
+			assertEquals(jx.nextIndex(), ix.nextIndex());
+			assertEquals(jx.hasNext(), ix.hasNext());
+			assertEquals(jx.hasPrevious(), ix.hasPrevious());
+		}
+		assertContents(jl, list, storage + " listIterator()");
+
+		while (jx.hasPrevious()) {
+			jx.previous();
+			ix.previous();
+			jx.remove();
+			ix.remove();
+		}
+		while (jx.hasNext()) {
+			jx.next();
+			ix.next();
+			jx.remove();
+			ix.remove();
+		}
+		assertContents(jl, list, storage + " listIterator() remove all");
+		ix.add(-1.0);
+		assertEquals(-1.0, list.get(0));
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#removeAll(java.util.Collection)},
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#removeAllCount(java.util.Collection)}
+	 * and
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#retainAll(java.util.Collection)}.
+	 */
+	@Test
+	public void testRemoveAllRetainAll() {
+		List<Object> jl = new LinkedList<Object>();
+		for (int i = 0; i < 1000; i++) {
+			jl.add((double) (i % 10));
+		}
+		MutableSequence list = make(jl);
+		List<Object> del = Arrays.asList(new Object[] { 1.0, 3.0, "4", 9.0 });
+		assertTrue(list.removeAll(del));
+		jl.removeAll(del);
+		assertContents(jl, list, storage + " removeAll()");
+		assertFalse(list.removeAll(del));
+		assertFalse(list.containsAny(del));
+		assertEquals(100, list.removeAllCount(Arrays.asList(new Object[] { 2.0 })));
+		jl.removeAll(Arrays.asList(new Object[] { 2.0 }));
+		List<Object> keep = Arrays.asList(new Object[] { 0.0, 5.0 });
+		assertTrue(list.retainAll(keep));
+		jl.retainAll(keep);
+		assertContents(jl, list, storage + " retainAll()");
+		assertTrue(list.removeAll(keep));
+		assertTrue(list.isEmpty());
+		assertTrue(list.check(true, storage + " removeAll() everything"));
+	}
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.MutableSequence#reverse()},
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#cat(MutableSequence)} and
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#clone()}.
+	 */
+	@Test
+	public void testReverseCatClone() {
+		List<Object> jl = doubleList(300);
+		MutableSequence list = make(jl);
+		list.unshift(-1.0);
+		jl.add(0, -1.0);
+		list.reverse();
+		Collections.reverse(jl);
+		assertContents(jl, list, storage + " reverse()");
+
+		MutableSequence other = make(doubleList(100));
+		MutableList linked = new MutableList(doubleList(10));
+		list.cat(other);
+		list.cat(linked);
+		jl.addAll(doubleList(100));
+		jl.addAll(doubleList(10));
+		assertContents(jl, list, storage + " cat()");
+		assertTrue(other.isEmpty());
+		assertTrue(linked.isEmpty());
+
+		MutableSequence copy = list.clone();
+		assertTrue(copy.equals(list));
+		list.clear();
+		assertContents(jl, copy, storage + " clone()");
+		assertTrue(list.isEmpty());
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#addAll(java.util.Collection)}
+	 * and
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#addAll(int, java.util.Collection)}
+	 * adding a list to itself (<code>lt:fpush-all</code> and
+	 * <code>lt:lpush-all</code> of a list on to itself).
+	 */
+	@Test
+	public void testAddAllSelf() {
+		List<Object> jl = doubleList(300);
+		MutableSequence list = make(jl);
+		list.addAll(0, list);
+		jl.addAll(0, new LinkedList<Object>(jl));
+		assertContents(jl, list, storage + " addAll(0, self)");
+		list.addAll(100, list);
+		jl.addAll(100, new LinkedList<Object>(jl));
+		assertContents(jl, list, storage + " addAll(100, self)");
+		list.addAll(list);
+		jl.addAll(new LinkedList<Object>(jl));
+		assertContents(jl, list, storage + " addAll(self)");
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.MutableSequence#depthFirstIterator()} with
+	 * lists of the storage being tested and linked lists nested in it (so not
+	 * for numeric lists).
+	 */
+	@Test
+	public void testDepthFirstIterator() {
+		assumeTrue(storage != NetLogoMutableList.Storage.NUMERIC);
+		MutableSequence list = make(Arrays.asList(new String[] { "a", "b" }));
+		list.add(new MutableList(Arrays.asList(new String[] { "c", "d" })));
+		list.add(make(Collections.emptyList()));
+		list.add(make(Arrays.asList(new String[] { "e" })));
+		list.add("f");
+		StringBuffer buf = new StringBuffer();
+		for (Iterator<Object> ix = list.depthFirstIterator(); ix.hasNext();) {
+			buf.append(ix.next());
+		}
+		assertEquals("abcdef", buf.toString());
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.junit.Test;
+
+/**
+ * Tests of what is particular to NumericList: only holding numbers, and giving
+ * them as doubles. What it has in common with the other storage is tested by
+ * {@link TestMutableSequence}.
+ *
+ * @author gary
+ *
+ */
+public class TestNumericList {
+
+	/**
+	 * Test that anything other than a number cannot be added, and that adding a
+	 * collection with a non-number in it leaves the list unchanged.
+	 */
+	@Test
+	public void testNonNumbers() {
+		NumericList list = new NumericList(TestMutableSequence.doubleList(3));
+		try {
+			list.push("a");
+			fail("Pushed a String onto a NumericList");
+		} catch (IllegalArgumentException e) {
+			// Pass
+		}
+		try {
+			list.addAll(Arrays.asList(new Object[] { 4.0, 5.0, "b" }));
+			fail("Added a String to a NumericList");
+		} catch (IllegalArgumentException e) {
+			// Pass
+		}
+		MutableList other = new MutableList(Arrays.asList(new Object[] { 6.0, "c" }));
+		try {
+			list.cat(other);
+			fail("Catted a String onto a NumericList");
+		} catch (IllegalArgumentException e) {
+			// Pass
+		}
+		try {
+			list.set(1, "d");
+			fail("Set an element of a NumericList to a String");
+		} catch (IllegalArgumentException e) {
+			// Pass
+		}
+		ListIterator<Object> ix = list.listIterator(1);
+		try {
+			ix.add("e");
+			fail("Added a String to a NumericList with a cursor");
+		} catch (IllegalArgumentException e) {
+			// Pass
+		}
+		ix.next();
+		try {
+			ix.set("f");
+			fail("Set an element of a NumericList to a String with a cursor");
+		} catch (IllegalArgumentException e) {
+			// Pass
+		}
+		TestMutableSequence.assertContents(TestMutableSequence.doubleList(3), list, "non-numbers");
+		assertEquals(2, other.size());
+		assertFalse(list.contains("a"));
+	}
+
+	/**
+	 * Test method for {@link uk.ac.hutton.netlogo.list.NumericList#getDouble(int)}
+	 * and {@link uk.ac.hutton.netlogo.list.NumericList#toDoubleArray()}.
+	 */
+	@Test
+	public void testDoubles() {
+		List<Object> jl = TestMutableSequence.doubleList(100);
+		NumericList list = new NumericList();
+		for (int i = jl.size() - 1; i >= 0; i--) {
+			list.unshift(jl.get(i));
+		}
+		for (int i = 0; i < jl.size(); i += 7) {
+			list.set(i, (double) -i);
+			assertEquals((double) -i, list.getDouble(i), 0.0);
+			jl.set(i, (double) -i);
+		}
+		double[] array = list.toDoubleArray();
+		assertEquals(jl.size(), array.length);
+		for (int i = 0; i < array.length; i++) {
+			assertEquals((Double) jl.get(i), array[i], 0.0);
+		}
+		list.push(1);
+		assertEquals(1.0, list.getDouble(jl.size()), 0.0);
+		assertEquals(Double.valueOf(1.0), list.pop());
+	}
+}
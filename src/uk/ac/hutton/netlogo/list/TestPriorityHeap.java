@@ -0,0 +1,181 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for PriorityHeap, comparing what comes out of it with a stable sort of
+ * what went in.
+ *
+ * @author gary
+ *
+ */
+public class TestPriorityHeap {
+
+	private static final Comparator<PriorityHeap.Entry> ORDER = new Comparator<PriorityHeap.Entry>() {
+		@Override
+		public int compare(PriorityHeap.Entry o1, PriorityHeap.Entry o2) {
+			return Double.compare(o1.getPriority(), o2.getPriority());
+		}
+	};
+
+	private static void assertDrains(List<PriorityHeap.Entry> expected, PriorityHeap heap, String msg) {
+		assertTrue(heap.check(true, msg));
+		assertEquals(msg, expected.size(), heap.size());
+		List<PriorityHeap.Entry> sorted = new ArrayList<PriorityHeap.Entry>(expected);
+		Collections.sort(sorted, ORDER); // Stable, so ties stay in order of pushing
+		for (PriorityHeap.Entry e : sorted) {
+			assertSame(msg, e, heap.peek());
+			assertSame(msg, e, heap.pop());
+			assertFalse(msg, e.isQueued());
+		}
+		assertTrue(msg, heap.isEmpty());
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.PriorityHeap#push(Object, double)} and
+	 * {@link uk.ac.hutton.netlogo.list.PriorityHeap#pop()}, with plenty of equal
+	 * priorities to check they come out in the order they went in.
+	 */
+	@Test
+	public void testPushPop() {
+		Random rnd = new Random(42);
+		PriorityHeap heap = new PriorityHeap();
+		List<PriorityHeap.Entry> entries = new ArrayList<PriorityHeap.Entry>();
+		for (int i = 0; i < 2000; i++) {
+			entries.add(heap.push(i, rnd.nextInt(100)));
+		}
+		assertDrains(entries, heap, "push()");
+
+		// Interleave pushes and pops, as in event scheduling
+		List<PriorityHeap.Entry> popped = new ArrayList<PriorityHeap.Entry>();
+		double now = 0.0;
+		heap.push("start", now);
+		for (int i = 0; i < 5000; i++) {
+			PriorityHeap.Entry e = heap.pop();
+			assertTrue(e.getPriority() >= now);
+			now = e.getPriority();
+			popped.add(e);
+			for (int j = rnd.nextInt(3); j >= 0; j--) {
+				heap.push(i, now + rnd.nextInt(10));
+			}
+		}
+		assertTrue(heap.check(true, "schedule"));
+
+		try {
+			new PriorityHeap().pop();
+			fail("Should not be able to pop() from empty heap");
+		} catch (NoSuchElementException e) {
+			// Pass
+		}
+		try {
+			heap.push(popped.get(0));
+			heap.push(popped.get(0));
+			fail("Should not be able to push() an entry twice");
+		} catch (IllegalArgumentException e) {
+			// Pass
+		}
+		try {
+			heap.push("NaN", Double.NaN);
+			fail("Should not be able to push() with NaN priority");
+		} catch (IllegalArgumentException e) {
+			// Pass
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.PriorityHeap#decreaseKey(PriorityHeap.Entry, double)}.
+	 */
+	@Test
+	public void testDecreaseKey() {
+		Random rnd = new Random(42);
+		PriorityHeap heap = new PriorityHeap();
+		List<PriorityHeap.Entry> entries = new ArrayList<PriorityHeap.Entry>();
+		for (int i = 0; i < 1000; i++) {
+			entries.add(heap.push(i, 1000.0 + rnd.nextInt(1000)));
+		}
+		for (int i = 0; i < 1000; i++) {
+			PriorityHeap.Entry e = entries.get(rnd.nextInt(entries.size()));
+			heap.decreaseKey(e, e.getPriority() - rnd.nextInt(100));
+		}
+		assertTrue(heap.check(true, "decreaseKey()"));
+
+		PriorityHeap.Entry e = entries.get(0);
+		try {
+			heap.decreaseKey(e, e.getPriority() + 1.0);
+			fail("Should not be able to increase priority");
+		} catch (IllegalArgumentException ex) {
+			// Pass
+		}
+		PriorityHeap other = new PriorityHeap();
+		try {
+			other.decreaseKey(e, 0.0);
+			fail("Should not be able to decreaseKey() an entry in another heap");
+		} catch (IllegalArgumentException ex) {
+			// Pass
+		}
+
+		// Give all the entries distinct priorities so the order they come out in
+		// doesn't depend on ties
+		for (int i = 0; i < entries.size(); i++) {
+			heap.decreaseKey(entries.get(i), entries.get(i).getPriority() - 2000.0 - i * 1.0e-6);
+		}
+		assertDrains(entries, heap, "decreaseKey()");
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.PriorityHeap#pushAll(java.util.Iterator)}
+	 * on empty and non-empty heaps.
+	 */
+	@Test
+	public void testPushAll() {
+		Random rnd = new Random(42);
+		for (int n : new int[] { 0, 1, 2, 3, 16, 17, 1000 }) {
+			List<PriorityHeap.Entry> entries = new ArrayList<PriorityHeap.Entry>();
+			for (int i = 0; i < n; i++) {
+				entries.add(new PriorityHeap.Entry(i, rnd.nextInt(n / 4 + 1)));
+			}
+			PriorityHeap heap = new PriorityHeap();
+			assertEquals(n, heap.pushAll(entries.iterator()));
+			assertDrains(entries, heap, "pushAll() n = " + n);
+		}
+
+		List<PriorityHeap.Entry> entries = new ArrayList<PriorityHeap.Entry>();
+		PriorityHeap heap = new PriorityHeap();
+		entries.add(heap.push("a", 5.0));
+		List<PriorityHeap.Entry> more = new ArrayList<PriorityHeap.Entry>();
+		for (int i = 0; i < 100; i++) {
+			more.add(new PriorityHeap.Entry(i, i % 10));
+		}
+		assertEquals(100, heap.pushAll(more.iterator()));
+		entries.addAll(more);
+		assertDrains(entries, heap, "pushAll() non-empty");
+
+		// A bad entry part way through still leaves a heap
+		more.clear();
+		for (int i = 0; i < 10; i++) {
+			more.add(new PriorityHeap.Entry(i, i == 5 ? Double.NaN : 10 - i));
+		}
+		try {
+			heap.pushAll(more.iterator());
+			fail("Should not be able to pushAll() with NaN priority");
+		} catch (IllegalArgumentException e) {
+			// Pass
+		}
+		assertDrains(more.subList(0, 5), heap, "pushAll() NaN");
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for Statistics, comparing the quartiles found by selection with those
+ * found from a sorted array.
+ *
+ * @author gary
+ *
+ */
+public class TestStatistics {
+
+	private static double median(double[] sorted, int from, int to) {
+		int n = to - from;
+		return (sorted[from + (n - 1) / 2] + sorted[from + n / 2]) / 2.0;
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.Statistics#quartiles(double[])} and
+	 * {@link uk.ac.hutton.netlogo.list.Statistics#median(double[])}, with lots of
+	 * lengths and plenty of repeated numbers.
+	 */
+	@Test
+	public void testQuartiles() {
+		Random rnd = new Random(42);
+		for (int n = 2; n < 300; n++) {
+			double[] numbers = new double[n];
+			for (int i = 0; i < n; i++) {
+				numbers[i] = rnd.nextInt(n / 2 + 1);
+			}
+			double[] sorted = numbers.clone();
+			Arrays.sort(sorted);
+			assertEquals("median of " + n, median(sorted, 0, n), Statistics.median(numbers.clone()), 0.0);
+			// Selection on a sorted array doesn't move anything, so should give the same
+			double[] expected = Statistics.quartiles(sorted);
+			double[] q = Statistics.quartiles(numbers);
+			for (int i = 0; i < 3; i++) {
+				assertEquals("quartile " + (i + 1) + " of " + n, expected[i], q[i], 0.0);
+			}
+		}
+		assertTrue(Double.isNaN(Statistics.median(new double[0])));
+		assertTrue(Double.isNaN(Statistics.quartiles(new double[] { 1.0 })[0]));
+	}
+
+	/**
+	 * Test method for
+	 * {@link uk.ac.hutton.netlogo.list.Statistics#of(MutableSequence)} on lists
+	 * with different storage.
+	 */
+	@Test
+	public void testOf() {
+		MutableList list = new MutableList(Arrays.asList(new Object[] { 2.0, "a", 4.0, 4.0, 4.0, 5.0, 5.0, 7.0, 9.0 }));
+		NumericList numbers = new NumericList(Arrays.asList(new Double[] { 2.0, 4.0, 4.0, 4.0, 5.0, 5.0, 7.0, 9.0 }));
+		for (MutableSequence seq : new MutableSequence[] { list, numbers }) {
+			Statistics stats = Statistics.of(seq);
+			assertEquals(8, stats.getCount());
+			assertEquals(2.0, stats.getMin(), 0.0);
+			assertEquals(9.0, stats.getMax(), 0.0);
+			assertEquals(40.0, stats.getSum(), 0.0);
+			assertEquals(5.0, stats.getMean(), 0.0);
+			assertEquals(32.0 / 7.0, stats.getVariance(), 1e-12);
+			assertEquals(Math.sqrt(32.0 / 7.0), stats.getStandardDeviation(), 1e-12);
+		}
+		Statistics empty = Statistics.of(new MutableList());
+		assertEquals(0, empty.getCount());
+		assertTrue(Double.isNaN(empty.getMean()));
+		assertTrue(Double.isNaN(empty.getVariance()));
+	}
+}
@@ -0,0 +1,369 @@
+/**
+ *
+ */
+package uk.ac.hutton.netlogo.list;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.api.ExtensionManager;
+import org.nlogo.api.ImportErrorHandler;
+import org.nlogo.core.CompilerException;
+import org.nlogo.core.ExtensionObject;
+import org.nlogo.core.LogoList;
+import org.nlogo.core.Nobody$;
+
+/**
+ * Support for export-world and import-world.
+ *
+ * When NetLogo exports the world, it writes the agents' variables first, and
+ * the mutable lists and cursors in them are written as references to their
+ * IDs (e.g. <code>{{lt:list 12}}</code>). The dump() methods of lists and
+ * cursors tell this class about them as that happens, and when NetLogo gets
+ * to the extension's section of the file, each of them is written once as a
+ * row of CSV, along with any lists and cursors they refer to (which are also
+ * written as references). List rows are:
+ *
+ * <code>"list","<i>id</i>","<i>storage</i>","<i>items as a NetLogo list</i>"</code>
+ *
+ * and cursor rows are:
+ *
+ * <code>"cursor","<i>id</i>","<i>list id</i>","<i>index</i>"</code>
+ *
+ * Rows are written straight into the buffer NetLogo is given, item by item,
+ * rather than building a string for each list first.
+ *
+ * On import, references met while reading the agents get an empty list (or
+ * unattached cursor) with the right ID, which is filled in when its row is
+ * read. Rows are read in one pass, with cursors put on their lists at the end.
+ *
+ * Lists and cursors are kept track of separately for each thread, as with
+ * the pool of list elements, so that simultaneous BehaviorSpace runs don't
+ * export each other's lists.
+ *
+ * @author gary
+ */
+public class WorldExporter {
+	public static final String LIST_ROW = NetLogoMutableList.DATA_TYPE_NAME;
+	public static final String CURSOR_ROW = NetLogoMutableListIndex.DATA_TYPE_NAME;
+
+	/**
+	 * Lists and cursors referred to by an export in progress, and those read in
+	 * by an import in progress
+	 *
+	 * @author gary
+	 */
+	private static class State {
+		private final Map<Object, Boolean> referenced = new IdentityHashMap<Object, Boolean>();
+		private final ArrayDeque<NetLogoMutableList> lists = new ArrayDeque<NetLogoMutableList>();
+		private final ArrayDeque<NetLogoMutableListIndex> cursors = new ArrayDeque<NetLogoMutableListIndex>();
+		private final Map<Long, NetLogoMutableList> imported_lists = new HashMap<Long, NetLogoMutableList>();
+		private final Map<Long, NetLogoMutableListIndex> imported_cursors = new HashMap<Long, NetLogoMutableListIndex>();
+		private final Map<Long, NetLogoPriorityQueue> imported_queues = new HashMap<Long, NetLogoPriorityQueue>();
+		private final Map<Long, NetLogoPriorityQueue.Handle> imported_handles =
+				new HashMap<Long, NetLogoPriorityQueue.Handle>();
+	}
+
+	private static final ThreadLocal<State> STATE = new ThreadLocal<State>() {
+		@Override
+		protected State initialValue() {
+			return new State();
+		}
+	};
+
+	/**
+	 * Note that a list has been exported as a reference, so it needs to be
+	 * written out in full
+	 *
+	 * @param list
+	 */
+	static void referenced(NetLogoMutableList list) {
+		State state = STATE.get();
+		if (state.referenced.put(list, Boolean.TRUE) == null) {
+			state.lists.add(list);
+		}
+	}
+
+	/**
+	 * Note that a cursor has been exported as a reference, so it needs to be
+	 * written out in full
+	 *
+	 * @param cursor
+	 */
+	static void referenced(NetLogoMutableListIndex cursor) {
+		State state = STATE.get();
+		if (state.referenced.put(cursor, Boolean.TRUE) == null) {
+			state.cursors.add(cursor);
+		}
+	}
+
+	/**
+	 * Forget about any export or import that didn't finish
+	 */
+	public static void clear() {
+		STATE.remove();
+	}
+
+	/**
+	 * Write out all the lists and cursors that have been referred to since the
+	 * last export, and all those they refer to
+	 *
+	 * @return the extension's section of the export-world file
+	 */
+	public static StringBuilder exportWorld() {
+		State state = STATE.get();
+		StringBuilder buf = new StringBuilder();
+		while (!state.lists.isEmpty() || !state.cursors.isEmpty()) {
+			while (!state.lists.isEmpty()) {
+				writeList(buf, state.lists.poll());
+			}
+			while (!state.cursors.isEmpty()) {
+				writeCursor(buf, state.cursors.poll());
+			}
+		}
+		state.referenced.clear();
+		return buf;
+	}
+
+	/**
+	 * Write a row for a list. Items that are lists or cursors are written as
+	 * references, and remembered so that they are written out later.
+	 *
+	 * @param buf
+	 * @param list
+	 */
+	private static void writeList(StringBuilder buf, NetLogoMutableList list) {
+		buf.append("\"" + LIST_ROW + "\",\"" + list.getID() + "\",\"" + list.getStorage() + "\",\"[");
+		boolean first = true;
+		for (Object item : list) {
+			if (!first) {
+				buf.append(' ');
+			}
+			if (item instanceof NetLogoMutableList || item instanceof NetLogoMutableListIndex) {
+				ExtensionObject obj = (ExtensionObject) item;
+				buf.append("{{" + obj.getExtensionName() + ":" + obj.getNLTypeName() + " "
+						+ obj.dump(true, true, true) + "}}");
+			} else {
+				appendQuoted(buf, Dump.logoObject(item, true, true));
+			}
+			first = false;
+		}
+		buf.append("]\"\n");
+	}
+
+	/**
+	 * Write a row for a cursor, and remember its list so that that is written out
+	 * too
+	 *
+	 * @param buf
+	 * @param cursor
+	 */
+	private static void writeCursor(StringBuilder buf, NetLogoMutableListIndex cursor) {
+		NetLogoMutableList list = cursor.getList();
+		referenced(list);
+		buf.append("\"" + CURSOR_ROW + "\",\"" + cursor.getID() + "\",\"" + list.getID() + "\",\""
+				+ cursor.nextIndex() + "\"\n");
+	}
+
+	/**
+	 * Append a string to a CSV field, doubling any quotes in it
+	 *
+	 * @param buf
+	 * @param str
+	 */
+	private static void appendQuoted(StringBuilder buf, String str) {
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c == '"') {
+				buf.append('"');
+			}
+			buf.append(c);
+		}
+	}
+
+	/**
+	 * Get the list with an ID being imported, making an empty one if it hasn't
+	 * been seen yet
+	 *
+	 * @param state
+	 * @param id
+	 * @return the list
+	 */
+	private static NetLogoMutableList importedList(State state, long id) {
+		NetLogoMutableList list = state.imported_lists.get(id);
+		if (list == null) {
+			list = new NetLogoMutableList(NetLogoMutableList.Storage.LINKED, id);
+			state.imported_lists.put(id, list);
+		}
+		return list;
+	}
+
+	/**
+	 * Get the cursor with an ID being imported, making an unattached one if it
+	 * hasn't been seen yet
+	 *
+	 * @param state
+	 * @param id
+	 * @return the cursor
+	 */
+	private static NetLogoMutableListIndex importedCursor(State state, long id) {
+		NetLogoMutableListIndex cursor = state.imported_cursors.get(id);
+		if (cursor == null) {
+			cursor = new NetLogoMutableListIndex(id);
+			state.imported_cursors.put(id, cursor);
+		}
+		return cursor;
+	}
+
+	/**
+	 * Read a reference to a list or cursor (or the start of a full dump of one,
+	 * up to the colon after the ID). Priority queues and their handles aren't
+	 * exported, so references to them are read as empty queues, and handles on
+	 * nothing that are no longer queued, with the same one for each ID; this is
+	 * reported by {@link #importWorld(List, ExtensionManager, ImportErrorHandler)}.
+	 *
+	 * @param typeName the type of extension object
+	 * @param value    the text after the type name
+	 * @return the list, cursor, priority queue or handle
+	 * @throws ExtensionException if the type isn't one of those, or the ID isn't
+	 *                            a number
+	 */
+	public static ExtensionObject readExtensionObject(String typeName, String value) throws ExtensionException {
+		int colon = value.indexOf(':');
+		long id;
+		try {
+			id = Long.parseLong((colon < 0 ? value : value.substring(0, colon)).trim());
+		} catch (NumberFormatException e) {
+			throw new ExtensionException("Cannot read the ID of " + MutableListExtension.EXTENSION_NAME + ":"
+					+ typeName + " from \"" + value + "\"");
+		}
+		State state = STATE.get();
+		if (typeName.equals(NetLogoMutableList.DATA_TYPE_NAME)) {
+			return importedList(state, id);
+		} else if (typeName.equals(NetLogoMutableListIndex.DATA_TYPE_NAME)) {
+			return importedCursor(state, id);
+		} else if (typeName.equals(NetLogoPriorityQueue.DATA_TYPE_NAME)) {
+			NetLogoPriorityQueue pq = state.imported_queues.get(id);
+			if (pq == null) {
+				pq = new NetLogoPriorityQueue();
+				state.imported_queues.put(id, pq);
+			}
+			return pq;
+		} else if (typeName.equals(NetLogoPriorityQueue.Handle.DATA_TYPE_NAME)) {
+			NetLogoPriorityQueue.Handle h = state.imported_handles.get(id);
+			if (h == null) {
+				h = new NetLogoPriorityQueue.Handle(Nobody$.MODULE$, 0.0);
+				state.imported_handles.put(id, h);
+			}
+			return h;
+		} else {
+			throw new ExtensionException("Cannot import " + MutableListExtension.EXTENSION_NAME + ":" + typeName);
+		}
+	}
+
+	/**
+	 * Read the rows written by {@link #exportWorld()}. A row that can't be read
+	 * is reported to the handler, and the list it is for is left empty (or the
+	 * cursor left at the front of a new empty list).
+	 *
+	 * @param lines   the rows
+	 * @param reader  NetLogo's reader, for the items in the lists
+	 * @param handler
+	 */
+	public static void importWorld(List<String[]> lines, ExtensionManager reader, ImportErrorHandler handler) {
+		State state = STATE.get();
+		if (!state.imported_queues.isEmpty() || !state.imported_handles.isEmpty()) {
+			handler.showError("Error importing " + MutableListExtension.EXTENSION_NAME + " extension data",
+					"Priority queues and their handles are not saved by export-world",
+					state.imported_queues.size() + " priority queues will be empty, and " + state.imported_handles.size()
+							+ " handles will be on nothing and not queued");
+		}
+		List<String[]> cursor_rows = new ArrayList<String[]>();
+		for (String[] line : lines) {
+			if (line.length == 0 || (line.length == 1 && line[0].length() == 0)) {
+				continue;
+			}
+			try {
+				if (line.length != 4) {
+					throw new ExtensionException("Expected 4 fields in row, not " + line.length);
+				}
+				if (line[0].equals(LIST_ROW)) {
+					NetLogoMutableList list = importedList(state, Long.parseLong(line[1]));
+					Object contents = reader.readFromString(line[3]);
+					if (!(contents instanceof LogoList)) {
+						throw new ExtensionException("Expected a list, not \"" + line[3] + "\"");
+					}
+					list.load(NetLogoMutableList.Storage.valueOf(line[2]), (LogoList) contents);
+				} else if (line[0].equals(CURSOR_ROW)) {
+					cursor_rows.add(line);
+				} else {
+					throw new ExtensionException("Unrecognized row type \"" + line[0] + "\"");
+				}
+			} catch (ExtensionException e) {
+				importError(handler, line, e.getMessage());
+			} catch (CompilerException e) {
+				importError(handler, line, e.getMessage());
+			} catch (IllegalArgumentException e) {
+				// Includes NumberFormatException
+				importError(handler, line, e.getMessage());
+			}
+		}
+		for (String[] line : cursor_rows) {
+			try {
+				NetLogoMutableListIndex cursor = importedCursor(state, Long.parseLong(line[1]));
+				NetLogoMutableList list = importedList(state, Long.parseLong(line[2]));
+				cursor.attach(list, Integer.parseInt(line[3]));
+			} catch (ExtensionException e) {
+				importError(handler, line, e.getMessage());
+			} catch (NumberFormatException e) {
+				importError(handler, line, e.getMessage());
+			}
+		}
+		// Cursors that were referred to but not put on a list are left usable
+		for (NetLogoMutableListIndex cursor : state.imported_cursors.values()) {
+			if (cursor.getList() == null) {
+				attachToFront(cursor, new NetLogoMutableList());
+			}
+		}
+		clear();
+	}
+
+	/**
+	 * Put a cursor at the front of a list, which can't fail
+	 *
+	 * @param cursor
+	 * @param list
+	 */
+	private static void attachToFront(NetLogoMutableListIndex cursor, NetLogoMutableList list) {
+		try {
+			cursor.attach(list, 0);
+		} catch (ExtensionException e) {
+			throw new RuntimeException("BUG! " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Report a row that couldn't be imported
+	 *
+	 * @param handler
+	 * @param line
+	 * @param msg
+	 */
+	private static void importError(ImportErrorHandler handler, String[] line, String msg) {
+		StringBuffer row = new StringBuffer();
+		for (int i = 0; i < line.length; i++) {
+			if (i > 0) {
+				row.append(",");
+			}
+			row.append(line[i]);
+		}
+		handler.showError("Error importing " + MutableListExtension.EXTENSION_NAME + " extension data",
+				msg + " in row: " + row, "This will be left empty");
+	}
+}